@@ -28,23 +28,36 @@ package org.htmlparser;
 import java.io.Serializable;
 import java.net.HttpURLConnection;
 import java.net.URLConnection;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import org.htmlparser.dom.HtmlDocument;
 import org.htmlparser.dom.HtmlDocumentImpl;
 
+import org.htmlparser.filters.StreamingMatcher;
 import org.htmlparser.filters.TagNameFilter;
 import org.htmlparser.http.ConnectionManager;
 import org.htmlparser.http.ConnectionMonitor;
 import org.htmlparser.http.HttpHeader;
 import org.htmlparser.lexer.Lexer;
 import org.htmlparser.lexer.Page;
+import org.htmlparser.lexer.ParseLimits;
+import org.htmlparser.lexer.PipelinedLexer;
+import org.htmlparser.util.Cancellation;
 import org.htmlparser.util.DefaultParserFeedback;
+import org.htmlparser.util.HandoffQueue;
 import org.htmlparser.util.IteratorImpl;
 import org.htmlparser.util.NodeIterator;
 import org.htmlparser.util.NodeList;
 import org.htmlparser.util.NodeListImpl;
+import org.htmlparser.util.NodePublisher;
+import org.htmlparser.util.ParseCancelledException;
 import org.htmlparser.util.ParserException;
 import org.htmlparser.util.ParserFeedback;
+import org.htmlparser.visitors.CancellableVisitor;
 import org.htmlparser.visitors.NodeVisitor;
 
 /**
@@ -159,6 +172,18 @@ public class Parser
      */
     protected Lexer mLexer;
 
+    /**
+     * If <code>true</code>, visiting lexes, builds and visits on
+     * separate threads.
+     */
+    protected boolean mPipelined;
+
+    /**
+     * The number of top level nodes that may be built ahead of the visitor
+     * when {@link #setPipelined pipelined}.
+     */
+    public static final int PIPELINED_NODES = 64;
+
     /**
      * A quiet message sink.
      * Use this for no feedback.
@@ -516,6 +541,13 @@ public class Parser
             factory = getLexer ().getNodeFactory ();
         if (null != factory)
             lexer.setNodeFactory (factory);
+        // and the skipped tags, limits and cancellation
+        if ((null != getLexer ()) && lexer.getSkippedTags ().isEmpty ())
+            lexer.setSkippedTags (getLexer ().getSkippedTags ());
+        if ((null != getLexer ()) && (null == lexer.getLimits ()))
+            lexer.setLimits (getLexer ().getLimits ());
+        if ((null != getLexer ()) && (null == lexer.getCancellation ()))
+            lexer.setCancellation (getLexer ().getCancellation ());
         mLexer = lexer;
         // warn about content that's not likely text
         type = mLexer.getPage ().getContentType ();
@@ -544,6 +576,128 @@ public class Parser
         this.getLexer().setNodeConsumer(nodeConsumer);
     }
 
+    /**
+     * Get the names of the elements whose contents are skipped.
+     * @return The current lexer's skipped tags.
+     * @see #setSkippedTags
+     */
+    public Set<String> getSkippedTags ()
+    {
+        return (getLexer ().getSkippedTags ());
+    }
+
+    /**
+     * Set the names of the elements whose contents are skipped.
+     * The elements are parsed as just their start and end tags, the
+     * start tag without attributes. Skipping elements of no interest,
+     * such as SCRIPT, STYLE or SVG, saves lexing and building nodes
+     * for their contents.
+     * @param names The element names, in any case, or <code>null</code>
+     * to skip nothing.
+     * @see Lexer#setSkippedTags
+     */
+    public void setSkippedTags (Set<String> names)
+    {
+        getLexer ().setSkippedTags (names);
+    }
+
+    /**
+     * Get the budgets of the parse.
+     * @return The current lexer's limits, or <code>null</code> if unlimited.
+     * @see #setLimits
+     */
+    public ParseLimits getLimits ()
+    {
+        return (getLexer ().getLimits ());
+    }
+
+    /**
+     * Set the budgets of the parse.
+     * Budgets for the number of nodes, nesting depth, attributes per tag,
+     * text length and time keep pathological pages from stalling the parse
+     * or exhausting the heap. Which limits were hit is counted by the lexer,
+     * see {@link Lexer#getLimitHits}.
+     * @param limits The limits, or <code>null</code> for an unlimited parse.
+     * @see ParseLimits
+     */
+    public void setLimits (ParseLimits limits)
+    {
+        getLexer ().setLimits (limits);
+    }
+
+    /**
+     * Get the request to give up on the parse.
+     * @return The current lexer's cancellation, or <code>null</code> if none.
+     * @see #setCancellation
+     */
+    public Cancellation getCancellation ()
+    {
+        return (getLexer ().getCancellation ());
+    }
+
+    /**
+     * Set the request to give up on the parse.
+     * Once the cancellation is cancelled, or its deadline passes, the lexer
+     * stops returning nodes and the tags that were open are closed, so
+     * {@link #parse}, {@link #extractAllNodesThatMatch(NodeFilter)} and
+     * {@link #visitAllNodesWith} end soon after, throwing a
+     * {@link ParseCancelledException} that holds what was parsed so far.
+     * A cancellation may be shared by many parsers, to cancel them together.
+     * @param cancellation The cancellation, or <code>null</code> for none.
+     * @see Lexer#setCancellation
+     */
+    public void setCancellation (Cancellation cancellation)
+    {
+        getLexer ().setCancellation (cancellation);
+    }
+
+    /**
+     * Determine if visiting is pipelined.
+     * @return <code>true</code> if {@link #visitAllNodesWith} lexes, builds
+     * and visits on separate threads.
+     * @see #setPipelined
+     */
+    public boolean isPipelined ()
+    {
+        return (mPipelined);
+    }
+
+    /**
+     * Choose whether visiting is pipelined.
+     * A pipelined {@link #visitAllNodesWith} lexes the page on one thread
+     * with a {@link PipelinedLexer}, which hands the nodes in batches to a
+     * second thread that builds the tree, which hands each top level node,
+     * once it is complete, to the visitor on the calling thread. On a
+     * machine with cores to spare, this shortens the time to visit a large
+     * page. The visitor is called on the calling thread, with the same
+     * nodes, in the same order, as when not pipelined, but the node
+     * consumer and child consumer are called on the building thread, and
+     * if the visitor stops early the page may have been parsed further.
+     * The page is read completely before lexing starts.
+     * @param pipelined If <code>true</code> visiting is pipelined.
+     */
+    public void setPipelined (boolean pipelined)
+    {
+        mPipelined = pipelined;
+    }
+
+    /**
+     * Throw if the lexer dropped the rest of the page because the parse
+     * was cancelled.
+     * @param partial What was parsed before the cancellation,
+     * or <code>null</code>.
+     * @exception ParseCancelledException If the parse was cancelled.
+     */
+    protected void checkCancelled (NodeList partial)
+        throws
+            ParseCancelledException
+    {
+        if (getLexer ().isCancelled ())
+            throw new ParseCancelledException ("the parse of "
+                + getLexer ().getPage ().getUrl () + " was cancelled at line "
+                + (getLexer ().getCurrentLineNumber () + 1), partial);
+    }
+
     /**
      * Get the current node factory.
      * @return The current lexer's node factory.
@@ -673,6 +827,41 @@ public class Parser
         return (new IteratorImpl (getLexer (), getFeedback (), recurse));
     }
 
+    /**
+     * Publish the top level nodes of the page, as {@link #elements()}
+     * returns them, to one subscriber.
+     * Nodes are lexed in the common pool as the subscriber requests them,
+     * at most <code>Flow.defaultBufferSize()</code> ahead, and delivered
+     * in the common pool.
+     * @return A publisher of the top level nodes.
+     * @see NodePublisher
+     */
+    public Flow.Publisher<Node> publish ()
+    {
+        return (publish (ForkJoinPool.commonPool (), Flow.defaultBufferSize (), true));
+    }
+
+    /**
+     * Publish the nodes of the page to one subscriber.
+     * Nodes are lexed as the subscriber requests them, at most
+     * <code>buffer</code> nodes ahead of those delivered, so a slow
+     * subscriber holds the lexer back rather than the nodes piling up.
+     * Lexing and delivery run as separate tasks on the executor, and overlap
+     * if it has more than one thread. The parser must not be used for
+     * anything else until the subscriber is complete.
+     * @param executor The executor to lex and deliver on.
+     * @param buffer The number of nodes that may be lexed ahead of delivery.
+     * @param recurse If <code>true</code> publish the top level nodes, with
+     * their children, if <code>false</code> publish each node, including
+     * end tags, as the lexer returns it.
+     * @return A publisher of the nodes.
+     * @see NodePublisher
+     */
+    public Flow.Publisher<Node> publish (Executor executor, int buffer, boolean recurse)
+    {
+        return (new NodePublisher (this, executor, buffer, recurse));
+    }
+
     /**
      * Parse the given resource, using the filter provided.
      * This can be used to extract information from specific nodes.
@@ -704,6 +893,8 @@ public class Parser
      * @param filter The filter to apply to the parsed nodes,
      * or <code>null</code> to retrieve all the top level nodes.
      * @throws ParserException If a parsing error occurs.
+     * @throws ParseCancelledException If the {@link #setCancellation
+     * cancellation} was cancelled, with the nodes found so far.
      */
     public HtmlDocument parse (NodeFilter filter) throws ParserException
     {
@@ -720,6 +911,7 @@ public class Parser
             else
                 ret.add (node);
         }
+        checkCancelled (ret);
 
         return (ret);
     }
@@ -730,6 +922,14 @@ public class Parser
      * in the page in a depth first traversal. The visitor
      * <code>beginParsing()</code> method is called prior to processing the
      * page and <code>finishedParsing()</code> is called after the processing.
+     * If the visitor's <code>shouldStop()</code> returns <code>true</code>
+     * the traversal ends, and the rest of the page is not parsed.
+     * With a {@link #setCancellation cancellation}, the traversal also ends
+     * when it is cancelled, checked by a {@link CancellableVisitor} as the
+     * nodes are visited, and <code>finishedParsing()</code> is called
+     * before the {@link ParseCancelledException} is thrown.
+     * When {@link #setPipelined pipelined}, lexing and building the tree
+     * run on other threads.
      * @param visitor The visitor to visit all nodes with.
      * @throws ParserException If a parse error occurs while traversing
      * the page with the visitor.
@@ -738,13 +938,125 @@ public class Parser
     public void visitAllNodesWith (NodeVisitor visitor) throws ParserException
     {
         Node node;
+        CancellableVisitor cancellable;
+
+        cancellable = null;
+        if (null != getCancellation ())
+            visitor = cancellable = new CancellableVisitor (visitor, getCancellation ());
+        visitor.clearStop ();
         visitor.beginParsing();
-        for (NodeIterator e = elements(); e.hasNext(); )
+        if (isPipelined ())
+            visitPipelined (visitor);
+        else
+            for (NodeIterator e = elements(); !visitor.shouldStop() && e.hasNext(); )
+            {
+                node = e.next();
+                node.accept(visitor);
+            }
+        visitor.finishedParsing();
+        if ((null != cancellable) && cancellable.isCancelled ())
+            throw new ParseCancelledException ("the traversal of "
+                + getLexer ().getPage ().getUrl () + " was cancelled", null);
+        checkCancelled (null);
+    }
+
+    /**
+     * Visit the top level nodes as they are built on another thread, from
+     * nodes lexed on a third.
+     * @param visitor The visitor to visit all nodes with.
+     * @throws ParserException If a parse error occurs while lexing or
+     * building the nodes the visitor would have been given.
+     */
+    protected void visitPipelined (NodeVisitor visitor) throws ParserException
+    {
+        PipelinedLexer lexer;
+        HandoffQueue<Node> nodes;
+        Throwable[] error;
+        Thread builder;
+        Node node;
+        boolean drained;
+        boolean interrupted;
+
+        lexer = new PipelinedLexer (getLexer ());
+        nodes = new HandoffQueue<> (PIPELINED_NODES);
+        error = new Throwable[1];
+        builder = new Thread (() -> build (lexer, nodes, error), "builder " + getURL ());
+        builder.setDaemon (true);
+        drained = false;
+        try
         {
-            node = e.next();
-            node.accept(visitor);
+            lexer.start ();
+            builder.start ();
+            while (!drained && !visitor.shouldStop ())
+                if (null == (node = nodes.take ()))
+                    drained = true;
+                else
+                    node.accept (visitor);
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread ().interrupt ();
+            throw new ParserException ("interrupted waiting for nodes", ie);
+        }
+        finally
+        {
+            // stop building and lexing, then wait for the builder
+            nodes.close ();
+            lexer.close ();
+            interrupted = false;
+            while (builder.isAlive ())
+                try
+                {
+                    builder.join ();
+                }
+                catch (InterruptedException ie)
+                {
+                    interrupted = true;
+                }
+            if (interrupted)
+                Thread.currentThread ().interrupt ();
+            lexer.updateOwner ();
+        }
+        // a problem after the nodes visited is only met if they all were
+        if (drained && (null != error[0]))
+            if (error[0] instanceof ParserException)
+                throw (ParserException)error[0];
+            else if (error[0] instanceof RuntimeException)
+                throw (RuntimeException)error[0];
+            else if (error[0] instanceof Error)
+                throw (Error)error[0];
+            else
+                throw new ParserException (error[0].getMessage (), error[0]);
+    }
+
+    /**
+     * Build the top level nodes and hand them to the visiting thread.
+     * @param lexer The lexer.
+     * @param nodes The queue to the visiting thread.
+     * @param error Where to leave a problem building the nodes.
+     */
+    private void build (PipelinedLexer lexer, HandoffQueue<Node> nodes, Throwable[] error)
+    {
+        NodeIterator e;
+        Node node;
+        boolean more;
+
+        try
+        {
+            e = new IteratorImpl (lexer, getFeedback ());
+            more = true;
+            while (more && e.hasNext ())
+                more = (null != (node = e.next ())) && nodes.put (node);
+        }
+        catch (Throwable t)
+        {
+            // seen by the visiting thread when it finds the queue finished
+            error[0] = t;
+        }
+        finally
+        {
+            nodes.finish ();
         }
-        visitor.finishedParsing();
     }
 
     /**
@@ -772,6 +1084,8 @@ public class Parser
      * @return A list of nodes matching the filter criteria,
      * i.e. for which the filter's accept method
      * returned <code>true</code>.
+     * @throws ParseCancelledException If the {@link #setCancellation
+     * cancellation} was cancelled, with the nodes matched so far.
      */
     public NodeList extractAllNodesThatMatch (NodeFilter filter)
         throws
@@ -783,10 +1097,56 @@ public class Parser
         ret = new NodeListImpl ();
         for (e = elements (); e.hasNext (); )
             e.next ().collectInto (ret, filter);
+        checkCancelled (ret);
 
         return (ret);
     }
 
+    /**
+     * Stream the nodes matching the given filter to a callback while parsing.
+     * Unlike {@link #extractAllNodesThatMatch(NodeFilter)} no document is
+     * kept: each node is matched as soon as it is complete, and subtrees
+     * that cannot be part of a match are released as they are closed,
+     * so the memory used tracks the size of the largest match rather than the
+     * size of the page. Filters with sibling combinators or structural
+     * pseudo-classes also keep a childless copy of each element closed
+     * under an open ancestor, so on a flat page their memory grows with the
+     * number of elements. Matches are passed to the callback in the order they
+     * are closed, i.e. nested matches come before the matches enclosing them.
+     * See {@link StreamingMatcher} for which filters allow subtrees to be
+     * released.
+     * <p>For example, to process the products on a large listing page:
+     * <pre>
+     * parser.extractAllNodesThatMatch (new CssSelectorNodeFilter ("div.product"), node -> store (node));
+     * </pre>
+     * @param filter The filter to be applied to the nodes.
+     * @param callback The consumer that is passed each matching node.
+     * @throws ParserException If a parse error occurs.
+     */
+    public void extractAllNodesThatMatch (NodeFilter filter, Consumer<Node> callback)
+        throws
+            ParserException
+    {
+        StreamingMatcher matcher;
+        Lexer lexer;
+        BiConsumer<Tag, Node> previous;
+
+        matcher = new StreamingMatcher (filter, callback);
+        lexer = getLexer ();
+        previous = lexer.getChildConsumer ();
+        lexer.setChildConsumer (matcher);
+        try
+        {
+            for (NodeIterator e = elements (); e.hasNext (); )
+                matcher.match (e.next ());
+            checkCancelled (null);
+        }
+        finally
+        {
+            lexer.setChildConsumer (previous);
+        }
+    }
+
     //
     // ConnectionMonitor interface
     //
@@ -2,7 +2,13 @@ package org.htmlparser.beans;
 
 import java.net.URLConnection;
 
+import org.htmlparser.Node;
 import org.htmlparser.Parser;
+import org.htmlparser.Tag;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.scanners.ParseStack;
+import org.htmlparser.scanners.Scanner;
+import org.htmlparser.util.NodeList;
 import org.htmlparser.util.ParserException;
 import org.htmlparser.util.EncodingChangeException;
 
@@ -37,6 +43,15 @@ import org.htmlparser.util.EncodingChangeException;
  * According to Nick Burch, who contributed the patch, this is handy if you
  * don't want StringBean to wander off and get the content itself, either
  * because you already have it, it's not on a website etc.
+ * <p>A bean fetching its own page visits the node tree of the page, as
+ * {@link Parser#visitAllNodesWith} does, and stops once the text reaches
+ * the maximum size. The tree of each top level element is built before it is
+ * visited though, so with <code>setLexemes (true)</code> the bean instead
+ * visits the lexemes in document order as they are read, and reads the page
+ * no further once the text is full. The text is the same, but a subclass
+ * then sees its tags without their parents and children, except for SCRIPT
+ * and STYLE tags, and sees only the end tags that are on the page, not the
+ * virtual end tags the parser adds for unclosed tags.</p>
  * 
  * @author Chinomso Bassey Ikwuagwu on Nov 5, 2016 9:02:29 AM
  */
@@ -53,11 +68,22 @@ public class StringBean extends StringExtractingNodeVisitor
      */
     public static final String PROP_CONNECTION_PROPERTY = "connection";
     
+    /**
+     * Property name in event where the 'visit lexemes' state changes.
+     */
+    public static final String PROP_LEXEMES_PROPERTY = "lexemes";
+    
     /**
      * The parser used to extract strings.
      */
     private final Parser mParser;
 
+    /**
+     * If <code>true</code> the lexemes of the page are visited, rather than
+     * its node tree.
+     */
+    private boolean mLexemes;
+
     public StringBean() {
         mParser = new Parser();
     }
@@ -84,7 +110,7 @@ public class StringBean extends StringExtractingNodeVisitor
         String ret;
 
         mCollapseState = 0;
-        mParser.visitAllNodesWith (this);
+        visitPage ();
         ret = mBuffer.toString ();
         mBuffer = new StringBuilder(this.getBufferSize());
 
@@ -103,7 +129,7 @@ public class StringBean extends StringExtractingNodeVisitor
             {
                 try
                 {
-                    mParser.visitAllNodesWith (this);
+                    visitPage ();
                     updateStrings (mBuffer.toString ());
                 }
                 finally
@@ -121,7 +147,7 @@ public class StringBean extends StringExtractingNodeVisitor
                     mParser.reset ();
                     mBuffer = new StringBuilder (this.getBufferSize());
                     mCollapseState = 0;
-                    mParser.visitAllNodesWith (this);
+                    visitPage ();
                     updateStrings (mBuffer.toString ());
                 }
                 catch (ParserException pe)
@@ -146,6 +172,59 @@ public class StringBean extends StringExtractingNodeVisitor
         }
     }
 
+    /**
+     * Visit the page of the parser.
+     * When lexemes are visited and this bean visits both the nodes and
+     * their children, which is the default, the lexemes are visited in
+     * document order as they are read, rather than after the node tree of
+     * each top level element is built.
+     * This gives the same text, since only the PRE, SCRIPT and STYLE
+     * flags and flow breaks depend on the tags, and means that the page is
+     * read no further once the text reaches the maximum size.
+     * Only SCRIPT and STYLE tags, whose scanners read their contents, are
+     * visited with their children, other tags are visited without them.
+     * Otherwise the node tree is visited.
+     * @exception ParserException If the page cannot be read.
+     */
+    protected void visitPage ()
+        throws
+            ParserException
+    {
+        Lexer lexer;
+        Node node;
+        Tag tag;
+        Scanner scanner;
+        NodeList stack;
+
+        if (mLexemes && shouldRecurseChildren () && shouldRecurseSelf ())
+        {
+            lexer = mParser.getLexer ();
+            stack = null;
+            clearStop ();
+            beginParsing ();
+            while (!shouldStop () && (null != (node = lexer.next ())))
+            {
+                if ((node instanceof Tag) && !((Tag)node).isEndTag ())
+                {
+                    tag = (Tag)node;
+                    scanner = tag.getThisScanner ();
+                    if (TextExtractor.isCDATA (scanner))
+                    {
+                        if (null == stack)
+                            stack = new ParseStack ();
+                        node = scanner.scan (tag, lexer, stack);
+                    }
+                    else
+                        tag.doSemanticAction ();
+                }
+                node.accept (this);
+            }
+            finishedParsing ();
+        }
+        else
+            mParser.visitAllNodesWith (this);
+    }
+
     /**
      * Refetch the URL contents.
      * Only need to worry if there is already a valid parser and it's
@@ -278,6 +357,35 @@ public class StringBean extends StringExtractingNodeVisitor
     public final Parser getParser() {
         return mParser;
     }
+
+    /**
+     * Get the current 'visit lexemes' state.
+     * @return <code>true</code> if the lexemes of the page are visited as
+     * they are read, <code>false</code> if its node tree is visited.
+     */
+    public boolean getLexemes ()
+    {
+        return (mLexemes);
+    }
+
+    /**
+     * Set the 'visit lexemes' state.
+     * The text extracted is the same either way, but when lexemes are
+     * visited the page is read no further than the maximum size needs, and
+     * the tags visited have no parents or children, see the class description.
+     * @param lexemes Use <code>true</code> to visit the lexemes of the page
+     * as they are read, <code>false</code> to visit its node tree.
+     */
+    public void setLexemes (boolean lexemes)
+    {
+        boolean oldValue = mLexemes;
+        if (oldValue != lexemes)
+        {
+            mLexemes = lexemes;
+            mPropertySupport.firePropertyChange (
+                PROP_LEXEMES_PROPERTY, oldValue, lexemes);
+        }
+    }
     
     /**
      * Unit test.
@@ -2,6 +2,7 @@ package org.htmlparser.beans;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.IOException;
 import java.io.Serializable;
 import org.htmlparser.Tag;
 import org.htmlparser.Text;
@@ -102,6 +103,11 @@ public class StringExtractingNodeVisitor extends NodeVisitorImpl implements Seri
      */
     protected boolean mIsStyle;
 
+    /**
+     * Decodes, replaces non-breaking spaces and collapses text into the buffer.
+     */
+    private transient TextAppender mAppender;
+
     public StringExtractingNodeVisitor () {
         this(4096, Integer.MAX_VALUE);
     }
@@ -158,6 +164,7 @@ public class StringExtractingNodeVisitor extends NodeVisitorImpl implements Seri
     /**
      * Appends a newline to the buffer if there isn't one there already.
      * Except if the buffer is empty.
+     * Stops the traversal if the newline doesn't fit.
      */
     protected void carriageReturn ()
     {
@@ -165,11 +172,15 @@ public class StringExtractingNodeVisitor extends NodeVisitorImpl implements Seri
 
         length = mBuffer.length ();
         if ((0 != length) // don't append newlines to the beginning of a buffer
-            && length + NEWLINE_SIZE < maxSize    
             && ((NEWLINE_SIZE <= length) // not enough chars to hold a NEWLINE
             && (!mBuffer.substring (
                 length - NEWLINE_SIZE, length).equals (NEWLINE))))
-            mBuffer.append (NEWLINE);
+        {
+            if (length + NEWLINE_SIZE < maxSize)
+                mBuffer.append (NEWLINE);
+            else
+                stop ();
+        }
         mCollapseState = 0;
     }
 
@@ -410,6 +421,11 @@ public class StringExtractingNodeVisitor extends NodeVisitorImpl implements Seri
 
     /**
      * Appends the text to the output.
+     * Outside of PRE tags, character references are decoded, non-breaking
+     * spaces replaced and whitespace collapsed in a single pass over the
+     * text, straight into the buffer.
+     * Stops the traversal if the text doesn't fit,
+     * so the rest of the page is not parsed.
      * @param string The text node.
      */
     @Override
@@ -423,17 +439,25 @@ public class StringExtractingNodeVisitor extends NodeVisitorImpl implements Seri
             {
                 if (!mIsPre)
                 {
-                    text = Translate.decode (text);
-                    if (getReplaceNonBreakingSpaces ())
-                        text = text.replace ('\u00a0', ' ');
-                    if (getCollapse ())
-                        collapse (mBuffer, text);
-                    else
-                        mBuffer.append (text);
+                    if (null == mAppender)
+                        mAppender = new TextAppender ();
+                    mAppender.reset (mBuffer, getReplaceNonBreakingSpaces (), getCollapse (), mCollapseState);
+                    try
+                    {
+                        Translate.decode (text, 0, text.length (), mAppender);
+                    }
+                    catch (IOException ioe)
+                    {
+                        // a StringBuilder doesn't throw
+                    }
+                    mCollapseState = mAppender.mCollapseState;
+                    mAppender.mBuffer = null;
                 }
                 else
                     mBuffer.append (text);
             }
+            else
+                stop ();
         }
     }
 
@@ -458,6 +482,8 @@ public class StringExtractingNodeVisitor extends NodeVisitorImpl implements Seri
                     mBuffer.append (link);
                     mBuffer.append ('>');
                 }
+                else
+                    stop ();
             }
         }
         
@@ -0,0 +1,135 @@
+package org.htmlparser.beans;
+
+/**
+ * Appends decoded text to a buffer, replacing non-breaking spaces and
+ * collapsing whitespace on the way.
+ * It is passed as the output of
+ * {@link org.htmlparser.util.Translate#decode(CharSequence, int, int, Appendable)},
+ * so the text of a node is decoded, has its non-breaking spaces replaced
+ * and its whitespace collapsed in one pass, with no intermediate strings.
+ * The collapse state machine is the one described by
+ * {@link StringExtractingNodeVisitor#collapse}, its state is carried from one
+ * text to the next by the caller.
+ */
+class TextAppender
+    implements
+        Appendable
+{
+    /**
+     * The buffer being appended to.
+     */
+    StringBuilder mBuffer;
+
+    /**
+     * If <code>true</code> non-breaking spaces are replaced with spaces.
+     */
+    boolean mReplaceSpace;
+
+    /**
+     * If <code>true</code> whitespace is collapsed.
+     */
+    boolean mCollapse;
+
+    /**
+     * The state of the collapse state machine.
+     */
+    int mCollapseState;
+
+    /**
+     * Prepare to append some text.
+     * @param buffer The buffer to append to.
+     * @param replace If <code>true</code> non-breaking spaces are replaced.
+     * @param collapse If <code>true</code> whitespace is collapsed.
+     * @param state The state of the collapse state machine.
+     */
+    void reset (StringBuilder buffer, boolean replace, boolean collapse, int state)
+    {
+        mBuffer = buffer;
+        mReplaceSpace = replace;
+        mCollapse = collapse;
+        mCollapseState = state;
+    }
+
+    @Override
+    public Appendable append (CharSequence csq)
+    {
+        return (append (csq, 0, csq.length ()));
+    }
+
+    @Override
+    public Appendable append (CharSequence csq, int start, int end)
+    {
+        StringBuilder buffer;
+        int state;
+        char character;
+
+        if (mCollapse)
+        {
+            // the state machine of append(char), with the state kept local
+            buffer = mBuffer;
+            state = mCollapseState;
+            for (int i = start; i < end; i++)
+            {
+                character = csq.charAt (i);
+                if (mReplaceSpace && ('\u00a0' == character))
+                    character = ' ';
+                switch (character)
+                {
+                    case '\u0020':
+                    case '\u0009':
+                    case '\u000C':
+                    case '\u200B':
+                    case '\r':
+                    case '\n':
+                        if (0 != state)
+                            state = 1;
+                        break;
+                    default:
+                        if (1 == state)
+                            buffer.append (' ');
+                        state = 2;
+                        buffer.append (character);
+                }
+            }
+            mCollapseState = state;
+        }
+        else if (mReplaceSpace)
+            for (int i = start; i < end; i++)
+                mBuffer.append ('\u00a0' == csq.charAt (i) ? ' ' : csq.charAt (i));
+        else
+            mBuffer.append (csq, start, end);
+
+        return (this);
+    }
+
+    @Override
+    public Appendable append (char character)
+    {
+        if (mReplaceSpace && ('\u00a0' == character))
+            character = ' ';
+        if (mCollapse)
+            switch (character)
+            {
+                // see HTML specification section 9.1 White space
+                // http://www.w3.org/TR/html4/struct/text.html#h-9.1
+                case '\u0020':
+                case '\u0009':
+                case '\u000C':
+                case '\u200B':
+                case '\r':
+                case '\n':
+                    if (0 != mCollapseState)
+                        mCollapseState = 1;
+                    break;
+                default:
+                    if (1 == mCollapseState)
+                        mBuffer.append (' ');
+                    mCollapseState = 2;
+                    mBuffer.append (character);
+            }
+        else
+            mBuffer.append (character);
+
+        return (this);
+    }
+}
@@ -0,0 +1,566 @@
+package org.htmlparser.beans;
+
+import java.io.IOException;
+
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.Tag;
+import org.htmlparser.Text;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.nodes.TextNode;
+import org.htmlparser.scanners.CompositeTagScanner;
+import org.htmlparser.scanners.ParseStack;
+import org.htmlparser.scanners.Scanner;
+import org.htmlparser.tags.LinkTag;
+import org.htmlparser.util.EncodingChangeException;
+import org.htmlparser.util.NodeList;
+import org.htmlparser.util.ParserException;
+import org.htmlparser.util.Translate;
+
+/**
+ * Extract the user visible text of a page directly from the lexer.
+ * The output is the same as that of a {@link StringBean} with the same
+ * <code>Links</code>, <code>ReplaceNonBreakingSpaces</code>,
+ * <code>Collapse</code> and maximum size settings, but no node tree is built.
+ * Text extraction only needs the lexemes in document order and a little
+ * state, whether the text is within a PRE, SCRIPT or STYLE tag, and
+ * whether a tag breaks the flow of text. So the nodes returned by
+ * {@link Lexer#next()} are processed one at a time and then dropped.
+ * Only tags with a scanner of their own that reads CDATA, i.e. SCRIPT and
+ * STYLE, are scanned, so that their content is not mistaken for markup.
+ * As with the string beans, extraction stops at the first text that would
+ * take the output to the maximum size, and the rest of the page is not read.
+ * <p>
+ * The text is written to an {@link Appendable}, for example a
+ * {@link java.io.Writer}:
+ * <pre>
+ *     TextExtractor extractor = new TextExtractor ();
+ *     Parser parser = new Parser ("http://www.netbeans.org");
+ *     extractor.extract (parser, writer);
+ * </pre>
+ * An extractor holds the state of one extraction at a time,
+ * it can be reused but not shared between threads.
+ */
+public class TextExtractor
+{
+    /**
+     * A newline.
+     */
+    private static final String NEWLINE = System.getProperty ("line.separator");
+
+    /**
+     * The length of the NEWLINE.
+     */
+    private static final int NEWLINE_SIZE = NEWLINE.length ();
+
+    /**
+     * The maximum number of characters to output, more or less.
+     * As with the string beans, text that would take the output to this
+     * size is dropped and ends the extraction.
+     */
+    protected int mMaxSize;
+
+    /**
+     * If <code>true</code> the link URLs are embedded in the text output.
+     */
+    protected boolean mLinks;
+
+    /**
+     * If <code>true</code> regular space characters are substituted for
+     * non-breaking spaces in the text output.
+     */
+    protected boolean mReplaceSpace;
+
+    /**
+     * If <code>true</code> sequences of whitespace characters are replaced
+     * with a single space character.
+     */
+    protected boolean mCollapse;
+
+    /**
+     * The destination of the current extraction.
+     */
+    private Appendable mOut;
+
+    /**
+     * The number of characters output so far.
+     */
+    private int mLength;
+
+    /**
+     * Set <code>true</code> when the output is full.
+     */
+    private boolean mStop;
+
+    /**
+     * The last characters output, enough to hold a NEWLINE.
+     */
+    private final char[] mTail;
+
+    /**
+     * The state of the collapse state machine,
+     * see {@link StringExtractingNodeVisitor#collapse}.
+     */
+    private int mCollapseState;
+
+    /**
+     * Set <code>true</code> when within a PRE tag.
+     */
+    private boolean mIsPre;
+
+    /**
+     * Set <code>true</code> when within a SCRIPT tag.
+     */
+    private boolean mIsScript;
+
+    /**
+     * Set <code>true</code> when within a STYLE tag.
+     */
+    private boolean mIsStyle;
+
+    /**
+     * Scratch buffer for the raw text of a text node.
+     */
+    private final StringBuilder mRaw;
+
+    /**
+     * Decodes, replaces non-breaking spaces and collapses text.
+     */
+    private final TextAppender mAppender;
+
+    /**
+     * Scratch buffer for the processed text of a text node.
+     */
+    private final StringBuilder mText;
+
+    /**
+     * Create a text extractor with no limit on the output size.
+     * The properties have the same defaults as the {@link StringBean}:
+     * links are not embedded, non-breaking spaces are replaced and
+     * whitespace is collapsed.
+     */
+    public TextExtractor ()
+    {
+        this (Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create a text extractor.
+     * @param maxSize The maximum output size, as for the
+     * {@link StringBean#StringBean(int, int) StringBean}.
+     */
+    public TextExtractor (int maxSize)
+    {
+        mMaxSize = maxSize;
+        mLinks = false;
+        mReplaceSpace = true;
+        mCollapse = true;
+        mTail = new char[NEWLINE_SIZE];
+        mRaw = new StringBuilder ();
+        mAppender = new TextAppender ();
+        mText = new StringBuilder ();
+    }
+
+    //
+    // Properties
+    //
+
+    /**
+     * Get the maximum output size.
+     * @return The size the output is kept below.
+     */
+    public int getMaxSize ()
+    {
+        return (mMaxSize);
+    }
+
+    /**
+     * Get the current 'include links' state.
+     * @return <code>true</code> if link URLs are included in the text.
+     */
+    public boolean getLinks ()
+    {
+        return (mLinks);
+    }
+
+    /**
+     * Set the 'include links' state.
+     * @param links Use <code>true</code> if link URLs are to be included
+     * in the text, between angle brackets.
+     */
+    public void setLinks (boolean links)
+    {
+        mLinks = links;
+    }
+
+    /**
+     * Get the current 'replace non breaking spaces' state.
+     * @return <code>true</code> if non-breaking spaces are replaced with
+     * normal spaces.
+     */
+    public boolean getReplaceNonBreakingSpaces ()
+    {
+        return (mReplaceSpace);
+    }
+
+    /**
+     * Set the 'replace non breaking spaces' state.
+     * @param replace <code>true</code> if non-breaking spaces
+     * (character '&#92;u00a0', numeric character reference &amp;#160;
+     * or character entity reference &amp;nbsp;) are to be replaced with normal
+     * spaces (character '&#92;u0020').
+     */
+    public void setReplaceNonBreakingSpaces (boolean replace)
+    {
+        mReplaceSpace = replace;
+    }
+
+    /**
+     * Get the current 'collapse whitespace' state.
+     * @return <code>true</code> if sequences of whitespace are replaced
+     * with a single space.
+     * @see StringExtractingNodeVisitor#getCollapse
+     */
+    public boolean getCollapse ()
+    {
+        return (mCollapse);
+    }
+
+    /**
+     * Set the current 'collapse whitespace' state.
+     * @param collapse If <code>true</code>, sequences of whitespace
+     * will be reduced to a single space.
+     */
+    public void setCollapse (boolean collapse)
+    {
+        mCollapse = collapse;
+    }
+
+    //
+    // Extraction
+    //
+
+    /**
+     * Extract the text of the page of a parser.
+     * If the page changes the character set, the parser is reset and the
+     * text is extracted again with the new encoding.
+     * @param parser The parser, positioned at the start of the page.
+     * @return The user visible (what would be seen in a browser) text.
+     * @exception ParserException If the page cannot be read.
+     */
+    public String extract (Parser parser)
+        throws
+            ParserException
+    {
+        StringBuilder buffer;
+
+        buffer = new StringBuilder ();
+        try
+        {
+            try
+            {
+                extract (parser.getLexer (), buffer);
+            }
+            catch (EncodingChangeException ece)
+            {   // try again with the encoding now in force
+                parser.reset ();
+                buffer.setLength (0);
+                extract (parser.getLexer (), buffer);
+            }
+        }
+        catch (IOException ioe)
+        {   // a StringBuilder doesn't throw
+            throw new ParserException (ioe.getMessage (), ioe);
+        }
+
+        return (buffer.toString ());
+    }
+
+    /**
+     * Extract the text of the page of a parser to an output.
+     * @param parser The parser, positioned at the start of the page.
+     * @param out The destination of the text.
+     * @exception ParserException If the page cannot be read.
+     * An {@link EncodingChangeException} means some text may have been output
+     * using the wrong character set, the parser can be reset and the text
+     * extracted again.
+     * @exception IOException If the output throws it.
+     */
+    public void extract (Parser parser, Appendable out)
+        throws
+            ParserException,
+            IOException
+    {
+        extract (parser.getLexer (), out);
+    }
+
+    /**
+     * Extract the text from the lexemes of a lexer.
+     * The lexer should use a node factory, like the one of a {@link Parser},
+     * that creates specific tags, so that links, scripts and styles
+     * are recognized.
+     * @param lexer The lexer, positioned where the text is to start.
+     * @param out The destination of the text.
+     * @exception ParserException If the page cannot be read.
+     * @exception IOException If the output throws it.
+     * @see #extract(Parser, Appendable)
+     */
+    public void extract (Lexer lexer, Appendable out)
+        throws
+            ParserException,
+            IOException
+    {
+        Node node;
+        Tag tag;
+        Scanner scanner;
+        NodeList stack;
+
+        mOut = out;
+        mLength = 0;
+        mStop = false;
+        mCollapseState = 0;
+        mIsPre = false;
+        mIsScript = false;
+        mIsStyle = false;
+        stack = null;
+        try
+        {
+            while (!mStop && (null != (node = lexer.next ())))
+                if (node instanceof Text)
+                    text ((Text)node);
+                else if (node instanceof Tag)
+                {
+                    tag = (Tag)node;
+                    if (tag.isEndTag ())
+                        endTag (tag);
+                    else
+                    {
+                        scanner = tag.getThisScanner ();
+                        if (isCDATA (scanner))
+                        {
+                            // let the scanner read the CDATA, and output the small subtree
+                            if (null == stack)
+                                stack = new ParseStack ();
+                            walk (scanner.scan (tag, lexer, stack));
+                        }
+                        else
+                        {
+                            // other tags are simply seen in document order,
+                            // without the nesting a composite scanner would add
+                            tag.doSemanticAction ();
+                            startTag (tag);
+                        }
+                    }
+                }
+        }
+        finally
+        {
+            mOut = null;
+        }
+    }
+
+    /**
+     * Check if a scanner reads the content of its tag itself,
+     * rather than the default scanners which only build the node tree.
+     * @param scanner The scanner of a tag.
+     * @return <code>true</code> if the tag must be scanned.
+     */
+    static boolean isCDATA (Scanner scanner)
+    {
+        return ((scanner instanceof CompositeTagScanner)
+            && (CompositeTagScanner.class != scanner.getClass ()));
+    }
+
+    /**
+     * Output a scanned node and its descendants, in the order a visitor
+     * would see them.
+     * @param node The node to output.
+     * @exception IOException If the output throws it.
+     */
+    protected void walk (Node node)
+        throws
+            IOException
+    {
+        Tag tag;
+        NodeList children;
+
+        if (node instanceof Text)
+            text ((Text)node);
+        else if (node instanceof Tag)
+        {
+            tag = (Tag)node;
+            if (tag.isEndTag ())
+                endTag (tag);
+            else
+            {
+                startTag (tag);
+                children = tag.getChildren ();
+                if (null != children)
+                    for (int i = 0; i < children.size (); i++)
+                        walk (children.get (i));
+                if ((null != tag.getEndTag ()) && (tag != tag.getEndTag ()))
+                    endTag (tag.getEndTag ());
+            }
+        }
+    }
+
+    /**
+     * Output the text of a text node.
+     * @param node The text node.
+     * @exception IOException If the output throws it.
+     */
+    protected void text (Text node)
+        throws
+            IOException
+    {
+        CharSequence raw;
+
+        if (!mIsScript && !mIsStyle)
+        {
+            if ((TextNode.class == node.getClass ()) && (null != node.getPage ()))
+            {
+                // copy the characters from the page without creating a string
+                mRaw.setLength (0);
+                node.getPage ().getText (mRaw, node.getStartPosition (), node.getEndPosition ());
+                raw = mRaw;
+            }
+            else
+                raw = node.getText ();
+            if (mLength + raw.length () < mMaxSize)
+                if (!mIsPre)
+                {
+                    mText.setLength (0);
+                    mAppender.reset (mText, mReplaceSpace, mCollapse, mCollapseState);
+                    Translate.decode (raw, 0, raw.length (), mAppender);
+                    mCollapseState = mAppender.mCollapseState;
+                    write (mText);
+                }
+                else
+                    write (raw);
+            else
+                mStop = true;
+        }
+    }
+
+    /**
+     * Output a start tag, embedding its link, setting the PRE, SCRIPT and
+     * STYLE flags and breaking the flow of text, as required.
+     * @param tag The start tag.
+     * @exception IOException If the output throws it.
+     */
+    protected void startTag (Tag tag)
+        throws
+            IOException
+    {
+        String link;
+        String name;
+
+        if (mLinks && (tag instanceof LinkTag))
+        {
+            link = ((LinkTag)tag).getLink ();
+            if (null != link)
+                if (mLength + link.length () + 2 < mMaxSize)
+                {
+                    write ('<');
+                    write (link);
+                    write ('>');
+                }
+                else
+                    mStop = true;
+        }
+        name = tag.getTagName ();
+        if (name.equalsIgnoreCase ("PRE"))
+            mIsPre = true;
+        else if (name.equalsIgnoreCase ("SCRIPT"))
+            mIsScript = true;
+        else if (name.equalsIgnoreCase ("STYLE"))
+            mIsStyle = true;
+        if (tag.breaksFlow ())
+            carriageReturn ();
+    }
+
+    /**
+     * Reset the PRE, SCRIPT and STYLE flags.
+     * @param tag The end tag.
+     */
+    protected void endTag (Tag tag)
+    {
+        String name;
+
+        name = tag.getTagName ();
+        if (name.equalsIgnoreCase ("PRE"))
+            mIsPre = false;
+        else if (name.equalsIgnoreCase ("SCRIPT"))
+            mIsScript = false;
+        else if (name.equalsIgnoreCase ("STYLE"))
+            mIsStyle = false;
+    }
+
+    /**
+     * Output a newline if there isn't one there already,
+     * except at the beginning of the output.
+     * @exception IOException If the output throws it.
+     */
+    protected void carriageReturn ()
+        throws
+            IOException
+    {
+        boolean newline;
+
+        if ((0 != mLength) && (NEWLINE_SIZE <= mLength))
+        {
+            newline = true;
+            for (int i = 0; newline && (i < NEWLINE_SIZE); i++)
+                newline = NEWLINE.charAt (i) == mTail[i];
+            if (!newline)
+                if (mLength + NEWLINE_SIZE < mMaxSize)
+                    write (NEWLINE);
+                else
+                    mStop = true;
+        }
+        mCollapseState = 0;
+    }
+
+    //
+    // Output
+    //
+
+    /**
+     * Output some characters, keeping track of the length and the tail.
+     * @param text The characters to output.
+     * @exception IOException If the output throws it.
+     */
+    private void write (CharSequence text)
+        throws
+            IOException
+    {
+        int length;
+        int keep;
+
+        length = text.length ();
+        if (0 != length)
+        {
+            mOut.append (text);
+            mLength += length;
+            keep = NEWLINE_SIZE - Math.min (length, NEWLINE_SIZE);
+            System.arraycopy (mTail, NEWLINE_SIZE - keep, mTail, 0, keep);
+            for (int i = keep; i < NEWLINE_SIZE; i++)
+                mTail[i] = text.charAt (length - NEWLINE_SIZE + i);
+        }
+    }
+
+    /**
+     * Output a character, keeping track of the length and the tail.
+     * @param character The character to output.
+     * @exception IOException If the output throws it.
+     */
+    private void write (char character)
+        throws
+            IOException
+    {
+        mOut.append (character);
+        mLength++;
+        System.arraycopy (mTail, 1, mTail, 0, NEWLINE_SIZE - 1);
+        mTail[NEWLINE_SIZE - 1] = character;
+    }
+}
@@ -23,14 +23,22 @@
 // the Open Source Initiative (OSI) website:
 //   http://opensource.org/licenses/cpl1.0.php
 
+
 package org.htmlparser.filters;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.htmlparser.Node;
 import org.htmlparser.NodeFilter;
 import org.htmlparser.Tag;
+import org.htmlparser.util.ElementIndex;
 import org.htmlparser.util.NodeList;
 
 /**
@@ -38,86 +46,79 @@ import org.htmlparser.util.NodeList;
  * Refer to <a href="http://www.w3.org/TR/REC-CSS2/selector.html">
  * http://www.w3.org/TR/REC-CSS2/selector.html</a> for syntax.
  * <p>
- * Todo: more thorough testing, any relevant pseudo-classes, css3 features
+ * The selector is compiled once into a matcher that is evaluated right to
+ * left, i.e. the rightmost compound selector is checked against the node
+ * first and the combinators are only followed for nodes that pass it.
+ * Tag name, id and class checks are precomputed and attribute relations
+ * (<code>=</code>, <code>~=</code>, <code>|=</code>, <code>^=</code>,
+ * <code>$=</code> and <code>*=</code>) are literal string comparisons.
+ * Compiled matchers are immutable and shared between filters created with
+ * the same selector text through a bounded cache, see {@link #compile}.
+ * <p>
+ * The structural pseudo-classes <code>:first-child</code>,
+ * <code>:last-child</code>, <code>:only-child</code>,
+ * <code>:first-of-type</code>, <code>:last-of-type</code>,
+ * <code>:only-of-type</code>, <code>:nth-child()</code>,
+ * <code>:nth-last-child()</code>, <code>:nth-of-type()</code>,
+ * <code>:nth-last-of-type()</code> and <code>:empty</code> are supported,
+ * as are <code>:not()</code> and <code>:has()</code>.
+ * Sibling positions are looked up in the
+ * {@link NodeList#getElementIndex() element index} of the parent's children,
+ * which is built once per parent, so that a selector like
+ * <code>table tr:nth-child(2n) td:first-child</code> stays linear in the size
+ * of the document.
+ * <p>
+ * Todo: more thorough testing
  */
 public class CssSelectorNodeFilter implements NodeFilter
 {
     /**
-     * Regular expression to split the selector into tokens.
+     * The maximum number of compiled selectors held in the selector cache.
      */
-    private static Pattern tokens =
-        Pattern.compile ("("
-            + "/\\*.*?\\*/"             // comments
-            + ") | ("
-            + "   \".*?[^\"]\""   // double quoted string
-            + " | \'.*?[^\']\'"   // single quoted string
-            + " | \"\" | \'\' "     // empty quoted string
-            + ") | ("
-            + " [\\~\\*\\$\\^\\|]? = " // attrib-val relations
-            + ") | ("
-            + " [a-zA-Z_\\*](?:[a-zA-Z0-9_-]|\\\\.)* " // bare name
-            + ") | \\s*("
-            + " [+>~\\s] "        // combinators
-            + ")\\s* | ("
-            + " [\\.\\[\\]\\#\\:)(] "       // class/id/attr/param delims
-            + ") | ("
-            + " [\\,] "                     // comma
-            + ") | ( . )"                   // everything else (bogus)
-            ,
-            Pattern.CASE_INSENSITIVE
-            | Pattern.DOTALL
-            | Pattern.COMMENTS);
+    public static final int CACHE_SIZE = 512;
 
     /**
-     * Comment token type.
+     * Compiled selectors keyed by selector text.
      */
-    private static final int COMMENT = 1;
+    private static final Map<String, NodeFilter> mCache =
+        new ConcurrentHashMap<> ();
 
     /**
-     * quoted string token type.
+     * Regular expression to find escape sequences.
      */
-    private static final int QUOTEDSTRING = 2;
+    private static final Pattern mEscapes =
+        Pattern.compile ("\\\\(?:([a-fA-F0-9]{2,6})|(.))");
 
     /**
-     * Relation token type.
+     * Descendant combinator.
      */
-    private static final int RELATION = 3;
+    private static final char DESCENDANT = ' ';
 
     /**
-     * Name token type.
+     * Child combinator.
      */
-    private static final int NAME = 4;
+    private static final char CHILD = '>';
 
     /**
-     * Combinator token type.
+     * Adjacent sibling combinator.
      */
-    private static final int COMBINATOR = 5;
+    static final char ADJACENT = '+';
 
     /**
-     * Delimiter token type.
+     * General sibling combinator.
      */
-    private static final int DELIM = 6;
-
-    /**
-     * Comma token type.
-     */
-    private static final int COMMA = 7;
+    static final char SIBLING = '~';
 
     private NodeFilter therule;
 
-    private Matcher m = null;
-    private int tokentype = 0;
-    private String token = null;
-
     /**
      * Create a Cascading Style Sheet node filter.
      * @param selector The selector expression.
+     * @exception IllegalArgumentException If the selector has a syntax error.
      */
     public CssSelectorNodeFilter (String selector)
     {
-        m = tokens.matcher (selector);
-        if (nextToken ())
-            therule = parse ();
+        therule = compile (selector);
     }
 
     /**
@@ -131,277 +132,1128 @@ public class CssSelectorNodeFilter implements NodeFilter
         return (therule.accept (node));
     }
 
-    private boolean nextToken ()
+    /**
+     * Get the compiled selector.
+     * @return The shared matcher this filter delegates to.
+     */
+    NodeFilter getRule ()
     {
-        if (m != null && m.find ())
-            for (int i = 1; i < m.groupCount (); i++)
-                if (null != m.group (i))
-                {
-                    tokentype = i;
-                    token = m.group (i);
-                    return (true);
-                }
-        tokentype = 0;
-        token = null;
-
-        return (false);
+        return (therule);
     }
 
-    private NodeFilter parse ()
+    /**
+     * Get the compiled matcher for a selector.
+     * Matchers are looked up in, or added to, a cache holding at most
+     * {@link #CACHE_SIZE} selectors, which may be shared by any number of
+     * threads.
+     * @param selector The selector expression.
+     * @return The filter accepting nodes that match the selector.
+     * @exception IllegalArgumentException If the selector has a syntax error.
+     */
+    public static NodeFilter compile (String selector)
     {
         NodeFilter ret;
-        
-        ret = null;
-        do
+        Iterator<String> victims;
+
+        if (null == selector)
+            throw new IllegalArgumentException ("selector cannot be null");
+        ret = mCache.get (selector);
+        if (null == ret)
         {
-            switch (tokentype)
+            ret = new SelectorParser (selector).parse ();
+            while (mCache.size () >= CACHE_SIZE)
             {
-                case COMMENT:
-                case NAME:
-                case DELIM:
-                    if (ret == null)
-                        ret = parseSimple ();
-                    else
-                        ret = new AndFilter (ret, parseSimple ());
-                    break;
-                case COMBINATOR:
-                    switch (token.charAt (0))
-                    {
-                        case '+':
-                            ret = new AdjacentFilter (ret);
-                            break;
-                        case '>':
-                            ret = new HasParentFilter (ret);
-                            break;
-                        default: // whitespace
-                            ret = new HasAncestorFilter (ret);
-                    }
-                    nextToken ();
-                    break;
-                case COMMA:
-                    ret = new OrFilter (ret, parse ());
-                    nextToken ();
+                victims = mCache.keySet ().iterator ();
+                if (!victims.hasNext ())
                     break;
+                victims.next ();
+                victims.remove ();
             }
+            mCache.putIfAbsent (selector, ret);
         }
-        while (token != null);
 
         return (ret);
     }
 
-    private NodeFilter parseSimple ()
+    /**
+     * Replace escape sequences in a string.
+     * @param escaped The string to examine.
+     * @return The argument with escape sequences replaced by their
+     * equivalent character.
+     */
+    public static String unescape (String escaped)
     {
-        boolean done = false;
-        NodeFilter ret = null;
+        StringBuffer result = new StringBuffer (escaped.length ());
+        Matcher m = mEscapes.matcher (escaped);
+        while (m.find ())
+        {
+            if (null != m.group (1))
+                m.appendReplacement (result, Matcher.quoteReplacement (String.valueOf (
+                    (char)Integer.parseInt (m.group (1), 16))));
+            else if (null != m.group (2))
+                m.appendReplacement (result, Matcher.quoteReplacement (m.group (2)));
+        }
+        m.appendTail (result);
+        
+        return (result.toString ());
+    }
 
-        if (token != null)
-            do
-            {
-                switch (tokentype)
-                {
-                    case COMMENT:
-                        nextToken ();
-                        break;
-                    case NAME:
-                        if ("*".equals (token))
-                            ret = new YesFilter ();
-                        else if (ret == null)
-                            ret = new TagNameFilter (unescape (token));
-                        else
-                            ret = new AndFilter (ret, new TagNameFilter (
-                                unescape (token)));
-                        nextToken ();
-                        break;
-                    case DELIM:
-                        switch (token.charAt (0))
-                        {
-                            case '.':
-                                nextToken ();
-                                if (tokentype != NAME)
-                                    throw new IllegalArgumentException (
-                                        "Syntax error at " + token);
-                                if (ret == null)
-                                    ret = new HasAttributeFilter ("class",
-                                        unescape (token));
-                                else
-                                    ret = new AndFilter (ret, new HasAttributeFilter (
-                                        "class", unescape (token)));
-                                break;
-                            case '#':
-                                nextToken ();
-                                if (tokentype != NAME)
-                                    throw new IllegalArgumentException (
-                                        "Syntax error at " + token);
-                                if (ret == null)
-                                    ret = new HasAttributeFilter ("id", unescape (token));
-                                else
-                                    ret = new AndFilter (ret, new HasAttributeFilter (
-                                        "id", unescape (token)));
-                                break;
-                            case ':':
-                                nextToken ();
-                                if (ret == null)
-                                    ret = parsePseudoClass ();
-                                else
-                                    ret = new AndFilter (ret, parsePseudoClass ());
-                                break;
-                            case '[':
-                                nextToken ();
-                                if (ret == null)
-                                    ret = parseAttributeExp ();
-                                else
-                                    ret = new AndFilter (ret, parseAttributeExp ());
-                                break;
-                        }
-                        nextToken ();
-                        break;
-                    default:
-                        done = true;
-                }
-            }
-            while (!done && token != null);
+    /**
+     * Get the element start tag for a node.
+     * @param node The node to check.
+     * @return The node as a tag, or <code>null</code> if it is not a tag
+     * or is an end tag.
+     */
+    static Tag element (Node node)
+    {
+        Tag ret;
+        String raw;
+
+        ret = null;
+        if (node instanceof Tag)
+        {
+            ret = (Tag)node;
+            raw = ret.getRawTagName ();
+            if ((null == raw) || ((0 != raw.length ()) && ('/' == raw.charAt (0))))
+                ret = null;
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Get the element index of the siblings of a node.
+     * @param node The node to look up.
+     * @return The index of the node's parent's children,
+     * or <code>null</code> if the node has no parent.
+     */
+    static ElementIndex siblings (Node node)
+    {
+        Node parent;
+        NodeList children;
+        ElementIndex ret;
+
+        ret = null;
+        parent = node.getParent ();
+        if (null != parent)
+        {
+            children = parent.getChildren ();
+            if (null != children)
+                ret = children.getElementIndex ();
+        }
 
         return (ret);
     }
 
-    private NodeFilter parsePseudoClass ()
+    /**
+     * Get the element preceding a node within its parent.
+     * @param node The node to start from.
+     * @return The closest previous sibling that is an element,
+     * or <code>null</code> if there isn't one.
+     */
+    static Node previousElement (Node node)
     {
-        throw new IllegalArgumentException ("pseudoclasses not implemented yet");
+        ElementIndex siblings;
+        int index;
+        Node ret;
+
+        ret = null;
+        siblings = siblings (node);
+        if (null != siblings)
+        {
+            index = siblings.indexOf (node);
+            if (-1 != index)
+                ret = siblings.getPreviousElement (index);
+        }
+
+        return (ret);
     }
 
-    private NodeFilter parseAttributeExp ()
+    /**
+     * Check for a whitespace separated token within a string.
+     * @param list The string of tokens, i.e. a class attribute value.
+     * @param token The token to find.
+     * @return <code>true</code> if the token is one of the words in the list.
+     */
+    static boolean containsToken (String list, String token)
     {
-        NodeFilter ret = null;
-        if (tokentype == NAME)
-        {
-            String attrib = token;
-            nextToken ();
-            if ("]".equals (token))
-                ret = new HasAttributeFilter (unescape (attrib));
-            else if (tokentype == RELATION)
+        int length;
+        int size;
+        int from;
+        int index;
+        boolean ret;
+
+        ret = false;
+        length = token.length ();
+        size = list.length ();
+        if (0 != length)
+        {
+            from = 0;
+            while (!ret && (-1 != (index = list.indexOf (token, from))))
             {
-                String val = null, rel = token;
-                nextToken ();
-                if (tokentype == QUOTEDSTRING)
-                    val = unescape (token.substring (1, token.length () - 1));
-                else if (tokentype == NAME)
-                    val = unescape (token);
-                if ("~=".equals (rel) && val != null)
-                    ret = new AttribMatchFilter (unescape (attrib), "\\b"
-                        + val.replaceAll ("([^a-zA-Z0-9])", "\\\\$1")
-                        + "\\b");
-                else if ("|=".equals (rel) && val != null)
-                    ret = new AttribMatchFilter (unescape (attrib), val.replaceAll ("([^a-zA-Z0-9])", "\\\\$1")
-                    + "\\-[^a-zA-Z0-9]*");
-                else if ("=".equals (rel) && val != null)
-                    ret = new HasAttributeFilter (attrib, val);
+                ret = ((0 == index) || Character.isWhitespace (list.charAt (index - 1)))
+                    && ((index + length == size) || Character.isWhitespace (list.charAt (index + length)));
+                from = index + 1;
             }
         }
-        if (ret == null)
-            throw new IllegalArgumentException ("Syntax error at " + token
-                + tokentype);
-        
-        nextToken ();
 
         return (ret);
     }
 
     /**
-     * Replace escape sequences in a string.
-     * @param escaped The string to examine.
-     * @return The argument with escape sequences replaced by their
-     * equivalent character.
+     * A sequence of simple selectors applying to one element,
+     * e.g. <code>div.product#main[title]</code>.
      */
-    public static String unescape (String escaped)
+    static class CompoundSelector implements NodeFilter
     {
-        StringBuffer result = new StringBuffer (escaped.length ());
-        Matcher m = Pattern.compile ("\\\\(?:([a-fA-F0-9]{2,6})|(.))").matcher (
-            escaped);
-        while (m.find ())
+        /**
+         * The uppercase tag name, or <code>null</code> for any element.
+         */
+        String mName;
+
+        /**
+         * The id value, or <code>null</code> if the id is not checked.
+         */
+        String mId;
+
+        /**
+         * The class names the element must have.
+         */
+        String[] mClasses;
+
+        /**
+         * The attribute tests the element must pass.
+         */
+        AttributeSelector[] mAttributes;
+
+        /**
+         * The pseudo-class tests the element must pass.
+         * These are checked last since they are the most expensive.
+         */
+        NodeFilter[] mPseudos;
+
+        CompoundSelector (String name, String id, List<String> classes,
+            List<AttributeSelector> attributes, List<NodeFilter> pseudos)
         {
-            if (null != m.group (1))
-                m.appendReplacement (result, String.valueOf (
-                    (char)Integer.parseInt (m.group (1), 16)));
-            else if (null != m.group (2))
-                m.appendReplacement (result, m.group (2));
+            mName = name;
+            mId = id;
+            mClasses = classes.toArray (new String[classes.size ()]);
+            mAttributes = attributes.toArray (new AttributeSelector[attributes.size ()]);
+            mPseudos = pseudos.toArray (new NodeFilter[pseudos.size ()]);
+        }
+
+        /**
+         * Check the tag name without creating an uppercase copy of it.
+         * @param raw The raw tag name of a start tag.
+         * @return <code>true</code> if the name matches,
+         * ignoring an XML style trailing slash.
+         */
+        boolean nameMatches (String raw)
+        {
+            int length;
+
+            length = mName.length ();
+
+            return (mName.regionMatches (true, 0, raw, 0, length)
+                && ((raw.length () == length)
+                    || ((raw.length () == length + 1) && ('/' == raw.charAt (length)))));
+        }
+
+        public boolean accept (Node node)
+        {
+            Tag tag;
+            String value;
+            boolean ret;
+
+            tag = element (node);
+            ret = null != tag;
+            if (ret && (null != mName))
+                ret = nameMatches (tag.getRawTagName ());
+            if (ret && (null != mId))
+                ret = mId.equals (tag.getAttributeValue ("ID"));
+            if (ret && (0 != mClasses.length))
+            {
+                value = tag.getAttributeValue ("CLASS");
+                ret = null != value;
+                for (int i = 0; ret && (i < mClasses.length); i++)
+                    ret = containsToken (value, mClasses[i]);
+            }
+            for (int i = 0; ret && (i < mAttributes.length); i++)
+                ret = mAttributes[i].accept (tag);
+            for (int i = 0; ret && (i < mPseudos.length); i++)
+                ret = mPseudos[i].accept (tag);
+
+            return (ret);
         }
-        m.appendTail (result);
-        
-        return (result.toString ());
     }
 
-    private static class HasAncestorFilter implements NodeFilter
+    /**
+     * The <code>:nth-child(an+b)</code> family of pseudo-classes,
+     * including the <code>:first-</code>, <code>:last-</code> and
+     * <code>:only-</code> shorthands.
+     */
+    static class NthSelector implements NodeFilter
     {
-        private NodeFilter atest;
+        /**
+         * Count elements from the end rather than the start.
+         */
+        boolean mLast;
+
+        /**
+         * Count only elements with the same tag name.
+         */
+        boolean mOfType;
 
-        public HasAncestorFilter (NodeFilter n)
+        /**
+         * The step of the <code>an+b</code> expression.
+         */
+        int mA;
+
+        /**
+         * The offset of the <code>an+b</code> expression.
+         */
+        int mB;
+
+        NthSelector (boolean last, boolean type, int a, int b)
         {
-            atest = n;
+            mLast = last;
+            mOfType = type;
+            mA = a;
+            mB = b;
         }
 
-        public boolean accept (Node n)
+        public boolean accept (Node node)
         {
-            while (n != null)
+            ElementIndex siblings;
+            int index;
+            int position;
+            boolean ret;
+
+            ret = false;
+            siblings = siblings (node);
+            if (null != siblings)
             {
-                n = n.getParent ();
-                if (atest.accept (n))
-                    return (true);
+                index = siblings.indexOf (node);
+                if (-1 != index)
+                {
+                    if (mOfType)
+                        position = mLast ? siblings.getLastTypePosition (index) : siblings.getTypePosition (index);
+                    else
+                        position = mLast ? siblings.getLastPosition (index) : siblings.getPosition (index);
+                    if (0 != position)
+                        if (0 == mA)
+                            ret = position == mB;
+                        else
+                            ret = ((position - mB) / mA >= 0) && (0 == (position - mB) % mA);
+                }
             }
-            return (false);
+
+            return (ret);
         }
     }
 
-    private static class AdjacentFilter implements NodeFilter
+    /**
+     * The <code>:has()</code> pseudo-class, which accepts elements for which
+     * one of the relative selectors matches a descendant (or, for a leading
+     * sibling combinator, a following sibling).
+     */
+    static class HasSelector implements NodeFilter
     {
-        private NodeFilter sibtest;
+        /**
+         * The relative selectors.
+         */
+        ComplexSelector[] mSelectors;
 
-        public AdjacentFilter (NodeFilter n)
+        HasSelector (List<ComplexSelector> selectors)
         {
-            sibtest = n;
+            mSelectors = selectors.toArray (new ComplexSelector[selectors.size ()]);
         }
 
-        public boolean accept (Node n)
+        public boolean accept (Node node)
         {
-            if (n.getParent () != null)
+            ComplexSelector selector;
+            NodeList siblings;
+            int index;
+            boolean ret;
+
+            ret = false;
+            for (int i = 0; !ret && (i < mSelectors.length); i++)
             {
-                NodeList l = n.getParent ().getChildren ();
-                for (int i = 0; i < l.size (); i++)
-                    if (l.get (i) == n && i > 0)
-                        return (sibtest.accept (l.get (i - 1)));
+                selector = mSelectors[i];
+                if ((ADJACENT == selector.mLeading) || (SIBLING == selector.mLeading))
+                {
+                    if (null != node.getParent ())
+                    {
+                        siblings = node.getParent ().getChildren ();
+                        index = siblings.getElementIndex ().indexOf (node);
+                        if (-1 != index)
+                            for (int j = index + 1; !ret && (j < siblings.size ()); j++)
+                                ret = matchSubtree (selector, siblings.get (j), node);
+                    }
+                }
+                else
+                    ret = matchChildren (selector, node, node);
             }
-            return (false);
+
+            return (ret);
+        }
+
+        private boolean matchChildren (ComplexSelector selector, Node node, Node scope)
+        {
+            NodeList children;
+            boolean ret;
+
+            ret = false;
+            children = node.getChildren ();
+            if (null != children)
+                for (int i = 0; !ret && (i < children.size ()); i++)
+                    ret = matchSubtree (selector, children.get (i), scope);
+
+            return (ret);
+        }
+
+        private boolean matchSubtree (ComplexSelector selector, Node node, Node scope)
+        {
+            return (selector.accept (node, scope) || matchChildren (selector, node, scope));
+        }
+    }
+
+    /**
+     * The <code>:empty</code> pseudo-class.
+     */
+    static class EmptySelector implements NodeFilter
+    {
+        public boolean accept (Node node)
+        {
+            NodeList children;
+            Node child;
+            boolean ret;
+
+            ret = true;
+            children = node.getChildren ();
+            if (null != children)
+                for (int i = 0; ret && (i < children.size ()); i++)
+                {
+                    child = children.get (i);
+                    if (child instanceof org.htmlparser.Text)
+                        ret = 0 == child.getText ().length ();
+                    else
+                        ret = null == element (child);
+                }
+
+            return (ret);
         }
     }
 
-    private static class YesFilter implements NodeFilter
+    /**
+     * An attribute presence or value test, e.g. <code>[href^="http:"]</code>.
+     */
+    static class AttributeSelector
     {
-        public boolean accept (Node n)
+        /**
+         * The attribute name.
+         */
+        String mName;
+
+        /**
+         * The relation, one of <code>0</code> (presence),
+         * <code>'='</code>, <code>'~'</code>, <code>'|'</code>,
+         * <code>'^'</code>, <code>'$'</code> or <code>'*'</code>.
+         */
+        char mRelation;
+
+        /**
+         * The value to compare against.
+         */
+        String mValue;
+
+        /**
+         * The value followed by a hyphen, for the <code>|=</code> relation.
+         */
+        String mPrefix;
+
+        AttributeSelector (String name, char relation, String value)
+        {
+            mName = name.toUpperCase (Locale.ENGLISH);
+            mRelation = relation;
+            mValue = value;
+            mPrefix = (null == value) ? null : value + "-";
+        }
+
+        boolean accept (Tag tag)
         {
-            return (true);
+            String value;
+            boolean ret;
+
+            value = tag.getAttributeValue (mName);
+            if (null == value)
+                ret = (0 == mRelation) && (null != tag.getAttribute (mName));
+            else
+                switch (mRelation)
+                {
+                    case 0:
+                        ret = true;
+                        break;
+                    case '=':
+                        ret = value.equals (mValue);
+                        break;
+                    case '~':
+                        ret = containsToken (value, mValue);
+                        break;
+                    case '|':
+                        ret = value.equals (mValue) || value.startsWith (mPrefix);
+                        break;
+                    case '^':
+                        ret = (0 != mValue.length ()) && value.startsWith (mValue);
+                        break;
+                    case '$':
+                        ret = (0 != mValue.length ()) && value.endsWith (mValue);
+                        break;
+                    case '*':
+                        ret = (0 != mValue.length ()) && value.contains (mValue);
+                        break;
+                    default:
+                        ret = false;
+                }
+
+            return (ret);
         }
     }
 
-    private static class AttribMatchFilter implements NodeFilter
+    /**
+     * Compound selectors joined by combinators, e.g. <code>ul &gt; li a</code>.
+     * Matching starts at the rightmost compound selector and works
+     * leftwards through the parents or siblings of the node.
+     */
+    static class ComplexSelector implements NodeFilter
     {
-        private Pattern rel;
-        private String attrib;
+        /**
+         * The compound selectors, in source order.
+         */
+        CompoundSelector[] mCompounds;
+
+        /**
+         * The combinator preceding each compound selector after the first.
+         * Element <code>i</code> joins compound <code>i</code> and
+         * <code>i + 1</code>.
+         */
+        char[] mCombinators;
+
+        /**
+         * The combinator relating the first compound selector to the scope
+         * element of a relative selector (in <code>:has()</code>),
+         * or zero if this is not a relative selector.
+         */
+        char mLeading;
 
-        public AttribMatchFilter (String attrib, String regex)
+        ComplexSelector (List<CompoundSelector> compounds, StringBuilder combinators, char leading)
         {
-            rel = Pattern.compile (regex);
-            this.attrib = attrib;
+            mCompounds = compounds.toArray (new CompoundSelector[compounds.size ()]);
+            mCombinators = combinators.toString ().toCharArray ();
+            mLeading = leading;
         }
 
         public boolean accept (Node node)
         {
-            if (node instanceof Tag && ((Tag) node).getAttributeValue (attrib) != null)
-                if (rel != null
-                    && !rel.matcher (((Tag) node).getAttributeValue (attrib)).find ())
-                    return (false);
+            return (accept (node, null));
+        }
+
+        /**
+         * Match a node, relative to a scope element.
+         * @param node The node to check.
+         * @param scope The element the leading combinator relates to,
+         * or <code>null</code> if this is not a relative selector.
+         * @return <code>true</code> if the node matches.
+         */
+        boolean accept (Node node, Node scope)
+        {
+            int last;
+
+            last = mCompounds.length - 1;
+
+            return (mCompounds[last].accept (node) && matchLeft (node, last, scope));
+        }
+
+        /**
+         * Match the compound selectors to the left of a matched one.
+         * @param node The node that matched compound <code>index</code>.
+         * @param index The index of the compound selector it matched.
+         * @param scope The scope element for a relative selector,
+         * or <code>null</code>.
+         * @return <code>true</code> if the rest of the selector matches.
+         */
+        boolean matchLeft (Node node, int index, Node scope)
+        {
+            boolean ret;
+
+            if (0 == index)
+                ret = (null == scope) || combines (mLeading, node, scope, index, null);
+            else
+                ret = combines (mCombinators[index - 1], node, mCompounds[index - 1], index - 1, scope);
+
+            return (ret);
+        }
+
+        /**
+         * Follow a combinator from a node to a node it is related to.
+         * @param combinator The combinator to follow.
+         * @param node The node on the right hand side of the combinator.
+         * @param left Either the compound selector to match on the left hand
+         * side of the combinator, or the scope node it must reach.
+         * @param index The index of the compound selector on the left.
+         * @param scope The scope element for a relative selector,
+         * or <code>null</code>.
+         * @return <code>true</code> if the left hand side matches.
+         */
+        private boolean combines (char combinator, Node node, Object left, int index, Node scope)
+        {
+            Node next;
+            boolean ret;
+
+            ret = false;
+            switch (combinator)
+            {
+                case CHILD:
+                    next = node.getParent ();
+                    ret = (null != next) && matches (left, next, index, scope);
+                    break;
+                case DESCENDANT:
+                    for (next = node.getParent (); !ret && (null != next); next = next.getParent ())
+                        ret = matches (left, next, index, scope);
+                    break;
+                case ADJACENT:
+                    next = previousElement (node);
+                    ret = (null != next) && matches (left, next, index, scope);
+                    break;
+                case SIBLING:
+                    for (next = previousElement (node); !ret && (null != next); next = previousElement (next))
+                        ret = matches (left, next, index, scope);
+                    break;
+            }
+
+            return (ret);
+        }
+
+        private boolean matches (Object left, Node node, int index, Node scope)
+        {
+            return ((left instanceof CompoundSelector)
+                ? ((CompoundSelector)left).accept (node) && matchLeft (node, index, scope)
+                : left == node);
+        }
+    }
+
+    /**
+     * A comma separated group of selectors.
+     */
+    static class SelectorList implements NodeFilter
+    {
+        /**
+         * The alternatives.
+         */
+        NodeFilter[] mSelectors;
+
+        SelectorList (List<NodeFilter> selectors)
+        {
+            mSelectors = selectors.toArray (new NodeFilter[selectors.size ()]);
+        }
+
+        public boolean accept (Node node)
+        {
+            boolean ret;
+
+            ret = false;
+            for (int i = 0; !ret && (i < mSelectors.length); i++)
+                ret = mSelectors[i].accept (node);
+
+            return (ret);
+        }
+    }
+
+    /**
+     * Recursive descent parser producing the compiled form of a selector.
+     */
+    static class SelectorParser
+    {
+        private final String mText;
+        private int mPosition;
+
+        SelectorParser (String text)
+        {
+            mText = text;
+            mPosition = 0;
+        }
+
+        /**
+         * Parse the whole selector text.
+         * @return The compiled selector.
+         */
+        NodeFilter parse ()
+        {
+            NodeFilter ret;
+
+            ret = parseList (false);
+            if (mPosition < mText.length ())
+                throw error ();
+
+            return (ret);
+        }
+
+        private IllegalArgumentException error ()
+        {
+            return (new IllegalArgumentException ("Syntax error at "
+                + (mPosition < mText.length () ? mText.substring (mPosition) : "end")
+                + " in " + mText));
+        }
+
+        private int peek ()
+        {
+            return (mPosition < mText.length () ? mText.charAt (mPosition) : -1);
+        }
+
+        /**
+         * Skip whitespace and comments.
+         * @return <code>true</code> if anything was skipped.
+         */
+        private boolean skipWhitespace ()
+        {
+            int start;
+            int end;
+
+            start = mPosition;
+            while (mPosition < mText.length ())
+                if (Character.isWhitespace (mText.charAt (mPosition)))
+                    mPosition++;
+                else if (mText.startsWith ("/*", mPosition))
+                {
+                    end = mText.indexOf ("*/", mPosition + 2);
+                    mPosition = (-1 == end) ? mText.length () : end + 2;
+                }
+                else
+                    break;
+
+            return (mPosition != start);
+        }
+
+        /**
+         * Parse a comma separated list of selectors.
+         * @param relative If <code>true</code> the selectors may start with
+         * a combinator, as in the argument to <code>:has()</code>.
+         * @return The selectors.
+         */
+        private List<ComplexSelector> parseSelectors (boolean relative)
+        {
+            List<ComplexSelector> ret;
+
+            ret = new ArrayList<> ();
+            skipWhitespace ();
+            ret.add (parseComplex (relative));
+            while (',' == peek ())
+            {
+                mPosition++;
+                skipWhitespace ();
+                ret.add (parseComplex (relative));
+            }
+
+            return (ret);
+        }
+
+        private NodeFilter parseList (boolean relative)
+        {
+            List<ComplexSelector> selectors;
+
+            selectors = parseSelectors (relative);
+
+            return (1 == selectors.size () ? selectors.get (0) : new SelectorList (new ArrayList<NodeFilter> (selectors)));
+        }
+
+        private ComplexSelector parseComplex (boolean relative)
+        {
+            List<CompoundSelector> compounds;
+            StringBuilder combinators;
+            char leading;
+            boolean space;
+            boolean done;
+            int ch;
+
+            compounds = new ArrayList<> ();
+            combinators = new StringBuilder ();
+            leading = 0;
+            if (relative)
+            {
+                ch = peek ();
+                if ((CHILD == ch) || (ADJACENT == ch) || (SIBLING == ch))
+                {
+                    leading = (char)ch;
+                    mPosition++;
+                    skipWhitespace ();
+                }
+                else
+                    leading = DESCENDANT;
+            }
+            compounds.add (parseCompound ());
+            done = false;
+            while (!done)
+            {
+                space = skipWhitespace ();
+                ch = peek ();
+                switch (ch)
+                {
+                    case CHILD:
+                    case ADJACENT:
+                    case SIBLING:
+                        mPosition++;
+                        skipWhitespace ();
+                        combinators.append ((char)ch);
+                        compounds.add (parseCompound ());
+                        break;
+                    case -1:
+                    case ',':
+                    case ')':
+                        done = true;
+                        break;
+                    default:
+                        if (!space)
+                            throw error ();
+                        combinators.append (DESCENDANT);
+                        compounds.add (parseCompound ());
+                }
+            }
+
+            return (new ComplexSelector (compounds, combinators, leading));
+        }
+
+        private CompoundSelector parseCompound ()
+        {
+            String name;
+            String id;
+            List<String> classes;
+            List<AttributeSelector> attributes;
+            List<NodeFilter> pseudos;
+            boolean empty;
+            boolean done;
+
+            name = null;
+            id = null;
+            classes = new ArrayList<> ();
+            attributes = new ArrayList<> ();
+            pseudos = new ArrayList<> ();
+            empty = true;
+            if ('*' == peek ())
+            {
+                mPosition++;
+                empty = false;
+            }
+            else if (isNameChar (peek ()))
+            {
+                name = parseName ().toUpperCase (Locale.ENGLISH);
+                empty = false;
+            }
+            done = false;
+            while (!done)
+                switch (peek ())
+                {
+                    case '#':
+                        mPosition++;
+                        id = parseName ();
+                        empty = false;
+                        break;
+                    case '.':
+                        mPosition++;
+                        classes.add (parseName ());
+                        empty = false;
+                        break;
+                    case '[':
+                        mPosition++;
+                        attributes.add (parseAttribute ());
+                        empty = false;
+                        break;
+                    case ':':
+                        mPosition++;
+                        pseudos.add (parsePseudoClass ());
+                        empty = false;
+                        break;
+                    default:
+                        done = true;
+                }
+            if (empty)
+                throw error ();
+
+            return (new CompoundSelector (name, id, classes, attributes, pseudos));
+        }
+
+        private NodeFilter parsePseudoClass ()
+        {
+            String name;
+            NodeFilter ret;
+
+            name = parseName ().toLowerCase (Locale.ENGLISH);
+            switch (name)
+            {
+                case "first-child":
+                    ret = new NthSelector (false, false, 0, 1);
+                    break;
+                case "last-child":
+                    ret = new NthSelector (true, false, 0, 1);
+                    break;
+                case "only-child":
+                    ret = new AndFilter (new NthSelector (false, false, 0, 1), new NthSelector (true, false, 0, 1));
+                    break;
+                case "first-of-type":
+                    ret = new NthSelector (false, true, 0, 1);
+                    break;
+                case "last-of-type":
+                    ret = new NthSelector (true, true, 0, 1);
+                    break;
+                case "only-of-type":
+                    ret = new AndFilter (new NthSelector (false, true, 0, 1), new NthSelector (true, true, 0, 1));
+                    break;
+                case "empty":
+                    ret = new EmptySelector ();
+                    break;
+                case "nth-child":
+                case "nth-last-child":
+                case "nth-of-type":
+                case "nth-last-of-type":
+                    open ();
+                    ret = parseNth (name.startsWith ("nth-last-"), name.endsWith ("-of-type"));
+                    close ();
+                    break;
+                case "not":
+                    open ();
+                    ret = new NotFilter (parseList (false));
+                    close ();
+                    break;
+                case "has":
+                    open ();
+                    ret = new HasSelector (parseSelectors (true));
+                    close ();
+                    break;
+                default:
+                    throw new IllegalArgumentException ("pseudo-class :" + name + " is not supported");
+            }
+
+            return (ret);
+        }
+
+        private void open ()
+        {
+            if ('(' != peek ())
+                throw error ();
+            mPosition++;
+            skipWhitespace ();
+        }
+
+        private void close ()
+        {
+            skipWhitespace ();
+            if (')' != peek ())
+                throw error ();
+            mPosition++;
+        }
+
+        /**
+         * Parse the argument of an <code>:nth-</code> pseudo-class,
+         * i.e. <code>odd</code>, <code>even</code> or <code>an+b</code>.
+         */
+        private NthSelector parseNth (boolean last, boolean type)
+        {
+            int start;
+            String expression;
+            int n;
+            int a;
+            int b;
+
+            start = mPosition;
+            while ((-1 != peek ()) && (')' != peek ()))
+                mPosition++;
+            expression = mText.substring (start, mPosition).replaceAll ("\\s+", "").toLowerCase (Locale.ENGLISH);
+            try
+            {
+                if ("odd".equals (expression))
+                {
+                    a = 2;
+                    b = 1;
+                }
+                else if ("even".equals (expression))
+                {
+                    a = 2;
+                    b = 0;
+                }
+                else
+                {
+                    n = expression.indexOf ('n');
+                    if (-1 == n)
+                    {
+                        a = 0;
+                        b = Integer.parseInt (expression);
+                    }
+                    else
+                    {
+                        if ((0 == n) || ((1 == n) && ('+' == expression.charAt (0))))
+                            a = 1;
+                        else if ((1 == n) && ('-' == expression.charAt (0)))
+                            a = -1;
+                        else
+                            a = Integer.parseInt (expression.substring (0, n));
+                        if (n + 1 == expression.length ())
+                            b = 0;
+                        else if ('+' == expression.charAt (n + 1))
+                            b = Integer.parseInt (expression.substring (n + 2));
+                        else
+                            b = Integer.parseInt (expression.substring (n + 1));
+                    }
+                }
+            }
+            catch (NumberFormatException nfe)
+            {
+                mPosition = start;
+                throw error ();
+            }
+
+            return (new NthSelector (last, type, a, b));
+        }
+
+        private AttributeSelector parseAttribute ()
+        {
+            String name;
+            char relation;
+            String value;
+            int ch;
+
+            skipWhitespace ();
+            name = parseName ();
+            skipWhitespace ();
+            relation = 0;
+            value = null;
+            ch = peek ();
+            if ('=' == ch)
+            {
+                relation = '=';
+                mPosition++;
+            }
+            else if (("~|^$*".indexOf (ch) >= 0) && mText.startsWith ("=", mPosition + 1))
+            {
+                relation = (char)ch;
+                mPosition += 2;
+            }
+            if (0 != relation)
+            {
+                skipWhitespace ();
+                ch = peek ();
+                if (('"' == ch) || ('\'' == ch))
+                    value = parseString ();
+                else
+                    value = parseValue ();
+                skipWhitespace ();
+            }
+            if (']' != peek ())
+                throw error ();
+            mPosition++;
+
+            return (new AttributeSelector (name, relation, value));
+        }
+
+        private boolean isNameChar (int ch)
+        {
+            return ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')
+                || (ch >= '0' && ch <= '9') || ('-' == ch) || ('_' == ch)
+                || ('\\' == ch) || (ch >= 0x80));
+        }
+
+        private String parseName ()
+        {
+            StringBuilder ret;
+            int ch;
+
+            ret = new StringBuilder ();
+            while (isNameChar (ch = peek ()))
+                if ('\\' == ch)
+                    escape (ret);
+                else
+                {
+                    ret.append ((char)ch);
+                    mPosition++;
+                }
+            if (0 == ret.length ())
+                throw error ();
+
+            return (ret.toString ());
+        }
+
+        /**
+         * Parse an unquoted attribute value.
+         * This is more lenient than an identifier, anything up to
+         * whitespace or the closing bracket is taken as the value.
+         * @return The value.
+         */
+        private String parseValue ()
+        {
+            StringBuilder ret;
+            int ch;
+
+            ret = new StringBuilder ();
+            while ((-1 != (ch = peek ())) && (']' != ch) && !Character.isWhitespace (ch))
+                if ('\\' == ch)
+                    escape (ret);
+                else
+                {
+                    ret.append ((char)ch);
+                    mPosition++;
+                }
+            if (0 == ret.length ())
+                throw error ();
+
+            return (ret.toString ());
+        }
+
+        private String parseString ()
+        {
+            StringBuilder ret;
+            char quote;
+            int ch;
+
+            quote = mText.charAt (mPosition++);
+            ret = new StringBuilder ();
+            while (quote != (ch = peek ()))
+                if (-1 == ch)
+                    throw error ();
+                else if ('\\' == ch)
+                    escape (ret);
                 else
-                    return (true);
+                {
+                    ret.append ((char)ch);
+                    mPosition++;
+                }
+            mPosition++;
+
+            return (ret.toString ());
+        }
+
+        /**
+         * Decode a backslash escape, either up to six hex digits
+         * (and an optional terminating space) or a single literal character.
+         * @param buffer The buffer to append the decoded character to.
+         */
+        private void escape (StringBuilder buffer)
+        {
+            int start;
+            int ch;
+
+            mPosition++; // backslash
+            start = mPosition;
+            while ((mPosition - start < 6) && (-1 != (ch = peek ()))
+                && (Character.digit ((char)ch, 16) >= 0))
+                mPosition++;
+            if (mPosition != start)
+            {
+                buffer.appendCodePoint (Integer.parseInt (mText.substring (start, mPosition), 16));
+                if (Character.isWhitespace (peek ()))
+                    mPosition++;
+            }
+            else if (-1 == peek ())
+                throw error ();
             else
-                return (false);
+                buffer.append (mText.charAt (mPosition++));
         }
     }
 }
@@ -0,0 +1,370 @@
+package org.htmlparser.filters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.htmlparser.Attribute;
+import org.htmlparser.Node;
+import org.htmlparser.NodeFilter;
+import org.htmlparser.Tag;
+import org.htmlparser.util.NodeList;
+import org.htmlparser.util.NodeListImpl;
+
+/**
+ * Evaluates a number of independent filters in a single pass over a node list.
+ * Running N filters with N calls to
+ * {@link NodeList#extractAllNodesThatMatch(NodeFilter, boolean)} walks the
+ * tree N times and asks every filter about every node. A batch walks the tree
+ * once and only asks the filters that can possibly accept each node.
+ * <p>
+ * When the batch is built, each filter is filed under one predicate it
+ * requires of the nodes it accepts: an id, a class name, a tag name or the
+ * presence of an attribute. This is known for CSS selectors
+ * (the rightmost compound selector), {@link TagNameFilter},
+ * {@link HasAttributeFilter} and {@link AndFilter} combinations of these.
+ * The alternatives of an {@link OrFilter} or a selector list are filed
+ * separately. During the walk the id, class names, tag name and attribute
+ * names of each tag are looked up once and shared by all filters, and only
+ * the filters filed under one of them, plus those with no known
+ * requirement, are evaluated.
+ * <p>
+ * Typical usage:
+ * <pre>
+ *     FilterBatch batch = FilterBatch.compile (new String[] { "div.product", "a[href]", "#title" });
+ *     NodeList[] results = batch.extractAllNodesThatMatch (parser.parse (null), true);
+ * </pre>
+ * The filters are examined when the batch is created, changes made to
+ * composite filters afterwards are not seen by the batch.
+ */
+public class FilterBatch
+{
+    /**
+     * The filters, in the order their results are returned.
+     */
+    protected NodeFilter[] mFilters;
+
+    /**
+     * Filters that require an id, by id value.
+     */
+    private Map<String, List<Entry>> mIds;
+
+    /**
+     * Filters that require a class, by class name.
+     */
+    private Map<String, List<Entry>> mClasses;
+
+    /**
+     * Filters that require a tag name, by uppercase tag name.
+     */
+    private Map<String, List<Entry>> mNames;
+
+    /**
+     * Filters that require an attribute, by uppercase attribute name.
+     */
+    private Map<String, List<Entry>> mAttributes;
+
+    /**
+     * Filters with no known requirement, evaluated for every node.
+     */
+    private List<Entry> mUniversal;
+
+    /**
+     * Create a batch of filters.
+     * @param filters The filters to evaluate together.
+     */
+    public FilterBatch (NodeFilter[] filters)
+    {
+        mFilters = filters.clone ();
+        mIds = new HashMap<> ();
+        mClasses = new HashMap<> ();
+        mNames = new HashMap<> ();
+        mAttributes = new HashMap<> ();
+        mUniversal = new ArrayList<> ();
+        for (int i = 0; i < mFilters.length; i++)
+            register (i, mFilters[i]);
+    }
+
+    /**
+     * Create a batch of CSS selectors.
+     * @param selectors The selectors to evaluate together.
+     * @return A batch returning the matches of each selector in turn.
+     * @exception IllegalArgumentException If a selector has a syntax error.
+     * @see CssSelectorNodeFilter#compile
+     */
+    public static FilterBatch compile (String[] selectors)
+    {
+        NodeFilter[] filters;
+
+        filters = new NodeFilter[selectors.length];
+        for (int i = 0; i < selectors.length; i++)
+            filters[i] = CssSelectorNodeFilter.compile (selectors[i]);
+
+        return (new FilterBatch (filters));
+    }
+
+    /**
+     * Get the filters in this batch.
+     * @return The filters, in the order their results are returned.
+     */
+    public NodeFilter[] getFilters ()
+    {
+        return (mFilters.clone ());
+    }
+
+    /**
+     * Filter the list with all of the filters.
+     * @param list The nodes to filter.
+     * @param recursive If <code>true</code> digs into the children recursively.
+     * @return One list per filter, in the same order as the filters, holding
+     * the nodes accepted by that filter in document order. Each is the same
+     * as <code>list.extractAllNodesThatMatch (filter, recursive)</code>.
+     */
+    public NodeList[] extractAllNodesThatMatch (NodeList list, boolean recursive)
+    {
+        Pass pass;
+
+        pass = new Pass ();
+        pass.extract (list, recursive);
+
+        return (pass.mResults);
+    }
+
+    //
+    // Construction
+    //
+
+    /**
+     * File a filter, or the alternatives of an alternation.
+     * @param query The index of the filter in the batch.
+     * @param filter The filter or alternative.
+     */
+    private void register (int query, NodeFilter filter)
+    {
+        NodeFilter[] alternatives;
+        Entry entry;
+
+        if (filter instanceof CssSelectorNodeFilter)
+            register (query, ((CssSelectorNodeFilter)filter).getRule ());
+        else if (filter instanceof CssSelectorNodeFilter.SelectorList)
+        {
+            alternatives = ((CssSelectorNodeFilter.SelectorList)filter).mSelectors;
+            for (int i = 0; i < alternatives.length; i++)
+                register (query, alternatives[i]);
+        }
+        else if ((filter instanceof OrFilter)
+            && (null != (alternatives = ((OrFilter)filter).getPredicates ())))
+        {
+            for (int i = 0; i < alternatives.length; i++)
+                register (query, alternatives[i]);
+        }
+        else
+        {
+            entry = new Entry (query, filter);
+            if (!index (entry, filter))
+                mUniversal.add (entry);
+        }
+    }
+
+    /**
+     * File an entry under a predicate the filter requires.
+     * @param entry The entry to file.
+     * @param filter The filter, or a conjunct of it, to examine.
+     * @return <code>true</code> if a requirement was found and the entry
+     * was filed, <code>false</code> otherwise.
+     */
+    private boolean index (Entry entry, NodeFilter filter)
+    {
+        CssSelectorNodeFilter.CompoundSelector compound;
+        NodeFilter[] predicates;
+        String name;
+        boolean ret;
+
+        ret = true;
+        if (filter instanceof CssSelectorNodeFilter.ComplexSelector)
+        {
+            compound = ((CssSelectorNodeFilter.ComplexSelector)filter).mCompounds[((CssSelectorNodeFilter.ComplexSelector)filter).mCompounds.length - 1];
+            if (null != compound.mId)
+                add (mIds, compound.mId, entry);
+            else if (0 != compound.mClasses.length)
+                add (mClasses, compound.mClasses[0], entry);
+            else if (null != compound.mName)
+                add (mNames, compound.mName, entry);
+            else if (0 != compound.mAttributes.length)
+                add (mAttributes, compound.mAttributes[0].mName, entry);
+            else
+                ret = false;
+        }
+        else if (filter instanceof TagNameFilter)
+            add (mNames, ((TagNameFilter)filter).getName ().toUpperCase (Locale.ENGLISH), entry);
+        else if ((filter instanceof HasAttributeFilter)
+            && (null != (name = ((HasAttributeFilter)filter).getAttributeName ())))
+            add (mAttributes, name.toUpperCase (Locale.ENGLISH), entry);
+        else if ((filter instanceof AndFilter)
+            && (null != (predicates = ((AndFilter)filter).getPredicates ())))
+        {
+            ret = false;
+            for (int i = 0; !ret && (i < predicates.length); i++)
+                ret = index (entry, predicates[i]);
+        }
+        else
+            ret = false;
+
+        return (ret);
+    }
+
+    private static void add (Map<String, List<Entry>> bucket, String key, Entry entry)
+    {
+        List<Entry> entries;
+
+        entries = bucket.get (key);
+        if (null == entries)
+        {
+            entries = new ArrayList<> ();
+            bucket.put (key, entries);
+        }
+        entries.add (entry);
+    }
+
+    /**
+     * A filter, or an alternative of one, and the filter it answers for.
+     */
+    private static class Entry
+    {
+        /**
+         * The index of the filter in the batch.
+         */
+        final int mQuery;
+
+        /**
+         * The filter or alternative to evaluate.
+         */
+        final NodeFilter mFilter;
+
+        Entry (int query, NodeFilter filter)
+        {
+            mQuery = query;
+            mFilter = filter;
+        }
+    }
+
+    //
+    // Evaluation
+    //
+
+    /**
+     * The state of one walk over the nodes.
+     */
+    private class Pass
+    {
+        /**
+         * The matches of each filter.
+         */
+        NodeList[] mResults;
+
+        /**
+         * The serial number of the last node accepted by each filter,
+         * so that a node matching several alternatives is added once.
+         */
+        int[] mAccepted;
+
+        /**
+         * The serial number of the current node.
+         */
+        int mSerial;
+
+        Pass ()
+        {
+            mResults = new NodeList[mFilters.length];
+            for (int i = 0; i < mResults.length; i++)
+                mResults[i] = new NodeListImpl ();
+            mAccepted = new int[mFilters.length];
+            mSerial = 0;
+        }
+
+        void extract (NodeList list, boolean recursive)
+        {
+            Node node;
+            NodeList children;
+
+            for (int i = 0; i < list.size (); i++)
+            {
+                node = list.get (i);
+                visit (node);
+                if (recursive)
+                {
+                    children = node.getChildren ();
+                    if (null != children)
+                        extract (children, recursive);
+                }
+            }
+        }
+
+        void visit (Node node)
+        {
+            Tag tag;
+            String value;
+            List<Attribute> attributes;
+            String name;
+            int start;
+            int length;
+
+            mSerial++;
+            evaluate (mUniversal, node);
+            if (node instanceof Tag)
+            {
+                tag = (Tag)node;
+                if (!mAttributes.isEmpty ())
+                {
+                    attributes = tag.getAttributes ();
+                    if (null != attributes)
+                        for (int i = 0; i < attributes.size (); i++)
+                        {
+                            name = attributes.get (i).getName ();
+                            if (null != name)
+                                evaluate (mAttributes.get (name.toUpperCase (Locale.ENGLISH)), node);
+                        }
+                }
+                if (!tag.isEndTag ())
+                {
+                    if (!mNames.isEmpty () && (null != (name = tag.getTagName ())))
+                        evaluate (mNames.get (name), node);
+                    if (!mIds.isEmpty () && (null != (value = tag.getAttributeValue ("ID"))))
+                        evaluate (mIds.get (value), node);
+                    if (!mClasses.isEmpty () && (null != (value = tag.getAttributeValue ("CLASS"))))
+                    {
+                        length = value.length ();
+                        for (int i = 0; i < length; )
+                        {
+                            while ((i < length) && Character.isWhitespace (value.charAt (i)))
+                                i++;
+                            start = i;
+                            while ((i < length) && !Character.isWhitespace (value.charAt (i)))
+                                i++;
+                            if (start != i)
+                                evaluate (mClasses.get (value.substring (start, i)), node);
+                        }
+                    }
+                }
+            }
+        }
+
+        void evaluate (List<Entry> entries, Node node)
+        {
+            Entry entry;
+
+            if (null != entries)
+                for (int i = 0; i < entries.size (); i++)
+                {
+                    entry = entries.get (i);
+                    if ((mSerial != mAccepted[entry.mQuery]) && entry.mFilter.accept (node))
+                    {
+                        mAccepted[entry.mQuery] = mSerial;
+                        mResults[entry.mQuery].add (node);
+                    }
+                }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package org.htmlparser.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.htmlparser.Node;
+import org.htmlparser.NodeFilter;
+
+/**
+ * Plans the evaluation of {@link AndFilter}, {@link OrFilter} and
+ * {@link NotFilter} trees.
+ * The composite filters evaluate their predicates in the order they were
+ * written, so a cheap test like a {@link TagNameFilter} may only be reached
+ * after an expensive {@link RegexFilter} or recursive
+ * {@link HasChildFilter} has been run on every node.
+ * {@link #optimize} rewrites a filter tree into an equivalent one that:
+ * <ul>
+ * <li>flattens nested conjunctions and disjunctions, i.e.
+ * <code>(a AND (b AND c))</code> becomes <code>(a AND b AND c)</code>,
+ * and removes double negation</li>
+ * <li>orders the predicates of a conjunction so the cheapest ones that are
+ * most likely to reject a node come first, and those of a disjunction so the
+ * cheapest ones that are most likely to accept a node come first</li>
+ * <li>counts how often each predicate accepts, and periodically reorders
+ * the predicates using the observed selectivity instead of the estimate</li>
+ * </ul>
+ * Since the statistics stay with the optimized filter, using the same
+ * instance for a batch of documents lets the order adapt to them.
+ * The optimized filter gives the same answers as the original one, provided
+ * the filters have no side effects. The original tree is examined once,
+ * so changes made to it afterwards are not seen.
+ * <p>
+ * Statistics are updated without synchronization, an optimized filter may be
+ * shared between threads but the counts are then approximate.
+ */
+public class FilterOptimizer
+{
+    /**
+     * The number of evaluations of a planned composite between reorderings.
+     */
+    public static final int REPLAN_INTERVAL = 1024;
+
+    /**
+     * The cost assumed for filters the optimizer knows nothing about.
+     */
+    public static final int DEFAULT_COST = 16;
+
+    /**
+     * Rewrite a filter for faster evaluation.
+     * @param filter The filter to optimize.
+     * @return An equivalent filter, which may be the one passed in if it
+     * has no composite parts.
+     */
+    public static NodeFilter optimize (NodeFilter filter)
+    {
+        NodeFilter predicate;
+        List<NodeFilter> predicates;
+        NodeFilter ret;
+
+        if (filter instanceof AndFilter)
+        {
+            predicates = new ArrayList<> ();
+            flatten (filter, true, predicates);
+            ret = 1 == predicates.size () ? predicates.get (0) : new Conjunction (predicates);
+        }
+        else if (filter instanceof OrFilter)
+        {
+            predicates = new ArrayList<> ();
+            flatten (filter, false, predicates);
+            ret = 1 == predicates.size () ? predicates.get (0) : new Disjunction (predicates);
+        }
+        else if ((filter instanceof NotFilter) && (null != (predicate = ((NotFilter)filter).getPredicate ())))
+        {
+            if ((predicate instanceof NotFilter) && (null != ((NotFilter)predicate).getPredicate ()))
+                ret = optimize (((NotFilter)predicate).getPredicate ());
+            else
+                ret = new NotFilter (optimize (predicate));
+        }
+        else
+            ret = filter;
+
+        return (ret);
+    }
+
+    /**
+     * Gather the optimized operands of nested conjunctions or disjunctions.
+     * @param filter The filter to flatten.
+     * @param and If <code>true</code> flatten conjunctions,
+     * otherwise disjunctions.
+     * @param predicates The list to add the operands to.
+     */
+    private static void flatten (NodeFilter filter, boolean and, List<NodeFilter> predicates)
+    {
+        NodeFilter[] operands;
+
+        if (and ? filter instanceof AndFilter : filter instanceof OrFilter)
+        {
+            operands = and ? ((AndFilter)filter).getPredicates () : ((OrFilter)filter).getPredicates ();
+            if (null != operands)
+                for (int i = 0; i < operands.length; i++)
+                    flatten (operands[i], and, predicates);
+        }
+        else if (and ? filter instanceof Conjunction : filter instanceof Disjunction)
+            predicates.addAll (Arrays.asList (((Planned)filter).mOperands));
+        else
+        {
+            filter = optimize (filter);
+            // optimizing a double negation may expose another operand
+            if (and ? filter instanceof Conjunction : filter instanceof Disjunction)
+                predicates.addAll (Arrays.asList (((Planned)filter).mOperands));
+            else
+                predicates.add (filter);
+        }
+    }
+
+    /**
+     * Estimate the cost of evaluating a filter on one node.
+     * The units are arbitrary, a tag name comparison costs about two.
+     * @param filter The filter to estimate.
+     * @return The relative cost of one call to <code>accept()</code>.
+     */
+    public static int cost (NodeFilter filter)
+    {
+        NodeFilter[] predicates;
+        int ret;
+
+        if ((filter instanceof NodeClassFilter) || (filter instanceof IsEqualFilter))
+            ret = 1;
+        else if (filter instanceof TagNameFilter)
+            ret = 2;
+        else if (filter instanceof HasAttributeFilter)
+            ret = 3;
+        else if (filter instanceof CssSelectorNodeFilter)
+            ret = 6;
+        else if ((filter instanceof StringFilter) || (filter instanceof LinkStringFilter))
+            ret = 8;
+        else if ((filter instanceof RegexFilter) || (filter instanceof LinkRegexFilter)
+            || (filter instanceof HasAttributeRegexFilter))
+            ret = 24;
+        else if (filter instanceof NotFilter)
+            ret = 1 + cost (((NotFilter)filter).getPredicate ());
+        else if (filter instanceof HasParentFilter)
+            ret = 2 + cost (((HasParentFilter)filter).getParentFilter ())
+                * (((HasParentFilter)filter).getRecursive () ? 8 : 1);
+        else if (filter instanceof HasSiblingFilter)
+            ret = 2 + cost (((HasSiblingFilter)filter).getSiblingFilter ()) * 8;
+        else if (filter instanceof HasChildFilter)
+            ret = 2 + cost (((HasChildFilter)filter).getChildFilter ())
+                * (((HasChildFilter)filter).getRecursive () ? 64 : 8);
+        else if ((filter instanceof AndFilter) || (filter instanceof OrFilter) || (filter instanceof Planned))
+        {
+            if (filter instanceof AndFilter)
+                predicates = ((AndFilter)filter).getPredicates ();
+            else if (filter instanceof OrFilter)
+                predicates = ((OrFilter)filter).getPredicates ();
+            else
+                predicates = ((Planned)filter).mOperands;
+            ret = 1;
+            if (null != predicates)
+                for (int i = 0; i < predicates.length; i++)
+                    ret += cost (predicates[i]);
+        }
+        else if (null == filter)
+            ret = 0;
+        else
+            ret = DEFAULT_COST;
+
+        return (ret);
+    }
+
+    /**
+     * Estimate the fraction of nodes a filter accepts.
+     * @param filter The filter to estimate.
+     * @return The prior probability that the filter accepts a node.
+     */
+    static double selectivity (NodeFilter filter)
+    {
+        double ret;
+
+        if (filter instanceof TagNameFilter)
+            ret = 0.05;
+        else if ((filter instanceof HasAttributeFilter) || (filter instanceof CssSelectorNodeFilter)
+            || (filter instanceof HasAttributeRegexFilter))
+            ret = 0.1;
+        else if (filter instanceof NotFilter)
+            ret = 1.0 - selectivity (((NotFilter)filter).getPredicate ());
+        else
+            ret = 0.5;
+
+        return (ret);
+    }
+
+    /**
+     * A composite whose operands are evaluated in a planned, adaptive order.
+     */
+    abstract static class Planned implements NodeFilter
+    {
+        /**
+         * The operands, in their original order.
+         */
+        final NodeFilter[] mOperands;
+
+        /**
+         * The estimated costs of the operands.
+         */
+        final int[] mCosts;
+
+        /**
+         * The number of times each operand was evaluated.
+         */
+        final long[] mEvaluations;
+
+        /**
+         * The number of times each operand accepted the node.
+         */
+        final long[] mAcceptances;
+
+        /**
+         * The evaluation order, the index of the operand to evaluate at each
+         * step. Replaced as a whole when the operands are reordered.
+         */
+        volatile int[] mOrder;
+
+        /**
+         * Evaluations remaining before the next reordering.
+         */
+        int mCountdown;
+
+        Planned (List<NodeFilter> predicates)
+        {
+            mOperands = predicates.toArray (new NodeFilter[predicates.size ()]);
+            mCosts = new int[mOperands.length];
+            mEvaluations = new long[mOperands.length];
+            mAcceptances = new long[mOperands.length];
+            // seed the statistics with the estimates, worth a few observations
+            for (int i = 0; i < mOperands.length; i++)
+            {
+                mCosts[i] = Math.max (1, cost (mOperands[i]));
+                mEvaluations[i] = 4;
+                mAcceptances[i] = Math.round (selectivity (mOperands[i]) * 4);
+            }
+            mCountdown = REPLAN_INTERVAL;
+            replan ();
+        }
+
+        /**
+         * Get the operands, in their current evaluation order.
+         * @return The operands.
+         */
+        public NodeFilter[] getPredicates ()
+        {
+            int[] order;
+            NodeFilter[] ret;
+
+            order = mOrder;
+            ret = new NodeFilter[order.length];
+            for (int i = 0; i < order.length; i++)
+                ret[i] = mOperands[order[i]];
+
+            return (ret);
+        }
+
+        /**
+         * Evaluate the operands in order until one decides the result.
+         * @param node The node to check.
+         * @param decisive The result of an operand that decides the outcome.
+         * @return <code>decisive</code> if an operand returned it,
+         * <code>!decisive</code> otherwise.
+         */
+        boolean evaluate (Node node, boolean decisive)
+        {
+            int[] order;
+            int operand;
+            boolean accepted;
+            boolean ret;
+
+            order = mOrder;
+            ret = !decisive;
+            for (int i = 0; (ret != decisive) && (i < order.length); i++)
+            {
+                operand = order[i];
+                accepted = mOperands[operand].accept (node);
+                mEvaluations[operand]++;
+                if (accepted)
+                {
+                    mAcceptances[operand]++;
+                    if (decisive)
+                        ret = true;
+                }
+                else if (!decisive)
+                    ret = false;
+            }
+            if (0 >= --mCountdown)
+            {
+                mCountdown = REPLAN_INTERVAL;
+                replan ();
+            }
+
+            return (ret);
+        }
+
+        /**
+         * Sort the operands by their rank, using the statistics so far.
+         */
+        void replan ()
+        {
+            double[] ranks;
+            Integer[] order;
+            int[] sorted;
+
+            ranks = new double[mOperands.length];
+            order = new Integer[mOperands.length];
+            for (int i = 0; i < mOperands.length; i++)
+            {
+                ranks[i] = rank (mCosts[i], (double)mAcceptances[i] / mEvaluations[i]);
+                order[i] = i;
+            }
+            Arrays.sort (order, (a, b) -> Double.compare (ranks[a], ranks[b]));
+            sorted = new int[order.length];
+            for (int i = 0; i < order.length; i++)
+                sorted[i] = order[i];
+            mOrder = sorted;
+        }
+
+        /**
+         * The rank of an operand, lower ranks are evaluated first.
+         * @param cost The estimated cost of the operand.
+         * @param rate The observed fraction of nodes it accepts.
+         * @return The expected cost of deciding the outcome with this operand.
+         */
+        abstract double rank (int cost, double rate);
+    }
+
+    /**
+     * A planned conjunction, which stops at the first operand rejecting a node.
+     */
+    static class Conjunction extends Planned
+    {
+        Conjunction (List<NodeFilter> predicates)
+        {
+            super (predicates);
+        }
+
+        double rank (int cost, double rate)
+        {
+            return (cost / Math.max (1.0 - rate, 1e-6));
+        }
+
+        public boolean accept (Node node)
+        {
+            return (evaluate (node, false));
+        }
+    }
+
+    /**
+     * A planned disjunction, which stops at the first operand accepting a node.
+     */
+    static class Disjunction extends Planned
+    {
+        Disjunction (List<NodeFilter> predicates)
+        {
+            super (predicates);
+        }
+
+        double rank (int cost, double rate)
+        {
+            return (cost / Math.max (rate, 1e-6));
+        }
+
+        public boolean accept (Node node)
+        {
+            return (evaluate (node, true));
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package org.htmlparser.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.htmlparser.Node;
+import org.htmlparser.NodeFilter;
+import org.htmlparser.Tag;
+import org.htmlparser.nodes.TagNode;
+import org.htmlparser.util.NodeList;
+
+/**
+ * Matches a filter against nodes as they are completed during a parse,
+ * and releases the subtrees that cannot be part of a match.
+ * Installed as the {@link org.htmlparser.lexer.Lexer#setChildConsumer
+ * child consumer} of a lexer, it is told about every node as the scanner
+ * closes it. A node accepted by the filter is handed to the callback right
+ * away, so matches are reported in the order they are closed, which puts
+ * nested matches ahead of the matches enclosing them.
+ * <p>
+ * A closed node that is not below an element which could still match is of
+ * no further use, and is removed from its parent, so the memory held by the
+ * partial tree tracks the size of the largest match rather than the size of
+ * the page. If the filter uses sibling combinators or structural
+ * pseudo-classes, which look at the earlier siblings of later nodes and of
+ * their ancestors, a closed element is instead replaced by a childless copy
+ * of the tag, keeping its name and attributes (text and remarks are still
+ * removed). The memory used then also grows by one such copy for each
+ * element closed under an open ancestor, so on a flat page with many
+ * siblings it is proportional to the number of elements.
+ * <p>
+ * Which elements could match is decided from the attributes of the open
+ * elements only, using what the filter requires of an element's tag:
+ * the rightmost compound selector of a CSS selector without pseudo-classes,
+ * a {@link TagNameFilter}, {@link HasAttributeFilter} or
+ * {@link NodeClassFilter}, and {@link AndFilter} or {@link OrFilter}
+ * combinations of these. For other filters (or selectors using
+ * <code>:has()</code> or <code>:empty</code> left of the rightmost compound)
+ * every element could match and nothing is released, but matches are still
+ * reported as they are closed.
+ * <p>
+ * Since nodes are matched when they are closed, pseudo-classes that depend
+ * on following siblings, such as <code>:last-child</code>, only see the
+ * siblings parsed so far.
+ * @see org.htmlparser.Parser#extractAllNodesThatMatch(NodeFilter, Consumer)
+ */
+public class StreamingMatcher
+    implements
+        BiConsumer<Tag, Node>
+{
+    /**
+     * The filter to match.
+     */
+    protected NodeFilter mFilter;
+
+    /**
+     * The callback for matching nodes.
+     */
+    protected Consumer<Node> mCallback;
+
+    /**
+     * What the filter requires of a tag,
+     * or <code>null</code> if this is not known.
+     */
+    protected NodeFilter mRequirement;
+
+    /**
+     * <code>true</code> if the filter looks at the earlier siblings of nodes,
+     * so released elements are kept as childless copies.
+     */
+    protected boolean mPositional;
+
+    /**
+     * Create a matcher.
+     * @param filter The filter to match.
+     * @param callback The callback that is passed each matching node.
+     */
+    public StreamingMatcher (NodeFilter filter, Consumer<Node> callback)
+    {
+        if ((null == filter) || (null == callback))
+            throw new IllegalArgumentException ("filter and callback cannot be null");
+        mFilter = filter;
+        mCallback = callback;
+        mRequirement = requirement (filter);
+        mPositional = isPositional (filter);
+    }
+
+    /**
+     * Match a top level node, or any other node not passed
+     * by a scanner, such as the contents of a <code>SCRIPT</code> tag.
+     * @param node The complete node.
+     */
+    public void match (Node node)
+    {
+        if (mFilter.accept (node))
+            mCallback.accept (node);
+    }
+
+    /**
+     * Match a node that has been added to its parent,
+     * and release it if it cannot be part of a match.
+     * @param parent The open parent of the node.
+     * @param child The complete node, which is the last child of the parent.
+     */
+    @Override
+    public void accept (Tag parent, Node child)
+    {
+        match (child);
+        if ((null != mRequirement) && !isRetained (parent))
+            release (parent, child);
+    }
+
+    /**
+     * Check if the descendants of a node may be part of a match.
+     * @param node The node to check.
+     * @return <code>true</code> if the node or one of its ancestors could
+     * match the filter.
+     */
+    protected boolean isRetained (Node node)
+    {
+        boolean ret;
+
+        ret = false;
+        while (!ret && (null != node))
+        {
+            ret = mRequirement.accept (node);
+            node = node.getParent ();
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Drop the subtree of a node from its parent.
+     * If the filter is positional, an element is replaced by a childless
+     * copy, otherwise it is removed like any other node.
+     * @param parent The parent of the node.
+     * @param child The node to release.
+     */
+    protected void release (Tag parent, Node child)
+    {
+        NodeList siblings;
+        int index;
+        Tag tag;
+        Tag shell;
+
+        siblings = parent.getChildren ();
+        index = siblings.size () - 1;
+        if ((0 <= index) && (siblings.get (index) == child))
+            if (mPositional && (child instanceof Tag))
+            {
+                tag = (Tag)child;
+                if ((null != tag.getChildren ()) && (0 != tag.getChildren ().size ()))
+                {
+                    shell = new TagNode (tag.getPage (), tag.getStartPosition (), tag.getEndPosition (), tag.getAttributes ());
+                    shell.setParent (parent);
+                    siblings.set (index, shell);
+                }
+            }
+            else
+                siblings.remove (index);
+    }
+
+    //
+    // Requirements
+    //
+
+    /**
+     * Get a filter that accepts any tag the given filter could accept,
+     * by looking at the tag alone.
+     * @param filter The filter to examine.
+     * @return The requirement, or <code>null</code> if it is not known.
+     */
+    static NodeFilter requirement (NodeFilter filter)
+    {
+        NodeFilter[] predicates;
+        CssSelectorNodeFilter.CompoundSelector[] compounds;
+        CssSelectorNodeFilter.CompoundSelector last;
+        List<NodeFilter> alternatives;
+        NodeFilter requirement;
+        NodeFilter ret;
+
+        ret = null;
+        if (filter instanceof CssSelectorNodeFilter)
+            ret = requirement (((CssSelectorNodeFilter)filter).getRule ());
+        else if ((filter instanceof CssSelectorNodeFilter.SelectorList)
+            || ((filter instanceof OrFilter) && (null != ((OrFilter)filter).getPredicates ())))
+        {
+            predicates = (filter instanceof OrFilter)
+                ? ((OrFilter)filter).getPredicates ()
+                : ((CssSelectorNodeFilter.SelectorList)filter).mSelectors;
+            alternatives = new ArrayList<> ();
+            for (int i = 0; (null != alternatives) && (i < predicates.length); i++)
+            {
+                requirement = requirement (predicates[i]);
+                if (null == requirement)
+                    alternatives = null;
+                else
+                    alternatives.add (requirement);
+            }
+            if (null != alternatives)
+                ret = new OrFilter (alternatives.toArray (new NodeFilter[alternatives.size ()]));
+        }
+        else if (filter instanceof CssSelectorNodeFilter.ComplexSelector)
+        {
+            if (isLocal (filter))
+            {
+                compounds = ((CssSelectorNodeFilter.ComplexSelector)filter).mCompounds;
+                last = compounds[compounds.length - 1];
+                ret = new CssSelectorNodeFilter.CompoundSelector (last.mName, last.mId,
+                    Arrays.asList (last.mClasses), Arrays.asList (last.mAttributes),
+                    new ArrayList<NodeFilter> ());
+            }
+        }
+        else if ((filter instanceof TagNameFilter)
+            || ((filter instanceof HasAttributeFilter) && (null != ((HasAttributeFilter)filter).getAttributeName ()))
+            || (filter instanceof NodeClassFilter))
+            ret = filter;
+        else if ((filter instanceof AndFilter) && isLocal (filter))
+        {
+            predicates = ((AndFilter)filter).getPredicates ();
+            for (int i = 0; (null == ret) && (i < predicates.length); i++)
+                ret = requirement (predicates[i]);
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Check if a filter looks at the earlier siblings of a node or of its
+     * ancestors, with a sibling combinator or a structural pseudo-class.
+     * @param filter The filter to examine.
+     * @return <code>true</code> unless the filter is known not to.
+     */
+    static boolean isPositional (NodeFilter filter)
+    {
+        NodeFilter[] predicates;
+        CssSelectorNodeFilter.ComplexSelector complex;
+        boolean ret;
+
+        if (filter instanceof CssSelectorNodeFilter)
+            ret = isPositional (((CssSelectorNodeFilter)filter).getRule ());
+        else if ((filter instanceof CssSelectorNodeFilter.SelectorList)
+            || (filter instanceof AndFilter) || (filter instanceof OrFilter)
+            || (filter instanceof CssSelectorNodeFilter.CompoundSelector))
+        {
+            if (filter instanceof AndFilter)
+                predicates = ((AndFilter)filter).getPredicates ();
+            else if (filter instanceof OrFilter)
+                predicates = ((OrFilter)filter).getPredicates ();
+            else if (filter instanceof CssSelectorNodeFilter.CompoundSelector)
+                predicates = ((CssSelectorNodeFilter.CompoundSelector)filter).mPseudos;
+            else
+                predicates = ((CssSelectorNodeFilter.SelectorList)filter).mSelectors;
+            ret = null == predicates;
+            for (int i = 0; !ret && (i < predicates.length); i++)
+                ret = isPositional (predicates[i]);
+        }
+        else if (filter instanceof CssSelectorNodeFilter.ComplexSelector)
+        {
+            complex = (CssSelectorNodeFilter.ComplexSelector)filter;
+            ret = false;
+            for (int i = 0; !ret && (i < complex.mCombinators.length); i++)
+                ret = (CssSelectorNodeFilter.ADJACENT == complex.mCombinators[i])
+                    || (CssSelectorNodeFilter.SIBLING == complex.mCombinators[i]);
+            for (int i = 0; !ret && (i < complex.mCompounds.length); i++)
+                ret = isPositional (complex.mCompounds[i]);
+        }
+        else if (filter instanceof NotFilter)
+            ret = (null == ((NotFilter)filter).getPredicate ()) || isPositional (((NotFilter)filter).getPredicate ());
+        else
+            ret = !((filter instanceof CssSelectorNodeFilter.EmptySelector)
+                || (filter instanceof TagNameFilter)
+                || (filter instanceof HasAttributeFilter)
+                || (filter instanceof HasAttributeRegexFilter)
+                || (filter instanceof NodeClassFilter)
+                || (filter instanceof StringFilter)
+                || (filter instanceof RegexFilter)
+                || (filter instanceof LinkStringFilter)
+                || (filter instanceof LinkRegexFilter)
+                || (filter instanceof IsEqualFilter));
+
+        return (ret);
+    }
+
+    /**
+     * Check that a filter looks no further than the node, its ancestors,
+     * the tags of its siblings and the tags of the siblings of its ancestors,
+     * all of which survive the release of closed subtrees, the tags as
+     * childless copies if the filter is {@link #isPositional positional}.
+     * @param filter The filter to examine.
+     * @return <code>true</code> if the filter is known to be local.
+     */
+    static boolean isLocal (NodeFilter filter)
+    {
+        return (isLocal (filter, true));
+    }
+
+    /**
+     * Check that a filter is local.
+     * Only the selectors tested against the matched node itself may look at
+     * its content, which is retained until it closes. The arguments of
+     * pseudo-classes, such as <code>:not(:has(b))</code> in
+     * <code>div:not(:has(b)) &gt; p</code>, may be tested against other
+     * nodes, whose content is released.
+     * @param filter The filter to examine.
+     * @param top <code>true</code> if the filter is tested against the
+     * matched node.
+     * @return <code>true</code> if the filter is known to be local.
+     */
+    private static boolean isLocal (NodeFilter filter, boolean top)
+    {
+        NodeFilter[] predicates;
+        CssSelectorNodeFilter.CompoundSelector[] compounds;
+        boolean ret;
+
+        if (filter instanceof CssSelectorNodeFilter)
+            ret = isLocal (((CssSelectorNodeFilter)filter).getRule (), top);
+        else if ((filter instanceof CssSelectorNodeFilter.SelectorList)
+            || (filter instanceof AndFilter) || (filter instanceof OrFilter))
+        {
+            if (filter instanceof AndFilter)
+                predicates = ((AndFilter)filter).getPredicates ();
+            else if (filter instanceof OrFilter)
+                predicates = ((OrFilter)filter).getPredicates ();
+            else
+                predicates = ((CssSelectorNodeFilter.SelectorList)filter).mSelectors;
+            ret = null != predicates;
+            for (int i = 0; ret && (i < predicates.length); i++)
+                ret = isLocal (predicates[i], top);
+        }
+        else if (filter instanceof CssSelectorNodeFilter.ComplexSelector)
+        {
+            // the rightmost compound of the matched node may look at its own (retained) content
+            compounds = ((CssSelectorNodeFilter.ComplexSelector)filter).mCompounds;
+            ret = true;
+            for (int i = 0; ret && (i < (top ? compounds.length - 1 : compounds.length)); i++)
+                ret = isLocal (compounds[i], false);
+        }
+        else if (filter instanceof CssSelectorNodeFilter.CompoundSelector)
+        {
+            predicates = ((CssSelectorNodeFilter.CompoundSelector)filter).mPseudos;
+            ret = true;
+            for (int i = 0; ret && (i < predicates.length); i++)
+                ret = isLocal (predicates[i], false);
+        }
+        else if (filter instanceof NotFilter)
+            ret = (null != ((NotFilter)filter).getPredicate ()) && isLocal (((NotFilter)filter).getPredicate (), top);
+        else
+            ret = (filter instanceof CssSelectorNodeFilter.NthSelector)
+                || (filter instanceof TagNameFilter)
+                || (filter instanceof HasAttributeFilter)
+                || (filter instanceof HasAttributeRegexFilter)
+                || (filter instanceof NodeClassFilter)
+                || (filter instanceof StringFilter)
+                || (filter instanceof RegexFilter)
+                || (filter instanceof LinkStringFilter)
+                || (filter instanceof LinkRegexFilter)
+                || (filter instanceof IsEqualFilter);
+
+        return (ret);
+    }
+}
@@ -26,23 +26,46 @@
 package org.htmlparser.http;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import org.htmlparser.lexer.Page;
 import org.htmlparser.util.ParserException;
 
 /**
@@ -97,6 +120,23 @@ public class ConnectionManager
             + " Both are ephemeral.",
     };
 
+    /**
+     * The default maximum number of concurrent asynchronous requests to one host.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 6;
+
+    /**
+     * The default time a response body may go unread before its request
+     * stops counting against the host's limit, in milliseconds.
+     */
+    public static final long DEFAULT_PERMIT_TIMEOUT = 30000L;
+
+    /**
+     * Request header fields the HTTP client sets itself, in lower case.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<> (Arrays.asList (
+        "connection", "content-length", "expect", "host", "upgrade"));
+
     /**
      * Base 64 character translation table.
      */
@@ -140,10 +180,16 @@ public class ConnectionManager
     protected String mPassword;
 
     /**
-     * Cookie storage, a Map (by site or host) of Lists of Cookies.
+     * Cookie storage.
      * This will be null if cookie processing is disabled (default).
      */
-    protected Map mCookieJar;
+    protected CookieJar mCookieJar;
+
+    /**
+     * The response cache.
+     * This will be null if caching is disabled (default).
+     */
+    protected HttpCache mCache;
 
     /**
      * The object to be notified prior to and after each connection.
@@ -162,6 +208,37 @@ public class ConnectionManager
         new SimpleDateFormat ("EEE, dd-MMM-yy kk:mm:ss z");
 
     protected int maxRedirects;
+
+    /**
+     * The client for asynchronous fetches, built on first use.
+     */
+    protected HttpClient mHttpClient;
+
+    /**
+     * <code>true</code> if the HTTP client was set, rather than built here.
+     */
+    protected boolean mSharedClient;
+
+    /**
+     * The executor for asynchronous fetches.
+     */
+    protected Executor mExecutor;
+
+    /**
+     * The maximum number of concurrent asynchronous requests to one host.
+     */
+    protected int mMaxConnectionsPerHost;
+
+    /**
+     * The time a response body may go unread before its request stops
+     * counting against the host's limit, in milliseconds.
+     */
+    protected long mPermitTimeout;
+
+    /**
+     * The requests in progress, by host.
+     */
+    private final Map<String, Permits> mHosts = new HashMap<> ();
     
     /**
      * Create a connection manager.
@@ -188,6 +265,11 @@ public class ConnectionManager
         mMonitor = null;
         mRedirectionProcessingEnabled = false;
         maxRedirects = 20;
+        mHttpClient = null;
+        mSharedClient = false;
+        mExecutor = null;
+        mMaxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        mPermitTimeout = DEFAULT_PERMIT_TIMEOUT;
     }
 
     //
@@ -309,9 +391,11 @@ public class ConnectionManager
      * @param host The host to use for proxy access.
      * <em>Note: You must also set the proxy {@link #setProxyPort port}.</em>
      */
-    public void setProxyHost (String host)
+    public synchronized void setProxyHost (String host)
     {
         mProxyHost = host;
+        if (!mSharedClient)
+            mHttpClient = null;
     }
 
     /**
@@ -328,9 +412,11 @@ public class ConnectionManager
      * @param port The proxy port.
      * <em>Note: You must also set the proxy {@link #setProxyHost host}.</em>
      */
-    public void setProxyPort (int port)
+    public synchronized void setProxyPort (int port)
     {
         mProxyPort = port;
+        if (!mSharedClient)
+            mHttpClient = null;
     }
 
     /**
@@ -434,82 +520,75 @@ public class ConnectionManager
      */
     public void setCookieProcessingEnabled (boolean enable)
     {
-        if (enable) {
-            mCookieJar = (null == mCookieJar) ? 
-                new HashMap (){
-                    @Override
-                    public Object put(Object key, Object value) {
-                        if(key == null || value == null) {
-                            throw new NullPointerException("This Map implementation does not support either null keys or values");
-                        }
-                        return super.put(key, value); 
-                    }
-                } : mCookieJar;
-        }else{
+        if (enable)
+            mCookieJar = (null == mCookieJar) ? new CookieJar () : mCookieJar;
+        else
             mCookieJar = null;
-        }    
+    }
+
+    /**
+     * Get the response cache.
+     * @return The cache of HTTP responses, or <code>null</code> if
+     * responses are not cached.
+     */
+    public HttpCache getCache ()
+    {
+        return (mCache);
+    }
+
+    /**
+     * Set the response cache.
+     * Requests for URLs in the cache are made conditional, and a
+     * <code>304 Not Modified</code> response is replaced by the stored one.
+     * A cache may be shared by several connection managers.
+     * @param cache The cache of HTTP responses, or <code>null</code> to
+     * stop caching.
+     */
+    public void setCache (HttpCache cache)
+    {
+        mCache = cache;
+    }
+
+    /**
+     * Get the cookie jar.
+     * @return The cookies, or <code>null</code> if cookie processing
+     * is disabled.
+     */
+    public CookieJar getCookieJar ()
+    {
+        return (mCookieJar);
+    }
+
+    /**
+     * Set the cookie jar.
+     * A jar may be shared by the connection managers of several threads.
+     * @param jar The cookies to use, or <code>null</code> to disable
+     * cookie processing.
+     */
+    public void setCookieJar (CookieJar jar)
+    {
+        mCookieJar = jar;
     }
 
     /**
      * Adds a cookie to the cookie jar.
+     * Enables cookie processing if it is disabled.
      * @param cookie The cookie to add.
      * @param domain The domain to use in case the cookie has no domain attribute.
      */
     public void setCookie (Cookie cookie, String domain)
     {
-        String path;
-        List cookies;
-        Cookie probe;
-        boolean found; // flag if a cookie with current name is already there
+        CookieJar jar;
 
         if (null != cookie.getDomain ())
             domain = cookie.getDomain ();
-        path = cookie.getPath ();
-        if (null == mCookieJar)
-            mCookieJar = new HashMap (){
-                @Override
-                public Object put(Object key, Object value) {
-                    if(key == null || value == null) {
-                        throw new NullPointerException("This Map implementation does not support either null keys or values");
-                    }
-                    return super.put(key, value); 
-                }
-            };
-        cookies = (List)mCookieJar.get (domain);
-        if (null != cookies)
+        jar = mCookieJar;
+        if (null == jar)
         {
-            found = false;
-            for (int j = 0; j < cookies.size (); j++)
-            {
-                probe = (Cookie)cookies.get (j);
-                if (probe.getName ().equalsIgnoreCase (cookie.getName ()))
-                {
-                    // we keep paths sorted most specific to least
-                    if (probe.getPath ().equals (path))
-                    {
-                        cookies.set (j, cookie); // replace
-                        found = true; // cookie found, set flag
-                        break;
-                    }
-                    else if (path.startsWith (probe.getPath ()))
-                    {
-                        cookies.add (j, cookie);
-                        found = true; // cookie found, set flag
-                        break;
-                    }
-                }
-            }
-            if (!found)
-                // there's no cookie with the current name, therefore it's added
-                // at the end of the list (faster then inserting at the front)
-                cookies.add (cookie);
-        }
-        else
-        {   // new cookie list needed
-            cookies = new ArrayList ();
-            cookies.add (cookie);
-            mCookieJar.put (domain, cookies);
+            jar = new CookieJar ();
+            mCookieJar = jar;
         }
+        jar.add (cookie, domain);
     }
 
     /**
@@ -672,6 +751,10 @@ public class ConnectionManager
                             // set the cookies based on the url
                             addCookies (ret);
 
+                        if (null != getCache ())
+                            // revalidate what was cached
+                            getCache ().condition (http);
+
                         if (null != getMonitor ())
                             getMonitor ().preConnect (http);
                     }
@@ -699,6 +782,12 @@ public class ConnectionManager
                                     repeat = true;
                                     repeated++;
                                 }
+
+                            if (null != getCache ())
+                                if (repeat)
+                                    getCache ().forget (http);
+                                else
+                                    ret = getCache ().respond (http);
                         }
                     }
                     catch (UnknownHostException uhe)
@@ -753,6 +842,621 @@ public class ConnectionManager
         return (ret);
     }
 
+    //
+    // Asynchronous fetching
+    //
+
+    /**
+     * Get the executor used for asynchronous fetches.
+     * Unless one has been set, a shared pool of daemon threads is used.
+     * @return The executor that sends requests and builds pages.
+     */
+    public Executor getExecutor ()
+    {
+        if (null == mExecutor)
+            mExecutor = DefaultExecutor.EXECUTOR;
+
+        return (mExecutor);
+    }
+
+    /**
+     * Set the executor used for asynchronous fetches.
+     * The executor also runs the HTTP client built by this manager, and
+     * the construction of each page, which reads the first bytes of the body.
+     * An executor of virtual threads is a good choice.
+     * Setting the executor discards the HTTP client, if this manager built it.
+     * @param executor The executor to use, or <code>null</code> for the default.
+     */
+    public synchronized void setExecutor (Executor executor)
+    {
+        mExecutor = executor;
+        if (!mSharedClient)
+            mHttpClient = null;
+    }
+
+    /**
+     * Get the HTTP client used for asynchronous fetches.
+     * Unless one has been set, a client is built that prefers HTTP/2,
+     * reuses connections, does not follow redirects (the manager follows
+     * them, so cookies and the monitor see each step) and uses the
+     * proxy and executor of this manager.
+     * @return The HTTP client.
+     */
+    public synchronized HttpClient getHttpClient ()
+    {
+        HttpClient.Builder builder;
+
+        if (null == mHttpClient)
+        {
+            builder = HttpClient.newBuilder ()
+                .version (HttpClient.Version.HTTP_2)
+                .followRedirects (HttpClient.Redirect.NEVER)
+                .executor (getExecutor ());
+            if ((null != getProxyHost ()) && (0 != getProxyPort ()))
+                builder.proxy (ProxySelector.of (
+                    new InetSocketAddress (getProxyHost (), getProxyPort ())));
+            mHttpClient = builder.build ();
+            mSharedClient = false;
+        }
+
+        return (mHttpClient);
+    }
+
+    /**
+     * Set the HTTP client used for asynchronous fetches.
+     * One client can be shared by several managers to share its connections.
+     * It should not follow redirects, or cookies will not be passed in
+     * redirected requests.
+     * @param client The client to use,
+     * or <code>null</code> to have one built as needed.
+     */
+    public synchronized void setHttpClient (HttpClient client)
+    {
+        mHttpClient = client;
+        mSharedClient = null != client;
+    }
+
+    /**
+     * Get the maximum number of concurrent asynchronous requests to one host.
+     * @return The limit on requests in progress, per host.
+     */
+    public int getMaxConnectionsPerHost ()
+    {
+        return (mMaxConnectionsPerHost);
+    }
+
+    /**
+     * Set the maximum number of concurrent asynchronous requests to one host.
+     * A request is in progress until the body of its response has been read
+     * to the end, or closed, or has gone unread for the
+     * {@link #setPermitTimeout permit timeout}. Further requests wait their turn.
+     * @param max The limit on requests in progress, per host.
+     */
+    public void setMaxConnectionsPerHost (int max)
+    {
+        if (0 >= max)
+            throw new IllegalArgumentException ("the maximum must be positive");
+        mMaxConnectionsPerHost = max;
+    }
+
+    /**
+     * Get the time a response body may go unread before its request stops
+     * counting against the host's limit.
+     * @return The timeout, in milliseconds.
+     */
+    public long getPermitTimeout ()
+    {
+        return (mPermitTimeout);
+    }
+
+    /**
+     * Set the time a response body may go unread before its request stops
+     * counting against the host's limit.
+     * A page whose parse stops early, because it was truncated, cancelled or
+     * the visitor stopped, is not read to the end, and unless it is closed
+     * its request would hold up the next one to the host forever. After this
+     * long without a read, the next request may start. The body stays open
+     * and can still be read.
+     * @param timeout The timeout, in milliseconds.
+     */
+    public void setPermitTimeout (long timeout)
+    {
+        if (0 >= timeout)
+            throw new IllegalArgumentException ("the timeout must be positive");
+        mPermitTimeout = timeout;
+    }
+
+    /**
+     * Fetch a page asynchronously.
+     * HTTP and HTTPS URLs are requested with the {@link #getHttpClient HTTP client}
+     * without blocking a thread while waiting for the response. The request
+     * properties, proxy and URL authorization, cookies and the monitor are
+     * applied as with {@link #openConnection(URL)}, to the
+     * <code>HttpURLConnection</code> passed to the monitor, and redirections
+     * are followed in the same way. The page is built as soon as the response
+     * header arrives, the lexer then reads the body as it streams in.
+     * Other URLs are opened with {@link #openConnection(URL)} on the
+     * {@link #getExecutor executor}.
+     * <p>The request counts against the
+     * {@link #setMaxConnectionsPerHost limit for its host} until the page has
+     * been read to the end. If it may not be, because the parse can stop
+     * early, {@link Page#close close} the page when done with it, otherwise
+     * the next request to the host waits for the
+     * {@link #setPermitTimeout permit timeout}.
+     * @param url The URL to fetch.
+     * @return A future page, to be closed if it isn't read to the end.
+     * If the request fails, the future completes exceptionally with a
+     * {@link ParserException}.
+     */
+    public CompletableFuture<Page> fetch (URL url)
+    {
+        CompletableFuture<Page> ret;
+
+        if ("http".equalsIgnoreCase (url.getProtocol ()) || "https".equalsIgnoreCase (url.getProtocol ()))
+            ret = request (url, 0).thenApplyAsync (connection ->
+            {
+                HttpCache cache;
+
+                try
+                {
+                    cache = getCache ();
+                    return (new Page (null == cache ? connection : cache.respond (connection)));
+                }
+                catch (ParserException pe)
+                {
+                    connection.disconnect ();
+                    throw new CompletionException (pe);
+                }
+                catch (IOException ioe)
+                {
+                    connection.disconnect ();
+                    throw new CompletionException (failure (url, ioe));
+                }
+            }, getExecutor ());
+        else
+            ret = CompletableFuture.supplyAsync (() ->
+            {
+                try
+                {
+                    return (new Page (openConnection (url)));
+                }
+                catch (ParserException pe)
+                {
+                    throw new CompletionException (pe);
+                }
+            }, getExecutor ());
+
+        return (ret);
+    }
+
+    /**
+     * Fetch a page asynchronously, given a URL string.
+     * Embedded spaces are silently converted to %20 sequences.
+     * @param string The URL to fetch.
+     * @return A future page.
+     * @see #fetch(URL)
+     */
+    public CompletableFuture<Page> fetch (String string)
+    {
+        CompletableFuture<Page> ret;
+
+        try
+        {
+            ret = fetch (new URL (fixSpaces (string)));
+        }
+        catch (MalformedURLException murle)
+        {
+            ret = CompletableFuture.failedFuture (new ParserException (
+                "Error in opening a connection to " + string, murle));
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Send a request, following redirections.
+     * @param url The URL to request.
+     * @param redirects The number of redirections followed so far.
+     * @return The future connection, with the response set.
+     */
+    private CompletableFuture<HttpResponseConnection> request (URL url, int redirects)
+    {
+        HttpResponseConnection connection;
+        HttpRequest request;
+        String host;
+        CompletableFuture<HttpResponseConnection> ret;
+
+        try
+        {
+            connection = prepare (url);
+            request = build (connection);
+            host = url.getHost ();
+            ret = acquire (host)
+                .thenCompose (permit ->
+                {
+                    CompletableFuture<HttpResponse<InputStream>> response;
+
+                    try
+                    {
+                        response = getHttpClient ().sendAsync (request, HttpResponse.BodyHandlers.ofInputStream ());
+                    }
+                    catch (RuntimeException re)
+                    {
+                        response = CompletableFuture.failedFuture (re);
+                    }
+
+                    return (response.whenComplete ((r, t) ->
+                    {
+                        if (null != t)
+                            release (host);
+                    }));
+                })
+                .handle ((response, throwable) ->
+                {
+                    if (null != throwable)
+                        return (CompletableFuture.<HttpResponseConnection>failedFuture (failure (url, throwable)));
+                    else
+                        return (respond (connection, response, redirects));
+                })
+                .thenCompose (next -> next);
+        }
+        catch (ParserException pe)
+        {
+            ret = CompletableFuture.failedFuture (pe);
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Create a connection for a request and condition it with the
+     * request properties, authorization and cookies, then let the monitor
+     * adjust it.
+     * @param url The URL to request.
+     * @return The unconnected connection.
+     * @exception ParserException If the monitor bails out.
+     */
+    private HttpResponseConnection prepare (URL url)
+        throws
+            ParserException
+    {
+        Map<?, ?> properties;
+        String auth;
+        HttpResponseConnection ret;
+
+        ret = new HttpResponseConnection (url, (null != getProxyHost ()) && (0 != getProxyPort ()));
+        properties = getRequestProperties ();
+        if (null != properties)
+            for (Map.Entry<?, ?> property : properties.entrySet ())
+                ret.setRequestProperty ((String)property.getKey (), (String)property.getValue ());
+        if ((null != getProxyUser ()) && (null != getProxyPassword ()))
+        {
+            auth = getProxyUser () + ":" + getProxyPassword ();
+            ret.setRequestProperty ("Proxy-Authorization",
+                encode (auth.getBytes (StandardCharsets.ISO_8859_1)));
+        }
+        if ((null != getUser ()) && (null != getPassword ()))
+        {
+            auth = getUser () + ":" + getPassword ();
+            ret.setRequestProperty ("Authorization",
+                "Basic " + encode (auth.getBytes (StandardCharsets.ISO_8859_1)));
+        }
+        if (getCookieProcessingEnabled ())
+            addCookies (ret);
+        if (null != getCache ())
+            getCache ().condition (ret);
+        if (null != getMonitor ())
+            getMonitor ().preConnect (ret);
+
+        return (ret);
+    }
+
+    /**
+     * Build the request for a conditioned connection.
+     * Header fields the HTTP client sets itself are skipped.
+     * @param connection The connection, as left by the monitor.
+     * @return The request.
+     * @exception ParserException If the URL is not a valid URI.
+     */
+    private HttpRequest build (HttpResponseConnection connection)
+        throws
+            ParserException
+    {
+        HttpRequest.Builder builder;
+
+        try
+        {
+            builder = HttpRequest.newBuilder (connection.getURL ().toURI ())
+                .method (connection.getRequestMethod (), HttpRequest.BodyPublishers.noBody ());
+        }
+        catch (URISyntaxException | IllegalArgumentException e)
+        {
+            throw new ParserException ("Error in opening a connection to "
+                + connection.getURL ().toExternalForm (), e);
+        }
+        for (Map.Entry<String, List<String>> entry : connection.getRequestProperties ().entrySet ())
+            if ((null != entry.getKey ()) && !RESTRICTED_HEADERS.contains (entry.getKey ().toLowerCase (Locale.ROOT)))
+                for (String value : entry.getValue ())
+                    builder.header (entry.getKey (), value);
+        if (0 < connection.getReadTimeout ())
+            builder.timeout (Duration.ofMillis (connection.getReadTimeout ()));
+
+        return (builder.build ());
+    }
+
+    /**
+     * Handle a response: let the monitor examine it, save its cookies and
+     * follow it if it is a redirection.
+     * @param connection The connection the request was made with.
+     * @param response The response.
+     * @param redirects The number of redirections followed so far.
+     * @return The future connection of the final response.
+     */
+    private CompletableFuture<HttpResponseConnection> respond (
+        HttpResponseConnection connection, HttpResponse<InputStream> response, int redirects)
+    {
+        String uri;
+        CompletableFuture<HttpResponseConnection> ret;
+
+        connection.setResponse (response, new PermitStream (response.body (), connection.getURL ().getHost ()));
+        try
+        {
+            if (null != getMonitor ())
+                getMonitor ().postConnect (connection);
+            if (getCookieProcessingEnabled ())
+                parseCookies (connection);
+            if ((3 == (response.statusCode () / 100)) && (redirects < getMaxRedirects ())
+                && (null != (uri = getLocation (connection))))
+            {
+                if (null != getCache ())
+                    getCache ().forget (connection);
+                connection.disconnect ();
+                ret = request (new URL (connection.getURL (), uri), redirects + 1);
+            }
+            else
+                ret = CompletableFuture.completedFuture (connection);
+        }
+        catch (ParserException pe)
+        {
+            connection.disconnect ();
+            ret = CompletableFuture.failedFuture (pe);
+        }
+        catch (MalformedURLException murle)
+        {
+            connection.disconnect ();
+            ret = CompletableFuture.failedFuture (new ParserException (
+                "Error in opening a connection to " + connection.getURL ().toExternalForm (), murle));
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Convert the failure of a request into a parser exception.
+     * @param url The URL requested.
+     * @param throwable The failure.
+     * @return The exception to complete the future with.
+     */
+    private ParserException failure (URL url, Throwable throwable)
+    {
+        int message;
+        ParserException ret;
+
+        while ((throwable instanceof CompletionException) && (null != throwable.getCause ()))
+            throwable = throwable.getCause ();
+        if (throwable instanceof ParserException)
+            ret = (ParserException)throwable;
+        else if ((throwable instanceof UnknownHostException)
+            || (throwable.getCause () instanceof UnresolvedAddressException))
+        {
+            message = (int)(Math.random () * FOUR_OH_FOUR.length);
+            ret = new ParserException (FOUR_OH_FOUR[message], throwable);
+        }
+        else
+            ret = new ParserException ("Error in opening a connection to "
+                + url.toExternalForm (), throwable);
+
+        return (ret);
+    }
+
+    /**
+     * Wait for a turn to request from a host.
+     * @param host The host to request from.
+     * @return A future that completes when the request may be sent.
+     */
+    private CompletableFuture<Void> acquire (String host)
+    {
+        Permits permits;
+        CompletableFuture<Void> ret;
+
+        synchronized (mHosts)
+        {
+            permits = mHosts.get (host);
+            if (null == permits)
+            {
+                permits = new Permits ();
+                mHosts.put (host, permits);
+            }
+            if (permits.mActive < getMaxConnectionsPerHost ())
+            {
+                permits.mActive++;
+                ret = CompletableFuture.completedFuture (null);
+            }
+            else
+            {
+                ret = new CompletableFuture<> ();
+                permits.mWaiting.add (ret);
+            }
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Give up a turn to request from a host, starting the next waiting request.
+     * @param host The host that was requested from.
+     */
+    private void release (String host)
+    {
+        Permits permits;
+        CompletableFuture<Void> next;
+
+        synchronized (mHosts)
+        {
+            permits = mHosts.get (host);
+            next = permits.mWaiting.poll ();
+            if ((null == next) && (0 == --permits.mActive))
+                mHosts.remove (host);
+        }
+        if (null != next)
+            next.complete (null); // outside the lock, this starts the request
+    }
+
+    /**
+     * The requests in progress to a host, and those waiting their turn.
+     */
+    private static class Permits
+    {
+        int mActive;
+        final Deque<CompletableFuture<Void>> mWaiting = new ArrayDeque<> ();
+    }
+
+    /**
+     * A response body that gives up its host's turn when it is read to the
+     * end or closed, or has gone unread for the permit timeout.
+     */
+    private class PermitStream
+        extends
+            FilterInputStream
+    {
+        private final String mHost;
+        private final long mTimeout;
+        private volatile boolean mReleased;
+        private volatile boolean mReading;
+        private volatile long mLastRead;
+
+        PermitStream (InputStream in, String host)
+        {
+            super (in);
+            mHost = host;
+            mTimeout = TimeUnit.MILLISECONDS.toNanos (getPermitTimeout ());
+            mReleased = false;
+            mReading = false;
+            mLastRead = System.nanoTime ();
+            watch (mTimeout);
+        }
+
+        private synchronized void done ()
+        {
+            if (!mReleased)
+            {
+                mReleased = true;
+                release (mHost);
+            }
+        }
+
+        /**
+         * Check for the timeout after a delay.
+         * @param delay The delay, in nanoseconds.
+         */
+        private void watch (long delay)
+        {
+            CompletableFuture.delayedExecutor (delay, TimeUnit.NANOSECONDS).execute (this::expire);
+        }
+
+        /**
+         * Give up the turn if the body has gone unread for the timeout,
+         * otherwise check again when it could have.
+         * A read waiting for the host is not idle.
+         */
+        private void expire ()
+        {
+            long idle;
+
+            if (!mReleased)
+            {
+                idle = System.nanoTime () - mLastRead;
+                if (mReading)
+                    watch (mTimeout);
+                else if (idle >= mTimeout)
+                    done ();
+                else
+                    watch (mTimeout - idle);
+            }
+        }
+
+        public int read ()
+            throws
+                IOException
+        {
+            int ret;
+
+            mReading = true;
+            try
+            {
+                ret = super.read ();
+            }
+            finally
+            {
+                mLastRead = System.nanoTime ();
+                mReading = false;
+            }
+            if (-1 == ret)
+                done ();
+
+            return (ret);
+        }
+
+        public int read (byte[] b, int off, int len)
+            throws
+                IOException
+        {
+            int ret;
+
+            mReading = true;
+            try
+            {
+                ret = super.read (b, off, len);
+            }
+            finally
+            {
+                mLastRead = System.nanoTime ();
+                mReading = false;
+            }
+            if (-1 == ret)
+                done ();
+
+            return (ret);
+        }
+
+        public void close ()
+            throws
+                IOException
+        {
+            try
+            {
+                super.close ();
+            }
+            finally
+            {
+                done ();
+            }
+        }
+    }
+
+    /**
+     * Holds the default executor, created on first use.
+     */
+    private static class DefaultExecutor
+    {
+        static final Executor EXECUTOR = Executors.newCachedThreadPool (runnable ->
+        {
+            Thread thread = new Thread (runnable, "htmlparser-fetch");
+            thread.setDaemon (true);
+            return (thread);
+        });
+    }
+
     /**
      * Encodes a byte array into BASE64 in accordance with
      * <a href="http://www.faqs.org/rfcs/rfc2045.html">RFC 2045</a>.
@@ -934,75 +1638,47 @@ public class ConnectionManager
      */
     public void addCookies (URLConnection connection)
     {
-        List list;
+        CookieJar jar;
+        List<Cookie> list;
         URL url;
         String host;
         String path;
         String domain;
+        String key;
+        String header;
+        long version;
 
-        if (null != mCookieJar)
+        jar = mCookieJar;
+        if (null != jar)
         {
-            list = null;
             // get the site from the URL
             url = connection.getURL ();
             host = url.getHost ();
             path = url.getPath ();
             if (0 == path.length ())
                 path = "/";
-            if (null != host)
-            {   // http://www.objectsdevelopment.com/portal/modules/freecontent/content/javawebserver.html
-                list = addCookies ((List)mCookieJar.get (host), path, list);
-                domain = getDomain (host);
-                if (null != domain)
-                    list = addCookies ((List)mCookieJar.get (domain),
-                        path, list);
-                else
-                    // maybe it is the domain we're accessing
-                    list = addCookies ((List)mCookieJar.get ("." + host),
-                        path, list);
-            }
-            if (null != list)
-                connection.setRequestProperty ("Cookie",
-                    generateCookieProperty (list));
-        }
-    }
-
-    /**
-     * Add qualified cookies from cookies into list.
-     * @param cookies The list of cookies to check (may be null).
-     * @param path The path being accessed.
-     * @param list The list of qualified cookies.
-     * @return The list of qualified cookies.
-     */
-    protected List addCookies (List cookies, String path, List list)
-    {
-        Cookie cookie;
-        Date expires;
-        Date now;
-
-        if (null != cookies)
-        {
-            now = new Date ();
-            for (int i = 0; i < cookies.size (); i++)
+            key = host + path;
+            header = jar.getHeader (key);
+            if (null == header)
             {
-                cookie = (Cookie)cookies.get (i);
-                expires = cookie.getExpiryDate ();
-                if ((null != expires) && expires.before (now))
-                {
-                    cookies.remove (i);
-                    i--; // dick with the loop variable
+                version = jar.getVersion ();
+                list = null;
+                if (null != host)
+                {   // http://www.objectsdevelopment.com/portal/modules/freecontent/content/javawebserver.html
+                    list = jar.addCookies (host, path, list);
+                    domain = getDomain (host);
+                    if (null != domain)
+                        list = jar.addCookies (domain, path, list);
+                    else
+                        // maybe it is the domain we're accessing
+                        list = jar.addCookies ("." + host, path, list);
                 }
-                else
-                    if (path.startsWith (cookie.getPath ()))
-                    {
-                        if (null == list)
-                            list = new ArrayList ();
-                        list.add (cookie);
-                    }
+                header = (null == list) ? "" : generateCookieProperty (list);
+                jar.putHeader (key, header, list, version);
             }
+            if (0 != header.length ())
+                connection.setRequestProperty ("Cookie", header);
         }
-        
-        return (list);
     }
 
     /**
@@ -1201,7 +1877,11 @@ public class ConnectionManager
                         String rest = tokenizer.nextToken ();
                         try
                         {
-                            Date date = mFormat.parse (value + comma + rest);
+                            Date date;
+                            synchronized (mFormat) // not thread safe
+                            {
+                                date = mFormat.parse (value + comma + rest);
+                            }
                             cookie.setExpiryDate (date);
                         }
                         catch (ParseException pe)
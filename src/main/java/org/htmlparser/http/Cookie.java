@@ -27,6 +27,7 @@ package org.htmlparser.http;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.Locale;
 
 /**
  * A HTTP cookie.
@@ -181,7 +182,7 @@ public class Cookie
      */
     public void setDomain (String pattern)
     {
-        mDomain = pattern.toLowerCase (); // IE allegedly needs this
+        mDomain = pattern.toLowerCase (Locale.ROOT); // IE allegedly needs this
     }
 
     /**
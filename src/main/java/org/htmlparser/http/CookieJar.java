@@ -0,0 +1,455 @@
+package org.htmlparser.http;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Thread safe cookie storage.
+ * Cookies are kept by domain, in a map keyed by the reversed labels of the
+ * domain, i.e. <code>www.example.com</code> is stored under
+ * <code>com.example.www</code>, so a site and all its subdomains are
+ * adjacent and can be found or removed together.
+ * The cookies of a domain are an array, replaced as a whole when it changes,
+ * that is kept sorted by path from most specific to least, so readers never
+ * lock. Changes are serialized.
+ * <p>
+ * Expired cookies are removed lazily, when a lookup comes across them.
+ * The number of cookies is bounded, when it is exceeded the cookies stored
+ * longest ago are dropped.
+ * <p>
+ * The value of the <code>Cookie</code> request header for a host and path is
+ * cached until the jar changes or one of its cookies expires. Cookies should
+ * not be altered once they are in the jar, or the cache will not notice.
+ */
+public class CookieJar
+{
+    /**
+     * The default maximum number of cookies.
+     */
+    public static final int DEFAULT_MAX_COOKIES = 10000;
+
+    /**
+     * The maximum number of cached request headers.
+     */
+    public static final int HEADER_CACHE_SIZE = 4096;
+
+    /**
+     * The cookies by reversed domain.
+     */
+    protected final ConcurrentSkipListMap<String, Cookie[]> mDomains;
+
+    /**
+     * The reversed domain of each cookie, in the order they were stored.
+     * Cookies don't override <code>equals()</code>, so this is by identity.
+     * Guarded by <code>this</code>.
+     */
+    protected final LinkedHashMap<Cookie, String> mOrder;
+
+    /**
+     * The maximum number of cookies.
+     */
+    protected volatile int mMaxCookies;
+
+    /**
+     * Incremented by every change.
+     */
+    protected volatile long mVersion;
+
+    /**
+     * Cached request headers by host and path.
+     */
+    protected final ConcurrentHashMap<String, Header> mHeaders;
+
+    /**
+     * Create an empty cookie jar holding up to {@link #DEFAULT_MAX_COOKIES}.
+     */
+    public CookieJar ()
+    {
+        this (DEFAULT_MAX_COOKIES);
+    }
+
+    /**
+     * Create an empty cookie jar.
+     * @param max The maximum number of cookies.
+     */
+    public CookieJar (int max)
+    {
+        if (0 >= max)
+            throw new IllegalArgumentException ("the maximum must be positive");
+        mDomains = new ConcurrentSkipListMap<> ();
+        mOrder = new LinkedHashMap<> ();
+        mMaxCookies = max;
+        mVersion = 0L;
+        mHeaders = new ConcurrentHashMap<> ();
+    }
+
+    /**
+     * Get the maximum number of cookies.
+     * @return The number of cookies beyond which the oldest are dropped.
+     */
+    public int getMaxCookies ()
+    {
+        return (mMaxCookies);
+    }
+
+    /**
+     * Set the maximum number of cookies.
+     * @param max The number of cookies beyond which the oldest are dropped.
+     */
+    public synchronized void setMaxCookies (int max)
+    {
+        if (0 >= max)
+            throw new IllegalArgumentException ("the maximum must be positive");
+        mMaxCookies = max;
+        trim ();
+    }
+
+    /**
+     * Get the number of cookies.
+     * @return The number of cookies stored, including any that have expired
+     * but have not been looked at since.
+     */
+    public synchronized int size ()
+    {
+        return (mOrder.size ());
+    }
+
+    /**
+     * Get the version of the jar's contents.
+     * @return A number that changes whenever a cookie is added or removed.
+     */
+    public long getVersion ()
+    {
+        return (mVersion);
+    }
+
+    /**
+     * Get the index key of a domain.
+     * @param domain The domain or host name, which may start with a dot.
+     * @return The labels of the domain in reverse order, in lower case.
+     * A leading dot becomes a trailing one.
+     */
+    public static String reverse (String domain)
+    {
+        StringBuilder ret;
+        int end;
+        int start;
+
+        domain = domain.toLowerCase (Locale.ROOT);
+        ret = new StringBuilder (domain.length ());
+        end = domain.length ();
+        while (0 <= end)
+        {
+            start = domain.lastIndexOf ('.', end - 1);
+            ret.append (domain, start + 1, end);
+            if (0 <= start)
+                ret.append ('.');
+            end = start;
+        }
+
+        return (ret.toString ());
+    }
+
+    /**
+     * Adds a cookie to the jar.
+     * A cookie with the same name and path replaces the one stored,
+     * otherwise it goes ahead of the cookies with the same name and a less
+     * specific path, or at the end.
+     * @param cookie The cookie to add.
+     * @param domain The domain to store it under.
+     */
+    public synchronized void add (Cookie cookie, String domain)
+    {
+        String key;
+        String path;
+        Cookie[] cookies;
+        Cookie[] next;
+        Cookie probe;
+        int index;
+        boolean replace;
+
+        key = reverse (domain);
+        path = cookie.getPath ();
+        cookies = mDomains.get (key);
+        if (null == cookies)
+            cookies = new Cookie[0];
+        index = cookies.length;
+        replace = false;
+        for (int i = 0; i < cookies.length; i++)
+        {
+            probe = cookies[i];
+            if (probe.getName ().equalsIgnoreCase (cookie.getName ()))
+            {
+                // we keep paths sorted most specific to least
+                if (probe.getPath ().equals (path))
+                {
+                    index = i;
+                    replace = true;
+                    break;
+                }
+                else if (path.startsWith (probe.getPath ()))
+                {
+                    index = i;
+                    break;
+                }
+            }
+        }
+        if (replace)
+        {
+            next = cookies.clone ();
+            mOrder.remove (cookies[index]);
+        }
+        else
+        {
+            next = new Cookie[cookies.length + 1];
+            System.arraycopy (cookies, 0, next, 0, index);
+            System.arraycopy (cookies, index, next, index + 1, cookies.length - index);
+        }
+        next[index] = cookie;
+        mDomains.put (key, next);
+        mOrder.put (cookie, key);
+        changed ();
+        trim ();
+    }
+
+    /**
+     * Remove a cookie.
+     * @param cookie The cookie to remove.
+     * @return <code>true</code> if the cookie was in the jar.
+     */
+    public synchronized boolean remove (Cookie cookie)
+    {
+        String key;
+        boolean ret;
+
+        key = mOrder.remove (cookie);
+        ret = null != key;
+        if (ret)
+        {
+            discard (key, cookie);
+            changed ();
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Remove the cookies of a domain and all of its subdomains.
+     * @param domain The domain, for example <code>example.com</code>.
+     */
+    public synchronized void removeAll (String domain)
+    {
+        String key;
+        Cookie[] cookies;
+        ConcurrentNavigableMap<String, Cookie[]> site;
+
+        key = reverse (domain);
+        cookies = mDomains.remove (key);
+        if (null != cookies)
+            for (int i = 0; i < cookies.length; i++)
+                mOrder.remove (cookies[i]);
+        // the dotted form and every subdomain, i.e. all keys starting "key."
+        site = mDomains.subMap (key + '.', true, key + (char)('.' + 1), false);
+        for (Cookie[] subdomain : site.values ())
+            for (int i = 0; i < subdomain.length; i++)
+                mOrder.remove (subdomain[i]);
+        site.clear ();
+        changed ();
+    }
+
+    /**
+     * Remove all cookies.
+     */
+    public synchronized void clear ()
+    {
+        mDomains.clear ();
+        mOrder.clear ();
+        changed ();
+    }
+
+    /**
+     * Get the cookies stored under a domain.
+     * @param domain The domain or host name.
+     * @return The cookies, most specific path first, which may have expired.
+     */
+    public List<Cookie> getCookies (String domain)
+    {
+        Cookie[] cookies;
+        List<Cookie> ret;
+
+        ret = new ArrayList<> ();
+        cookies = mDomains.get (reverse (domain));
+        if (null != cookies)
+            for (int i = 0; i < cookies.length; i++)
+                ret.add (cookies[i]);
+
+        return (ret);
+    }
+
+    /**
+     * Add the unexpired cookies of a domain that apply to a path to a list.
+     * Expired cookies that are found are removed.
+     * @param domain The domain or host name.
+     * @param path The path being accessed.
+     * @param list The list of qualified cookies, may be <code>null</code>.
+     * @return The list of qualified cookies, or <code>null</code> if there
+     * are none and none were passed in.
+     */
+    public List<Cookie> addCookies (String domain, String path, List<Cookie> list)
+    {
+        Cookie[] cookies;
+        Cookie cookie;
+        Date expires;
+        Date now;
+
+        cookies = mDomains.get (reverse (domain));
+        if (null != cookies)
+        {
+            now = new Date ();
+            for (int i = 0; i < cookies.length; i++)
+            {
+                cookie = cookies[i];
+                expires = cookie.getExpiryDate ();
+                if ((null != expires) && expires.before (now))
+                    remove (cookie);
+                else if (path.startsWith (cookie.getPath ()))
+                {
+                    if (null == list)
+                        list = new ArrayList<> ();
+                    list.add (cookie);
+                }
+            }
+        }
+
+        return (list);
+    }
+
+    /**
+     * Get a cached request header.
+     * @param key The host and path the header is for.
+     * @return The header value, the empty string if no cookies apply,
+     * or <code>null</code> if it is not cached.
+     */
+    public String getHeader (String key)
+    {
+        Header header;
+        String ret;
+
+        ret = null;
+        header = mHeaders.get (key);
+        if (null != header)
+            if ((header.mVersion == mVersion) && (System.currentTimeMillis () < header.mExpires))
+                ret = header.mValue;
+            else
+                mHeaders.remove (key, header);
+
+        return (ret);
+    }
+
+    /**
+     * Cache a request header.
+     * @param key The host and path the header is for.
+     * @param value The header value, the empty string if no cookies apply.
+     * @param cookies The cookies the header was generated from,
+     * may be <code>null</code>.
+     * @param version The {@link #getVersion version} of the jar before the
+     * cookies were looked up.
+     */
+    public void putHeader (String key, String value, List<Cookie> cookies, long version)
+    {
+        long expires;
+        Date expiry;
+
+        expires = Long.MAX_VALUE;
+        if (null != cookies)
+            for (Cookie cookie : cookies)
+                if (null != (expiry = cookie.getExpiryDate ()))
+                    expires = Math.min (expires, expiry.getTime ());
+        if (mHeaders.size () >= HEADER_CACHE_SIZE)
+            mHeaders.clear ();
+        mHeaders.put (key, new Header (value, version, expires));
+    }
+
+    /**
+     * Drop a cookie from its domain. Called with the lock held.
+     * @param key The reversed domain.
+     * @param cookie The cookie.
+     */
+    private void discard (String key, Cookie cookie)
+    {
+        Cookie[] cookies;
+        Cookie[] next;
+        int index;
+
+        cookies = mDomains.get (key);
+        if (null != cookies)
+        {
+            index = -1;
+            for (int i = 0; (-1 == index) && (i < cookies.length); i++)
+                if (cookie == cookies[i])
+                    index = i;
+            if (-1 != index)
+                if (1 == cookies.length)
+                    mDomains.remove (key);
+                else
+                {
+                    next = new Cookie[cookies.length - 1];
+                    System.arraycopy (cookies, 0, next, 0, index);
+                    System.arraycopy (cookies, index + 1, next, index, next.length - index);
+                    mDomains.put (key, next);
+                }
+        }
+    }
+
+    /**
+     * Drop the oldest cookies until the jar is within bounds.
+     * Called with the lock held.
+     */
+    private void trim ()
+    {
+        Iterator<Map.Entry<Cookie, String>> iterator;
+        Map.Entry<Cookie, String> oldest;
+
+        iterator = mOrder.entrySet ().iterator ();
+        while (mOrder.size () > mMaxCookies)
+        {
+            oldest = iterator.next ();
+            iterator.remove ();
+            discard (oldest.getValue (), oldest.getKey ());
+        }
+    }
+
+    /**
+     * Note a change, invalidating the cached headers.
+     * Called with the lock held.
+     */
+    private void changed ()
+    {
+        mVersion++;
+    }
+
+    /**
+     * A cached request header.
+     */
+    protected static class Header
+    {
+        final String mValue;
+        final long mVersion;
+        final long mExpires;
+
+        Header (String value, long version, long expires)
+        {
+            mValue = value;
+            mVersion = version;
+            mExpires = expires;
+        }
+    }
+}
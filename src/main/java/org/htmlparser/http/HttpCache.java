@@ -0,0 +1,813 @@
+package org.htmlparser.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A disk cache of HTTP responses, revalidated with conditional requests.
+ * A response to a <code>GET</code> that carries an <code>ETag</code> or
+ * <code>Last-Modified</code> header is stored as it is read, with its
+ * header fields. When the same URL is requested again, the request is made
+ * conditional with <code>If-None-Match</code> and
+ * <code>If-Modified-Since</code>, and if the server answers
+ * <code>304 Not Modified</code> the stored response is served instead,
+ * so an unchanged page costs no body transfer.
+ * <p>
+ * Bodies are kept as they were received. Bodies that were not already
+ * compressed by the server are stored compressed with GZIP, and
+ * expanded again when they are served.
+ * The cache is limited in size, the least recently used entries are
+ * evicted first. Responses marked <code>Cache-Control: no-store</code>
+ * are not cached.
+ * <p>
+ * Each entry is a <code>.body</code> file and a <code>.meta</code>
+ * properties file, named with the SHA-256 digest of the URL, so the cache
+ * survives restarts and can be shared by several connection managers.
+ * @see ConnectionManager#setCache
+ */
+public class HttpCache
+{
+    /**
+     * The default maximum size of the cache, 64 megabytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024L * 1024L;
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOG = Logger.getLogger (HttpCache.class.getName ());
+
+    /**
+     * The directory holding the entries.
+     */
+    protected final File mDirectory;
+
+    /**
+     * The maximum total size of the stored bodies.
+     */
+    protected long mMaxSize;
+
+    /**
+     * The total size of the stored bodies.
+     */
+    protected long mSize;
+
+    /**
+     * The entries by key, least recently used first.
+     */
+    protected final LinkedHashMap<String, Entry> mEntries;
+
+    /**
+     * The number of responses served from the cache.
+     */
+    protected final AtomicLong mHits;
+
+    /**
+     * The number of responses that were not in the cache, or had changed.
+     */
+    protected final AtomicLong mMisses;
+
+    /**
+     * The entries requests were made conditional on, with their bodies
+     * open, by connection.
+     */
+    private final Map<HttpURLConnection, Validation> mValidations;
+
+    /**
+     * Create a cache of at most {@link #DEFAULT_MAX_SIZE} bytes.
+     * @param directory The directory to keep the entries in.
+     * @exception IOException If the directory cannot be created.
+     */
+    public HttpCache (File directory)
+        throws
+            IOException
+    {
+        this (directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a cache. Entries already in the directory are kept.
+     * @param directory The directory to keep the entries in.
+     * @param max The maximum total size of the stored bodies, in bytes.
+     * @exception IOException If the directory cannot be created.
+     */
+    public HttpCache (File directory, long max)
+        throws
+            IOException
+    {
+        if (0 >= max)
+            throw new IllegalArgumentException ("the maximum must be positive");
+        if (!directory.isDirectory () && !directory.mkdirs ())
+            throw new IOException ("cannot create cache directory " + directory);
+        mDirectory = directory;
+        mMaxSize = max;
+        mSize = 0L;
+        mEntries = new LinkedHashMap<> (16, 0.75f, true);
+        mHits = new AtomicLong ();
+        mMisses = new AtomicLong ();
+        mValidations = new WeakHashMap<> ();
+        load ();
+    }
+
+    /**
+     * Get the number of responses served from the cache.
+     * @return The number of <code>304 Not Modified</code> responses
+     * replaced by a stored response.
+     */
+    public long getHits ()
+    {
+        return (mHits.get ());
+    }
+
+    /**
+     * Get the number of responses not served from the cache.
+     * @return The number of responses to <code>GET</code> requests that
+     * transferred a body.
+     */
+    public long getMisses ()
+    {
+        return (mMisses.get ());
+    }
+
+    /**
+     * Get the size of the cache.
+     * @return The total size of the stored bodies, in bytes.
+     */
+    public synchronized long getSize ()
+    {
+        return (mSize);
+    }
+
+    /**
+     * Get the number of entries.
+     * @return The number of stored responses.
+     */
+    public synchronized int getCount ()
+    {
+        return (mEntries.size ());
+    }
+
+    /**
+     * Get the maximum size of the cache.
+     * @return The maximum total size of the stored bodies, in bytes.
+     */
+    public synchronized long getMaxSize ()
+    {
+        return (mMaxSize);
+    }
+
+    /**
+     * Set the maximum size of the cache, evicting entries if need be.
+     * @param max The maximum total size of the stored bodies, in bytes.
+     */
+    public synchronized void setMaxSize (long max)
+    {
+        if (0 >= max)
+            throw new IllegalArgumentException ("the maximum must be positive");
+        mMaxSize = max;
+        trim ();
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear ()
+    {
+        for (Entry entry : mEntries.values ())
+            delete (entry);
+        mEntries.clear ();
+        mSize = 0L;
+    }
+
+    //
+    // request and response processing
+    //
+
+    /**
+     * Make a request conditional if its URL is in the cache.
+     * Called before the connection is connected.
+     * The stored body is opened now, so the response it is validated
+     * against is still there for {@link #respond}, even if it is evicted in
+     * between. If it is already gone, the request is left unconditional.
+     * @param connection The connection about to make a request.
+     */
+    public void condition (HttpURLConnection connection)
+    {
+        Entry entry;
+        InputStream body;
+
+        if ("GET".equals (connection.getRequestMethod ()))
+        {
+            entry = get (key (connection.getURL ()));
+            if (null != entry)
+                try
+                {
+                    body = open (entry);
+                    forget (connection);
+                    synchronized (mValidations)
+                    {
+                        mValidations.put (connection, new Validation (entry, body));
+                    }
+                    if (null != entry.mETag)
+                        connection.setRequestProperty ("If-None-Match", entry.mETag);
+                    if (null != entry.mLastModified)
+                        connection.setRequestProperty ("If-Modified-Since", entry.mLastModified);
+                }
+                catch (IOException ioe)
+                {
+                    // evicted, ask for the whole response
+                }
+        }
+    }
+
+    /**
+     * Close the stored body a request was made conditional on.
+     * Called instead of {@link #respond} when the response to a conditional
+     * request is not used, for instance when it is a redirection. Otherwise
+     * the body stays open until the connection is garbage collected.
+     * @param connection The connection passed to {@link #condition}.
+     */
+    public void forget (HttpURLConnection connection)
+    {
+        close (take (connection));
+    }
+
+    /**
+     * Process the response to a request.
+     * A <code>304 Not Modified</code> response to a request made conditional
+     * by {@link #condition} is replaced by the stored response it was
+     * validated against. A cacheable response is returned as a connection
+     * whose body is stored as it is read.
+     * Other responses are returned unchanged.
+     * @param connection The connected connection.
+     * @return The connection to read the response from.
+     * @exception IOException If the response code cannot be read.
+     */
+    public HttpURLConnection respond (HttpURLConnection connection)
+        throws
+            IOException
+    {
+        String key;
+        Validation validation;
+        Entry entry;
+        HttpResponseConnection cached;
+        List<String> keys;
+        List<String> values;
+        String name;
+        String value;
+        String control;
+        HttpURLConnection ret;
+
+        ret = connection;
+        validation = take (connection);
+        if ("GET".equals (connection.getRequestMethod ()))
+        {
+            key = key (connection.getURL ());
+            if ((HttpURLConnection.HTTP_NOT_MODIFIED == connection.getResponseCode ()) && (null != validation))
+            {
+                release (connection);
+                cached = new HttpResponseConnection (connection.getURL (), connection.usingProxy ());
+                cached.setResponse (HttpURLConnection.HTTP_OK, validation.mEntry.mKeys,
+                    validation.mEntry.mValues, validation.mBody);
+                validation = null;
+                mHits.incrementAndGet ();
+                ret = cached;
+            }
+            else
+            {
+                mMisses.incrementAndGet ();
+                control = connection.getHeaderField ("Cache-Control");
+                if ((HttpURLConnection.HTTP_OK == connection.getResponseCode ())
+                    && ((null != connection.getHeaderField ("ETag")) || (null != connection.getHeaderField ("Last-Modified")))
+                    && ((null == control) || (-1 == control.toLowerCase ().indexOf ("no-store"))))
+                {
+                    keys = new ArrayList<> ();
+                    values = new ArrayList<> ();
+                    for (int i = 0; null != (value = connection.getHeaderField (i)); i++)
+                        if (null != (name = connection.getHeaderFieldKey (i)))
+                        {
+                            keys.add (name);
+                            values.add (value);
+                        }
+                    entry = new Entry (key, connection.getURL ().toExternalForm (), keys, values);
+                    cached = new HttpResponseConnection (connection.getURL (), connection.usingProxy ());
+                    cached.setResponse (HttpURLConnection.HTTP_OK, keys, values,
+                        new Store (connection.getInputStream (), entry));
+                    ret = cached;
+                }
+            }
+        }
+        close (validation);
+
+        return (ret);
+    }
+
+    /**
+     * Remove the stored body a request was made conditional on.
+     * @param connection The connection passed to {@link #condition}.
+     * @return The entry and its open body,
+     * or <code>null</code> if the request was not made conditional.
+     */
+    private Validation take (HttpURLConnection connection)
+    {
+        synchronized (mValidations)
+        {
+            return (mValidations.remove (connection));
+        }
+    }
+
+    /**
+     * Close the stored body of an unused validation.
+     * @param validation The validation, or <code>null</code>.
+     */
+    private static void close (Validation validation)
+    {
+        if (null != validation)
+            try
+            {
+                validation.mBody.close ();
+            }
+            catch (IOException ioe)
+            {
+                // it wasn't needed
+            }
+    }
+
+    /**
+     * Finish with the empty body of a <code>304</code> response,
+     * so the connection can be reused.
+     * @param connection The connection.
+     */
+    private void release (HttpURLConnection connection)
+    {
+        try
+        {
+            connection.getInputStream ().close ();
+        }
+        catch (IOException ioe)
+        {
+            // the stored response is still good
+        }
+    }
+
+    /**
+     * Open the stored body of an entry.
+     * @param entry The entry.
+     * @return The body, as it was received.
+     * @exception IOException If the body cannot be read.
+     */
+    protected InputStream open (Entry entry)
+        throws
+            IOException
+    {
+        InputStream ret;
+
+        ret = new BufferedInputStream (new FileInputStream (entry.body (mDirectory)));
+        if (entry.mCompressed)
+            ret = new GZIPInputStream (ret);
+
+        return (ret);
+    }
+
+    //
+    // index maintenance
+    //
+
+    /**
+     * Get the key of a URL.
+     * @param url The URL.
+     * @return The hexadecimal SHA-256 digest of the URL.
+     */
+    protected static String key (URL url)
+    {
+        byte[] digest;
+        StringBuilder ret;
+
+        try
+        {
+            digest = MessageDigest.getInstance ("SHA-256").digest (
+                url.toExternalForm ().getBytes (StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException nsae)
+        {
+            throw new IllegalStateException ("SHA-256 is not available", nsae);
+        }
+        ret = new StringBuilder (digest.length * 2);
+        for (int i = 0; i < digest.length; i++)
+        {
+            ret.append (Character.forDigit ((digest[i] >> 4) & 0xf, 16));
+            ret.append (Character.forDigit (digest[i] & 0xf, 16));
+        }
+
+        return (ret.toString ());
+    }
+
+    /**
+     * Look up an entry, making it the most recently used.
+     * @param key The key of the URL.
+     * @return The entry, or <code>null</code> if it is not cached.
+     */
+    protected synchronized Entry get (String key)
+    {
+        return (mEntries.get (key));
+    }
+
+    /**
+     * Add an entry whose files have been written.
+     * @param entry The new entry.
+     */
+    protected synchronized void put (Entry entry)
+    {
+        Entry old;
+
+        old = mEntries.put (entry.mKey, entry);
+        if (null != old)
+            mSize -= old.mLength; // its files were replaced
+        mSize += entry.mLength;
+        trim ();
+    }
+
+    /**
+     * Evict the least recently used entries until the cache fits.
+     * Called with the lock held.
+     */
+    private void trim ()
+    {
+        Iterator<Entry> iterator;
+        Entry eldest;
+
+        iterator = mEntries.values ().iterator ();
+        while ((mSize > mMaxSize) && iterator.hasNext ())
+        {
+            eldest = iterator.next ();
+            iterator.remove ();
+            mSize -= eldest.mLength;
+            delete (eldest);
+        }
+    }
+
+    /**
+     * Delete the files of an entry.
+     * @param entry The entry.
+     */
+    private void delete (Entry entry)
+    {
+        entry.body (mDirectory).delete ();
+        entry.meta (mDirectory).delete ();
+    }
+
+    /**
+     * Read the entries in the cache directory, oldest first.
+     */
+    private void load ()
+    {
+        File[] files;
+        Entry entry;
+
+        files = mDirectory.listFiles ((dir, name) -> name.endsWith (".meta"));
+        if (null != files)
+        {
+            Arrays.sort (files, (a, b) -> Long.compare (a.lastModified (), b.lastModified ()));
+            for (int i = 0; i < files.length; i++)
+                try
+                {
+                    entry = Entry.read (files[i]);
+                    if (entry.body (mDirectory).isFile ())
+                    {
+                        mEntries.put (entry.mKey, entry);
+                        mSize += entry.mLength;
+                    }
+                    else
+                        files[i].delete ();
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    LOG.log (Level.WARNING, "Ignoring unreadable cache entry " + files[i], e);
+                }
+            trim ();
+        }
+    }
+
+    /**
+     * A cached response.
+     */
+    protected static class Entry
+    {
+        final String mKey;
+        final String mUrl;
+        final List<String> mKeys;
+        final List<String> mValues;
+        final String mETag;
+        final String mLastModified;
+        boolean mCompressed;
+        long mLength;
+
+        Entry (String key, String url, List<String> keys, List<String> values)
+        {
+            mKey = key;
+            mUrl = url;
+            mKeys = keys;
+            mValues = values;
+            mETag = field ("ETag");
+            mLastModified = field ("Last-Modified");
+            mCompressed = null == field ("Content-Encoding");
+            mLength = 0L;
+        }
+
+        String field (String name)
+        {
+            String ret;
+
+            ret = null;
+            for (int i = 0; (null == ret) && (i < mKeys.size ()); i++)
+                if (name.equalsIgnoreCase (mKeys.get (i)))
+                    ret = mValues.get (i);
+
+            return (ret);
+        }
+
+        File body (File directory)
+        {
+            return (new File (directory, mKey + ".body"));
+        }
+
+        File meta (File directory)
+        {
+            return (new File (directory, mKey + ".meta"));
+        }
+
+        void write (File directory)
+            throws
+                IOException
+        {
+            Properties properties;
+            OutputStream out;
+
+            properties = new Properties ();
+            properties.setProperty ("url", mUrl);
+            properties.setProperty ("compressed", Boolean.toString (mCompressed));
+            properties.setProperty ("length", Long.toString (mLength));
+            properties.setProperty ("fields", Integer.toString (mKeys.size ()));
+            for (int i = 0; i < mKeys.size (); i++)
+            {
+                properties.setProperty ("key." + i, mKeys.get (i));
+                properties.setProperty ("value." + i, mValues.get (i));
+            }
+            out = new FileOutputStream (meta (directory));
+            try
+            {
+                properties.store (out, null);
+            }
+            finally
+            {
+                out.close ();
+            }
+        }
+
+        static Entry read (File meta)
+            throws
+                IOException
+        {
+            Properties properties;
+            InputStream in;
+            String name;
+            int count;
+            List<String> keys;
+            List<String> values;
+            Entry ret;
+
+            properties = new Properties ();
+            in = new FileInputStream (meta);
+            try
+            {
+                properties.load (in);
+            }
+            finally
+            {
+                in.close ();
+            }
+            name = meta.getName ();
+            count = Integer.parseInt (properties.getProperty ("fields"));
+            keys = new ArrayList<> ();
+            values = new ArrayList<> ();
+            for (int i = 0; i < count; i++)
+            {
+                keys.add (properties.getProperty ("key." + i));
+                values.add (properties.getProperty ("value." + i));
+            }
+            ret = new Entry (name.substring (0, name.length () - ".meta".length ()),
+                properties.getProperty ("url"), keys, values);
+            ret.mCompressed = Boolean.parseBoolean (properties.getProperty ("compressed"));
+            ret.mLength = Long.parseLong (properties.getProperty ("length"));
+
+            return (ret);
+        }
+    }
+
+    /**
+     * The entry a request was made conditional on, with its body open.
+     */
+    private static class Validation
+    {
+        final Entry mEntry;
+        final InputStream mBody;
+
+        Validation (Entry entry, InputStream body)
+        {
+            mEntry = entry;
+            mBody = body;
+        }
+    }
+
+    /**
+     * A response body that is stored in the cache as it is read.
+     * The entry is added when the body has been read to the end, or as far
+     * as its <code>Content-Length</code>, since readers may stop there.
+     * A body that is closed early is discarded.
+     */
+    private class Store
+        extends
+            FilterInputStream
+    {
+        private final Entry mEntry;
+        private File mTemporary;
+        private OutputStream mOut;
+        private long mCount;
+        private long mExpected;
+
+        Store (InputStream in, Entry entry)
+        {
+            super (in);
+            mEntry = entry;
+            mCount = 0L;
+            mExpected = -1L;
+            try
+            {
+                if (null != entry.field ("Content-Length"))
+                    mExpected = Long.parseLong (entry.field ("Content-Length").trim ());
+            }
+            catch (NumberFormatException nfe)
+            {
+                // read to the end
+            }
+            try
+            {
+                mTemporary = File.createTempFile (entry.mKey, ".tmp", mDirectory);
+                mOut = new BufferedOutputStream (new FileOutputStream (mTemporary));
+                if (entry.mCompressed)
+                    mOut = new GZIPOutputStream (mOut);
+            }
+            catch (IOException ioe)
+            {
+                LOG.log (Level.WARNING, "Cannot cache " + entry.mUrl, ioe);
+                abandon ();
+            }
+        }
+
+        public int read ()
+            throws
+                IOException
+        {
+            int ret;
+
+            ret = super.read ();
+            if (-1 == ret)
+                commit ();
+            else if (null != mOut)
+                try
+                {
+                    mOut.write (ret);
+                    if (++mCount == mExpected)
+                        commit ();
+                }
+                catch (IOException ioe)
+                {
+                    abandon ();
+                }
+
+            return (ret);
+        }
+
+        public int read (byte[] b, int off, int len)
+            throws
+                IOException
+        {
+            int ret;
+
+            ret = super.read (b, off, len);
+            if (-1 == ret)
+                commit ();
+            else if (null != mOut)
+                try
+                {
+                    mOut.write (b, off, ret);
+                    mCount += ret;
+                    if (mCount == mExpected)
+                        commit ();
+                }
+                catch (IOException ioe)
+                {
+                    abandon ();
+                }
+
+            return (ret);
+        }
+
+        public long skip (long n)
+            throws
+                IOException
+        {
+            abandon (); // the stored body would have a hole
+            return (super.skip (n));
+        }
+
+        public void close ()
+            throws
+                IOException
+        {
+            try
+            {
+                super.close ();
+            }
+            finally
+            {
+                abandon ();
+            }
+        }
+
+        /**
+         * Store the body, now that all of it has been read.
+         */
+        private void commit ()
+        {
+            if (null != mOut)
+                try
+                {
+                    mOut.close ();
+                    mOut = null;
+                    mEntry.mLength = mTemporary.length ();
+                    Files.move (mTemporary.toPath (), mEntry.body (mDirectory).toPath (),
+                        StandardCopyOption.REPLACE_EXISTING);
+                    mTemporary = null;
+                    mEntry.write (mDirectory);
+                    put (mEntry);
+                }
+                catch (IOException ioe)
+                {
+                    LOG.log (Level.WARNING, "Cannot cache " + mEntry.mUrl, ioe);
+                    abandon ();
+                }
+        }
+
+        /**
+         * Stop storing the body.
+         */
+        private void abandon ()
+        {
+            if (null != mOut)
+            {
+                try
+                {
+                    mOut.close ();
+                }
+                catch (IOException ioe)
+                {
+                    // it's being thrown away
+                }
+                mOut = null;
+            }
+            if (null != mTemporary)
+            {
+                mTemporary.delete ();
+                mTemporary = null;
+            }
+        }
+    }
+}
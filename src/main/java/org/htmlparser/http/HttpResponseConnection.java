@@ -0,0 +1,238 @@
+package org.htmlparser.http;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Presents a request made with a {@link java.net.http.HttpClient}, or a
+ * response from the {@link HttpCache}, as a <code>HttpURLConnection</code>.
+ * Before the response arrives, request properties and the request method
+ * are collected like any other connection, so {@link ConnectionMonitor#preConnect}
+ * and {@link ConnectionManager#addCookies} can condition the request.
+ * Once the response is set, the status, header fields and body are those of
+ * the response, so {@link ConnectionMonitor#postConnect},
+ * {@link ConnectionManager#parseCookies} and
+ * {@link org.htmlparser.lexer.Page#setConnection} work unchanged.
+ * The connection is connected by the connection manager, {@link #connect}
+ * does nothing.
+ */
+class HttpResponseConnection
+    extends
+        HttpURLConnection
+{
+    /**
+     * The response, or <code>null</code> before it arrives.
+     */
+    protected HttpResponse<InputStream> mResponse;
+
+    /**
+     * The response body.
+     */
+    protected InputStream mBody;
+
+    /**
+     * The header field names, in order, with <code>null</code> for the
+     * status line.
+     */
+    protected List<String> mKeys;
+
+    /**
+     * The header field values, in the same order as the keys.
+     */
+    protected List<String> mValues;
+
+    /**
+     * <code>true</code> if the request goes through a proxy.
+     */
+    protected boolean mProxied;
+
+    /**
+     * Create a connection that is not yet connected.
+     * @param url The URL to request.
+     * @param proxied <code>true</code> if the request goes through a proxy.
+     */
+    HttpResponseConnection (URL url, boolean proxied)
+    {
+        super (url);
+        mResponse = null;
+        mBody = null;
+        mKeys = Collections.emptyList ();
+        mValues = Collections.emptyList ();
+        mProxied = proxied;
+    }
+
+    /**
+     * Get the response.
+     * @return The response, or <code>null</code> if it hasn't arrived
+     * or didn't come from a <code>HttpClient</code>.
+     */
+    public HttpResponse<InputStream> getResponse ()
+    {
+        return (mResponse);
+    }
+
+    /**
+     * Set the response, which connects this connection.
+     * @param response The response to the request.
+     * @param body The stream to read the body from, which wraps the
+     * body of the response.
+     */
+    void setResponse (HttpResponse<InputStream> response, InputStream body)
+    {
+        List<String> keys;
+        List<String> values;
+
+        keys = new ArrayList<> ();
+        values = new ArrayList<> ();
+        for (Map.Entry<String, List<String>> entry : response.headers ().map ().entrySet ())
+            for (String value : entry.getValue ())
+            {
+                keys.add (entry.getKey ());
+                values.add (value);
+            }
+        setResponse (response.statusCode (), keys, values, body);
+        mResponse = response;
+        mValues.set (0, (HttpClient.Version.HTTP_2 == response.version () ? "HTTP/2 " : "HTTP/1.1 ")
+            + response.statusCode ());
+    }
+
+    /**
+     * Set the response, which connects this connection.
+     * @param code The status code.
+     * @param keys The header field names.
+     * @param values The header field values, in the same order.
+     * @param body The stream to read the body from.
+     */
+    void setResponse (int code, List<String> keys, List<String> values, InputStream body)
+    {
+        mBody = body;
+        mKeys = new ArrayList<> ();
+        mValues = new ArrayList<> ();
+        mKeys.add (null);
+        mValues.add ("HTTP/1.1 " + code);
+        mKeys.addAll (keys);
+        mValues.addAll (values);
+        responseCode = code;
+        connected = true;
+    }
+
+    //
+    // HttpURLConnection overrides
+    //
+
+    /**
+     * Does nothing, the connection manager sends the request.
+     */
+    public void connect ()
+    {
+    }
+
+    /**
+     * Closes the response body, if any.
+     */
+    public void disconnect ()
+    {
+        if (null != mBody)
+            try
+            {
+                mBody.close ();
+            }
+            catch (IOException ioe)
+            {
+                // nothing to do
+            }
+    }
+
+    public boolean usingProxy ()
+    {
+        return (mProxied);
+    }
+
+    public int getResponseCode ()
+        throws
+            IOException
+    {
+        if (!connected)
+            throw new IOException ("no response");
+
+        return (responseCode);
+    }
+
+    public String getHeaderField (String name)
+    {
+        String ret;
+
+        // like HttpURLConnection, the last value wins
+        ret = null;
+        if (null != name)
+            for (int i = mKeys.size () - 1; (null == ret) && (0 < i); i--)
+                if (name.equalsIgnoreCase (mKeys.get (i)))
+                    ret = mValues.get (i);
+
+        return (ret);
+    }
+
+    public String getHeaderFieldKey (int n)
+    {
+        return ((0 <= n) && (n < mKeys.size ()) ? mKeys.get (n) : null);
+    }
+
+    public String getHeaderField (int n)
+    {
+        return ((0 <= n) && (n < mValues.size ()) ? mValues.get (n) : null);
+    }
+
+    public Map<String, List<String>> getHeaderFields ()
+    {
+        Map<String, List<String>> ret;
+
+        ret = new TreeMap<> (String.CASE_INSENSITIVE_ORDER);
+        for (int i = 1; i < mKeys.size (); i++)
+            ret.computeIfAbsent (mKeys.get (i), key -> new ArrayList<> ()).add (mValues.get (i));
+
+        return (Collections.unmodifiableMap (ret));
+    }
+
+    /**
+     * Get the response body.
+     * As with <code>HttpURLConnection</code>, an error status throws.
+     * @return The stream of the response body.
+     * @exception IOException If there is no response yet or the response
+     * is an error.
+     */
+    public InputStream getInputStream ()
+        throws
+            IOException
+    {
+        if (!connected)
+            throw new IOException ("no response");
+        if ((HTTP_NOT_FOUND == responseCode) || (HTTP_GONE == responseCode))
+        {
+            disconnect ();
+            throw new FileNotFoundException (url.toExternalForm ());
+        }
+        if (400 <= responseCode)
+        {
+            disconnect ();
+            throw new IOException ("Server returned HTTP response code: "
+                + responseCode + " for URL: " + url.toExternalForm ());
+        }
+
+        return (mBody);
+    }
+
+    public InputStream getErrorStream ()
+    {
+        return ((connected && (400 <= responseCode)) ? mBody : null);
+    }
+}
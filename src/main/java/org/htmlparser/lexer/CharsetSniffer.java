@@ -0,0 +1,342 @@
+package org.htmlparser.lexer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Locale;
+
+/**
+ * Determines the character set of a page before it is decoded.
+ * Without this, a page is decoded with the character set of the HTTP
+ * header (or the default) until a
+ * <code>&lt;META HTTP-EQUIV="Content-Type" CONTENT="...; charset=..."&gt;</code>
+ * tag is parsed, at which point {@link Page#setEncoding} re-decodes what has
+ * been read so far and, if any of it differs, throws an
+ * {@link org.htmlparser.util.EncodingChangeException} which makes the
+ * string and filter beans parse the whole page again.
+ * <p>
+ * The sniffer looks at the first bytes of the stream, in the manner of the
+ * HTML5 encoding prescan, and picks:
+ * <ol>
+ * <li>the character set of a byte order mark, if there is one</li>
+ * <li>otherwise the character set given by the first
+ * <code>&lt;META CHARSET="..."&gt;</code> or
+ * <code>&lt;META HTTP-EQUIV="Content-Type" CONTENT="..."&gt;</code> tag,
+ * i.e. the one the page would switch to</li>
+ * <li>otherwise the character set from the Content-Type header,
+ * passed in by the caller</li>
+ * </ol>
+ * The stream must support <code>mark()</code> and <code>reset()</code>,
+ * which a {@link Stream} does.
+ */
+public class CharsetSniffer
+{
+    /**
+     * The default number of bytes examined.
+     */
+    public static final int DEFAULT_SIZE = 4096;
+
+    /**
+     * The number of bytes examined.
+     */
+    protected int mSize;
+
+    /**
+     * Create a sniffer that examines the first {@link #DEFAULT_SIZE} bytes.
+     */
+    public CharsetSniffer ()
+    {
+        this (DEFAULT_SIZE);
+    }
+
+    /**
+     * Create a sniffer.
+     * @param size The number of bytes at the start of a page to examine.
+     */
+    public CharsetSniffer (int size)
+    {
+        if (0 >= size)
+            throw new IllegalArgumentException ("size must be positive");
+        mSize = size;
+    }
+
+    /**
+     * Get the number of bytes examined.
+     * @return The size of the prefetch.
+     */
+    public int getSize ()
+    {
+        return (mSize);
+    }
+
+    /**
+     * Determine the character set of a stream.
+     * The stream is left where it was, except that a UTF-8 byte order mark,
+     * which the decoder would pass on as a character, is skipped.
+     * @param stream The stream of bytes, which must support mark and reset.
+     * @param fallback The character set to use if the page doesn't say,
+     * usually from the HTTP header.
+     * @return The canonical name of the character set to decode the stream
+     * with, or <code>fallback</code>.
+     * @exception IOException If the stream can't be read or reset.
+     */
+    public String sniff (InputStream stream, String fallback)
+        throws
+            IOException
+    {
+        byte[] bytes;
+        int length;
+        int read;
+        String ret;
+
+        bytes = new byte[mSize];
+        length = 0;
+        stream.mark (mSize);
+        try
+        {
+            while ((length < bytes.length) && (-1 != (read = stream.read (bytes, length, bytes.length - length))))
+                length += read;
+        }
+        finally
+        {
+            stream.reset ();
+        }
+        if ((3 <= length) && ((byte)0xef == bytes[0]) && ((byte)0xbb == bytes[1]) && ((byte)0xbf == bytes[2]))
+        {
+            ret = "UTF-8";
+            stream.skip (3);
+            stream.mark (Integer.MAX_VALUE);
+        }
+        else if ((2 <= length) && ((((byte)0xfe == bytes[0]) && ((byte)0xff == bytes[1]))
+            || (((byte)0xff == bytes[0]) && ((byte)0xfe == bytes[1]))))
+            ret = "UTF-16"; // the decoder reads the byte order mark
+        else
+        {
+            ret = prescan (bytes, length);
+            if (null == ret)
+                ret = fallback;
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Find the character set declared by a META tag.
+     * @param bytes The first bytes of the page.
+     * @param length The number of valid bytes.
+     * @return The canonical name of the declared character set, or
+     * <code>null</code> if none was found.
+     */
+    protected String prescan (byte[] bytes, int length)
+    {
+        String[] charset;
+        int index;
+        int end;
+
+        charset = new String[1];
+        index = 0;
+        while ((null == charset[0]) && (index < length))
+        {
+            if ('<' != bytes[index])
+                index++;
+            else if (matches (bytes, length, index, "<!--"))
+            {
+                end = find (bytes, length, index + 4, "-->");
+                index = (-1 == end) ? length : end + 3;
+            }
+            else if (matches (bytes, length, index, "<meta") && (index + 5 < length)
+                && (isSpace (bytes[index + 5]) || ('/' == bytes[index + 5])))
+                index = meta (bytes, length, index + 5, charset);
+            else
+            {
+                // skip any other tag, declaration or processing instruction
+                end = find (bytes, length, index + 1, ">");
+                index = (-1 == end) ? length : end + 1;
+            }
+        }
+
+        return (charset[0]);
+    }
+
+    /**
+     * Examine the attributes of a META tag.
+     * @param bytes The first bytes of the page.
+     * @param length The number of valid bytes.
+     * @param index The index of the first byte after the tag name.
+     * @param found Where to store the canonical name of the character set
+     * declared by the tag, if any.
+     * @return The index after the tag.
+     */
+    private int meta (byte[] bytes, int length, int index, String[] found)
+    {
+        String name;
+        String value;
+        String charset;
+        String content;
+        boolean contentType;
+        int start;
+        byte quote;
+        int ret;
+
+        charset = null;
+        content = null;
+        contentType = false;
+        ret = -1;
+        while (-1 == ret)
+        {
+            while ((index < length) && (isSpace (bytes[index]) || ('/' == bytes[index])))
+                index++;
+            if ((index >= length) || ('>' == bytes[index]))
+                ret = Math.min (index + 1, length);
+            else
+            {
+                start = index;
+                while ((index < length) && !isSpace (bytes[index]) && ('=' != bytes[index])
+                    && ('>' != bytes[index]) && ('/' != bytes[index]))
+                    index++;
+                name = ascii (bytes, start, index);
+                while ((index < length) && isSpace (bytes[index]))
+                    index++;
+                value = "";
+                if ((index < length) && ('=' == bytes[index]))
+                {
+                    index++;
+                    while ((index < length) && isSpace (bytes[index]))
+                        index++;
+                    if ((index < length) && (('"' == bytes[index]) || ('\'' == bytes[index])))
+                    {
+                        quote = bytes[index++];
+                        start = index;
+                        while ((index < length) && (quote != bytes[index]))
+                            index++;
+                        value = ascii (bytes, start, index);
+                        index++;
+                    }
+                    else
+                    {
+                        start = index;
+                        while ((index < length) && !isSpace (bytes[index]) && ('>' != bytes[index]))
+                            index++;
+                        value = ascii (bytes, start, index);
+                    }
+                }
+                if ("charset".equalsIgnoreCase (name))
+                    charset = value;
+                else if ("content".equalsIgnoreCase (name))
+                    content = value;
+                else if ("http-equiv".equalsIgnoreCase (name))
+                    contentType = "content-type".equalsIgnoreCase (value.trim ());
+            }
+        }
+        if ((null == charset) && contentType && (null != content))
+            charset = extract (content);
+        if (null != charset)
+        {
+            charset = canonical (charset.trim ());
+            // bytes that look like ASCII can't be UTF-16
+            if ((null != charset) && charset.startsWith ("UTF-16"))
+                charset = "UTF-8";
+            found[0] = charset;
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Extract the charset parameter from a content type.
+     * @param content The content type, like <code>text/html; charset=UTF-8</code>.
+     * @return The charset parameter, or <code>null</code> if there is none.
+     */
+    protected static String extract (String content)
+    {
+        int index;
+        int end;
+        String ret;
+
+        ret = null;
+        index = content.toLowerCase (Locale.ROOT).indexOf ("charset");
+        if (-1 != index)
+        {
+            content = content.substring (index + 7).trim ();
+            if (content.startsWith ("="))
+            {
+                content = content.substring (1).trim ();
+                if (content.startsWith ("\"") || content.startsWith ("'"))
+                {
+                    end = content.indexOf (content.charAt (0), 1);
+                    ret = content.substring (1, (-1 == end) ? content.length () : end);
+                }
+                else
+                {
+                    for (end = 0; end < content.length (); end++)
+                        if ((';' == content.charAt (end)) || Character.isWhitespace (content.charAt (end)))
+                            break;
+                    ret = content.substring (0, end);
+                }
+            }
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Look up the canonical name of a character set.
+     * @param name The name, or an alias, of the character set.
+     * @return The canonical name, or <code>null</code> if it is not supported.
+     */
+    protected static String canonical (String name)
+    {
+        String ret;
+
+        try
+        {
+            ret = Charset.isSupported (name) ? Charset.forName (name).name () : null;
+        }
+        catch (IllegalCharsetNameException icne)
+        {
+            ret = null;
+        }
+
+        return (ret);
+    }
+
+    private static boolean isSpace (byte b)
+    {
+        return ((' ' == b) || ('\t' == b) || ('\n' == b) || ('\r' == b) || ('\f' == b));
+    }
+
+    private static boolean matches (byte[] bytes, int length, int index, String string)
+    {
+        boolean ret;
+
+        ret = index + string.length () <= length;
+        for (int i = 0; ret && (i < string.length ()); i++)
+            ret = string.charAt (i) == Character.toLowerCase ((char)(bytes[index + i] & 0xff));
+
+        return (ret);
+    }
+
+    private static int find (byte[] bytes, int length, int index, String string)
+    {
+        int ret;
+
+        ret = -1;
+        for (int i = index; (-1 == ret) && (i + string.length () <= length); i++)
+            if (matches (bytes, length, i, string))
+                ret = i;
+
+        return (ret);
+    }
+
+    private static String ascii (byte[] bytes, int start, int end)
+    {
+        StringBuilder ret;
+
+        ret = new StringBuilder (Math.max (0, end - start));
+        for (int i = start; i < end; i++)
+            ret.append ((char)(bytes[i] & 0xff));
+
+        return (ret.toString ());
+    }
+}
@@ -44,11 +44,19 @@ public class InputStreamSource
         Source
 {
     /**
-     * An initial buffer size.
+     * The size of the chunks characters are stored in,
+     * when the number of characters is not known.
      * Has a default value of {16384}.
      */
     public static int BUFFER_SIZE = 16384;
 
+    /**
+     * The largest chunk allocated before any characters are read.
+     * A larger size, say from a content length that may well be wrong,
+     * is reduced to this.
+     */
+    public static final int MAX_CHUNK_SIZE = 1 << 21;
+
     /**
      * The stream of bytes.
      * Set to <code>null</code> when the source is closed.
@@ -66,9 +74,16 @@ public class InputStreamSource
     protected transient InputStreamReader mReader;
 
     /**
-     * The characters read so far.
+     * The characters read so far, in chunks of <code>mChunkSize</code>
+     * characters. Chunks are allocated as they are needed, so the buffer
+     * grows without copying the characters already read.
+     */
+    protected char[][] mChunks;
+
+    /**
+     * The size of each chunk.
      */
-    protected char[] mBuffer;
+    protected int mChunkSize;
 
     /**
      * The number of valid bytes in the buffer.
@@ -116,7 +131,10 @@ public class InputStreamSource
      * Create a source of characters.
      * @param stream The stream of bytes to use.
      * @param charset The character set used in encoding the stream.
-     * @param size The initial character buffer size.
+     * @param size The size of the chunks the characters are stored in.
+     * If the number of characters is known, or can be estimated, a single
+     * chunk of that size avoids any further allocation. Sizes beyond
+     * <code>MAX_CHUNK_SIZE</code> are reduced to it.
      * @exception UnsupportedEncodingException If the character set
      * is unsupported.
      */
@@ -152,7 +170,8 @@ public class InputStreamSource
             mEncoding = charset;
             mReader = new InputStreamReader (stream, charset);
         }
-        mBuffer = new char[size];
+        mChunks = new char[1][];
+        mChunkSize = Math.max (1, Math.min (size, MAX_CHUNK_SIZE));
         mLevel = 0;
         mOffset = 0;
         mMark = -1;
@@ -198,7 +217,7 @@ public class InputStreamSource
             ClassNotFoundException
     {
         in.defaultReadObject ();
-        if (null != mBuffer) // buffer is null when destroy's been called
+        if (null != mChunks) // chunks are null when destroy's been called
             // pretend we're open, mStream goes null when exhausted
             mStream = new ByteArrayInputStream (new byte[0]);
     }
@@ -248,9 +267,11 @@ public class InputStreamSource
     {
         String encoding;
         InputStream stream;
-        char[] buffer;
+        char[][] chunks;
         int offset;
         char[] new_chars;
+        int read;
+        int count;
 
         encoding = getEncoding ();
         if (!encoding.equalsIgnoreCase (character_set))
@@ -258,32 +279,36 @@ public class InputStreamSource
             stream = getStream ();
             try
             {
-                buffer = mBuffer;
+                chunks = mChunks;
                 offset = mOffset;
                 stream.reset ();
                 try
                 {
                     mEncoding = character_set;
                     mReader = new InputStreamReader (stream, character_set);
-                    mBuffer = new char[mBuffer.length];
+                    mChunks = new char[1][];
                     mLevel = 0;
                     mOffset = 0;
                     mMark = -1;
                     if (0 != offset)
                     {
                         new_chars = new char[offset];
-                        if (offset != read (new_chars))
+                        // reads stop at the end of a chunk, so repeat
+                        count = 0;
+                        while ((count < offset) && (EOF != (read = read (new_chars, count, offset - count))))
+                            count += read;
+                        if (offset != count)
                             throw new ParserException ("reset stream failed");
                         for (int i = 0; i < offset; i++)
-                            if (new_chars[i] != buffer[i])
+                            if (new_chars[i] != chunks[i / mChunkSize][i % mChunkSize])
                                 throw new EncodingChangeException ("character mismatch (new: "
                                 + new_chars[i]
                                 + " [0x"
                                 + Integer.toString (new_chars[i], 16)
                                 + "] != old: "
                                 + " [0x"
-                                + Integer.toString (buffer[i], 16)
-                                + buffer[i]
+                                + Integer.toString (chunks[i / mChunkSize][i % mChunkSize], 16)
+                                + chunks[i / mChunkSize][i % mChunkSize]
                                 + "]) for encoding change from "
                                 + encoding
                                 + " to "
@@ -310,6 +335,9 @@ public class InputStreamSource
     /**
      * Fetch more characters from the underlying reader.
      * Has no effect if the underlying reader has been drained.
+     * Characters are read into the free space of the last chunk,
+     * or a new chunk if it is full, so fewer than <code>min</code>
+     * characters may be read.
      * @param min The minimum to read.
      * @exception IOException If the underlying reader read() throws one.
      */
@@ -317,32 +345,26 @@ public class InputStreamSource
         throws
             IOException
     {
-        char[] buffer;
-        int size;
+        char[][] chunks;
+        int index;
+        int position;
         int read;
 
         if (null != mReader) // mReader goes null when it's been sucked dry
         {
-            size = mBuffer.length - mLevel; // available space
-            if (size < min) // oops, better get some buffer space
-            {
-                // unknown length... keep doubling
-                size = mBuffer.length * 2;
-                read = mLevel + min;
-                if (size < read) // or satisfy min, whichever is greater
-                    size = read;
-                else
-                    min = size - mLevel; // read the max
-                buffer = new char[size];
-            }
-            else
-            {
-                buffer = mBuffer;
-                min = size;
+            index = mLevel / mChunkSize;
+            position = mLevel - index * mChunkSize;
+            if (index == mChunks.length)
+            {   // more chunks, only the references are copied
+                chunks = new char[mChunks.length * 2][];
+                System.arraycopy (mChunks, 0, chunks, 0, mChunks.length);
+                mChunks = chunks;
             }
+            if (null == mChunks[index])
+                mChunks[index] = new char[mChunkSize];
 
-            // read into the end of the 'new' buffer
-            read = mReader.read (buffer, mLevel, min);
+            // read into the end of the chunk
+            read = mReader.read (mChunks[index], position, mChunkSize - position);
             
             if (EOF == read)
             {
@@ -350,15 +372,32 @@ public class InputStreamSource
                 mReader = null;
             }
             else
-            {
-                if (mBuffer != buffer)
-                {   // copy the bytes previously read
-                    System.arraycopy (mBuffer, 0, buffer, 0, mLevel);
-                    mBuffer = buffer;
-                }
                 mLevel += read;
-            }
-            // todo, should repeat on read shorter than original min
+        }
+    }
+
+    /**
+     * Copy characters already read into an array.
+     * @param start The offset of the first character.
+     * @param array The array to copy to.
+     * @param offset The index in the array of the first character.
+     * @param length The number of characters to copy.
+     */
+    protected void copy (int start, char[] array, int offset, int length)
+    {
+        int index;
+        int position;
+        int count;
+
+        while (0 < length)
+        {
+            index = start / mChunkSize;
+            position = start - index * mChunkSize;
+            count = Math.min (length, mChunkSize - position);
+            System.arraycopy (mChunks[index], position, array, offset, count);
+            start += count;
+            offset += count;
+            length -= count;
         }
     }
 
@@ -397,10 +436,10 @@ public class InputStreamSource
             if (mOffset >= mLevel)
                 ret = EOF;
             else
-                ret = mBuffer[mOffset++];
+                ret = mChunks[mOffset / mChunkSize][mOffset++ % mChunkSize];
         }
         else
-            ret = mBuffer[mOffset++];
+            ret = mChunks[mOffset / mChunkSize][mOffset++ % mChunkSize];
 
         return (ret);
     }
@@ -433,7 +472,7 @@ public class InputStreamSource
         else
         {
             ret = Math.min (mLevel - mOffset, len);
-            System.arraycopy (mBuffer, mOffset, cbuf, off, ret);
+            copy (mOffset, cbuf, off, ret);
             mOffset += ret;
         }
 
@@ -578,10 +617,10 @@ public class InputStreamSource
 
         if (null == mStream)
             throw new IOException ("source is closed");
-        if (offset >= mBuffer.length)
+        if (offset >= mLevel)
             throw new IOException ("illegal read ahead");
         else
-            ret = mBuffer[offset];
+            ret = mChunks[offset / mChunkSize][offset % mChunkSize];
         
         return (ret);
     }
@@ -601,7 +640,7 @@ public class InputStreamSource
     {
         if (null == mStream)
             throw new IOException ("source is closed");
-        System.arraycopy (mBuffer, start, array, offset, end - start);
+        copy (start, array, offset, end - start);
     }
     
     /**
@@ -614,14 +653,25 @@ public class InputStreamSource
      */
     public String getString (int offset, int length) throws IOException
     {
+        int index;
+        int position;
+        char[] characters;
         String ret;
 
         if (null == mStream)
             throw new IOException ("source is closed");
-        if (offset + length > mBuffer.length)
+        if (offset + length > mLevel)
             throw new IOException ("illegal read ahead");
+        index = offset / mChunkSize;
+        position = offset - index * mChunkSize;
+        if (position + length <= mChunkSize)
+            ret = new String (mChunks[index], position, length);
         else
-            ret = new String (mBuffer, offset, length);
+        {
+            characters = new char[length];
+            copy (offset, characters, 0, length);
+            ret = new String (characters);
+        }
         
         return (ret);
     }
@@ -636,9 +686,21 @@ public class InputStreamSource
      */
     public void getCharacters (StringBuilder buffer, int offset, int length) throws IOException
     {
+        int index;
+        int position;
+        int count;
+
         if (null == mStream)
             throw new IOException ("source is closed");
-        buffer.append (mBuffer, offset, length);
+        while (0 < length)
+        {
+            index = offset / mChunkSize;
+            position = offset - index * mChunkSize;
+            count = Math.min (length, mChunkSize - position);
+            buffer.append (mChunks[index], position, count);
+            offset += count;
+            length -= count;
+        }
     }
 
     /**
@@ -657,7 +719,7 @@ public class InputStreamSource
         if (null != mReader)
             mReader.close ();
         mReader = null;
-        mBuffer = null;
+        mChunks = null;
         mLevel = 0;
         mOffset = 0;
         mMark = -1;
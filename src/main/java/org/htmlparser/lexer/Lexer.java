@@ -29,7 +29,13 @@ import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import org.htmlparser.Attribute;
 
@@ -42,6 +48,8 @@ import org.htmlparser.http.ConnectionManager;
 import org.htmlparser.nodes.RemarkNode;
 import org.htmlparser.nodes.TextNode;
 import org.htmlparser.nodes.TagNode;
+import org.htmlparser.util.Cancellation;
+import org.htmlparser.util.ParseLimitException;
 import org.htmlparser.util.ParserException;
 
 /**
@@ -103,6 +111,18 @@ public class Lexer
      */
     public static boolean STRICT_REMARKS = true;
 
+    /**
+     * The number of nodes between checks of the time budget
+     * of the {@link #setLimits limits}.
+     */
+    public static final int TIME_CHECK_INTERVAL = 256;
+
+    /**
+     * The number of nodes between checks of the
+     * {@link #setCancellation cancellation}.
+     */
+    public static final int CANCEL_CHECK_INTERVAL = 64;
+
     /**
      * The page lexemes are retrieved from.
      */
@@ -120,6 +140,84 @@ public class Lexer
     
     protected Consumer<Node> nodeConsumer;
 
+    /**
+     * Told about each node as it is added, complete, to its parent by a
+     * scanner, see {@link #setChildConsumer}.
+     */
+    protected BiConsumer<Tag, Node> childConsumer;
+
+    /**
+     * A node handed back by {@link #pushBack}, returned again by the next
+     * call to {@link #next(boolean)} instead of lexing it a second time.
+     */
+    protected Node mPushed;
+
+    /**
+     * The quote smart setting the pushed back node was lexed with.
+     */
+    protected boolean mPushedQuoteSmart;
+
+    /**
+     * The upper case names of the elements whose contents are skipped,
+     * or <code>null</code> if none are.
+     */
+    protected String[] mSkipped;
+
+    /**
+     * If <code>true</code>, tags are parsed with the {@link TagTable}.
+     */
+    protected boolean mTableDriven;
+
+    /**
+     * The bookmarks of the table driven tag parser, reused from tag to tag.
+     */
+    protected transient int[] mMarks;
+
+    /**
+     * The buffer CDATA and skipped elements are examined in, reused from
+     * element to element. Each lexer has its own, so lexers on different
+     * threads can skip the same page.
+     */
+    protected transient char[] mBlock;
+
+    /**
+     * The budgets of the parse, or <code>null</code> if unlimited.
+     */
+    protected ParseLimits mLimits;
+
+    /**
+     * The number of nodes lexed since the page was set or reset.
+     */
+    protected long mNodes;
+
+    /**
+     * When the first node was lexed, from <code>System.nanoTime()</code>.
+     */
+    protected long mStarted;
+
+    /**
+     * The number of times each limit was hit, by ordinal,
+     * or <code>null</code> if none has been.
+     */
+    protected int[] mHits;
+
+    /**
+     * <code>true</code> when the node or time budget has run out and
+     * the rest of the page is dropped.
+     */
+    protected boolean mTruncated;
+
+    /**
+     * The request to give up on the parse, or <code>null</code> if none.
+     */
+    protected Cancellation mCancellation;
+
+    /**
+     * <code>true</code> when the parse was cancelled and
+     * the rest of the page is dropped.
+     */
+    protected boolean mCancelled;
+
     /**
      * Line number to trigger on.
      * This is tested on each <code>next()</code> call, as a debugging aid.
@@ -213,6 +311,8 @@ public class Lexer
             throw new IllegalArgumentException ("page cannot be null");
         // todo: sanity checks
         mPage = page;
+        mPushed = null;
+        restart ();
     }
 
     /**
@@ -234,6 +334,7 @@ public class Lexer
             throw new IllegalArgumentException ("cursor cannot be null");
         // todo: sanity checks
         mCursor = cursor;
+        mPushed = null;
     }
 
     /**
@@ -264,6 +365,122 @@ public class Lexer
         this.nodeConsumer = nodeConsumer;
     }
 
+    /**
+     * Get the names of the elements whose contents are skipped.
+     * @return The upper case names, empty if no contents are skipped.
+     * @see #setSkippedTags
+     */
+    public Set<String> getSkippedTags ()
+    {
+        Set<String> ret;
+
+        ret = new LinkedHashSet<> ();
+        if (null != mSkipped)
+            Collections.addAll (ret, mSkipped);
+
+        return (Collections.unmodifiableSet (ret));
+    }
+
+    /**
+     * Set the names of the elements whose contents are skipped.
+     * The start tag of such an element is returned with just its name,
+     * the attributes aren't parsed, and the lexer then moves straight to
+     * the element's end tag, without creating nodes for anything in
+     * between. The end tag is returned by the following call to
+     * {@link #next}, so the element is reduced to its start and end tag,
+     * which still record where the element begins and ends on the page.
+     * The content ends at the first end tag with the element's name,
+     * other than in a comment, or at the end of the page. Empty XML tags,
+     * such as &lt;svg/&gt;, have no content to skip.
+     * <p>
+     * The scanners of composite tags, including the
+     * {@link org.htmlparser.scanners.ScriptScanner} and
+     * {@link org.htmlparser.scanners.StyleScanner}, give skipped elements
+     * no children.
+     * @param names The element names, in any case, or <code>null</code>
+     * to skip nothing.
+     */
+    public void setSkippedTags (Set<String> names)
+    {
+        Set<String> upper;
+
+        if ((null == names) || names.isEmpty ())
+            mSkipped = null;
+        else
+        {
+            upper = new LinkedHashSet<> ();
+            for (String name : names)
+                if ((null != name) && (0 != name.length ()))
+                    upper.add (name.toUpperCase (Locale.ENGLISH));
+            mSkipped = upper.isEmpty () ? null : upper.toArray (new String[0]);
+        }
+    }
+
+    /**
+     * Determine if the content of an element is skipped.
+     * @param tag The start tag of the element.
+     * @return <code>true</code> if the tag is named in the
+     * {@link #setSkippedTags skipped tags}, isn't an end tag and
+     * isn't an empty XML tag.
+     */
+    public boolean isSkipped (Tag tag)
+    {
+        String name;
+        boolean ret;
+
+        ret = false;
+        if ((null != mSkipped) && !tag.isEndTag () && !tag.isEmptyXmlTag ())
+        {
+            name = tag.getTagName ();
+            for (int i = 0; !ret && (i < mSkipped.length); i++)
+                ret = mSkipped[i].equals (name);
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Determine if tags are parsed with a transition table.
+     * @return <code>true</code> if the table driven tag parser is used.
+     * @see #setTableDriven
+     */
+    public boolean isTableDriven ()
+    {
+        return (mTableDriven);
+    }
+
+    /**
+     * Choose how tags and their attributes are parsed.
+     * The table driven parser runs the same state machine as the
+     * hand written one in {@link #parseTag}, and makes tags with the same
+     * attributes and positions, but looks up each transition in a table
+     * by character class, without backing up over characters or allocating
+     * the bookmarks for each tag.
+     * Default <code>false</code>.
+     * @param table If <code>true</code> use the table driven parser.
+     */
+    public void setTableDriven (boolean table)
+    {
+        mTableDriven = table;
+    }
+
+    public BiConsumer<Tag, Node> getChildConsumer() {
+        return childConsumer;
+    }
+
+    /**
+     * Set the consumer told about nodes as they are completed.
+     * Scanners that build the node tree pass each node to the consumer,
+     * along with its parent, right after appending it to the parent's
+     * children. At that time the node and its subtree are complete, as are
+     * the preceding siblings, while the parent is still open.
+     * Top level nodes, which have no parent, are not passed.
+     * @param childConsumer The consumer, or <code>null</code> for none.
+     */
+    public void setChildConsumer(BiConsumer<Tag, Node> childConsumer) {
+        this.childConsumer = childConsumer;
+    }
+
     /**
      * Get the current cursor position.
      * @return The current character offset into the source.
@@ -283,6 +500,24 @@ public class Lexer
         getCursor ().setPosition (position);
     }
 
+    /**
+     * Back up over the node just returned by {@link #next(boolean)}.
+     * The cursor is moved back to the start of the node, as with
+     * {@link #setPosition}, but the node itself is kept and handed out by
+     * the next call to <code>next()</code> with the same quote smart setting,
+     * without lexing it again or passing it to the
+     * {@link #setNodeConsumer node consumer} a second time.
+     * If the cursor is moved before then, the node is forgotten.
+     * @param node The node to return next.
+     * @param quotesmart The quote smart setting the node was lexed with.
+     */
+    public void pushBack (Node node, boolean quotesmart)
+    {
+        mPushed = node;
+        mPushedQuoteSmart = quotesmart;
+        getCursor ().setPosition (node.getStartPosition ());
+    }
+
     /**
      * Get the current line number.
      * @return The line number the lexer's working on.
@@ -312,8 +547,216 @@ public class Lexer
      */
     public void reset ()
     {
+        mPushed = null;
         getPage ().reset ();
         setCursor (new Cursor (getPage (), 0));
+        restart ();
+    }
+
+    /**
+     * Get the budgets of the parse.
+     * @return The limits, or <code>null</code> if the parse is unlimited.
+     * @see #setLimits
+     */
+    public ParseLimits getLimits ()
+    {
+        return (mLimits);
+    }
+
+    /**
+     * Set the budgets of the parse.
+     * The counts of nodes and limits hit are not reset, so limits may be
+     * set part way through a page.
+     * @param limits The limits, or <code>null</code> for an unlimited parse.
+     */
+    public void setLimits (ParseLimits limits)
+    {
+        mLimits = limits;
+    }
+
+    /**
+     * Get the request to give up on the parse.
+     * @return The cancellation, or <code>null</code> if there is none.
+     * @see #setCancellation
+     */
+    public Cancellation getCancellation ()
+    {
+        return (mCancellation);
+    }
+
+    /**
+     * Set the request to give up on the parse.
+     * The cancellation is checked before the first node and then every
+     * {@link #CANCEL_CHECK_INTERVAL} nodes. Once it is seen, the rest of the
+     * page is dropped, as when the node budget of the limits runs out, and
+     * {@link #isCancelled} is <code>true</code> until the page is set or reset.
+     * @param cancellation The cancellation, or <code>null</code> for none.
+     */
+    public void setCancellation (Cancellation cancellation)
+    {
+        mCancellation = cancellation;
+    }
+
+    /**
+     * Determine if the parse was cancelled.
+     * @return <code>true</code> if the rest of the page was dropped
+     * because the {@link #setCancellation cancellation} was cancelled.
+     */
+    public boolean isCancelled ()
+    {
+        return (mCancelled);
+    }
+
+    /**
+     * Get the number of nodes lexed.
+     * Nodes are only counted while there are {@link #setLimits limits}
+     * or a {@link #setCancellation cancellation}.
+     * @return The number of nodes since the page was set or reset.
+     */
+    public long getNodeCount ()
+    {
+        return (mNodes);
+    }
+
+    /**
+     * Get the number of times a limit was hit.
+     * @param limit The limit.
+     * @return The number of times the limit was exceeded since the page
+     * was set or reset.
+     */
+    public int getLimitHits (ParseLimits.Limit limit)
+    {
+        return ((null == mHits) ? 0 : mHits[limit.ordinal ()]);
+    }
+
+    /**
+     * Determine if the rest of the page is dropped.
+     * @return <code>true</code> if the node or time budget has run out,
+     * after which {@link #next} returns <code>null</code>.
+     */
+    public boolean isTruncated ()
+    {
+        return (mTruncated);
+    }
+
+    /**
+     * Record that a limit was exceeded.
+     * Used by the lexer, and the scanners that enforce the depth limit.
+     * @param limit The limit.
+     * @exception ParseLimitException If the limits aren't truncating.
+     */
+    public void exceeded (ParseLimits.Limit limit)
+        throws
+            ParseLimitException
+    {
+        if (null == mHits)
+            mHits = new int[ParseLimits.Limit.values ().length];
+        mHits[limit.ordinal ()]++;
+        if (!mLimits.isTruncating ())
+            throw new ParseLimitException (limit, "the " + limit + " limit of "
+                + mLimits.get (limit) + " was exceeded at line "
+                + (getCurrentLineNumber () + 1) + " of " + getPage ().getUrl ());
+    }
+
+    /**
+     * Reset the counts of the limits.
+     */
+    private void restart ()
+    {
+        mNodes = 0;
+        mHits = null;
+        mTruncated = false;
+        mCancelled = false;
+    }
+
+    /**
+     * Check the cancellation, and the node and time budgets, before another
+     * node is lexed.
+     * If the parse was cancelled, or a budget has run out and there is more
+     * on the page, the rest of the page is dropped. Iterators call this to
+     * know if there are more nodes, and {@link #next} calls it before lexing
+     * each node.
+     * @return <code>false</code> if the rest of the page is dropped.
+     * @exception ParserException If a budget ran out and the limits
+     * aren't truncating, or the page can't be read.
+     */
+    public boolean checkLimits ()
+        throws
+            ParserException
+    {
+        long time;
+        ParseLimits.Limit limit;
+        boolean ret;
+
+        ret = !mTruncated;
+        if (ret && (null != mCancellation)
+            && (0 == mNodes % CANCEL_CHECK_INTERVAL) && mCancellation.isCancelled ())
+        {
+            mTruncated = true;
+            mCancelled = true;
+            ret = false;
+        }
+        if (ret && (null != mLimits))
+        {
+            limit = null;
+            if (mNodes >= mLimits.getMaxNodes ())
+                limit = ParseLimits.Limit.NODES;
+            else if ((0 != mNodes) && (0 == mNodes % TIME_CHECK_INTERVAL)
+                && (Long.MAX_VALUE != (time = mLimits.getMaxTime ()))
+                && (System.nanoTime () - mStarted > TimeUnit.MILLISECONDS.toNanos (time)))
+                limit = ParseLimits.Limit.TIME;
+            // a pushed back node has been counted already
+            if ((null != limit) && (null == mPushed)
+                && (Page.EOF != mPage.getCharacter (new Cursor (mPage, mCursor.getPosition ()))))
+            {
+                mTruncated = true;
+                ret = false;
+                exceeded (limit);
+            }
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Drop the attributes over the limit.
+     * An empty XML tag keeps its closing slash.
+     * @param attributes The attributes of a tag, with its name first.
+     * @exception ParseLimitException If there are too many attributes and
+     * the limits aren't truncating.
+     */
+    private void limit (List<Attribute> attributes)
+        throws
+            ParseLimitException
+    {
+        long max;
+        int size;
+        int count;
+        int cut;
+        Attribute last;
+        String name;
+
+        max = mLimits.getMaxAttributes ();
+        size = attributes.size ();
+        // the name and whitespace count for nothing, so only look if the
+        // list could hold too many
+        if (size - 1 > max)
+        {
+            count = 0;
+            cut = -1;
+            for (int i = 1; (-1 == cut) && (i < size); i++)
+                if (!attributes.get (i).isWhitespace () && (++count > max))
+                    cut = i;
+            if (-1 != cut)
+            {
+                exceeded (ParseLimits.Limit.ATTRIBUTES);
+                last = attributes.get (size - 1);
+                attributes.subList (cut, size).clear ();
+                name = last.getName ();
+                if ((null != name) && name.endsWith ("/"))
+                    attributes.add (new Attribute ("/", null));
+            }
+        }
     }
 
     /**
@@ -340,7 +783,26 @@ public class Lexer
      */
     public Node next (boolean quotesmart) throws ParserException {
         
+        final Node pushed = mPushed;
+        
+        if (null != pushed)
+        {
+            mPushed = null;
+            if ((quotesmart == mPushedQuoteSmart) && (mCursor.getPosition () == pushed.getStartPosition ()))
+            {
+                mCursor.setPosition (pushed.getEndPosition ());
+                return pushed;
+            }
+        }
+        
+        if (mTruncated || (((null != mLimits) || (null != mCancellation)) && !checkLimits ()))
+            return (null);
+
         final Node next = this.doNext(quotesmart);
+
+        // count nodes against the limits and between cancellation checks
+        if (((null != mLimits) || (null != mCancellation)) && (null != next) && (1 == ++mNodes))
+            mStarted = System.nanoTime ();
     
         if(this.nodeConsumer != null) {
             
@@ -350,7 +812,15 @@ public class Lexer
         return next;
     }
     
-    private Node doNext (boolean quotesmart) throws ParserException {
+    /**
+     * Lex the node at the cursor.
+     * Called by {@link #next(boolean)} once the pushed back node and the
+     * limits have been dealt with.
+     * @param quotesmart If <code>true</code>, strings ignore quoted contents.
+     * @return The node, or <code>null</code> at the end of the page.
+     * @exception ParserException If a problem occurs reading from the source.
+     */
+    protected Node doNext (boolean quotesmart) throws ParserException {
         int start;
         char ch;
         Node ret;
@@ -450,6 +920,21 @@ public class Lexer
         return (parseCDATA (false));
     }
 
+    /**
+     * Get the buffer CDATA and skipped elements are examined in.
+     * @return This lexer's buffer, allocated when first needed.
+     */
+    protected char[] block ()
+    {
+        char[] ret;
+
+        ret = mBlock;
+        if (null == ret)
+            mBlock = ret = new char[Page.CDATA_BLOCK];
+
+        return (ret);
+    }
+
     /**
      * Return CDATA as a text node.
      * Slightly less rigid than {@link #parseCDATA()} this method provides for
@@ -457,6 +942,9 @@ public class Lexer
      * ETAGO ("&lt;/") delimiters and skips single and multiline comments.
      * @param quotesmart If <code>true</code> the strict definition of CDATA is
      * extended to allow for single or double quoted ETAGO ("&lt;/") sequences.
+     * If <code>false</code>, the page is scanned a block at a time with
+     * {@link Page#skipCDATA}, and the text node holds only the start and end
+     * positions until its text is asked for.
      * @return The <code>TextNode</code> of the CDATA or <code>null</code> if none.
      * @see #parseCDATA()
      * @exception ParserException If a problem occurs reading from the source.
@@ -475,10 +963,12 @@ public class Lexer
 
         start = mCursor.getPosition ();
         state = 0;
-        done = false;
+        done = !quotesmart;
         quote = 0;
         comment = false;
 
+        if (!quotesmart)
+            mPage.skipCDATA (mCursor, block ());
         while (!done)
         {
             ch = mPage.getCharacter (mCursor);
@@ -865,6 +1355,13 @@ public class Lexer
         Node ret;
 
         length = end - start;
+        if ((null != mLimits) && (length > mLimits.getMaxTextLength ()))
+        {
+            // keep the start of the text
+            exceeded (ParseLimits.Limit.TEXT);
+            length = (int)mLimits.getMaxTextLength ();
+            end = start + length;
+        }
         if (0 != length)
             // got some characters
             ret = getNodeFactory ().createStringNode (
@@ -1014,12 +1511,18 @@ public class Lexer
         throws
             ParserException
     {
+        String name;
         boolean done;
         char ch;
         int state;
         int[] bookmarks;
         List<Attribute> attributes;
 
+        name = (null == mSkipped) ? null : skipped ();
+        if (null != name)
+            return (parseSkippedTag (start, name));
+        if (mTableDriven)
+            return (parseTableDrivenTag (start));
         done = false;
         attributes = new ArrayList<>();
         state = 0;
@@ -1179,6 +1682,263 @@ public class Lexer
         return (makeTag (start, mCursor.getPosition (), attributes));
     }
 
+    /**
+     * Parse a tag with the {@link TagTable}.
+     * The result is the same as that of {@link #parseTag}.
+     * @param start The position at which to start scanning.
+     * @return The parsed tag.
+     * @exception ParserException If a problem occurs reading from the source.
+     */
+    protected Node parseTableDrivenTag (int start)
+        throws
+            ParserException
+    {
+        int[] marks;
+        int state;
+        int position;
+        int type;
+        int entry;
+        List<Attribute> attributes;
+
+        marks = mMarks;
+        if (null == marks)
+            mMarks = marks = new int[8];
+        attributes = new ArrayList<> ();
+        state = 0;
+        marks[0] = mCursor.getPosition ();
+        do
+        {
+            position = mCursor.getPosition ();
+            type = TagTable.classify (mPage.getCharacter (mCursor));
+            marks[state + 1] = position;
+            entry = TagTable.TRANSITIONS[(state << 3) + type];
+            // most characters only change the state
+            if (0 != (entry & ~0xf))
+                entry = act (entry, type, position, marks, attributes);
+            state = entry & 0xf;
+        }
+        while (0 == (entry & TagTable.DONE));
+        // don't consume the opening angle of the next node
+        if (0 != (entry & TagTable.BEFORE))
+            mCursor.setPosition (position);
+
+        return (makeTag (start, mCursor.getPosition (), attributes));
+    }
+
+    /**
+     * Perform the actions of a {@link TagTable} entry.
+     * @param entry The entry.
+     * @param type The class of the character.
+     * @param position The position of the character.
+     * @param marks The bookmarks.
+     * @param attributes The list so far.
+     * @return The entry, or if the character is examined again, the
+     * entry for it in the next state.
+     */
+    private int act (int entry, int type, int position, int[] marks, List<Attribute> attributes)
+    {
+        int state;
+        int ret;
+
+        switch ((entry >> 4) & 0xf)
+        {
+            case TagTable.NONE:
+                break;
+            case TagTable.WHITESPACE:
+                whitespace (attributes, marks);
+                break;
+            case TagTable.STANDALONE:
+                standalone (attributes, marks);
+                break;
+            case TagTable.EMPTY:
+                empty (attributes, marks);
+                break;
+            case TagTable.NAKED:
+                naked (attributes, marks);
+                break;
+            case TagTable.SINGLE_QUOTED:
+                single_quote (attributes, marks);
+                break;
+            case TagTable.DOUBLE_QUOTED:
+                double_quote (attributes, marks);
+                break;
+            default:
+                throw new IllegalStateException ("unknown tag table entry " + entry);
+        }
+        if (0 != (entry & TagTable.MARK))
+            marks[entry & 0xf] = position;
+        if (0 != (entry & TagTable.RESTART_AT))
+            marks[0] = position;
+        else if (0 != (entry & TagTable.RESTART_AFTER))
+            marks[0] = position + 1;
+        else if (0 != (entry & TagTable.RESTART_NAME))
+            marks[0] = marks[6];
+        ret = entry;
+        if (0 != (entry & TagTable.AGAIN))
+        {
+            state = entry & 0xf;
+            marks[state + 1] = position;
+            ret = TagTable.TRANSITIONS[(state << 3) + type];
+            if (0 != (ret & ~0xf))
+                ret = act (ret, type, position, marks, attributes);
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Determine if the tag at the cursor starts an element whose content
+     * is skipped. The cursor is left where it was.
+     * @return The upper case name of the element, or <code>null</code> if
+     * the tag name isn't one of the {@link #setSkippedTags skipped tags}.
+     * @exception ParserException If a problem occurs reading from the source.
+     */
+    protected String skipped ()
+        throws
+            ParserException
+    {
+        int position;
+        int end;
+        char ch;
+        String text;
+        String ret;
+
+        // the tag name runs to whitespace, an equals sign or angle bracket
+        position = mCursor.getPosition ();
+        do
+        {
+            end = mCursor.getPosition ();
+            ch = mPage.getCharacter (mCursor);
+        }
+        while ((Page.EOF != ch) && !Character.isWhitespace (ch)
+            && ('=' != ch) && ('<' != ch) && ('>' != ch));
+        mCursor.setPosition (position);
+        ret = null;
+        text = null;
+        for (int i = 0; (null == ret) && (i < mSkipped.length); i++)
+            if (mSkipped[i].length () == end - position)
+            {
+                if (null == text)
+                    text = mPage.getText (position, end);
+                if (mSkipped[i].equalsIgnoreCase (text))
+                    ret = mSkipped[i];
+            }
+
+        return (ret);
+    }
+
+    /**
+     * Parse the start tag of an element whose content is skipped.
+     * The tag is scanned for its end, as {@link #parseTag} does, but
+     * the tag is made with just its name, and an empty XML tag marker
+     * if it has one. Unless it is an empty XML tag, the cursor is then
+     * moved past the content, to the element's end tag.
+     * @param start The position of the tag's opening angle bracket.
+     * @param name The element name, which is at the cursor.
+     * @return The tag.
+     * @exception ParserException If a problem occurs reading from the source.
+     */
+    protected Node parseSkippedTag (int start, String name)
+        throws
+            ParserException
+    {
+        int begin;
+        int slash;
+        int position;
+        boolean done;
+        char ch;
+        char last;
+        int state;
+        List<Attribute> attributes;
+        Node ret;
+
+        // the states of parseTag, without the bookkeeping of attributes
+        begin = mCursor.getPosition ();
+        slash = -1;
+        last = 0;
+        state = 0;
+        done = false;
+        while (!done)
+        {
+            position = mCursor.getPosition ();
+            ch = mPage.getCharacter (mCursor);
+            switch (state)
+            {
+                case 0: // outside of any attribute
+                case 1: // within attribute name
+                    if ((Page.EOF == ch) || ('>' == ch) || ('<' == ch))
+                    {
+                        if ('<' == ch)
+                            mPage.ungetCharacter (mCursor);
+                        // a name ending in a slash marks an empty XML tag
+                        if ((1 == state) && ('/' == last))
+                            slash = position - 1;
+                        done = true;
+                    }
+                    else if (0 == state)
+                    {
+                        if (!Character.isWhitespace (ch))
+                            state = 1;
+                    }
+                    else if (Character.isWhitespace (ch))
+                        state = 6;
+                    else if ('=' == ch)
+                        state = 2;
+                    break;
+                case 2: // equals hit
+                    if ((Page.EOF == ch) || ('>' == ch))
+                        done = true;
+                    else if ('\'' == ch)
+                        state = 4;
+                    else if ('"' == ch)
+                        state = 5;
+                    else if (!Character.isWhitespace (ch))
+                        state = 3;
+                    break;
+                case 3: // within naked attribute value
+                    if ((Page.EOF == ch) || ('>' == ch))
+                        done = true;
+                    else if (Character.isWhitespace (ch))
+                        state = 0;
+                    break;
+                case 4: // within single quoted attribute value
+                    if (Page.EOF == ch)
+                        done = true;
+                    else if ('\'' == ch)
+                        state = 0;
+                    break;
+                case 5: // within double quoted attribute value
+                    if (Page.EOF == ch)
+                        done = true;
+                    else if ('"' == ch)
+                        state = 0;
+                    break;
+                case 6: // whitespace after an attribute name
+                    if ('=' == ch)
+                        state = 2;
+                    else if (!Character.isWhitespace (ch))
+                    {
+                        // read it again outside of any attribute
+                        mPage.ungetCharacter (mCursor);
+                        state = 0;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException ("unknown skipped tag state " + state);
+            }
+            last = ch;
+        }
+        attributes = new ArrayList<> ();
+        attributes.add (new PageAttribute (mPage, begin, begin + name.length (), -1, -1, (char)0));
+        if (-1 != slash)
+            attributes.add (new PageAttribute (mPage, slash, slash + 1, -1, -1, (char)0));
+        ret = makeTag (start, mCursor.getPosition (), attributes);
+        if (-1 == slash)
+            mPage.skipElement (mCursor, name, block ());
+
+        return (ret);
+    }
+
     /**
      * Create a tag node based on the current cursor and the one provided.
      * @param start The starting point of the node.
@@ -1200,6 +1960,8 @@ public class Lexer
             if (2 > length)
                 // this is an error
                 return (makeString (start, end));
+            if (null != mLimits)
+                limit (attributes);
             ret = getNodeFactory ().createTagNode (this.getPage (), start, end, attributes);
         }
         else
@@ -105,12 +105,23 @@ public class Page
      */
     protected transient URLConnection mConnection;
 
+    /**
+     * The number of characters examined at a time by {@link #skipCDATA}.
+     */
+    public static final int CDATA_BLOCK = 8192;
+
     /**
      * Connection control (proxy, cookies, authorization).
      */
     protected static ConnectionManager mConnectionManager =
         new ConnectionManager ();
 
+    /**
+     * Character set detection for pages read from streams,
+     * or <code>null</code> if the page's META tags are relied on.
+     */
+    protected static CharsetSniffer mCharsetSniffer = new CharsetSniffer ();
+
     /**
      * Construct an empty page.
      */
@@ -140,8 +151,12 @@ public class Page
 
     /**
      * Construct a page from a stream encoded with the given charset.
+     * If the stream knows how many bytes it holds, as a file stream does,
+     * the character buffer is allocated at that size up front.
      * @param stream The source of bytes.
-     * @param charset The encoding used.
+     * @param charset The encoding used, unless the
+     * {@link #getCharsetSniffer character set sniffer} finds a byte order
+     * mark or META tag saying otherwise.
      * If null, defaults to the <code>DEFAULT_CHARSET</code>.
      * @exception UnsupportedEncodingException If the given charset
      * is not supported.
@@ -150,11 +165,34 @@ public class Page
         throws
             UnsupportedEncodingException
     {
+        int size;
+
         if (null == stream)
             throw new IllegalArgumentException ("stream cannot be null");
         if (null == charset)
             charset = DEFAULT_CHARSET;
-        mSource = new InputStreamSource (stream, charset);
+        try
+        {   // there are never more characters than bytes in common encodings
+            size = Math.max (InputStreamSource.BUFFER_SIZE, stream.available ());
+        }
+        catch (IOException ioe)
+        {
+            size = InputStreamSource.BUFFER_SIZE;
+        }
+        if (null != getCharsetSniffer ())
+        {
+            if (!stream.markSupported ())
+                stream = new Stream (stream);
+            try
+            {
+                charset = getCharsetSniffer ().sniff (stream, charset);
+            }
+            catch (IOException ioe)
+            {
+                LOG.log (Level.WARNING, "Character set detection failed, using " + charset, ioe);
+            }
+        }
+        mSource = new InputStreamSource (stream, charset, size);
         mIndex = new PageIndex (this);
         mConnection = null;
         mUrl = null;
@@ -229,6 +267,29 @@ public class Page
         mConnectionManager = manager;
     }
 
+    /**
+     * Get the character set sniffer pages read from streams use.
+     * @return The sniffer, or <code>null</code> if there is none.
+     */
+    public static CharsetSniffer getCharsetSniffer ()
+    {
+        return (mCharsetSniffer);
+    }
+
+    /**
+     * Set the character set sniffer to use.
+     * The sniffer picks the character set before a page is decoded, so that
+     * a META tag declaring a different one doesn't cause the text read so far
+     * to be decoded again, or an EncodingChangeException.
+     * @param sniffer The new sniffer, or <code>null</code> to decode with
+     * the character set from the HTTP header, or the one supplied,
+     * until a META tag changes it.
+     */
+    public static void setCharsetSniffer (CharsetSniffer sniffer)
+    {
+        mCharsetSniffer = sniffer;
+    }
+
     /**
      * Get a CharacterSet name corresponding to a charset parameter.
      * @param content A text line of the form:
@@ -524,6 +585,8 @@ public class Page
      * This also resets the current url.
      * @param connection The connection to use.
      * It will be connected by this method.
+     * If the content length is known and the content isn't compressed,
+     * the byte and character buffers are allocated at that size up front.
      * @exception ParserException If the <code>connect()</code> method fails,
      * or an I/O error occurs opening the input stream or the character set
      * designated in the HTTP header is unsupported.
@@ -536,6 +599,8 @@ public class Page
         String type;
         String charset;
         String contentEncoding;
+        int length;
+        int size;
 
         mConnection = connection;
         try
@@ -559,6 +624,8 @@ public class Page
         {
             
             contentEncoding = connection.getContentEncoding();
+            length = connection.getContentLength ();
+            size = InputStreamSource.BUFFER_SIZE;
 
             if(LOG.isLoggable(Level.FINER)) {
                 LOG.log(Level.FINER, 
@@ -580,12 +647,19 @@ public class Page
             }
             else
             {
-                stream = new Stream (getConnection ().getInputStream ());
+                stream = new Stream (getConnection ().getInputStream (), length);
+                // there are never more characters than bytes in common encodings,
+                // the length may be wrong though, so the source caps the size
+                if (0 < length)
+                    size = length;
             }
 
+            if (null != getCharsetSniffer ())
+                charset = getCharsetSniffer ().sniff (stream, charset);
+
             try
             {
-                mSource = new InputStreamSource (stream, charset);
+                mSource = new InputStreamSource (stream, charset, size);
             }
             catch (UnsupportedEncodingException uee)
             {
@@ -599,7 +673,7 @@ public class Page
                 msg.append (DEFAULT_CHARSET);
                 LOG.log(Level.WARNING, msg.toString(), uee);
                 charset = DEFAULT_CHARSET;
-                mSource = new InputStreamSource (stream, charset);
+                mSource = new InputStreamSource (stream, charset, size);
             }
         }
         catch (IOException ioe)
@@ -865,6 +939,241 @@ public class Page
         }
     }
 
+    /**
+     * Skip over CDATA, the content of a SCRIPT or STYLE element.
+     * Moves the cursor to the first ETAGO ("&lt;/") that is followed by a
+     * letter and is not inside a &lt;!-- --&gt; comment, or to the end of
+     * the page, exactly as reading one character at a time in
+     * {@link Lexer#parseCDATA(boolean) Lexer.parseCDATA(false)} would,
+     * including the updates to the end-of-line index.
+     * The characters are examined a block at a time, straight from the
+     * source, instead of through {@link #getCharacter}.
+     * @param cursor The position to start at, which is moved to the end
+     * of the CDATA.
+     * @exception ParserException If an IOException on the underlying source
+     * occurs.
+     */
+    public void skipCDATA (Cursor cursor)
+        throws
+            ParserException
+    {
+        skip (cursor, null, new char[CDATA_BLOCK]);
+    }
+
+    /**
+     * Skip over CDATA, examining the characters in the caller's buffer.
+     * Like {@link #skipCDATA(Cursor)}, but without allocating a buffer, so
+     * a lexer can reuse its own. The buffer is not shared with any other
+     * caller, so lexers on different threads may skip the same page.
+     * @param cursor The position to start at, which is moved to the end
+     * of the CDATA.
+     * @param block The buffer to read the characters into, a block at a time.
+     * @exception ParserException If an IOException on the underlying source
+     * occurs.
+     */
+    public void skipCDATA (Cursor cursor, char[] block)
+        throws
+            ParserException
+    {
+        skip (cursor, null, block);
+    }
+
+    /**
+     * Skip over the content of an element.
+     * Like {@link #skipCDATA}, but only an end tag with the given name,
+     * ignoring case, ends the content. So the content of a skipped
+     * element ends at its first end tag that isn't inside a
+     * &lt;!-- --&gt; comment, or at the end of the page.
+     * @param cursor The position to start at, which is moved to the
+     * &lt; of the end tag.
+     * @param name The element name.
+     * @exception ParserException If an IOException on the underlying source
+     * occurs.
+     */
+    public void skipElement (Cursor cursor, String name)
+        throws
+            ParserException
+    {
+        skipElement (cursor, name, new char[CDATA_BLOCK]);
+    }
+
+    /**
+     * Skip over the content of an element, examining the characters in the
+     * caller's buffer.
+     * Like {@link #skipElement(Cursor, String)}, but without allocating
+     * a buffer, see {@link #skipCDATA(Cursor, char[])}.
+     * @param cursor The position to start at, which is moved to the
+     * &lt; of the end tag.
+     * @param name The element name.
+     * @param block The buffer to read the characters into, a block at a time.
+     * @exception ParserException If an IOException on the underlying source
+     * occurs.
+     */
+    public void skipElement (Cursor cursor, String name, char[] block)
+        throws
+            ParserException
+    {
+        if (null == name)
+            throw new IllegalArgumentException ("name cannot be null");
+        skip (cursor, name, block);
+    }
+
+    /**
+     * Skip to an ETAGO, a block at a time.
+     * @param cursor The position to start at, which is moved to the end.
+     * @param name The name the ETAGO must be followed by, or
+     * <code>null</code> for any letter.
+     * @param block The buffer to read the characters into.
+     * @exception ParserException If an IOException on the underlying source
+     * occurs.
+     */
+    private void skip (Cursor cursor, String name, char[] block)
+        throws
+            ParserException
+    {
+        Cursor line;
+        int position;
+        int length;
+        int state;
+        int etago;
+        int matched;
+        int end;
+        boolean cr;
+        char ch;
+
+        if ((null == block) || (0 == block.length))
+            throw new IllegalArgumentException ("block cannot be empty");
+        line = new Cursor (this, 0);
+        position = cursor.getPosition ();
+        state = 0;
+        etago = -1;
+        matched = 0;
+        end = -1;
+        cr = false;
+        while (-1 == end)
+        {
+            // get the next block, from what has been read or from the stream
+            try
+            {
+                length = mSource.offset () - position;
+                if (0 < length)
+                {
+                    length = Math.min (length, block.length);
+                    mSource.getCharacters (block, 0, position, position + length);
+                }
+                else
+                    length = mSource.read (block, 0, block.length);
+            }
+            catch (IOException ioe)
+            {
+                throw new ParserException (
+                    "problem reading a character at position " + position, ioe);
+            }
+            if (0 >= length)
+            {
+                // an end tag with nothing after the name
+                if ((2 == state) && (null != name) && (matched == name.length ()))
+                    end = etago;
+                else
+                    end = position;
+                if (cr)
+                {
+                    line.setPosition (position);
+                    mIndex.add (line);
+                }
+            }
+            else
+            {
+                for (int i = 0; (-1 == end) && (i < length); i++)
+                {
+                    ch = block[i];
+                    // end of lines, a lone \r or a \n
+                    if (cr && ('\n' != ch))
+                    {
+                        line.setPosition (position + i);
+                        mIndex.add (line);
+                    }
+                    cr = '\r' == ch;
+                    if ('\n' == ch)
+                    {
+                        line.setPosition (position + i + 1);
+                        mIndex.add (line);
+                    }
+                    switch (state)
+                    {
+                        case 0: // prior to ETAGO
+                            if ('<' == ch)
+                            {
+                                etago = position + i;
+                                state = 1;
+                            }
+                            break;
+                        case 1: // <
+                            if ('/' == ch)
+                            {
+                                matched = 0;
+                                state = 2;
+                            }
+                            else if ('!' == ch)
+                                state = 4;
+                            else
+                                state = 0;
+                            break;
+                        case 2: // </ and the start of the name
+                            if (null == name)
+                            {
+                                if (Character.isLetter (ch))
+                                    end = etago;
+                                else
+                                    state = 0;
+                            }
+                            else if (matched < name.length ())
+                            {
+                                if (Character.toUpperCase (ch) == Character.toUpperCase (name.charAt (matched)))
+                                    matched++;
+                                else if ('<' == ch)
+                                {
+                                    etago = position + i;
+                                    state = 1;
+                                }
+                                else
+                                    state = 0;
+                            }
+                            else if (Character.isWhitespace (ch) || ('>' == ch) || ('/' == ch) || ('<' == ch))
+                                end = etago;
+                            else
+                                state = 0;
+                            break;
+                        case 3: // <!-- comment
+                            if ('-' == ch)
+                                state = 6;
+                            break;
+                        case 4: // <!
+                            state = ('-' == ch) ? 5 : 0;
+                            break;
+                        case 5: // <!-
+                            state = ('-' == ch) ? 3 : 0;
+                            break;
+                        case 6: // - in a comment
+                            state = ('-' == ch) ? 7 : 3;
+                            break;
+                        case 7: // -- in a comment
+                            if ('>' == ch)
+                                state = 0;
+                            else if ('-' != ch)
+                                state = 3;
+                            break;
+                        default:
+                            throw new IllegalStateException ("unknown CDATA state " + state);
+                    }
+                }
+                if (-1 == end)
+                    position += length;
+            }
+        }
+        cursor.setPosition (end);
+    }
+
     /**
      * Get the current encoding being used.
      * @return The encoding used to convert characters.
@@ -0,0 +1,223 @@
+package org.htmlparser.lexer;
+
+import java.io.Serializable;
+
+/**
+ * Budgets that keep a broken or hostile page from stalling a parse.
+ * Pages with millions of empty tags, tens of thousands of nested tags or
+ * tags with huge numbers of attributes otherwise take a long time to
+ * parse, fill the heap, or build trees too deep to walk recursively.
+ * <p>
+ * Each budget is unlimited until it is set. A {@link Lexer} with limits
+ * checks them as it goes:
+ * <ul>
+ * <li>the number of nodes and the elapsed time, as each node is lexed</li>
+ * <li>the number of attributes, as each tag is made</li>
+ * <li>the length of text, as each text node is made</li>
+ * <li>the depth of nesting, as composite tags are scanned</li>
+ * </ul>
+ * When a budget is exceeded, a {@link org.htmlparser.util.ParseLimitException}
+ * is thrown, or, if the limits are {@link #setTruncating truncating}, the
+ * parse carries on with less: the rest of the page is dropped when the node
+ * or time budget runs out, surplus attributes and text are dropped, and tags
+ * nested too deeply are kept but their contents are added to the enclosing
+ * tag. Either way, the lexer counts how often each limit was hit, see
+ * {@link Lexer#getLimitHits}.
+ * <p>
+ * One set of limits may be shared by many lexers, each keeps its own counts.
+ */
+public class ParseLimits
+    implements
+        Serializable
+{
+    /**
+     * The budgets.
+     */
+    public enum Limit
+    {
+        /** The number of nodes lexed. */
+        NODES,
+        /** The depth of nested tags. */
+        DEPTH,
+        /** The number of attributes of a tag. */
+        ATTRIBUTES,
+        /** The length of a text node. */
+        TEXT,
+        /** The time spent, in milliseconds. */
+        TIME
+    }
+
+    /**
+     * The budgets, by limit ordinal.
+     */
+    protected long[] mBudgets;
+
+    /**
+     * If <code>true</code>, truncate rather than throw.
+     */
+    protected boolean mTruncating;
+
+    /**
+     * Create limits with no budgets that throw when exceeded.
+     */
+    public ParseLimits ()
+    {
+        mBudgets = new long[Limit.values ().length];
+        for (int i = 0; i < mBudgets.length; i++)
+            mBudgets[i] = Long.MAX_VALUE;
+        mTruncating = false;
+    }
+
+    /**
+     * Get a budget.
+     * @param limit The limit.
+     * @return The budget, <code>Long.MAX_VALUE</code> if unlimited.
+     */
+    public long get (Limit limit)
+    {
+        return (mBudgets[limit.ordinal ()]);
+    }
+
+    /**
+     * Set a budget.
+     * @param limit The limit.
+     * @param budget The budget, <code>Long.MAX_VALUE</code> for unlimited.
+     * @return This object, so calls can be chained.
+     */
+    public ParseLimits set (Limit limit, long budget)
+    {
+        if (0 > budget)
+            throw new IllegalArgumentException ("budget cannot be negative");
+        mBudgets[limit.ordinal ()] = budget;
+
+        return (this);
+    }
+
+    /**
+     * Get the maximum number of nodes.
+     * @return The number of nodes, counting end tags, that may be lexed.
+     */
+    public long getMaxNodes ()
+    {
+        return (get (Limit.NODES));
+    }
+
+    /**
+     * Set the maximum number of nodes.
+     * @param nodes The number of nodes, counting end tags, that may be lexed.
+     * @return This object, so calls can be chained.
+     */
+    public ParseLimits setMaxNodes (long nodes)
+    {
+        return (set (Limit.NODES, nodes));
+    }
+
+    /**
+     * Get the maximum depth.
+     * @return The number of tags that may enclose a node,
+     * counting the top level tag.
+     */
+    public long getMaxDepth ()
+    {
+        return (get (Limit.DEPTH));
+    }
+
+    /**
+     * Set the maximum depth.
+     * @param depth The number of tags that may enclose a node,
+     * counting the top level tag.
+     * @return This object, so calls can be chained.
+     */
+    public ParseLimits setMaxDepth (long depth)
+    {
+        return (set (Limit.DEPTH, depth));
+    }
+
+    /**
+     * Get the maximum number of attributes.
+     * @return The number of attributes a tag may have, not counting
+     * its name and the whitespace between attributes.
+     */
+    public long getMaxAttributes ()
+    {
+        return (get (Limit.ATTRIBUTES));
+    }
+
+    /**
+     * Set the maximum number of attributes.
+     * @param attributes The number of attributes a tag may have, not
+     * counting its name and the whitespace between attributes.
+     * @return This object, so calls can be chained.
+     */
+    public ParseLimits setMaxAttributes (long attributes)
+    {
+        return (set (Limit.ATTRIBUTES, attributes));
+    }
+
+    /**
+     * Get the maximum text length.
+     * @return The number of characters a text node may span.
+     */
+    public long getMaxTextLength ()
+    {
+        return (get (Limit.TEXT));
+    }
+
+    /**
+     * Set the maximum text length.
+     * This applies to text between tags and to the contents of
+     * SCRIPT and STYLE elements.
+     * @param length The number of characters a text node may span.
+     * @return This object, so calls can be chained.
+     */
+    public ParseLimits setMaxTextLength (long length)
+    {
+        return (set (Limit.TEXT, length));
+    }
+
+    /**
+     * Get the time allowed.
+     * @return The milliseconds a lexer may spend, from its first node.
+     */
+    public long getMaxTime ()
+    {
+        return (get (Limit.TIME));
+    }
+
+    /**
+     * Set the time allowed.
+     * The time is measured from when a lexer lexes its first node, or its
+     * first node after a {@link Lexer#reset}, and checked every
+     * {@link Lexer#TIME_CHECK_INTERVAL} nodes.
+     * @param millis The milliseconds a lexer may spend.
+     * @return This object, so calls can be chained.
+     */
+    public ParseLimits setMaxTime (long millis)
+    {
+        return (set (Limit.TIME, millis));
+    }
+
+    /**
+     * Determine what happens when a budget is exceeded.
+     * @return <code>true</code> if the parse is truncated,
+     * <code>false</code> if an exception is thrown.
+     */
+    public boolean isTruncating ()
+    {
+        return (mTruncating);
+    }
+
+    /**
+     * Choose what happens when a budget is exceeded.
+     * @param truncating If <code>true</code> the parse is truncated,
+     * if <code>false</code> a {@link org.htmlparser.util.ParseLimitException}
+     * is thrown.
+     * @return This object, so calls can be chained.
+     */
+    public ParseLimits setTruncating (boolean truncating)
+    {
+        mTruncating = truncating;
+
+        return (this);
+    }
+}
@@ -0,0 +1,503 @@
+package org.htmlparser.lexer;
+
+import org.htmlparser.Node;
+import org.htmlparser.Tag;
+import org.htmlparser.scanners.Scanner;
+import org.htmlparser.scanners.ScriptDecoder;
+import org.htmlparser.scanners.ScriptScanner;
+import org.htmlparser.scanners.StyleScanner;
+import org.htmlparser.tags.ScriptTag;
+import org.htmlparser.util.HandoffQueue;
+import org.htmlparser.util.ParserException;
+
+/**
+ * A lexer whose nodes are lexed ahead on another thread.
+ * A second lexer over the same page runs on its own thread and hands the
+ * nodes, in batches of {@link #BATCH_SIZE}, through a bounded
+ * {@link HandoffQueue} to this one, which returns them to the scanners
+ * building the tree. After a SCRIPT or STYLE start tag, the lexing thread
+ * also reads the contents the way the tag's scanner would, so
+ * {@link #parseCDATA(boolean)} is answered from the queue too.
+ * <p>
+ * Each node handed over carries the positions it was lexed from and to.
+ * Whenever the scanners ask for something else, such as a node at a
+ * position they moved back to, quote smart lexing, or the contents of
+ * a tag the lexing thread did not expect them to read, this lexer lexes
+ * it itself, skipping the queued nodes it passes, and carries on from
+ * the queue once the positions line up again. The nodes are therefore the
+ * same as those of a lexer used alone.
+ * <p>
+ * So that the two threads can read the page at once, {@link #start} reads
+ * the rest of the page first, after which the page is only read.
+ * Changing the encoding of the page while lexing, as a META tag for a page
+ * read from a stream may do, is not supported; sniff the character set
+ * beforehand, see {@link CharsetSniffer}.
+ * <p>
+ * The settings of the lexer it is created from are copied, and its position,
+ * node count, limits hit and truncation are set from this lexer by
+ * {@link #updateOwner}. The node consumer and child consumer are called on
+ * the thread using this lexer.
+ */
+public class PipelinedLexer
+    extends
+        Lexer
+{
+    /**
+     * The number of nodes handed over at a time.
+     */
+    public static final int BATCH_SIZE = 256;
+
+    /**
+     * The number of batches that may be lexed ahead.
+     */
+    public static final int BATCHES = 16;
+
+    /**
+     * The kind of a queued node.
+     */
+    protected static final int NODE = 0;
+
+    /**
+     * The kind of queued CDATA, read without quote smarts.
+     */
+    protected static final int CDATA = 1;
+
+    /**
+     * The kind of queued CDATA, read with quote smarts.
+     */
+    protected static final int SMART_CDATA = 2;
+
+    /**
+     * Flags a queued node that hit the attribute limit.
+     */
+    protected static final int ATTRIBUTES_HIT = 4;
+
+    /**
+     * Flags a queued node that hit the text limit.
+     */
+    protected static final int TEXT_HIT = 8;
+
+    /**
+     * The lexer this one was created from.
+     */
+    protected Lexer mOwner;
+
+    /**
+     * The lexer run on the lexing thread.
+     */
+    protected Lexer mSource;
+
+    /**
+     * The batches handed over.
+     */
+    protected transient HandoffQueue<Batch> mTokens;
+
+    /**
+     * The lexing thread, or <code>null</code> if not started.
+     */
+    protected transient Thread mThread;
+
+    /**
+     * The batch being read.
+     */
+    protected transient Batch mBatch;
+
+    /**
+     * The index of the next node in the batch.
+     */
+    protected int mIndex;
+
+    /**
+     * <code>true</code> once the lexing thread has nothing more to hand over.
+     */
+    protected boolean mDrained;
+
+    /**
+     * <code>true</code> once closed, after which no more nodes are returned.
+     */
+    protected volatile boolean mClosed;
+
+    /**
+     * The attribute limit hits of the lexing thread so far.
+     */
+    private int mAttributeHits;
+
+    /**
+     * The text limit hits of the lexing thread so far.
+     */
+    private int mTextHits;
+
+    /**
+     * Create a lexer that continues from where another left off.
+     * @param lexer The lexer whose page, position and settings are used.
+     */
+    public PipelinedLexer (Lexer lexer)
+    {
+        super (lexer.getPage ());
+        ParseLimits limits;
+
+        mOwner = lexer;
+        setCursor (new Cursor (getPage (), lexer.getPosition ()));
+        setNodeFactory (lexer.getNodeFactory ());
+        setSkippedTags (lexer.getSkippedTags ());
+        setTableDriven (lexer.isTableDriven ());
+        setLimits (lexer.getLimits ());
+        setCancellation (lexer.getCancellation ());
+        setNodeConsumer (lexer.getNodeConsumer ());
+        setChildConsumer (lexer.getChildConsumer ());
+
+        mSource = new Lexer (getPage ());
+        mSource.setCursor (new Cursor (getPage (), lexer.getPosition ()));
+        mSource.setNodeFactory (lexer.getNodeFactory ());
+        mSource.setSkippedTags (lexer.getSkippedTags ());
+        mSource.setTableDriven (lexer.isTableDriven ());
+        // only the limits applied as nodes are made, the rest apply here
+        limits = lexer.getLimits ();
+        if (null != limits)
+            mSource.setLimits (new ParseLimits ()
+                .setMaxAttributes (limits.getMaxAttributes ())
+                .setMaxTextLength (limits.getMaxTextLength ())
+                .setTruncating (limits.isTruncating ()));
+        mTokens = new HandoffQueue<> (BATCHES);
+    }
+
+    /**
+     * Read the rest of the page and start the lexing thread.
+     * @exception ParserException If the page cannot be read.
+     */
+    public void start ()
+        throws
+            ParserException
+    {
+        Cursor cursor;
+
+        if (null != mThread)
+            throw new IllegalStateException ("already started");
+        cursor = new Cursor (getPage (), 0);
+        while (Page.EOF != getPage ().getCharacter (cursor))
+            ;
+        mThread = new Thread (this::produce, "lexer " + getPage ().getUrl ());
+        mThread.setDaemon (true);
+        mThread.start ();
+    }
+
+    /**
+     * Stop lexing.
+     * Nodes are no longer returned, so scanners still building the tree
+     * finish quickly. May be called from any thread, and returns once the
+     * lexing thread has stopped.
+     */
+    public void close ()
+    {
+        boolean interrupted;
+
+        mClosed = true;
+        mTokens.close ();
+        interrupted = false;
+        if (null != mThread)
+            while (mThread.isAlive ())
+                try
+                {
+                    mThread.join ();
+                }
+                catch (InterruptedException ie)
+                {
+                    interrupted = true;
+                }
+        if (interrupted)
+            Thread.currentThread ().interrupt ();
+    }
+
+    /**
+     * Bring the lexer this one was created from up to date, with the
+     * position, node count, limits hit, truncation and cancellation of
+     * this one. Called once the tree is built.
+     */
+    public void updateOwner ()
+    {
+        mOwner.mPushed = null;
+        mOwner.getCursor ().setPosition (getPosition ());
+        mOwner.mNodes = mNodes;
+        mOwner.mStarted = mStarted;
+        mOwner.mHits = mHits;
+        mOwner.mTruncated = mTruncated;
+        mOwner.mCancelled = mCancelled;
+    }
+
+    /**
+     * Lex the page on the lexing thread, handing the nodes over in batches.
+     * A problem ends the batches early, and this lexer meets it again when
+     * it lexes the rest of the page itself.
+     */
+    protected void produce ()
+    {
+        Batch batch;
+        Node node;
+        Tag tag;
+        Scanner scanner;
+        int start;
+        int kind;
+        boolean more;
+
+        batch = new Batch ();
+        try
+        {
+            more = true;
+            while (more && !mTokens.isClosed ())
+            {
+                start = mSource.getPosition ();
+                node = mSource.next (false);
+                if (null == node)
+                    more = false;
+                else
+                {
+                    batch.add (hits (NODE), node, start, mSource.getPosition ());
+                    // read the contents the scanner of the tag will ask for
+                    if ((node instanceof Tag) && !(tag = (Tag)node).isEndTag ()
+                        && !tag.isEmptyXmlTag () && !mSource.isSkipped (tag))
+                    {
+                        scanner = tag.getThisScanner ();
+                        if (scanner instanceof ScriptScanner)
+                        {
+                            if (tag instanceof ScriptTag)
+                                decode ((ScriptTag)tag);
+                            kind = ScriptScanner.STRICT ? CDATA : SMART_CDATA;
+                        }
+                        else if (scanner instanceof StyleScanner)
+                            kind = CDATA;
+                        else
+                            kind = NODE;
+                        if (NODE != kind)
+                        {
+                            start = mSource.getPosition ();
+                            node = mSource.parseCDATA (SMART_CDATA == kind);
+                            batch.add (hits (kind), node, start, mSource.getPosition ());
+                        }
+                    }
+                    if (batch.isFull ())
+                    {
+                        if (!mTokens.put (batch))
+                            more = false;
+                        batch = new Batch ();
+                    }
+                }
+            }
+            if (0 != batch.mCount)
+                mTokens.put (batch);
+        }
+        catch (ParserException | RuntimeException e)
+        {
+            // stop here, the nodes from here on are lexed again
+        }
+        catch (InterruptedException ie)
+        {
+            // stop
+        }
+        finally
+        {
+            mTokens.finish ();
+        }
+    }
+
+    /**
+     * Flag the limits the lexing thread hit making the last node.
+     * @param kind The kind of node.
+     * @return The kind, with the limits hit flagged.
+     */
+    private int hits (int kind)
+    {
+        int attributes;
+        int text;
+
+        attributes = mSource.getLimitHits (ParseLimits.Limit.ATTRIBUTES);
+        text = mSource.getLimitHits (ParseLimits.Limit.TEXT);
+        if (attributes != mAttributeHits)
+            kind |= ATTRIBUTES_HIT;
+        if (text != mTextHits)
+            kind |= TEXT_HIT;
+        mAttributeHits = attributes;
+        mTextHits = text;
+
+        return (kind);
+    }
+
+    /**
+     * Skip over encoded script as {@link ScriptScanner} does.
+     * @param tag The script tag.
+     */
+    private void decode (ScriptTag tag)
+        throws
+            ParserException
+    {
+        String language;
+
+        language = tag.getLanguage ();
+        if ((null != language) &&
+            (language.equalsIgnoreCase ("JScript.Encode") ||
+             language.equalsIgnoreCase ("VBScript.Encode")))
+            ScriptDecoder.Decode (getPage (), mSource.getCursor ());
+    }
+
+    /**
+     * Move to the first queued node at or after a position, dropping the
+     * nodes before it.
+     * @param position The position.
+     * @param node If <code>true</code>, CDATA at the position is dropped too.
+     * @return <code>true</code> if there is such a node, <code>false</code>
+     * if the lexing thread has handed over all it will.
+     * @exception ParserException If interrupted while waiting for nodes.
+     */
+    protected boolean seek (int position, boolean node)
+        throws
+            ParserException
+    {
+        boolean ret;
+
+        ret = false;
+        while (!ret && !mDrained)
+            if ((null == mBatch) || (mIndex == mBatch.mCount))
+            {
+                try
+                {
+                    mBatch = mTokens.take ();
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread ().interrupt ();
+                    throw new ParserException ("interrupted waiting for the lexer", ie);
+                }
+                mIndex = 0;
+                if (null == mBatch)
+                    mDrained = true;
+            }
+            else if ((mBatch.mStarts[mIndex] < position)
+                || (node && (mBatch.mStarts[mIndex] == position) && (NODE != (mBatch.mKinds[mIndex] & 3))))
+                mBatch.mNodes[mIndex++] = null;
+            else
+                ret = true;
+
+        return (ret);
+    }
+
+    /**
+     * Check the queued node the seek stopped at.
+     * @param kind The kind of node wanted.
+     * @return <code>true</code> if it is of that kind and starts at the cursor.
+     */
+    private boolean matches (int kind)
+    {
+        return (((mBatch.mKinds[mIndex] & 3) == kind) && (mBatch.mStarts[mIndex] == mCursor.getPosition ()));
+    }
+
+    /**
+     * Take the queued node the seek stopped at, counting the limits it hit,
+     * and move the cursor to where its lexing ended.
+     * @return The node.
+     * @exception ParserException Not thrown, the limits are truncating.
+     */
+    private Node take ()
+        throws
+            ParserException
+    {
+        int kind;
+        Node ret;
+
+        kind = mBatch.mKinds[mIndex];
+        ret = mBatch.mNodes[mIndex];
+        mCursor.setPosition (mBatch.mEnds[mIndex]);
+        mBatch.mNodes[mIndex++] = null;
+        if (0 != (kind & ATTRIBUTES_HIT))
+            exceeded (ParseLimits.Limit.ATTRIBUTES);
+        if (0 != (kind & TEXT_HIT))
+            exceeded (ParseLimits.Limit.TEXT);
+
+        return (ret);
+    }
+
+    /**
+     * Return the node lexed ahead at the cursor, or lex it here if there
+     * is none.
+     * @param quotesmart If <code>true</code>, strings ignore quoted contents.
+     * @return The node, or <code>null</code> at the end of the page or
+     * once closed.
+     * @exception ParserException If a problem occurs reading from the source.
+     */
+    protected Node doNext (boolean quotesmart)
+        throws
+            ParserException
+    {
+        Node ret;
+
+        if (mClosed)
+            ret = null;
+        else if (!quotesmart && seek (mCursor.getPosition (), true) && matches (NODE))
+            ret = take ();
+        else
+            ret = super.doNext (quotesmart);
+
+        return (ret);
+    }
+
+    /**
+     * Return the contents read ahead at the cursor, or read them here if
+     * they were not.
+     * @param quotesmart If <code>true</code>, strings ignore quoted contents.
+     * @return The <code>TextNode</code> of the CDATA or <code>null</code> if none.
+     * @exception ParserException If a problem occurs reading from the source.
+     */
+    public Node parseCDATA (boolean quotesmart)
+        throws
+            ParserException
+    {
+        Node ret;
+
+        if (mClosed)
+            ret = null;
+        else if (seek (mCursor.getPosition (), false) && matches (quotesmart ? SMART_CDATA : CDATA))
+            ret = take ();
+        else
+            ret = super.parseCDATA (quotesmart);
+
+        return (ret);
+    }
+
+    /**
+     * No more nodes once closed.
+     * @return <code>false</code> if closed or the rest of the page is dropped.
+     * @exception ParserException If a budget ran out and the limits
+     * aren't truncating, or the page can't be read.
+     */
+    public boolean checkLimits ()
+        throws
+            ParserException
+    {
+        return (!mClosed && super.checkLimits ());
+    }
+
+    /**
+     * A batch of nodes, with the positions they were lexed from and to.
+     */
+    protected static final class Batch
+    {
+        final Node[] mNodes = new Node[BATCH_SIZE];
+        final int[] mStarts = new int[BATCH_SIZE];
+        final int[] mEnds = new int[BATCH_SIZE];
+        final byte[] mKinds = new byte[BATCH_SIZE];
+        int mCount;
+
+        void add (int kind, Node node, int start, int end)
+        {
+            mNodes[mCount] = node;
+            mStarts[mCount] = start;
+            mEnds[mCount] = end;
+            mKinds[mCount] = (byte)kind;
+            mCount++;
+        }
+
+        boolean isFull ()
+        {
+            // room for a tag and its contents
+            return (mCount >= BATCH_SIZE - 1);
+        }
+    }
+}
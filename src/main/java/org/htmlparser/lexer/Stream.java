@@ -27,35 +27,88 @@ package org.htmlparser.lexer;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Provides for asynchronous fetching from a stream.
- *
+ * The stream has a single producer, which is either a background thread
+ * running {@link #run} or, until one is started, the reading thread itself,
+ * and a single consumer, the reading thread.
+ * Bytes are appended to chunks that are never moved, and published by
+ * raising the volatile level, so the consumer reads them without locking.
+ * When the consumer runs out of bytes it fills the buffer itself if there
+ * is no background producer, and otherwise parks until the producer signals
+ * that more bytes, or the end of the stream, have arrived.
+ * No monitors are held while waiting on the underlying stream, so the
+ * producer and the consumer may be virtual threads.
+ * <p>
+ * All the bytes read are kept, rather than recycled through a ring,
+ * because {@link #reset} returns to the start of the page when the
+ * character set changes.
  */
 public class Stream extends InputStream implements Runnable
 {
+    /**
+     * No one is filling the buffer.
+     */
+    private static final int IDLE = 0;
+
+    /**
+     * The reading thread is filling the buffer.
+     */
+    private static final int FILLING = 1;
+
+    /**
+     * A background thread is filling the buffer.
+     */
+    private static final int PRODUCING = 2;
+
+    /**
+     * The nanoseconds to pause while waiting for the other side to give up
+     * the fill role.
+     */
+    private static final long PAUSE = 100000L;
+
     /**
      * The number of calls to fill.
-     * Note: to be removed.
      */
-    public int fills = 0;
+    private volatile int mFills;
 
     /**
-     * The number of reallocations.
-     * Note: to be removed.
+     * The number of times the chunk directory was enlarged.
      */
-    public int reallocations = 0;
+    private volatile int mReallocations;
 
     /**
-     * The number of synchronous (blocking) fills.
-     * Note: to be removed.
+     * The number of reads that found no bytes available and had to
+     * wait for, or do, a fill.
      */
-    public int synchronous = 0;
+    private volatile int mSynchronous;
 
     /**
-     * An initial buffer size.
+     * Who is filling the buffer: IDLE, FILLING or PRODUCING.
      */
-    protected static final int BUFFER_SIZE = 4096;
+    private final AtomicInteger mState;
+
+    /**
+     * The reading thread when it is parked waiting for the producer.
+     */
+    private volatile Thread mWaiter;
+
+    /**
+     * The size of the chunks bytes are stored in,
+     * when the number of bytes is unknown.
+     */
+    protected static final int BUFFER_SIZE = 16384;
+
+    /**
+     * The largest chunk allocated before any bytes are read.
+     * A content length beyond this, which may well be wrong, is read
+     * in chunks of this size.
+     */
+    protected static final int MAX_CHUNK_SIZE = 1 << 22;
 
     /**
      * Return value when no more characters are left.
@@ -68,9 +121,17 @@ public class Stream extends InputStream implements Runnable
     protected volatile InputStream mIn;
 
     /**
-     * The bytes read so far.
+     * The bytes read so far, in chunks of <code>mChunkSize</code> bytes.
+     * Chunks are added as they are needed, so the bytes already read are
+     * never copied. With a known content length of at most
+     * <code>MAX_CHUNK_SIZE</code> bytes there is a single chunk.
      */
-    public volatile byte[] mBuffer;
+    public volatile byte[][] mChunks;
+
+    /**
+     * The size of each chunk, set when the first chunk is allocated.
+     */
+    protected int mChunkSize;
 
     /**
      * The number of valid bytes in the buffer.
@@ -110,17 +171,61 @@ public class Stream extends InputStream implements Runnable
      */
     public Stream (InputStream in, int bytes)
     {
+        mState = new AtomicInteger (IDLE);
         mIn = in;
-        mBuffer = null;
+        mChunks = null;
+        mChunkSize = 0;
         mLevel = 0;
         mOffset = 0;
         mContentLength = bytes < 0 ? 0 : bytes;
         mMark = -1;
     }
 
+    /**
+     * Get the number of fills of the buffer.
+     * @return The number of reads of the underlying stream that returned bytes.
+     */
+    public int getFills ()
+    {
+        return (mFills);
+    }
+
+    /**
+     * Get the number of reallocations.
+     * @return The number of times the chunk directory had to be enlarged,
+     * zero when the content length is known and fits in one chunk.
+     */
+    public int getReallocations ()
+    {
+        return (mReallocations);
+    }
+
+    /**
+     * Get the number of synchronous fills.
+     * @return The number of times the reader found no bytes available and
+     * had to block, either reading the underlying stream itself or waiting
+     * for the background thread.
+     */
+    public int getSynchronousFills ()
+    {
+        return (mSynchronous);
+    }
+
+    /**
+     * Start filling the buffer in the background.
+     * @param executor The executor to run the fill on, for example one
+     * that creates virtual threads.
+     */
+    public void start (Executor executor)
+    {
+        executor.execute (this);
+    }
+
     /**
      * Fetch more bytes from the underlying stream.
      * Has no effect if the underlying stream has been drained.
+     * Only the thread that holds the fill role, i.e. the background
+     * thread in {@link #run} or the reader in {@link #await}, may call this.
      * @param force If <code>true</code>, an attempt is made to read from the
      * underlying stream, even if bytes are available, If <code>false</code>,
      * a read of the underlying stream will not occur if there are already
@@ -128,74 +233,74 @@ public class Stream extends InputStream implements Runnable
      * @return <code>true</code> if not at the end of the input stream.
      * @exception IOException If the underlying stream read() or available() throws one.
      */
-    protected synchronized boolean fill (boolean force)
+    protected boolean fill (boolean force)
         throws
             IOException
     {
+        InputStream in;
+        byte[][] chunks;
+        byte[][] directory;
+        int index;
+        int position;
         int size;
-        byte[] buffer;
         int read;
         boolean ret;
 
         ret = false;
 
-        if (null != mIn) // mIn goes null when it's been sucked dry
+        in = mIn; // the reader may close the stream meanwhile
+        if (null != in) // mIn goes null when it's been sucked dry
         {
             if (!force)
-            {   // check for change of state while waiting on the monitor in a synchronous call
+            {   // check for change of state while waiting for the fill role
                 if (0 != available ())
                     return (true);
-                synchronous++;
             }
 
             // get some buffer space
-            if (0 == mContentLength)
-            {   // unknown content length... keep doubling
-                if (null == mBuffer)
-                {
-                    mBuffer = new byte[Math.max (BUFFER_SIZE, mIn.available ())];
-                    buffer = mBuffer;
-                }
-                else
-                {
-                    if (mBuffer.length - mLevel < BUFFER_SIZE / 2)
-                        buffer = new byte[Math.max (mBuffer.length * 2, mBuffer.length + mIn.available ())];
-                    else
-                        buffer = mBuffer;
-                }
-                size = buffer.length - mLevel;
+            chunks = mChunks;
+            if (null == chunks)
+            {   // known content length... allocate once, unless it's huge
+                // unknown content length... chunks of at least what's on hand
+                mChunkSize = (0 != mContentLength)
+                    ? Math.min (mContentLength, MAX_CHUNK_SIZE)
+                    : Math.min (Math.max (BUFFER_SIZE, in.available ()), MAX_CHUNK_SIZE);
+                chunks = new byte[1][];
             }
-            else
-            {   // known content length... allocate once
-                size = mContentLength - mLevel;
-                if (null == mBuffer)
-                    mBuffer =  new byte[size];
-                buffer = mBuffer;
+            index = mLevel / mChunkSize;
+            position = mLevel - index * mChunkSize;
+            if (index == chunks.length)
+            {   // a bigger directory, only the references are copied
+                directory = new byte[chunks.length * 2][];
+                System.arraycopy (chunks, 0, directory, 0, chunks.length);
+                chunks = directory;
+                mReallocations++;
             }
-
-            // read into the end of the 'new' buffer
-            read = mIn.read (buffer, mLevel, size);
+            if (null == chunks[index])
+                chunks[index] = new byte[mChunkSize];
+            size = mChunkSize - position;
+            if (0 != mContentLength)
+                size = Math.min (size, mContentLength - mLevel);
+
+            // read into the end of the last chunk
+            read = in.read (chunks[index], position, size);
             if (-1 == read)
             {
-                mIn.close ();
+                in.close ();
                 mIn = null;
             }
             else
             {
-                if (mBuffer != buffer)
-                {   // copy the bytes previously read
-                    System.arraycopy (mBuffer, 0, buffer, 0, mLevel);
-                    mBuffer = buffer;
-                    reallocations++;
-                }
+                // publish the chunks before the level that makes them readable
+                mChunks = chunks;
                 mLevel += read;
                 if ((0 != mContentLength) && (mLevel == mContentLength))
                 {
-                    mIn.close ();
+                    in.close ();
                     mIn = null;
                 }
                 ret = true;
-                fills++;
+                mFills++;
             }
         }
 
@@ -208,12 +313,21 @@ public class Stream extends InputStream implements Runnable
 
     /**
      * Continually read the underlying stream untill exhausted.
+     * If the reader is in the middle of a synchronous fill, this waits for it
+     * to finish before taking over as the producer.
      * @see java.lang.Thread#run()
      */
-    public void run () {
-        try{
-            boolean filled;
+    public void run ()
+    {
+        boolean filled;
 
+        while (!mState.compareAndSet (IDLE, PRODUCING))
+            if (null == mIn)
+                return;
+            else
+                LockSupport.parkNanos (this, PAUSE);
+        try
+        {
             do
             {   // keep hammering the socket with no delay, it's metered upstream
                 try
@@ -222,17 +336,81 @@ public class Stream extends InputStream implements Runnable
                 }
                 catch (IOException ioe)
                 {
-                    ioe.printStackTrace ();
+                    if (null != mIn) // not closed by the reader
+                        ioe.printStackTrace ();
                     // exit the thread if there is a problem,
                     // let the synchronous reader find out about it
                     filled = false;
                 }
+                signal ();
             }
             while (filled);
-        }catch(RuntimeException e) {
-            
-            e.printStackTrace();
         }
+        catch (RuntimeException re)
+        {
+            re.printStackTrace ();
+        }
+        finally
+        {
+            mState.set (IDLE);
+            signal ();
+        }
+    }
+
+    /**
+     * Wake the reader if it is waiting for the producer.
+     */
+    private void signal ()
+    {
+        Thread waiter;
+
+        waiter = mWaiter;
+        if (null != waiter)
+            LockSupport.unpark (waiter);
+    }
+
+    /**
+     * Wait until bytes are available or the end of the stream is reached.
+     * If there is no background producer the reader fills the buffer itself,
+     * otherwise it parks until the producer publishes more bytes or stops.
+     * @return <code>true</code> if bytes are available.
+     * @exception IOException If the underlying stream read() or available() throws one.
+     */
+    protected boolean await ()
+        throws
+            IOException
+    {
+        boolean done;
+
+        done = 0 != available ();
+        if (!done)
+            mSynchronous++;
+        while (!done)
+            if (mState.compareAndSet (IDLE, FILLING))
+                try
+                {
+                    done = !fill (false) || (0 != available ());
+                }
+                finally
+                {
+                    mState.set (IDLE);
+                }
+            else if (PRODUCING == mState.get ())
+            {
+                // publish the waiter before checking, the producer signals
+                // after raising the level, so one of us sees the other
+                mWaiter = Thread.currentThread ();
+                while ((0 == available ()) && (PRODUCING == mState.get ()))
+                    LockSupport.park (this);
+                mWaiter = null;
+                done = 0 != available ();
+                // if the producer stopped, loop to fill, which finds
+                // the end of the stream or rethrows its exception
+            }
+            else
+                LockSupport.parkNanos (this, PAUSE);
+
+        return (0 != available ());
     }
 
     //
@@ -254,28 +432,80 @@ public class Stream extends InputStream implements Runnable
     {
         int ret;
 
-        // The following is unsynchronized code.
-        // Some would argue that unsynchronized access isn't thread safe
-        // but I think I can rationalize it in this case...
-        // The two volatile members are mLevel and mBuffer (besides mIn).
-        // If (mOffset >= mLevel) turns false after the test, fill is
-        // superflously called, but it's synchronized and figures it out.
+        // The following is lock free code.
+        // The two volatile members are mLevel and mChunks (besides mIn).
         // (mOffset < mLevel) only goes more true by the operation of the
-        // background thread, it increases the value of mLevel
+        // producer, it increases the value of mLevel
         // and volatile int access is atomic.
-        // If mBuffer changes by the operation of the background thread,
-        // the array pointed to can only be bigger than the previous buffer,
-        // and hence no array bounds exception can be raised.
+        // The chunks are published before the level is raised, so reading
+        // mChunks after mLevel sees every chunk below the level, and a
+        // chunk's bytes are never moved once they are written.
         if (0 == (mLevel - mOffset)) // (0 == available ())
-            fill (false);
+            await ();
         if (0 != (mLevel - mOffset)) // (0 != available ())
-            ret = mBuffer[mOffset++] & 0xff;
+        {
+            ret = mChunks[mOffset / mChunkSize][mOffset % mChunkSize] & 0xff;
+            mOffset++;
+        }
         else
             ret = EOF;
 
         return (ret);
     }
 
+    /**
+     * Reads up to <code>len</code> bytes of data from the input stream into
+     * an array of bytes, without going through {@link #read()} for each byte.
+     * Blocks until at least one byte is available, the end of the stream is
+     * detected, or an exception is thrown.
+     * @param b The buffer into which the data is read.
+     * @param off The start offset in array <code>b</code>
+     * at which the data is written.
+     * @param len The maximum number of bytes to read.
+     * @return The total number of bytes read into the buffer, or
+     * <code>-1</code> if there is no more data because the end of
+     * the stream has been reached.
+     * @exception IOException If an I/O error occurs.
+     */
+    public int read (byte[] b, int off, int len) throws IOException
+    {
+        int level;
+        byte[][] chunks;
+        int index;
+        int position;
+        int count;
+        int ret;
+
+        if ((off < 0) || (len < 0) || (len > b.length - off))
+            throw new IndexOutOfBoundsException ();
+        if (0 == len)
+            ret = 0;
+        else
+        {
+            if (0 == (mLevel - mOffset)) // (0 == available ())
+                await ();
+            level = mLevel;
+            if (0 == (level - mOffset))
+                ret = EOF;
+            else
+            {
+                chunks = mChunks;
+                ret = 0;
+                while ((ret < len) && (mOffset < level))
+                {
+                    index = mOffset / mChunkSize;
+                    position = mOffset - index * mChunkSize;
+                    count = Math.min (Math.min (len - ret, level - mOffset), mChunkSize - position);
+                    System.arraycopy (chunks[index], position, b, off + ret, count);
+                    mOffset += count;
+                    ret += count;
+                }
+            }
+        }
+
+        return (ret);
+    }
+
     /**
      * Returns the number of bytes that can be read (or skipped over) from
      * this input stream without blocking by the next caller of a method for
@@ -295,18 +525,29 @@ public class Stream extends InputStream implements Runnable
      * with the stream.
      * @exception IOException If an I/O error occurs.
      */
-    public synchronized void close () throws IOException
+    public void close () throws IOException
     {
-        if (null != mIn)
+        InputStream in;
+
+        in = mIn;
+        mIn = null;
+        if (null != in)
+            in.close ();
+        // wait for the producer to notice
+        while (!mState.compareAndSet (IDLE, FILLING))
+            LockSupport.parkNanos (this, PAUSE);
+        try
         {
-            mIn.close ();
-            mIn = null;
+            mChunks = null;
+            mLevel = 0;
+            mOffset = 0;
+            mContentLength =0;
+            mMark = -1;
+        }
+        finally
+        {
+            mState.set (IDLE);
         }
-        mBuffer = null;
-        mLevel = 0;
-        mOffset = 0;
-        mContentLength =0;
-        mMark = -1;
     }
 
     /**
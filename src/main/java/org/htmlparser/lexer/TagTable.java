@@ -0,0 +1,175 @@
+package org.htmlparser.lexer;
+
+/**
+ * The transition table of the tag and attribute state machine of
+ * {@link Lexer#parseTag}, used when the lexer is
+ * {@link Lexer#setTableDriven table driven}.
+ * Characters are reduced to a few classes, and each state and class
+ * selects one entry, which packs the next state, the kind of attribute
+ * to add and a few flags. The states and the bookmarks they keep are
+ * those of <code>parseTag</code>, so the attributes have the same
+ * positions. Where <code>parseTag</code> backs up to read a character
+ * again in another state, the entry says to examine the same character
+ * again, and where it backs up over the opening angle of the next tag,
+ * the entry says the tag ends before the character.
+ */
+final class TagTable
+{
+    //
+    // Character classes
+    //
+
+    /** The end of the page. */
+    static final int EOF = 0;
+    /** A closing angle. */
+    static final int CLOSE = 1;
+    /** An opening angle. */
+    static final int OPEN = 2;
+    /** An equals sign. */
+    static final int EQUALS = 3;
+    /** A single quote. */
+    static final int APOSTROPHE = 4;
+    /** A double quote. */
+    static final int QUOTE = 5;
+    /** Whitespace. */
+    static final int SPACE = 6;
+    /** Anything else. */
+    static final int OTHER = 7;
+
+    //
+    // Attributes added, in bits 4 to 7 of an entry
+    //
+
+    /** Add nothing. */
+    static final int NONE = 0;
+    /** Add the whitespace since bookmark 0. */
+    static final int WHITESPACE = 1;
+    /** Add a standalone attribute, <code>font</code>. */
+    static final int STANDALONE = 2;
+    /** Add an empty attribute, <code>color=</code>. */
+    static final int EMPTY = 3;
+    /** Add an unquoted attribute, <code>size=1</code>. */
+    static final int NAKED = 4;
+    /** Add a single quoted attribute, <code>width='100%'</code>. */
+    static final int SINGLE_QUOTED = 5;
+    /** Add a double quoted attribute, <code>content="text"</code>. */
+    static final int DOUBLE_QUOTED = 6;
+
+    //
+    // Flags
+    //
+
+    /** The tag is complete. */
+    static final int DONE = 1 << 8;
+    /** The tag ends before the character, which starts the next node. */
+    static final int BEFORE = 1 << 9;
+    /** The character is examined again in the next state. */
+    static final int AGAIN = 1 << 10;
+    /** The bookmark of the next state is set to the character's position. */
+    static final int MARK = 1 << 11;
+    /** Bookmark 0 is set to the character's position. */
+    static final int RESTART_AT = 1 << 12;
+    /** Bookmark 0 is set after the character. */
+    static final int RESTART_AFTER = 1 << 13;
+    /** Bookmark 0 is set to the end of the attribute name. */
+    static final int RESTART_NAME = 1 << 14;
+
+    /**
+     * The entries, eight per state, by character class.
+     */
+    static final int[] TRANSITIONS;
+
+    /**
+     * The classes of the ASCII characters.
+     */
+    private static final byte[] CLASSES;
+
+    static
+    {
+        int standalone;
+
+        CLASSES = new byte[128];
+        for (int i = 0; i < CLASSES.length; i++)
+            CLASSES[i] = (byte)(Character.isWhitespace ((char)i) ? SPACE : OTHER);
+        CLASSES['>'] = CLOSE;
+        CLASSES['<'] = OPEN;
+        CLASSES['='] = EQUALS;
+        CLASSES['\''] = APOSTROPHE;
+        CLASSES['"'] = QUOTE;
+
+        TRANSITIONS = new int[7 * 8];
+        // state 0 - outside of any attribute
+        fill (0, (WHITESPACE << 4) | 1);
+        set (0, EOF, (WHITESPACE << 4) | DONE);
+        set (0, CLOSE, (WHITESPACE << 4) | DONE);
+        set (0, OPEN, (WHITESPACE << 4) | DONE | BEFORE);
+        set (0, SPACE, 0);
+        // state 1 - within attribute name
+        fill (1, 1);
+        set (1, EOF, (STANDALONE << 4) | DONE);
+        set (1, CLOSE, (STANDALONE << 4) | DONE);
+        set (1, OPEN, (STANDALONE << 4) | DONE | BEFORE);
+        set (1, EQUALS, 2);
+        set (1, SPACE, 6 | MARK);
+        // state 2 - equals hit
+        fill (2, 3);
+        set (2, EOF, (EMPTY << 4) | DONE);
+        set (2, CLOSE, (EMPTY << 4) | DONE);
+        set (2, APOSTROPHE, 4 | MARK);
+        set (2, QUOTE, 5 | MARK);
+        set (2, SPACE, 2);
+        // state 3 - within naked attribute value
+        fill (3, 3);
+        set (3, EOF, (NAKED << 4) | DONE);
+        set (3, CLOSE, (NAKED << 4) | DONE);
+        set (3, SPACE, (NAKED << 4) | RESTART_AT);
+        // state 4 - within single quoted attribute value
+        fill (4, 4);
+        set (4, EOF, (SINGLE_QUOTED << 4) | DONE);
+        set (4, APOSTROPHE, (SINGLE_QUOTED << 4) | RESTART_AFTER);
+        // state 5 - within double quoted attribute value
+        fill (5, 5);
+        set (5, EOF, (DOUBLE_QUOTED << 4) | DONE);
+        set (5, QUOTE, (DOUBLE_QUOTED << 4) | RESTART_AFTER);
+        // state 6 - whitespace after an attribute name, which was
+        // standalone unless an equals sign follows
+        standalone = (STANDALONE << 4) | RESTART_NAME | AGAIN;
+        fill (6, standalone);
+        set (6, EQUALS, 2);
+        set (6, SPACE, 6);
+    }
+
+    private TagTable ()
+    {
+    }
+
+    private static void fill (int state, int entry)
+    {
+        for (int i = 0; i < 8; i++)
+            set (state, i, entry);
+    }
+
+    private static void set (int state, int type, int entry)
+    {
+        TRANSITIONS[(state << 3) + type] = entry;
+    }
+
+    /**
+     * Get the class of a character.
+     * @param ch The character, {@link Page#EOF} at the end of the page.
+     * @return The character class.
+     */
+    static int classify (char ch)
+    {
+        int ret;
+
+        if (ch < 128)
+            ret = CLASSES[ch];
+        else if (Page.EOF == ch)
+            ret = EOF;
+        else
+            ret = Character.isWhitespace (ch) ? SPACE : OTHER;
+
+        return (ret);
+    }
+}
@@ -27,12 +27,14 @@ package org.htmlparser.scanners;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 import org.htmlparser.Attribute;
 import org.htmlparser.Node;
 import org.htmlparser.Tag;
 import org.htmlparser.lexer.Lexer;
 import org.htmlparser.lexer.Page;
+import org.htmlparser.lexer.ParseLimits;
 import org.htmlparser.util.NodeList;
 import org.htmlparser.util.ParserException;
 
@@ -77,7 +79,10 @@ public class CompositeTagScanner extends TagScanner
      * that matches the tag ender set or end tag ender set.
      * In the latter case, a virtual end tag is created.
      * Each node found that is not the end tag is added to
-     * the list of children. The end tag is special and not a child.<p>
+     * the list of children. The end tag is special and not a child.
+     * For the {@link Lexer#setSkippedTags skipped tags} of the lexer, the
+     * lexer has already moved past the content, so the first node found
+     * is the end tag, if any, and there are no children.<p>
      * Nodes that also have a CompositeTagScanner as their scanner are
      * recursed into, which provides the nested structure of an HTML page.
      * This method operates in two possible modes, depending on a private boolean.
@@ -113,9 +118,8 @@ public class CompositeTagScanner extends TagScanner
                     if (node instanceof Tag)
                     {
                         next = (Tag)node;
-                        name = next.getTagName ();
                         // check for normal end tag
-                        if (next.isEndTag () && name.equals (ret.getTagName ()))
+                        if (next.isEndTag () && TagNames.sameName (next, ret))
                         {
                             ret.setEndTag (next);
                             node = null;
@@ -123,7 +127,7 @@ public class CompositeTagScanner extends TagScanner
                         else if (isTagToBeEndedFor (ret, next)) // check DTD
                         {
                             // backup one node. insert a virtual end tag later
-                            lexer.setPosition (next.getStartPosition ());
+                            lexer.pushBack (next, false);
                             node = null;
                         }
                         else if (!next.isEndTag ())
@@ -132,10 +136,13 @@ public class CompositeTagScanner extends TagScanner
                             scanner = next.getThisScanner ();
                             if (null != scanner)
                             {
+                                // link to the parent early, so the ancestors
+                                // of nodes are known while they are scanned
+                                next.setParent (ret);
                                 if (mUseJVMStack)
                                 {   // JVM stack recursion
                                     node = scanner.scan (next, lexer, stack);
-                                    addChild (ret, node);
+                                    addChild (ret, node, lexer);
                                 }
                                 else
                                 {
@@ -146,7 +153,15 @@ public class CompositeTagScanner extends TagScanner
                                         {
                                             next.setEndTag (next);
                                             finishTag (next, lexer);
-                                            addChild (ret, next);
+                                            addChild (ret, next, lexer);
+                                        }
+                                        else if ((null != lexer.getLimits ())
+                                            && (stack.size () + 2 > lexer.getLimits ().getMaxDepth ()))
+                                        {
+                                            // too deep, the contents go to the enclosing tag
+                                            lexer.exceeded (ParseLimits.Limit.DEPTH);
+                                            finishTag (next, lexer);
+                                            addChild (ret, next, lexer);
                                         }
                                         else
                                         {
@@ -157,12 +172,12 @@ public class CompositeTagScanner extends TagScanner
                                     else
                                     {   // normal recursion if switching scanners
                                         node = scanner.scan (next, lexer, stack);
-                                        addChild (ret, node);
+                                        addChild (ret, node, lexer);
                                     }
                                 }
                             }
                             else
-                                addChild (ret, next);
+                                addChild (ret, next, lexer);
                         }
                         else
                         {
@@ -185,54 +200,62 @@ public class CompositeTagScanner extends TagScanner
                                 // If there is something, we close off all the tags
                                 // walked over and continue on as if nothing
                                 // happened.
-                                List<Attribute> attributes = new ArrayList<> ();
-                                attributes.add (new Attribute (name, null));
-                                Tag opener = lexer.getNodeFactory ().createTagNode (
-                                    lexer.getPage (), next.getStartPosition (), next.getEndPosition (),
-                                    attributes);
-
-                                scanner = opener.getThisScanner ();
-                                if ((null != scanner) && (scanner == this))
+                                // A ParseStack knows if anything open could be
+                                // closed, so the search is only made if it can succeed.
+                                if ((stack instanceof ParseStack) && !((ParseStack)stack).mayEnd (next))
+                                    addChild (ret, next, lexer); // default behaviour
+                                else
                                 {
-                                    // uh-oh
-                                    int index = -1;
-                                    for (int i = stack.size () - 1; (-1 == index) && (i >= 0); i--)
-                                    {
-                                        // short circuit here... assume everything on the stack has this as it's scanner
-                                        // we'll need to stop if either of those conditions isn't met
-                                        Tag boffo = (Tag)stack.get (i);
-                                        if (name.equals (boffo.getTagName ()))
-                                            index = i;
-                                        else if (isTagToBeEndedFor (boffo, next)) // check DTD
-                                            index = i;
-                                    }
-                                    if (-1 != index)
+                                    name = next.getTagName ();
+                                    List<Attribute> attributes = new ArrayList<> ();
+                                    attributes.add (new Attribute (name, null));
+                                    Tag opener = lexer.getNodeFactory ().createTagNode (
+                                        lexer.getPage (), next.getStartPosition (), next.getEndPosition (),
+                                        attributes);
+
+                                    scanner = opener.getThisScanner ();
+                                    if ((null != scanner) && (scanner == this))
                                     {
-                                        // finish off the current one first
-                                        finishTag (ret, lexer);
-                                        addChild ((Tag)stack.get (stack.size () - 1), ret);
-                                        for (int i = stack.size () - 1; i > index; i--)
+                                        // uh-oh
+                                        int index = -1;
+                                        for (int i = stack.size () - 1; (-1 == index) && (i >= 0); i--)
+                                        {
+                                            // short circuit here... assume everything on the stack has this as it's scanner
+                                            // we'll need to stop if either of those conditions isn't met
+                                            Tag boffo = (Tag)stack.get (i);
+                                            if (TagNames.sameName (next, boffo))
+                                                index = i;
+                                            else if (isTagToBeEndedFor (boffo, next)) // check DTD
+                                                index = i;
+                                        }
+                                        if (-1 != index)
                                         {
-                                            Tag fred = (Tag)stack.remove (i);
-                                            finishTag (fred, lexer);
-                                            addChild ((Tag)stack.get (i - 1), fred);
+                                            // finish off the current one first
+                                            finishTag (ret, lexer);
+                                            addChild ((Tag)stack.get (stack.size () - 1), ret, lexer);
+                                            for (int i = stack.size () - 1; i > index; i--)
+                                            {
+                                                Tag fred = (Tag)stack.remove (i);
+                                                finishTag (fred, lexer);
+                                                addChild ((Tag)stack.get (i - 1), fred, lexer);
+                                            }
+                                            ret = (Tag)stack.remove (index);
+                                            node = null;
                                         }
-                                        ret = (Tag)stack.remove (index);
-                                        node = null;
+                                        else
+                                            addChild (ret, next, lexer); // default behaviour
                                     }
                                     else
-                                        addChild (ret, next); // default behaviour
+                                        addChild (ret, next, lexer); // default behaviour
                                 }
-                                else
-                                    addChild (ret, next); // default behaviour
                             }
                             else
-                                addChild (ret, next);
+                                addChild (ret, next, lexer);
                         }
                     }
                     else
                     {
-                        addChild (ret, node);
+                        addChild (ret, node, lexer);
                         node.doSemanticAction ();
                     }
                 }
@@ -254,7 +277,7 @@ public class CompositeTagScanner extends TagScanner
                                 {
                                     stack.remove (depth - 1);
                                     finishTag (ret, lexer);
-                                    addChild (precursor, ret);
+                                    addChild (precursor, ret, lexer);
                                     ret = precursor;
                                 }
                                 else
@@ -286,10 +309,29 @@ public class CompositeTagScanner extends TagScanner
         parent.getChildren ().add (child);
     }
 
+    /**
+     * Add a completed child to the given tag.
+     * After adding it, the child is passed to the lexer's
+     * {@link Lexer#setChildConsumer child consumer}, if any.
+     * @param parent The parent tag.
+     * @param child The child node, with all of its own children.
+     * @param lexer The lexer being scanned.
+     */
+    protected void addChild (Tag parent, Node child, Lexer lexer)
+    {
+        BiConsumer<Tag, Node> consumer;
+
+        addChild (parent, child);
+        consumer = lexer.getChildConsumer ();
+        if (null != consumer)
+            consumer.accept (parent, child);
+    }
+
     /**
      * Finish off a tag.
      * Perhap add a virtual end tag.
-     * Set the end tag parent as this tag.
+     * Set the end tag parent as this tag, unless the tag is its own end tag,
+     * as an empty XML tag is, which would make it its own parent.
      * Perform the semantic acton.
      * @param tag The tag to finish off.
      * @param lexer A lexer positioned at the end of the tag.
@@ -300,7 +342,8 @@ public class CompositeTagScanner extends TagScanner
     {
         if (null == tag.getEndTag ())
             tag.setEndTag (createVirtualEndTag (tag, lexer, lexer.getPage (), lexer.getCursor ().getPosition ()));
-        tag.getEndTag ().setParent (tag);
+        if (tag.getEndTag () != tag)
+            tag.getEndTag ().setParent (tag);
         tag.doSemanticAction ();
     }
 
@@ -337,6 +380,8 @@ public class CompositeTagScanner extends TagScanner
      * Examines the 'enders' or 'end tag enders' lists of the current tag
      * for a match with the given tag. Which list is chosen depends on whether
      * tag is an end tag ('end tag enders') or not ('enders').
+     * The lists are compiled into sets of {@link TagNames tag name ids}
+     * the first time they are seen, so this is a lookup and a bit test.
      * @param current The tag that might need to be ended.
      * @param tag The candidate tag that might end the current one.
      * @return <code>true</code> if the name of the given tag is a member of
@@ -344,24 +389,18 @@ public class CompositeTagScanner extends TagScanner
      */
     public final boolean isTagToBeEndedFor (Tag current, Tag tag)
     {
-        String name;
         String[] ends;
         boolean ret;
 
-        ret = false;
-
-        name = tag.getTagName ();
         if (tag.isEndTag ())
             ends = current.getEndTagEnders ();
         else
             ends = current.getEnders ();
-        for (int i = 0; i < ends.length; i++)
-            if (name.equalsIgnoreCase (ends[i]))
-            {
-                ret = true;
-                break;
-            }
-        
+        if (0 == ends.length)
+            ret = false;
+        else
+            ret = TagNames.contains (TagNames.compile (ends), TagNames.lookup (tag));
+
         return (ret);
     }
 }
@@ -0,0 +1,188 @@
+package org.htmlparser.scanners;
+
+import org.htmlparser.Node;
+import org.htmlparser.Tag;
+import org.htmlparser.util.NodeListImpl;
+
+/**
+ * The stack of open tags used by {@link CompositeTagScanner}.
+ * Besides the tags, it counts the open tags by {@link TagNames name id},
+ * and the open tags that each end tag name would end through their
+ * {@link Tag#getEndTagEnders end tag enders}. An end tag that matches no
+ * open tag is then recognized without walking the stack, which keeps
+ * badly broken markup, such as thousands of stray end tags inside deeply
+ * nested unclosed tags, from being parsed in quadratic time.
+ * <p>
+ * The counts are kept up to date as tags are added and removed at the top
+ * of the stack. Any other change is noticed by the modification count and
+ * the counts are rebuilt the next time they are needed.
+ */
+public class ParseStack
+    extends
+        NodeListImpl
+{
+    /**
+     * The number of open tags by name id, <code>null</code> when the
+     * counts need to be rebuilt.
+     */
+    private int[] mNamed;
+
+    /**
+     * The number of open tags ended by an end tag, by the end tag's name id.
+     */
+    private int[] mEnded;
+
+    /**
+     * The modification count the counts are for.
+     */
+    private int mCountedModCount;
+
+    /**
+     * Create an empty stack.
+     */
+    public ParseStack ()
+    {
+        mNamed = new int[0];
+        mEnded = new int[0];
+        mCountedModCount = modCount;
+    }
+
+    /**
+     * Push a tag.
+     * @param node The tag.
+     * @return <code>true</code>.
+     */
+    public boolean add (Node node)
+    {
+        boolean counted;
+        boolean ret;
+
+        counted = (null != mNamed) && (mCountedModCount == modCount);
+        ret = super.add (node);
+        if (counted)
+        {
+            count (node, 1);
+            mCountedModCount = modCount;
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Remove a tag.
+     * @param index The position of the tag.
+     * @return The tag removed.
+     */
+    public Node remove (int index)
+    {
+        boolean counted;
+        Node ret;
+
+        counted = (null != mNamed) && (mCountedModCount == modCount);
+        ret = super.remove (index);
+        if (counted)
+        {
+            count (ret, -1);
+            mCountedModCount = modCount;
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Replacing a tag does not change the modification count,
+     * so have the counts rebuilt explicitly.
+     */
+    public Node set (int index, Node node)
+    {
+        mNamed = null;
+        return (super.set (index, node));
+    }
+
+    /**
+     * Determine if an end tag could close a tag on the stack, either by
+     * name or because it is one of the tag's end tag enders.
+     * @param tag The end tag.
+     * @return <code>false</code> if no tag on the stack can be closed by it.
+     */
+    public boolean mayEnd (Tag tag)
+    {
+        int id;
+        boolean ret;
+
+        if ((null == mNamed) || (mCountedModCount != modCount))
+            recount ();
+        id = TagNames.lookup (tag);
+        ret = (0 <= id)
+            && (((id < mNamed.length) && (0 != mNamed[id])) || ((id < mEnded.length) && (0 != mEnded[id])));
+
+        return (ret);
+    }
+
+    /**
+     * Rebuild the counts from the contents.
+     */
+    private void recount ()
+    {
+        mNamed = new int[0];
+        mEnded = new int[0];
+        for (int i = 0; i < size (); i++)
+            count (get (i), 1);
+        mCountedModCount = modCount;
+    }
+
+    /**
+     * Adjust the counts for a tag.
+     * @param node The tag added or removed.
+     * @param delta 1 if the tag was added, -1 if it was removed.
+     */
+    private void count (Node node, int delta)
+    {
+        Tag tag;
+        String name;
+        int id;
+        long[] set;
+        long bits;
+
+        if (node instanceof Tag)
+        {
+            tag = (Tag)node;
+            id = TagNames.lookup (tag);
+            if ((-1 == id) && (null != (name = tag.getTagName ())))
+                id = TagNames.id (name);
+            if (0 <= id)
+            {
+                mNamed = fit (mNamed, id);
+                mNamed[id] += delta;
+            }
+            set = TagNames.compile (tag.getEndTagEnders ());
+            for (int i = 0; i < set.length; i++)
+                for (bits = set[i]; 0 != bits; bits &= bits - 1)
+                {
+                    id = (i << 6) + Long.numberOfTrailingZeros (bits);
+                    mEnded = fit (mEnded, id);
+                    mEnded[id] += delta;
+                }
+        }
+    }
+
+    /**
+     * Make sure an array of counts has room for an id.
+     * @param counts The counts.
+     * @param id The id.
+     * @return The counts, or a larger copy.
+     */
+    private static int[] fit (int[] counts, int id)
+    {
+        int[] ret;
+
+        ret = counts;
+        if (id >= counts.length)
+        {
+            ret = new int[Math.max (id + 1, TagNames.size ())];
+            System.arraycopy (counts, 0, ret, 0, counts.length);
+        }
+
+        return (ret);
+    }
+}
@@ -34,7 +34,6 @@ import org.htmlparser.Tag;
 import org.htmlparser.lexer.Lexer;
 import org.htmlparser.tags.ScriptTag;
 import org.htmlparser.util.NodeList;
-import org.htmlparser.util.NodeListImpl;
 import org.htmlparser.util.ParserException;
 
 /**
@@ -94,18 +93,24 @@ public class ScriptScanner
         Attribute attribute;
         List<Attribute> attributes;
 
-        if (tag instanceof ScriptTag)
+        // the lexer has already skipped the script of a skipped tag
+        if (lexer.isSkipped (tag))
+            content = null;
+        else
         {
-            language = ((ScriptTag)tag).getLanguage ();
-            if ((null != language) &&
-                (language.equalsIgnoreCase ("JScript.Encode") ||
-                 language.equalsIgnoreCase ("VBScript.Encode")))
+            if (tag instanceof ScriptTag)
             {
-                code = ScriptDecoder.Decode (lexer.getPage (), lexer.getCursor ());
-                ((ScriptTag)tag).setScriptCode (code);
+                language = ((ScriptTag)tag).getLanguage ();
+                if ((null != language) &&
+                    (language.equalsIgnoreCase ("JScript.Encode") ||
+                     language.equalsIgnoreCase ("VBScript.Encode")))
+                {
+                    code = ScriptDecoder.Decode (lexer.getPage (), lexer.getCursor ());
+                    ((ScriptTag)tag).setScriptCode (code);
+                }
             }
+            content = lexer.parseCDATA (!STRICT);
         }
-        content = lexer.parseCDATA (!STRICT);
         position = lexer.getPosition ();
         node = lexer.next (false);
         if (null != node)
@@ -127,10 +132,7 @@ public class ScriptScanner
         }
         tag.setEndTag ((Tag)node);
         if (null != content)
-        {
-            tag.setChildren (new NodeListImpl (content));
-            content.setParent (tag);
-        }
+            addChild (tag, content, lexer);
         node.setParent (tag);
         tag.doSemanticAction ();
 
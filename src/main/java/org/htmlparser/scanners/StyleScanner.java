@@ -33,7 +33,6 @@ import org.htmlparser.Node;
 import org.htmlparser.lexer.Lexer;
 import org.htmlparser.Tag;
 import org.htmlparser.util.NodeList;
-import org.htmlparser.util.NodeListImpl;
 import org.htmlparser.util.ParserException;
 
 /**
@@ -65,7 +64,11 @@ public class StyleScanner extends CompositeTagScanner
         Attribute attribute;
         List<Attribute> attributes;
 
-        content = lexer.parseCDATA ();
+        // the lexer has already skipped the style of a skipped tag
+        if (lexer.isSkipped (tag))
+            content = null;
+        else
+            content = lexer.parseCDATA ();
         position = lexer.getPosition ();
         node = lexer.next (false);
         if (null != node)
@@ -87,10 +90,7 @@ public class StyleScanner extends CompositeTagScanner
         }
         tag.setEndTag ((Tag)node);
         if (null != content)
-        {
-            tag.setChildren (new NodeListImpl (content));
-            content.setParent (tag);
-        }
+            addChild (tag, content, lexer);
         node.setParent (tag);
         tag.doSemanticAction ();
 
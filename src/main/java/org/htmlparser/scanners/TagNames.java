@@ -0,0 +1,297 @@
+package org.htmlparser.scanners;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.htmlparser.Tag;
+
+/**
+ * Small integer ids for tag names, and the ender lists of tags compiled
+ * into sets of those ids.
+ * The ender lists returned by {@link Tag#getEnders} and
+ * {@link Tag#getEndTagEnders} are constant arrays, so each is compiled into
+ * a bit set the first time it is seen, and deciding if a tag ends another
+ * is then a single bit test.
+ * Names are looked up straight from the raw tag name, ignoring case and
+ * the slashes of end tags and empty XML tags, without building the
+ * upper case name that {@link Tag#getTagName} returns.
+ * <p>
+ * Only names that have been registered, by appearing in an ender list or
+ * through {@link #id}, have ids. All methods are thread safe.
+ */
+public final class TagNames
+{
+    /**
+     * The maximum number of compiled ender lists kept.
+     * Tags that build a new list on every call would otherwise fill
+     * the cache.
+     */
+    public static final int MAX_COMPILED = 1024;
+
+    /**
+     * No ids.
+     */
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * The registered names, replaced when a name is added.
+     */
+    private static volatile Table mTable = new Table (64);
+
+    /**
+     * Compiled ender lists, by identity.
+     */
+    private static final ConcurrentHashMap<String[], long[]> mCompiled = new ConcurrentHashMap<> ();
+
+    private TagNames ()
+    {
+    }
+
+    /**
+     * Get the id of a tag name, registering it if need be.
+     * @param name The tag name, in any case, without slashes.
+     * @return The id, a small non-negative number.
+     */
+    public static int id (String name)
+    {
+        Table table;
+        char[] upper;
+        int ret;
+
+        ret = mTable.find (name, 0, name.length ());
+        if (-1 == ret)
+            synchronized (TagNames.class)
+            {
+                table = mTable;
+                ret = table.find (name, 0, name.length ());
+                if (-1 == ret)
+                {
+                    // upper case a character at a time, as lookups do
+                    upper = name.toCharArray ();
+                    for (int i = 0; i < upper.length; i++)
+                        upper[i] = Character.toUpperCase (upper[i]);
+                    ret = table.mCount;
+                    mTable = table.add (new String (upper), ret);
+                }
+            }
+
+        return (ret);
+    }
+
+    /**
+     * Get the number of registered names.
+     * @return One more than the largest id.
+     */
+    public static int size ()
+    {
+        return (mTable.mCount);
+    }
+
+    /**
+     * Look up the id of the name of a tag.
+     * @param tag The tag, which may be an end tag.
+     * @return The id of the tag's name, or -1 if the name is not registered.
+     */
+    public static int lookup (Tag tag)
+    {
+        String raw;
+        int start;
+        int end;
+        int ret;
+
+        ret = -1;
+        raw = tag.getRawTagName ();
+        if (null != raw)
+        {
+            start = 0;
+            end = raw.length ();
+            if ((start < end) && ('/' == raw.charAt (start)))
+                start++;
+            if ((start < end) && ('/' == raw.charAt (end - 1)))
+                end--;
+            ret = mTable.find (raw, start, end);
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Determine if two tags have the same name, as given by
+     * {@link Tag#getTagName}, without building the names.
+     * @param tag One tag.
+     * @param other The other tag.
+     * @return <code>true</code> if the names match, ignoring case and slashes.
+     */
+    public static boolean sameName (Tag tag, Tag other)
+    {
+        String raw;
+        String name;
+        int start;
+        int end;
+        int begin;
+        int finish;
+        boolean ret;
+
+        raw = tag.getRawTagName ();
+        name = other.getRawTagName ();
+        if ((null == raw) || (null == name))
+            ret = (null == raw) && (null == name);
+        else
+        {
+            start = 0;
+            end = raw.length ();
+            if ((start < end) && ('/' == raw.charAt (start)))
+                start++;
+            if ((start < end) && ('/' == raw.charAt (end - 1)))
+                end--;
+            begin = 0;
+            finish = name.length ();
+            if ((begin < finish) && ('/' == name.charAt (begin)))
+                begin++;
+            if ((begin < finish) && ('/' == name.charAt (finish - 1)))
+                finish--;
+            ret = (end - start == finish - begin)
+                && raw.regionMatches (true, start, name, begin, end - start);
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Get the set of ids of a list of names.
+     * @param names The names, usually the constant ender list of a tag class.
+     * @return The compiled set, to be tested with {@link #contains}.
+     * It must not be altered.
+     */
+    public static long[] compile (String[] names)
+    {
+        long[] bigger;
+        long[] ret;
+        int id;
+
+        if (0 == names.length)
+            ret = EMPTY;
+        else
+        {
+            ret = mCompiled.get (names);
+            if (null == ret)
+            {
+                ret = EMPTY;
+                for (int i = 0; i < names.length; i++)
+                {
+                    id = id (names[i]);
+                    if ((id >>> 6) >= ret.length)
+                    {
+                        bigger = new long[(id >>> 6) + 1];
+                        System.arraycopy (ret, 0, bigger, 0, ret.length);
+                        ret = bigger;
+                    }
+                    ret[id >>> 6] |= 1L << id;
+                }
+                if (mCompiled.size () >= MAX_COMPILED)
+                    mCompiled.clear ();
+                mCompiled.put (names, ret);
+            }
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Test an id for membership of a compiled set.
+     * @param set The set, from {@link #compile}.
+     * @param id The id, -1 is in no set.
+     * @return <code>true</code> if the id is in the set.
+     */
+    public static boolean contains (long[] set, int id)
+    {
+        return ((0 <= id) && ((id >>> 6) < set.length) && (0 != (set[id >>> 6] & (1L << id))));
+    }
+
+    /**
+     * An open addressing hash table of upper case names.
+     * The hash of a name is that of its upper case <code>String</code>,
+     * computed from the characters so any case can be looked up.
+     */
+    private static final class Table
+    {
+        final String[] mNames;
+        final int[] mIds;
+        final int mCount;
+
+        Table (int capacity)
+        {
+            mNames = new String[capacity];
+            mIds = new int[capacity];
+            mCount = 0;
+        }
+
+        private Table (String[] names, int[] ids, int count)
+        {
+            mNames = names;
+            mIds = ids;
+            mCount = count;
+        }
+
+        int find (String name, int start, int end)
+        {
+            int hash;
+            int mask;
+            int index;
+            String probe;
+            int ret;
+
+            hash = 0;
+            for (int i = start; i < end; i++)
+                hash = 31 * hash + Character.toUpperCase (name.charAt (i));
+            mask = mNames.length - 1;
+            index = spread (hash) & mask;
+            ret = -1;
+            while ((-1 == ret) && (null != (probe = mNames[index])))
+                if ((probe.length () == end - start) && probe.regionMatches (true, 0, name, start, end - start))
+                    ret = mIds[index];
+                else
+                    index = (index + 1) & mask;
+
+            return (ret);
+        }
+
+        Table add (String name, int id)
+        {
+            int capacity;
+            String[] names;
+            int[] ids;
+            Table ret;
+
+            capacity = mNames.length;
+            if (2 * (mCount + 1) > capacity)
+                capacity *= 2;
+            names = new String[capacity];
+            ids = new int[capacity];
+            for (int i = 0; i < mNames.length; i++)
+                if (null != mNames[i])
+                    put (names, ids, mNames[i], mIds[i]);
+            put (names, ids, name, id);
+            ret = new Table (names, ids, mCount + 1);
+
+            return (ret);
+        }
+
+        private static void put (String[] names, int[] ids, String name, int id)
+        {
+            int mask;
+            int index;
+
+            mask = names.length - 1;
+            index = spread (name.hashCode ()) & mask;
+            while (null != names[index])
+                index = (index + 1) & mask;
+            names[index] = name;
+            ids[index] = id;
+        }
+
+        private static int spread (int hash)
+        {
+            return (hash ^ (hash >>> 16));
+        }
+    }
+}
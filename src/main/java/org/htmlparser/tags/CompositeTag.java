@@ -473,13 +473,14 @@ public class CompositeTag extends TagNode
             if (null != getChildren ())
             {
                 children = children ();
-                while (children.hasNext ())
+                while (!visitor.shouldStop () && children.hasNext ())
                 {
                     child = children.next ();
                     child.accept (visitor);
                 }
             }
-            if ((null != getEndTag ()) && (this != getEndTag ())) // 2nd guard handles <tag/>
+            if ((null != getEndTag ()) && (this != getEndTag ()) // 2nd guard handles <tag/>
+                && !visitor.shouldStop ())
                 getEndTag ().accept (visitor);
         }
     }
@@ -0,0 +1,118 @@
+package org.htmlparser.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request to give up on a parse, either when {@link #cancel} is called,
+ * from any thread, or when a deadline passes.
+ * The parse checks the request cooperatively: the {@link org.htmlparser.lexer.Lexer}
+ * every {@link org.htmlparser.lexer.Lexer#CANCEL_CHECK_INTERVAL} nodes, and
+ * visitors wrapped in a {@link org.htmlparser.visitors.CancellableVisitor}
+ * as they traverse. Once cancelled, the lexer returns no more nodes, so open
+ * tags are closed and what was parsed so far is a well formed partial
+ * result, which the {@link org.htmlparser.Parser} methods hand back in a
+ * {@link ParseCancelledException}.
+ * <p>For example, to give up on a page after 200 milliseconds:
+ * <pre>
+ * parser.setCancellation (new Cancellation (200));
+ * try
+ * {
+ *     list = parser.parse (null);
+ * }
+ * catch (ParseCancelledException pce)
+ * {
+ *     list = pce.getPartialResult ();
+ * }
+ * </pre>
+ */
+public class Cancellation
+{
+    /**
+     * When the deadline passes, from <code>System.nanoTime()</code>.
+     */
+    protected final long mDeadline;
+
+    /**
+     * <code>true</code> if there is a deadline.
+     */
+    protected final boolean mTimed;
+
+    /**
+     * <code>true</code> once cancelled or past the deadline.
+     */
+    protected volatile boolean mCancelled;
+
+    /**
+     * Create a cancellation with no deadline, that only
+     * {@link #cancel} cancels.
+     */
+    public Cancellation ()
+    {
+        mDeadline = 0L;
+        mTimed = false;
+        mCancelled = false;
+    }
+
+    /**
+     * Create a cancellation with a deadline.
+     * @param millis The number of milliseconds from now until the deadline.
+     */
+    public Cancellation (long millis)
+    {
+        this (millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a cancellation with a deadline.
+     * @param timeout The time from now until the deadline.
+     * @param unit The unit of the timeout.
+     */
+    public Cancellation (long timeout, TimeUnit unit)
+    {
+        mDeadline = System.nanoTime () + unit.toNanos (timeout);
+        mTimed = true;
+        mCancelled = false;
+    }
+
+    /**
+     * Cancel the parse.
+     * The parse stops the next time it checks.
+     */
+    public void cancel ()
+    {
+        mCancelled = true;
+    }
+
+    /**
+     * Determine if the parse should stop.
+     * @return <code>true</code> if cancelled, or the deadline has passed.
+     */
+    public boolean isCancelled ()
+    {
+        if (!mCancelled && mTimed && (0 <= System.nanoTime () - mDeadline))
+            mCancelled = true;
+
+        return (mCancelled);
+    }
+
+    /**
+     * Get the time left.
+     * @param unit The unit to return the time in.
+     * @return The time until the deadline, zero if it has passed or the
+     * parse is cancelled, or <code>Long.MAX_VALUE</code> if there is no
+     * deadline.
+     */
+    public long getRemaining (TimeUnit unit)
+    {
+        long ret;
+
+        if (isCancelled ())
+            ret = 0L;
+        else if (mTimed)
+            ret = unit.convert (Math.max (0L, mDeadline - System.nanoTime ()), TimeUnit.NANOSECONDS);
+        else
+            ret = Long.MAX_VALUE;
+
+        return (ret);
+    }
+}
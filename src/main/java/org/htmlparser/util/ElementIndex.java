@@ -0,0 +1,274 @@
+package org.htmlparser.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.htmlparser.Node;
+import org.htmlparser.Tag;
+
+/**
+ * Positions of the elements within a list of sibling nodes.
+ * The index is built in one pass over the siblings and answers the questions
+ * asked by structural selectors (<code>:nth-child</code>,
+ * <code>:nth-of-type</code>, adjacent siblings etc.) in constant time,
+ * rather than by rescanning the siblings for every node tested.
+ * Only start tags are elements, text, remarks and stray end tags are skipped
+ * when counting.
+ * <p>Obtain an index from {@link NodeList#getElementIndex()}, which extends
+ * it in place as nodes are appended to the list, the way the parser adds
+ * children, and rebuilds it after any other modification.
+ * An index is not thread safe itself, the list builds and extends it with
+ * its lock held, so threads matching the same document share it safely.
+ */
+public class ElementIndex {
+    
+    /**
+     * The list index of each node.
+     */
+    private final Map<Node, Integer> mIndices;
+    
+    /**
+     * The number of elements with each tag name, shared by those elements.
+     */
+    private final Map<String, int[]> mCounters;
+    
+    /**
+     * The one based position of each node among the element siblings,
+     * or zero if the node is not an element.
+     */
+    private int[] mPositions;
+    
+    /**
+     * The one based position of each element among the siblings with the
+     * same tag name.
+     */
+    private int[] mTypePositions;
+    
+    /**
+     * The counter of the siblings with the same tag name as each element,
+     * or <code>null</code> if the node is not an element.
+     */
+    private int[][] mTypeCounts;
+    
+    /**
+     * The list index of the closest previous element of each node,
+     * or <code>-1</code> if there is none.
+     */
+    private int[] mPrevious;
+    
+    /**
+     * The nodes indexed.
+     */
+    private Node[] mNodes;
+    
+    /**
+     * The number of nodes indexed.
+     */
+    private int mSize;
+    
+    /**
+     * The number of elements among the siblings.
+     */
+    private int mCount;
+    
+    /**
+     * Index the given siblings.
+     * @param siblings The children of one parent.
+     */
+    public ElementIndex (NodeList siblings) {
+        
+        final int size = siblings.size();
+        
+        mIndices = new IdentityHashMap<>(size);
+        mCounters = new HashMap<>();
+        mPositions = new int[size];
+        mTypePositions = new int[size];
+        mTypeCounts = new int[size][];
+        mPrevious = new int[size];
+        mNodes = new Node[size];
+        extend(siblings);
+    }
+    
+    /**
+     * Index the nodes appended to the siblings since they were indexed.
+     * The nodes already indexed must not have changed.
+     * @param siblings The siblings indexed, with more nodes at the end.
+     */
+    public void extend (NodeList siblings) {
+        
+        final int size = siblings.size();
+        int previous = 0 == mSize ? -1 : isElement(mNodes[mSize - 1]) ? mSize - 1 : mPrevious[mSize - 1];
+        
+        if (size > mNodes.length) {
+            final int capacity = Math.max(size, mNodes.length + (mNodes.length >> 1));
+            mPositions = Arrays.copyOf(mPositions, capacity);
+            mTypePositions = Arrays.copyOf(mTypePositions, capacity);
+            mTypeCounts = Arrays.copyOf(mTypeCounts, capacity);
+            mPrevious = Arrays.copyOf(mPrevious, capacity);
+            mNodes = Arrays.copyOf(mNodes, capacity);
+        }
+        for (int i = mSize; i < size; i++) {
+            final Node node = siblings.get(i);
+            mNodes[i] = node;
+            mIndices.put(node, i);
+            mPrevious[i] = previous;
+            if (isElement(node)) {
+                final String name = ((Tag)node).getTagName();
+                int[] counter = mCounters.get(name);
+                if (null == counter) {
+                    counter = new int[1];
+                    mCounters.put(name, counter);
+                }
+                mPositions[i] = ++mCount;
+                mTypePositions[i] = ++counter[0];
+                mTypeCounts[i] = counter;
+                previous = i;
+            }
+            else {
+                mPositions[i] = 0;
+                mTypePositions[i] = 0;
+                mTypeCounts[i] = null;
+            }
+        }
+        mSize = Math.max(mSize, size);
+    }
+    
+    /**
+     * Index a node that replaced an indexed one.
+     * This is only possible if both are text, or elements with the same name,
+     * otherwise the index must be rebuilt.
+     * @param index The list index of the node.
+     * @param node The new node.
+     * @return <code>true</code> if the index was updated,
+     * <code>false</code> if it must be rebuilt.
+     */
+    public boolean replace (int index, Node node) {
+        
+        final boolean ret;
+        
+        if (index >= mSize)
+            ret = true;
+        else if (isElement(node) ? isElement(mNodes[index]) && ((Tag)node).getTagName().equals(((Tag)mNodes[index]).getTagName()) : !isElement(mNodes[index])) {
+            mIndices.remove(mNodes[index]);
+            mNodes[index] = node;
+            mIndices.put(node, index);
+            ret = true;
+        }
+        else
+            ret = false;
+        
+        return ret;
+    }
+    
+    /**
+     * Drop a node that was removed from the siblings.
+     * This is only possible for the last node indexed,
+     * otherwise the index must be rebuilt.
+     * @param index The list index the node had.
+     * @return <code>true</code> if the index was updated,
+     * <code>false</code> if it must be rebuilt.
+     */
+    public boolean remove (int index) {
+        
+        final boolean ret;
+        
+        if (index >= mSize)
+            ret = true;
+        else if (index == mSize - 1) {
+            mIndices.remove(mNodes[index]);
+            if (isElement(mNodes[index])) {
+                mCount--;
+                mTypeCounts[index][0]--;
+                mTypeCounts[index] = null;
+            }
+            mNodes[index] = null;
+            mSize--;
+            ret = true;
+        }
+        else
+            ret = false;
+        
+        return ret;
+    }
+    
+    /**
+     * Determine if a node is an element, that is, a start tag.
+     * @param node The node to check.
+     * @return <code>true</code> if the node is a tag and not an end tag.
+     */
+    public static boolean isElement (Node node) {
+        return (node instanceof Tag) && !((Tag)node).isEndTag();
+    }
+    
+    /**
+     * Get the list index of a node.
+     * @param node The node to look up.
+     * @return The index of the node in the sibling list,
+     * or <code>-1</code> if it was not one of the indexed siblings.
+     */
+    public int indexOf (Node node) {
+        final Integer ret = mIndices.get(node);
+        return null == ret ? -1 : ret;
+    }
+    
+    /**
+     * @return The number of nodes indexed.
+     */
+    public int size () {
+        return mSize;
+    }
+    
+    /**
+     * @return The number of element siblings.
+     */
+    public int getElementCount () {
+        return mCount;
+    }
+    
+    /**
+     * @param index The list index of a node.
+     * @return The one based position of the node among the element siblings,
+     * or zero if the node is not an element.
+     */
+    public int getPosition (int index) {
+        return mPositions[index];
+    }
+    
+    /**
+     * @param index The list index of a node.
+     * @return The one based position of the node among the element siblings,
+     * counting from the last one, or zero if the node is not an element.
+     */
+    public int getLastPosition (int index) {
+        return 0 == mPositions[index] ? 0 : mCount - mPositions[index] + 1;
+    }
+    
+    /**
+     * @param index The list index of a node.
+     * @return The one based position of the node among the siblings
+     * with the same tag name, or zero if the node is not an element.
+     */
+    public int getTypePosition (int index) {
+        return mTypePositions[index];
+    }
+    
+    /**
+     * @param index The list index of a node.
+     * @return The one based position of the node among the siblings
+     * with the same tag name, counting from the last one,
+     * or zero if the node is not an element.
+     */
+    public int getLastTypePosition (int index) {
+        return 0 == mTypePositions[index] ? 0 : mTypeCounts[index][0] - mTypePositions[index] + 1;
+    }
+    
+    /**
+     * @param index The list index of a node.
+     * @return The closest element preceding the node,
+     * or <code>null</code> if there is none.
+     */
+    public Node getPreviousElement (int index) {
+        return -1 == mPrevious[index] ? null : mNodes[mPrevious[index]];
+    }
+}
@@ -0,0 +1,222 @@
+package org.htmlparser.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue that hands items from one producer thread to one
+ * consumer thread.
+ * With a single thread on each end, an item is passed with a write of the
+ * array and of a volatile index, without locks. A thread that finds the
+ * queue full, or empty, spins briefly and then parks until the other
+ * thread makes room, or adds an item.
+ * <p>
+ * The producer calls {@link #finish} after the last item, and the consumer
+ * calls {@link #close} if it stops taking items before then, which makes
+ * the producer's {@link #put} fail so it can stop too.
+ * @param <E> The type of the items.
+ */
+public class HandoffQueue<E>
+{
+    /**
+     * The number of times a thread checks again before it parks.
+     */
+    protected static final int SPINS = 128;
+
+    /**
+     * The longest a thread parks before it checks again, in nanoseconds.
+     */
+    protected static final long PARK = 1000000L;
+
+    /**
+     * The items, by index modulo the capacity.
+     */
+    private final Object[] mItems;
+
+    /**
+     * The capacity less one, the capacity being a power of two.
+     */
+    private final int mMask;
+
+    /**
+     * The index of the next item to take, advanced by the consumer.
+     */
+    private volatile long mHead;
+
+    /**
+     * The index of the next item to put, advanced by the producer.
+     */
+    private volatile long mTail;
+
+    /**
+     * <code>true</code> once the producer has put its last item.
+     */
+    private volatile boolean mFinished;
+
+    /**
+     * <code>true</code> once the consumer has stopped taking items.
+     */
+    private volatile boolean mClosed;
+
+    /**
+     * The producer, while it is parked waiting for room.
+     */
+    private volatile Thread mProducer;
+
+    /**
+     * The consumer, while it is parked waiting for an item.
+     */
+    private volatile Thread mConsumer;
+
+    /**
+     * Create a queue.
+     * @param capacity The most items the queue holds, which is rounded up
+     * to a power of two.
+     */
+    public HandoffQueue (int capacity)
+    {
+        int size;
+
+        if (0 >= capacity)
+            throw new IllegalArgumentException ("capacity must be positive");
+        size = 1;
+        while (size < capacity)
+            size <<= 1;
+        mItems = new Object[size];
+        mMask = size - 1;
+    }
+
+    /**
+     * Add an item, waiting for room if the queue is full.
+     * Called only by the producer.
+     * @param item The item, which may not be <code>null</code>.
+     * @return <code>false</code> if the consumer has closed the queue,
+     * in which case the item is dropped.
+     * @exception InterruptedException If the producer is interrupted
+     * while it waits.
+     */
+    public boolean put (E item)
+        throws
+            InterruptedException
+    {
+        long tail;
+        int spins;
+        boolean ret;
+
+        if (null == item)
+            throw new NullPointerException ("item cannot be null");
+        tail = mTail;
+        spins = 0;
+        while (!mClosed && (tail - mHead > mMask))
+            if (SPINS > spins++)
+                Thread.onSpinWait ();
+            else
+            {
+                mProducer = Thread.currentThread ();
+                // check again once the consumer can see we are parking
+                if (!mClosed && (tail - mHead > mMask))
+                    LockSupport.parkNanos (this, PARK);
+                mProducer = null;
+                if (Thread.interrupted ())
+                    throw new InterruptedException ();
+            }
+        ret = !mClosed;
+        if (ret)
+        {
+            mItems[(int)tail & mMask] = item;
+            mTail = tail + 1;
+            wake (mConsumer);
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Remove the oldest item, waiting for one if the queue is empty.
+     * Called only by the consumer.
+     * @return The item, or <code>null</code> if the producer has finished
+     * and every item has been taken, or the queue is closed.
+     * @exception InterruptedException If the consumer is interrupted
+     * while it waits.
+     */
+    @SuppressWarnings ("unchecked")
+    public E take ()
+        throws
+            InterruptedException
+    {
+        long head;
+        int spins;
+        int index;
+        E ret;
+
+        head = mHead;
+        spins = 0;
+        // the finished flag is read before the tail, so no item is missed
+        while (!mClosed && !mFinished && (head == mTail))
+            if (SPINS > spins++)
+                Thread.onSpinWait ();
+            else
+            {
+                mConsumer = Thread.currentThread ();
+                if (!mClosed && !mFinished && (head == mTail))
+                    LockSupport.parkNanos (this, PARK);
+                mConsumer = null;
+                if (Thread.interrupted ())
+                    throw new InterruptedException ();
+            }
+        if (mClosed || (head == mTail))
+            ret = null;
+        else
+        {
+            index = (int)head & mMask;
+            ret = (E)mItems[index];
+            mItems[index] = null;
+            mHead = head + 1;
+            wake (mProducer);
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Mark the end of the items.
+     * Called only by the producer, after its last {@link #put}.
+     */
+    public void finish ()
+    {
+        mFinished = true;
+        wake (mConsumer);
+    }
+
+    /**
+     * Stop taking items.
+     * Called by the consumer, or by another thread on its behalf.
+     * The producer's waiting and subsequent calls to {@link #put} fail,
+     * a waiting {@link #take} returns <code>null</code>, and the items
+     * still queued are dropped.
+     */
+    public void close ()
+    {
+        mClosed = true;
+        wake (mProducer);
+        wake (mConsumer);
+    }
+
+    /**
+     * Determine if the consumer has stopped taking items.
+     * @return <code>true</code> if the queue is closed.
+     */
+    public boolean isClosed ()
+    {
+        return (mClosed);
+    }
+
+    /**
+     * Unpark a thread if it is parked.
+     * @param thread The thread, or <code>null</code> if none is parked.
+     */
+    private static void wake (Thread thread)
+    {
+        if (null != thread)
+            LockSupport.unpark (thread);
+    }
+}
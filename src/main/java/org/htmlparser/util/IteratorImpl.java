@@ -32,6 +32,7 @@ import org.htmlparser.Tag;
 import org.htmlparser.lexer.Cursor;
 import org.htmlparser.lexer.Lexer;
 import org.htmlparser.lexer.Page;
+import org.htmlparser.scanners.ParseStack;
 import org.htmlparser.scanners.Scanner;
 
 public class IteratorImpl implements NodeIterator
@@ -92,7 +93,8 @@ public class IteratorImpl implements NodeIterator
         boolean ret;
 
         mCursor.setPosition (mLexer.getPosition ());
-        ret = Page.EOF != mLexer.getPage ().getCharacter (mCursor); // more characters?
+        ret = (Page.EOF != mLexer.getPage ().getCharacter (mCursor)) // more characters?
+            && mLexer.checkLimits ();
 
         return (ret);
     }
@@ -126,7 +128,7 @@ public class IteratorImpl implements NodeIterator
                         
                         if (null != scanner)
                         {
-                            stack = new NodeListImpl();
+                            stack = new ParseStack ();
                             ret = scanner.scan (tag, mLexer, stack);
                         }
                     }
@@ -46,6 +46,15 @@ public interface NodeList extends List<Node>, VisitableNodes {
     NodeList getElementsByAttribute(String attributeName, String attributeValue);
     
     NodeList getElements(NodeFilter filter);
+    
+    /**
+     * Get the positions of the elements in this list.
+     * The index is built on first use and reused until the list is modified.
+     * It may be asked for by several threads at once, as long as the list
+     * is not modified meanwhile.
+     * @return The element index of this list of siblings.
+     */
+    ElementIndex getElementIndex();
 
     ////////////////////////////////////////////////////////////////////////////
     
@@ -13,6 +13,16 @@ import org.htmlparser.visitors.NodeVisitor;
  * @author Chinomso Bassey Ikwuagwu on Jun 22, 2018 10:37:33 PM
  */
 public class NodeListImpl extends ArrayList<Node> implements NodeList {
+    
+    /**
+     * The element index of this list, see {@link #getElementIndex()}.
+     */
+    private transient ElementIndex mElementIndex;
+    
+    /**
+     * The modification count of the list when the element index was built.
+     */
+    private transient int mElementIndexModCount;
 
     public NodeListImpl () { }
     
@@ -203,9 +213,10 @@ public class NodeListImpl extends ArrayList<Node> implements NodeList {
     public void visitAllNodesWith (NodeVisitor visitor)
         throws ParserException {
         
+        visitor.clearStop ();
         visitor.beginParsing ();
         
-        for (int i = 0; i < size(); i++)
+        for (int i = 0; !visitor.shouldStop () && i < size(); i++)
             get(i).accept (visitor);
         
         visitor.finishedParsing ();
@@ -279,6 +290,79 @@ public class NodeListImpl extends ArrayList<Node> implements NodeList {
         return output;
     }
     
+    /**
+     * Get the positions of the elements in this list.
+     * The index is built on first use, extended with the nodes appended
+     * since, and rebuilt if the list has been otherwise structurally
+     * modified since.
+     * Matching only reads the list, so several threads may match the same
+     * document: the index is built and extended with the lock of the list
+     * held, and the index returned is complete.
+     * @return The element index of this list of siblings.
+     */
+    @Override
+    public synchronized ElementIndex getElementIndex() {
+        
+        ElementIndex ret = mElementIndex;
+        
+        if (null == ret || mElementIndexModCount != modCount) {
+            ret = new ElementIndex(this);
+            mElementIndexModCount = modCount;
+            mElementIndex = ret;
+        }
+        else if (ret.size() < size())
+            ret.extend(this);
+        
+        return ret;
+    }
+    
+    /**
+     * Appending a node keeps the element index, which is extended
+     * when next asked for, so a parent's index is not rebuilt
+     * for every child added.
+     */
+    @Override
+    public boolean add(Node node) {
+        
+        final boolean current = null != mElementIndex && mElementIndexModCount == modCount;
+        final boolean ret = super.add(node);
+        
+        if (current)
+            mElementIndexModCount = modCount;
+        
+        return ret;
+    }
+    
+    /**
+     * Removing the last node keeps the element index.
+     */
+    @Override
+    public Node remove(int index) {
+        
+        final boolean current = null != mElementIndex && mElementIndexModCount == modCount;
+        final Node ret = super.remove(index);
+        
+        if (current && index == size() && mElementIndex.remove(index))
+            mElementIndexModCount = modCount;
+        
+        return ret;
+    }
+    
+    /**
+     * Replacing an element does not change the modification count,
+     * so update the element index, or drop it if it cannot be updated.
+     */
+    @Override
+    public Node set(int index, Node node) {
+        
+        final Node ret = super.set(index, node);
+        
+        if (null != mElementIndex && (mElementIndexModCount != modCount || !mElementIndex.replace(index, node)))
+            mElementIndex = null;
+        
+        return ret;
+    }
+    
     @Override
     public NodeList getElements(){
         return this;
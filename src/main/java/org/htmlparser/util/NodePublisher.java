@@ -0,0 +1,366 @@
+package org.htmlparser.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+
+/**
+ * Publishes the nodes of a page to a {@link Flow.Subscriber} as they are
+ * parsed, at the pace the subscriber asks for them.
+ * Lexing is driven by demand: nothing is lexed until the subscriber
+ * requests a node, and the lexer runs at most a buffer of nodes ahead of
+ * what was delivered, then waits until the subscriber takes some. Lexing
+ * and delivery are separate tasks run on an executor, so with more than one
+ * thread the subscriber processes nodes while the next ones are lexed.
+ * Each task runs on one thread at a time, the subscriber is signalled
+ * serially, and a page is only parsed once, so there may be only one
+ * subscriber.
+ * <p>For example, to handle the top level nodes of a page in the
+ * common pool:
+ * <pre>
+ * parser.publish ().subscribe (new Flow.Subscriber&lt;Node&gt; ()
+ * {
+ *     ...
+ * });
+ * </pre>
+ * @see Parser#publish
+ */
+public class NodePublisher
+    implements
+        Flow.Publisher<Node>
+{
+    /**
+     * The parser whose page is published.
+     */
+    protected Parser mParser;
+
+    /**
+     * The executor the lexing and delivery tasks run on.
+     */
+    protected Executor mExecutor;
+
+    /**
+     * The number of nodes that may be lexed ahead of delivery.
+     */
+    protected int mBufferSize;
+
+    /**
+     * If <code>true</code> the top level nodes are published, with their
+     * children, otherwise each node is published as it is lexed.
+     */
+    protected boolean mRecurse;
+
+    /**
+     * Set once the page has a subscriber.
+     */
+    protected AtomicBoolean mSubscribed;
+
+    /**
+     * Create a publisher for the page of a parser.
+     * @param parser The parser.
+     * @param executor The executor to lex and deliver on.
+     * @param buffer The number of nodes that may be lexed ahead of delivery.
+     * @param recurse If <code>true</code> publish the top level nodes, as
+     * {@link Parser#elements()} returns them, if <code>false</code> publish
+     * the nodes, including end tags, as the lexer returns them.
+     */
+    public NodePublisher (Parser parser, Executor executor, int buffer, boolean recurse)
+    {
+        if (null == parser)
+            throw new IllegalArgumentException ("parser cannot be null");
+        if (null == executor)
+            throw new IllegalArgumentException ("executor cannot be null");
+        if (0 >= buffer)
+            throw new IllegalArgumentException ("buffer must be positive");
+        mParser = parser;
+        mExecutor = executor;
+        mBufferSize = buffer;
+        mRecurse = recurse;
+        mSubscribed = new AtomicBoolean ();
+    }
+
+    /**
+     * Add the subscriber of the page.
+     * A second subscriber is sent an <code>IllegalStateException</code>.
+     * @param subscriber The subscriber.
+     */
+    public void subscribe (Flow.Subscriber<? super Node> subscriber)
+    {
+        if (null == subscriber)
+            throw new NullPointerException ("subscriber cannot be null");
+        if (mSubscribed.compareAndSet (false, true))
+            subscriber.onSubscribe (new NodeSubscription (subscriber));
+        else
+        {
+            subscriber.onSubscribe (new Flow.Subscription ()
+            {
+                public void request (long n)
+                {
+                }
+
+                public void cancel ()
+                {
+                }
+            });
+            subscriber.onError (new IllegalStateException ("the page already has a subscriber"));
+        }
+    }
+
+    /**
+     * Account for one run of a task.
+     * @param work The task's count of requests to run.
+     * @param runs The number of requests the run handled.
+     * @return The number of requests made since, zero if the task is done.
+     */
+    protected static int drain (AtomicInteger work, int runs)
+    {
+        return (work.addAndGet (-runs));
+    }
+
+    /**
+     * The subscription of the subscriber, which lexes into a bounded
+     * buffer on one task and delivers from it on another.
+     */
+    protected class NodeSubscription
+        implements
+            Flow.Subscription
+    {
+        /**
+         * The subscriber.
+         */
+        protected Flow.Subscriber<? super Node> mSubscriber;
+
+        /**
+         * The nodes lexed and not yet delivered.
+         */
+        protected ArrayBlockingQueue<Node> mBuffer;
+
+        /**
+         * The number of nodes requested and not yet delivered.
+         */
+        protected AtomicLong mDemand;
+
+        /**
+         * Requests to run the lexing task.
+         */
+        protected AtomicInteger mLexing;
+
+        /**
+         * Requests to run the delivery task.
+         */
+        protected AtomicInteger mDelivering;
+
+        /**
+         * The nodes of the page, created by the first lexing task.
+         */
+        protected NodeIterator mIterator;
+
+        /**
+         * The error that ended lexing, set before {@link #mDone}.
+         */
+        protected volatile Throwable mError;
+
+        /**
+         * The error for a bad request, or a task the executor rejected,
+         * which is signalled without waiting for the buffered nodes to be
+         * delivered.
+         */
+        protected volatile Throwable mRejected;
+
+        /**
+         * <code>true</code> once nothing more will be lexed.
+         */
+        protected volatile boolean mDone;
+
+        /**
+         * <code>true</code> once cancelled or after the last signal.
+         */
+        protected volatile boolean mCancelled;
+
+        /**
+         * The lexing task.
+         */
+        protected Runnable mLexer = new Runnable ()
+        {
+            public void run ()
+            {
+                int runs;
+
+                runs = 1;
+                do
+                    lex ();
+                while (0 != (runs = drain (mLexing, runs)));
+            }
+        };
+
+        /**
+         * The delivery task.
+         */
+        protected Runnable mDeliverer = new Runnable ()
+        {
+            public void run ()
+            {
+                int runs;
+
+                runs = 1;
+                do
+                    deliver ();
+                while (0 != (runs = drain (mDelivering, runs)));
+            }
+        };
+
+        /**
+         * Create a subscription.
+         * @param subscriber The subscriber.
+         */
+        public NodeSubscription (Flow.Subscriber<? super Node> subscriber)
+        {
+            mSubscriber = subscriber;
+            mBuffer = new ArrayBlockingQueue<> (mBufferSize);
+            mDemand = new AtomicLong ();
+            mLexing = new AtomicInteger ();
+            mDelivering = new AtomicInteger ();
+        }
+
+        /**
+         * Schedule a task unless it is scheduled or running already, or
+         * the subscription is over.
+         * The task calls {@link #drain} to run again if it was asked to
+         * while it was running.
+         * If the executor rejects the task, the subscription ends with the
+         * rejection, signalled by the delivery task like any other, so
+         * the subscriber is still signalled serially. As the executor won't
+         * run it, the delivery task is run on this thread, unless it is
+         * running already, in which case it signals the rejection next.
+         * @param work The task's count of requests to run.
+         * @param task The task.
+         */
+        protected void schedule (AtomicInteger work, Runnable task)
+        {
+            if (!mCancelled && (0 == work.getAndIncrement ()))
+                try
+                {
+                    mExecutor.execute (task);
+                }
+                catch (RejectedExecutionException ree)
+                {
+                    // nothing more can run, so end the subscription
+                    if (null == mRejected)
+                        mRejected = ree;
+                    if (task == mDeliverer)
+                        task.run (); // this thread has the delivery role
+                    else if (0 == mDelivering.getAndIncrement ())
+                        mDeliverer.run ();
+                }
+        }
+
+        /**
+         * Request more nodes.
+         * The first request starts lexing.
+         * @param n The number of nodes, which must be positive.
+         */
+        public void request (long n)
+        {
+            if (0 >= n)
+                mRejected = new IllegalArgumentException ("the number of nodes requested must be positive, was " + n);
+            else
+                mDemand.getAndAccumulate (n, (demand, more) -> (0 > demand + more) ? Long.MAX_VALUE : demand + more);
+            schedule (mLexing, mLexer);
+            schedule (mDelivering, mDeliverer);
+        }
+
+        /**
+         * Stop lexing and delivering.
+         */
+        public void cancel ()
+        {
+            mCancelled = true;
+        }
+
+        /**
+         * Lex until the buffer is full or the page is done.
+         * Only one thread lexes at a time, and the buffer only empties
+         * meanwhile, so a node always fits once there was room.
+         */
+        protected void lex ()
+        {
+            Node node;
+
+            try
+            {
+                if (null == mIterator)
+                    mIterator = mParser.elements (mRecurse);
+                while (!mDone && !mCancelled && (0 != mBuffer.remainingCapacity ()))
+                    if (mIterator.hasNext ())
+                    {
+                        node = mIterator.next ();
+                        if (null != node)
+                        {
+                            mBuffer.add (node);
+                            schedule (mDelivering, mDeliverer);
+                        }
+                    }
+                    else
+                    {
+                        // a cancelled parse is not a complete one
+                        if (mParser.getLexer ().isCancelled ())
+                            mError = new ParseCancelledException ("the parse of "
+                                + mParser.getURL () + " was cancelled", null);
+                        mDone = true;
+                    }
+            }
+            catch (Throwable t)
+            {
+                mError = t;
+                mDone = true;
+            }
+            if (mDone)
+                schedule (mDelivering, mDeliverer);
+        }
+
+        /**
+         * Deliver buffered nodes while there is demand, and the end of the
+         * page or the error once the buffer is empty.
+         */
+        protected void deliver ()
+        {
+            Node node;
+            Throwable error;
+
+            while (!mCancelled)
+            {
+                if (null != mRejected)
+                {
+                    mCancelled = true;
+                    mSubscriber.onError (mRejected);
+                }
+                else if ((0 != mDemand.get ()) && (null != (node = mBuffer.poll ())))
+                {
+                    if (Long.MAX_VALUE != mDemand.get ())
+                        mDemand.decrementAndGet ();
+                    schedule (mLexing, mLexer);
+                    mSubscriber.onNext (node);
+                }
+                else if (mDone && mBuffer.isEmpty ())
+                {
+                    mCancelled = true;
+                    error = mError;
+                    if (null == error)
+                        mSubscriber.onComplete ();
+                    else
+                        mSubscriber.onError (error);
+                }
+                else
+                    break;
+            }
+            if (mCancelled)
+                mBuffer.clear ();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.htmlparser.util;
+
+/**
+ * A parse was given up because its {@link Cancellation} was cancelled or
+ * its deadline passed.
+ * The nodes parsed up to that point, with the tags that were open closed
+ * by virtual end tags, are available as the partial result.
+ */
+public class ParseCancelledException
+    extends
+        ParserException
+{
+    /**
+     * The nodes parsed before the cancellation, or <code>null</code>.
+     */
+    protected NodeList mPartialResult;
+
+    /**
+     * Create an exception for a cancelled parse.
+     * @param message The message describing what was cancelled.
+     * @param partial The nodes parsed before the cancellation,
+     * or <code>null</code> if nodes were not being collected.
+     */
+    public ParseCancelledException (String message, NodeList partial)
+    {
+        super (message);
+        mPartialResult = partial;
+    }
+
+    /**
+     * Get the nodes parsed before the cancellation.
+     * @return The partial result, which for {@link org.htmlparser.Parser#parse}
+     * is the top level nodes, or <code>null</code> if nodes were not being
+     * collected, as when visiting.
+     */
+    public NodeList getPartialResult ()
+    {
+        return (mPartialResult);
+    }
+}
@@ -0,0 +1,39 @@
+package org.htmlparser.util;
+
+import org.htmlparser.lexer.ParseLimits;
+
+/**
+ * A budget of the {@link ParseLimits} of a lexer was exceeded.
+ * Thrown only when the limits aren't
+ * {@link ParseLimits#setTruncating truncating}, so the application can
+ * tell a page that is too big or too broken to parse from other errors.
+ */
+public class ParseLimitException
+    extends
+        ParserException
+{
+    /**
+     * The limit that was exceeded.
+     */
+    protected ParseLimits.Limit mLimit;
+
+    /**
+     * Create an exception for an exceeded limit.
+     * @param limit The limit that was exceeded.
+     * @param message The message describing where it was exceeded.
+     */
+    public ParseLimitException (ParseLimits.Limit limit, String message)
+    {
+        super (message);
+        mLimit = limit;
+    }
+
+    /**
+     * Get the limit that was exceeded.
+     * @return The limit.
+     */
+    public ParseLimits.Limit getLimit ()
+    {
+        return (mLimit);
+    }
+}
@@ -35,6 +35,10 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.htmlparser.util.sort.Sort;
 
@@ -508,6 +512,46 @@ public class Translate
      */
     protected static final CharacterReference[] mCharacterList;
 
+    /**
+     * The entity reference for each character below <code>BREAKPOINT</code>
+     * that has one, including the ampersand and semicolon, for encoding.
+     */
+    private static final String[] mEncodings;
+
+    //
+    // The kernels of the references as a trie, used for decoding.
+    // State zero is the 'no match' state, state one is the root.
+    // The transitions out of the root are in a table indexed by character,
+    // those out of other states are in sorted runs of labels and targets.
+    //
+
+    /**
+     * The state after the first character of a kernel, indexed by character.
+     */
+    private static final int[] mTrieRoot;
+
+    /**
+     * The index of the first transition out of each state in
+     * <code>mTrieLabels</code> and <code>mTrieTargets</code>.
+     * There is one extra element marking the end of the last run.
+     */
+    private static final int[] mTrieFirst;
+
+    /**
+     * The character labelling each transition.
+     */
+    private static final char[] mTrieLabels;
+
+    /**
+     * The state each transition leads to.
+     */
+    private static final int[] mTrieTargets;
+
+    /**
+     * The character for the kernel ending in each state, or -1 if none does.
+     */
+    private static final int[] mTrieCharacters;
+
     static
     {
         int index;
@@ -547,8 +591,90 @@ public class Translate
                 index++;
             }
         }
+        mEncodings = new String[BREAKPOINT];
+        for (int i = 0; i < BREAKPOINT; i++)
+            if (null != mCharacterList[i])
+                mEncodings[i] = "&" + mCharacterList[i].getKernel () + ";";
+
         // reorder the original array into kernel order
         Sort.QuickSort (mCharacterReferences);
+
+        // build the trie, the sorted kernels give sorted transitions
+        // when states are numbered breadth first
+        List<TreeMap<Character,Integer>> transitions;
+        List<Integer> characters;
+        TreeMap<Character,Integer> children;
+        String kernel;
+        int state;
+        Integer target;
+        int count;
+        int[] numbering;
+        int[] queue;
+        int head;
+        int tail;
+
+        transitions = new ArrayList<> ();
+        characters = new ArrayList<> ();
+        transitions.add (null); // no match
+        characters.add (-1);
+        transitions.add (new TreeMap<Character,Integer> ()); // root
+        characters.add (-1);
+        for (int i = 0; i < mCharacterReferences.length; i++)
+        {
+            kernel = mCharacterReferences[i].getKernel ();
+            state = 1;
+            for (int j = 0; j < kernel.length (); j++)
+            {
+                children = transitions.get (state);
+                target = children.get (kernel.charAt (j));
+                if (null == target)
+                {
+                    target = transitions.size ();
+                    transitions.add (new TreeMap<Character,Integer> ());
+                    characters.add (-1);
+                    children.put (kernel.charAt (j), target);
+                }
+                state = target;
+            }
+            characters.set (state, mCharacterReferences[i].getCharacter ());
+        }
+        count = transitions.size ();
+        // number the states breadth first
+        numbering = new int[count];
+        queue = new int[count];
+        head = 0;
+        tail = 0;
+        queue[tail++] = 1;
+        while (head < tail)
+        {
+            state = queue[head++];
+            numbering[state] = head;
+            for (Integer next : transitions.get (state).values ())
+                queue[tail++] = next;
+        }
+        mTrieRoot = new int[0x80];
+        mTrieFirst = new int[count + 1];
+        mTrieLabels = new char[count - 2];
+        mTrieTargets = new int[count - 2];
+        mTrieCharacters = new int[count];
+        mTrieCharacters[0] = -1;
+        index = 0;
+        for (int i = 0; i < tail; i++)
+        {
+            state = queue[i];
+            mTrieFirst[i + 1] = index;
+            mTrieCharacters[i + 1] = characters.get (state);
+            for (Map.Entry<Character,Integer> entry : transitions.get (state).entrySet ())
+                if (1 == state)
+                    mTrieRoot[entry.getKey ()] = numbering[entry.getValue ()];
+                else
+                {
+                    mTrieLabels[index] = entry.getKey ();
+                    mTrieTargets[index] = numbering[entry.getValue ()];
+                    index++;
+                }
+        }
+        mTrieFirst[count] = index;
     }
 
     /**
@@ -729,186 +855,221 @@ public class Translate
      * Change all numeric character reference and character entity references
      * to unicode characters.
      * @param string The string to translate.
+     * @return The decoded string, which is the same string if it contains
+     * no ampersand.
      */
     public static String decode (String string)
     {
-        CharacterReferenceEx key;
-        int amp;
-        int index;
-        int length;
         StringBuilder buffer;
+        String ret;
+
+        if (-1 == string.indexOf ('&'))
+            ret = string;
+        else
+        {
+            buffer = new StringBuilder (string.length ());
+            decode (string, buffer);
+            ret = buffer.toString ();
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Decode the characters in a string buffer containing references. (E.g &pound becomes £)
+     * Change all numeric character reference and character entity references
+     * to unicode characters.
+     * @param buffer The CharSequence containing references.
+     * @return The decoded string.
+     */
+    public static String decode (CharSequence buffer)
+    {
+        return decode (buffer.toString());
+    }
+
+    /**
+     * Decode a sequence containing references onto the end of a buffer.
+     * This is the same as <code>buffer.append (decode (source))</code>
+     * without the intermediate strings.
+     * @param source The characters to translate.
+     * @param buffer The buffer to append the decoded characters to.
+     */
+    public static void decode (CharSequence source, StringBuilder buffer)
+    {
+        try
+        {
+            decode (source, 0, source.length (), (Appendable)buffer);
+        }
+        catch (IOException ioe)
+        {
+            // a StringBuilder doesn't throw IOException
+            throw new IllegalStateException (ioe);
+        }
+    }
+
+    /**
+     * Decode a sequence containing references to an output.
+     * Runs of characters without references are appended in bulk,
+     * and no objects are created.
+     * @param source The characters to translate.
+     * @param start The index of the first character to translate.
+     * @param end The index after the last character to translate.
+     * @param out The destination of the decoded characters.
+     * @exception IOException If the output throws it.
+     */
+    public static void decode (CharSequence source, int start, int end, Appendable out)
+        throws
+            IOException
+    {
+        int index;
+        int amp;
         char character;
         int number;
         int radix;
         int i;
-        int semi;
         boolean done;
-        CharacterReference item;
-        String ret;
+        int state;
+        int match;
+        int value;
 
-        if (-1 == (amp = string.indexOf ('&')))
-            ret = string;
-        else
+        index = start;
+        amp = next (source, '&', index, end);
+        while (-1 != amp)
         {
-            key = null;
-            index = 0;
-            length = string.length ();
-            buffer = new StringBuilder (length);
-            do
+            // the characters up to the ampersand are unchanged
+            if (index < amp)
+                out.append (source, index, amp);
+            index = amp + 1;
+            if (index < end)
             {
-                // equivalent to buffer.append (string.substring (index, amp));
-                // but without the allocation of a new String
-                while (index < amp)
-                    buffer.append (string.charAt (index++));
-                
-                index++;
-                if (index < length)
+                character = source.charAt (index);
+                if ('#' == character)
                 {
-                    character = string.charAt (index);
-                    if ('#' == character)
+                    // numeric character reference
+                    index++;
+                    number = 0;
+                    radix = 0;
+                    i = index;
+                    done = false;
+                    while ((i < end) && !done)
                     {
-                        // numeric character reference
-                        index++;
-                        number = 0;
-                        radix = 0;
-                        i = index;
-                        done = false;
-                        while ((i < length) && !done)
+                        character = source.charAt (i);
+                        if (('0' <= character) && ('9' >= character))
                         {
-                            character = string.charAt (i);
-                            switch (character)
-                            {
-                                case '0':
-                                case '1':
-                                case '2':
-                                case '3':
-                                case '4':
-                                case '5':
-                                case '6':
-                                case '7':
-                                case '8':
-                                case '9':
-                                    if (0 == radix)
-                                        radix = 10;
-                                    number = number * radix + (character - '0');
-                                    break;
-                                case 'A':
-                                case 'B':
-                                case 'C':
-                                case 'D':
-                                case 'E':
-                                case 'F':
-                                    if (16 == radix)
-                                        number = number * radix + (character - 'A' + 10);
-                                    else
-                                        done = true;
-                                    break;
-                                case 'a':
-                                case 'b':
-                                case 'c':
-                                case 'd':
-                                case 'e':
-                                case 'f':
-                                    if (16 == radix)
-                                        number = number * radix + (character - 'a' + 10);
-                                    else
-                                        done = true;
-                                    break;
-                                case 'x':
-                                case 'X':
-                                    if (0 == radix)
-                                        radix = 16;
-                                    else
-                                        done = true;
-                                    break;
-                                case ';':
-                                    done = true;
-                                    i++;
-                                    break;
-                                default:
-                                    done = true;
-                                    break;
-                            }
-                            if (!done)
-                                i++;
-                        }
-                        if (0 != number)
-                        {
-                            buffer.append ((char)number);
-                            index = i;
-                            amp = index;
+                            if (0 == radix)
+                                radix = 10;
+                            number = number * radix + (character - '0');
                         }
-                        
-                    }
-                    else if (Character.isLetter (character)) // really can't start with a digit eh...
-                    {
-                        // character entity reference
-                        i = index + 1;
-                        done = false;
-                        semi = length;
-                        while ((i < length) && !done)
+                        else if ((16 == radix) && ('A' <= character) && ('F' >= character))
+                            number = number * radix + (character - 'A' + 10);
+                        else if ((16 == radix) && ('a' <= character) && ('f' >= character))
+                            number = number * radix + (character - 'a' + 10);
+                        else if ((0 == radix) && (('x' == character) || ('X' == character)))
+                            radix = 16;
+                        else
                         {
-                            character = string.charAt (i);
+                            done = true;
                             if (';' == character)
-                            {
-                                done = true;
-                                semi = i;
-                                i++;
-                            }
-                            else if (Character.isLetterOrDigit (character))
                                 i++;
-                            else
-                            {
-                                done = true;
-                                semi = i;
-                            }
                         }
-                        // new CharacterReference (string.substring (index, semi), 0);
-                        if (null == key)
-                            key = new CharacterReferenceEx ();
-                        key.setKernel (string);
-                        key.setStart (index);
-                        key.setEnd (semi);
-                        item = lookup (key);
-                        if (null != item)
+                        if (!done)
+                            i++;
+                    }
+                    if (0 != number)
+                    {
+                        out.append ((char)number);
+                        index = i;
+                        amp = index;
+                    }
+                }
+                else if (character < 0x80)
+                {
+                    // character entity reference, the longest kernel that matches
+                    state = mTrieRoot[character];
+                    match = -1;
+                    value = 0;
+                    i = index + 1;
+                    while (0 != state)
+                    {
+                        if (-1 != mTrieCharacters[state])
                         {
-                            buffer.append ((char)item.getCharacter ());
-                            index += item.getKernel ().length ();
-                            if ((index < length) && (';' == string.charAt (index)))
-                                index++;
-                            amp = index;
+                            match = i;
+                            value = mTrieCharacters[state];
                         }
+                        state = (i < end) ? step (state, source.charAt (i)) : 0;
+                        i++;
                     }
-                    else
+                    if (-1 != match)
                     {
-                        // need do nothing here, the ampersand will be consumed below
+                        out.append ((char)value);
+                        index = match;
+                        if ((index < end) && (';' == source.charAt (index)))
+                            index++;
+                        amp = index;
                     }
                 }
-                // gather up unconsumed characters
-                while (amp < index)
-                    buffer.append (string.charAt (amp++));
             }
-            while ((index < length) && (-1 != (amp = string.indexOf ('&', index))));
-            // equivalent to buffer.append (string.substring (index));
-            // but without the allocation of a new String
-            while (index < length)
-                buffer.append (string.charAt (index++));
-            ret = buffer.toString ();
+            // the ampersand and anything after it that wasn't consumed
+            if (amp < index)
+                out.append (source, amp, index);
+            amp = (index < end) ? next (source, '&', index, end) : -1;
         }
+        if (index < end)
+            out.append (source, index, end);
+    }
+
+    /**
+     * Find a character in a sequence.
+     * @param source The characters to search.
+     * @param character The character to look for.
+     * @param start The index at which to start looking.
+     * @param end The index at which to stop looking.
+     * @return The index of the character, or -1 if it isn't found.
+     */
+    private static int next (CharSequence source, char character, int start, int end)
+    {
+        int ret;
+
+        ret = -1;
+        if (source instanceof String)
+        {
+            ret = ((String)source).indexOf (character, start);
+            if (ret >= end)
+                ret = -1;
+        }
+        else
+            for (int i = start; (-1 == ret) && (i < end); i++)
+                if (character == source.charAt (i))
+                    ret = i;
 
         return (ret);
     }
 
     /**
-     * Decode the characters in a string buffer containing references. (E.g &pound becomes £)
-     * Change all numeric character reference and character entity references
-     * to unicode characters.
-     * @param buffer The CharSequence containing references.
-     * @return The decoded string.
+     * Follow a transition in the kernel trie.
+     * @param state The current state, not the root.
+     * @param character The next character of the kernel.
+     * @return The next state, or zero if no kernel continues with the character.
      */
-    public static String decode (CharSequence buffer)
+    private static int step (int state, char character)
     {
-        return decode (buffer.toString());
+        char label;
+        int ret;
+
+        ret = 0;
+        for (int i = mTrieFirst[state]; i < mTrieFirst[state + 1]; i++)
+        {
+            label = mTrieLabels[i];
+            if (label == character)
+            {
+                ret = mTrieTargets[i];
+                break;
+            }
+            else if (label > character)
+                break; // labels are sorted
+        }
+
+        return (ret);
     }
 
     /**
@@ -1024,44 +1185,166 @@ public class Translate
      * Change all characters that are not ISO-8859-1 to their numeric character
      * reference or character entity reference.
      * @param string The string to translate.
-     * @return The encoded string.
+     * @return The encoded string, which is the same string if no character
+     * needs a reference.
      */
     public static String encode (String string)
     {
-        int length;
+        StringBuilder buffer;
+        String ret;
+
+        if (-1 == plain (string, 0, string.length ()))
+            ret = string;
+        else
+        {
+            buffer = new StringBuilder (string.length () + 32);
+            encode (string, buffer);
+            ret = buffer.toString ();
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Encode a sequence to use references onto the end of a buffer.
+     * This is the same as <code>buffer.append (encode (source))</code>
+     * without the intermediate strings.
+     * @param source The characters to translate.
+     * @param buffer The buffer to append the encoded characters to.
+     */
+    public static void encode (CharSequence source, StringBuilder buffer)
+    {
+        try
+        {
+            encode (source, 0, source.length (), (Appendable)buffer);
+        }
+        catch (IOException ioe)
+        {
+            // a StringBuilder doesn't throw IOException
+            throw new IllegalStateException (ioe);
+        }
+    }
+
+    /**
+     * Encode a sequence to use references to an output.
+     * Runs of characters that need no reference are appended in bulk,
+     * characters below <code>BREAKPOINT</code> are looked up in a table.
+     * @param source The characters to translate.
+     * @param start The index of the first character to translate.
+     * @param end The index after the last character to translate.
+     * @param out The destination of the encoded characters.
+     * @exception IOException If the output throws it.
+     */
+    public static void encode (CharSequence source, int start, int end, Appendable out)
+        throws
+            IOException
+    {
+        int index;
+
+        while (-1 != (index = plain (source, start, end)))
+        {
+            if (start < index)
+                out.append (source, start, index);
+            encode (source.charAt (index), out);
+            start = index + 1;
+        }
+        if (start < end)
+            out.append (source, start, end);
+    }
+
+    /**
+     * Find the first character that needs a reference.
+     * @param source The characters to search.
+     * @param start The index at which to start looking.
+     * @param end The index at which to stop looking.
+     * @return The index of the character, or -1 if all are plain.
+     */
+    private static int plain (CharSequence source, int start, int end)
+    {
         char c;
+        int ret;
+
+        ret = -1;
+        for (int i = start; i < end; i++)
+        {
+            c = source.charAt (i);
+            if ((c >= 0x7F) || (null != mEncodings[c]))
+            {
+                ret = i;
+                break;
+            }
+        }
+
+        return (ret);
+    }
+
+    /**
+     * Encode one character that needs a reference.
+     * @param c The character, either one with an entity reference or one not
+     * below 0x7F.
+     * @param out The destination of the reference.
+     * @exception IOException If the output throws it.
+     */
+    private static void encode (char c, Appendable out)
+        throws
+            IOException
+    {
+        String encoding;
         CharacterReference candidate;
-        StringBuilder ret;
 
-        ret = new StringBuilder (string.length () * 6);
-        length  = string.length ();
-        for (int i = 0; i < length; i++)
+        encoding = (c < BREAKPOINT) ? mEncodings[c] : null;
+        if (null != encoding)
+            out.append (encoding);
+        else
         {
-            c = string.charAt (i);
-            candidate = lookup (c);
+            candidate = (c < BREAKPOINT) ? null : lookup (c);
             if (null != candidate)
             {
-                ret.append ('&');
-                ret.append (candidate.getKernel ());
-                ret.append (';');
+                out.append ('&');
+                out.append (candidate.getKernel ());
+                out.append (';');
             }
             else if (!(c < 0x007F))
             {
-                ret.append ("&#");
+                out.append ("&#");
                 if (ENCODE_HEXADECIMAL)
                 {
-                    ret.append ("x");
-                    ret.append (Integer.toHexString (c));
+                    out.append ('x');
+                    appendNumber (c, 16, out);
                 }
                 else
-                    ret.append ((int)c);
-                ret.append (';');
+                    appendNumber (c, 10, out);
+                out.append (';');
             }
             else
-                ret.append (c);
+                out.append (c);
         }
+    }
 
-        return (ret.toString ());
+    /**
+     * Append the digits of a number without creating a string.
+     * @param number The non-negative number to append.
+     * @param radix Either 10 or 16, hexadecimal digits are lowercase.
+     * @param out The destination of the digits.
+     * @exception IOException If the output throws it.
+     */
+    private static void appendNumber (int number, int radix, Appendable out)
+        throws
+            IOException
+    {
+        int divisor;
+        int digit;
+
+        divisor = 1;
+        while (number / divisor >= radix)
+            divisor *= radix;
+        while (0 != divisor)
+        {
+            digit = number / divisor;
+            out.append ((char)((digit < 10) ? '0' + digit : 'a' + digit - 10));
+            number -= digit * divisor;
+            divisor /= radix;
+        }
     }
 
     /**
@@ -1078,7 +1361,6 @@ public class Translate
         Reader reader;
         char c;
         int index;
-        CharacterReference candidate;
         PrintWriter output;
 
         try
@@ -1097,25 +1379,8 @@ public class Translate
             while (-1 != (index = reader.read ()))
             {
                 c = (char)index;
-                candidate = lookup (c);
-                if (null != candidate)
-                {
-                    output.print ('&');
-                    output.print (candidate.getKernel ());
-                    output.print (';');
-                }
-                else if (!(c < 0x007F))
-                {
-                    output.print ("&#");
-                    if (ENCODE_HEXADECIMAL)
-                    {
-                        output.print ("x");
-                        output.print (Integer.toHexString (c));
-                    }
-                    else
-                        output.print ((int)c);
-                    output.print (';');
-                }
+                if ((c >= 0x7F) || (null != mEncodings[c]))
+                    encode (c, output);
                 else
                     output.print (c);
             }
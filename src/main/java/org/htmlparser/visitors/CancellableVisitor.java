@@ -0,0 +1,139 @@
+package org.htmlparser.visitors;
+
+import org.htmlparser.Remark;
+import org.htmlparser.Tag;
+import org.htmlparser.Text;
+import org.htmlparser.util.Cancellation;
+
+/**
+ * Passes a traversal on to another visitor until a {@link Cancellation}
+ * is cancelled.
+ * Traversals check {@link #shouldStop} before each node, and this visitor
+ * asks the cancellation every {@link #CHECK_INTERVAL} checks, so the
+ * traversal of a large tree ends soon after the cancellation, without
+ * the visitor having to know about it.
+ * <pre>
+ * node.accept (new CancellableVisitor (visitor, new Cancellation (50)));
+ * </pre>
+ */
+public class CancellableVisitor
+    implements
+        NodeVisitor
+{
+    /**
+     * The number of stop checks between asking the cancellation.
+     */
+    public static final int CHECK_INTERVAL = 64;
+
+    /**
+     * The visitor to pass nodes to.
+     */
+    protected NodeVisitor mVisitor;
+
+    /**
+     * The cancellation to ask.
+     */
+    protected Cancellation mCancellation;
+
+    /**
+     * The number of stop checks made.
+     */
+    protected int mChecks;
+
+    /**
+     * <code>true</code> once the cancellation has been seen.
+     */
+    protected boolean mCancelled;
+
+    /**
+     * Create a visitor that stops when cancelled.
+     * @param visitor The visitor to pass nodes to.
+     * @param cancellation The cancellation to stop at.
+     */
+    public CancellableVisitor (NodeVisitor visitor, Cancellation cancellation)
+    {
+        if (null == visitor)
+            throw new IllegalArgumentException ("visitor cannot be null");
+        if (null == cancellation)
+            throw new IllegalArgumentException ("cancellation cannot be null");
+        mVisitor = visitor;
+        mCancellation = cancellation;
+        mChecks = 0;
+        mCancelled = false;
+    }
+
+    /**
+     * Get the visitor nodes are passed to.
+     * @return The wrapped visitor.
+     */
+    public NodeVisitor getVisitor ()
+    {
+        return (mVisitor);
+    }
+
+    /**
+     * Determine if the traversal was stopped by the cancellation.
+     * @return <code>true</code> if the cancellation stopped the traversal.
+     */
+    public boolean isCancelled ()
+    {
+        return (mCancelled);
+    }
+
+    public void clearStop ()
+    {
+        mVisitor.clearStop ();
+    }
+
+    public void beginParsing ()
+    {
+        mVisitor.beginParsing ();
+    }
+
+    public void finishedParsing ()
+    {
+        mVisitor.finishedParsing ();
+    }
+
+    public boolean shouldRecurseChildren ()
+    {
+        return (mVisitor.shouldRecurseChildren ());
+    }
+
+    public boolean shouldRecurseSelf ()
+    {
+        return (mVisitor.shouldRecurseSelf ());
+    }
+
+    /**
+     * Stop if the visitor wants to or the cancellation is cancelled.
+     * @return <code>true</code> if no more nodes are to be visited.
+     */
+    public boolean shouldStop ()
+    {
+        if (!mCancelled && (0 == mChecks++ % CHECK_INTERVAL))
+            mCancelled = mCancellation.isCancelled ();
+
+        return (mCancelled || mVisitor.shouldStop ());
+    }
+
+    public void visitEndTag (Tag tag)
+    {
+        mVisitor.visitEndTag (tag);
+    }
+
+    public void visitRemarkNode (Remark remark)
+    {
+        mVisitor.visitRemarkNode (remark);
+    }
+
+    public void visitStringNode (Text string)
+    {
+        mVisitor.visitStringNode (string);
+    }
+
+    public void visitTag (Tag tag)
+    {
+        mVisitor.visitTag (tag);
+    }
+}
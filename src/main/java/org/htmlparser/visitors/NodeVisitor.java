@@ -49,6 +49,25 @@ public interface NodeVisitor {
      */
     boolean shouldRecurseSelf();
 
+    /**
+     * Stop predicate, checked by the traversal before each node.
+     * A visitor that has seen all it needs returns <code>true</code>,
+     * so that the traversal, and the parse feeding it, end early.
+     * @return <code>true</code> if no more nodes are to be visited.
+     */
+    default boolean shouldStop() {
+        return false;
+    }
+
+    /**
+     * Clear a stop signal left by an earlier traversal.
+     * Called by the traversals before <code>beginParsing()</code>, so a
+     * visitor that is reused visits the next page, whether or not
+     * <code>beginParsing()</code> is overridden.
+     */
+    default void clearStop() {
+    }
+
     /**
      * Called for each <code>Tag</code> visited that is an end tag.
      * @param tag The end tag being visited.
@@ -107,6 +107,7 @@ public class NodeVisitorImpl implements NodeVisitor
 {
     private boolean mRecurseChildren;
     private boolean mRecurseSelf;
+    private boolean mStop;
 
     /**
      * Creates a node visitor that recurses itself and it's children.
@@ -145,10 +146,13 @@ public class NodeVisitorImpl implements NodeVisitor
     /**
      * Override this method if you wish to do special
      * processing prior to the start of parsing.
+     * This implementation clears the stop signal, which the traversals
+     * also do with {@link #clearStop}, so overrides need not call it.
      */
     @Override
     public void beginParsing ()
     {
+        mStop = false;
     }
 
     /**
@@ -215,4 +219,35 @@ public class NodeVisitorImpl implements NodeVisitor
     {
         return (mRecurseSelf);
     }
+
+    /**
+     * Raise the stop signal.
+     * The traversal ends after the node being visited, and no more of the
+     * page is parsed. The signal is cleared when the next traversal starts.
+     */
+    public void stop ()
+    {
+        mStop = true;
+    }
+
+    /**
+     * Clear the stop signal.
+     * Called by the traversals before {@link #beginParsing}.
+     */
+    @Override
+    public final void clearStop ()
+    {
+        mStop = false;
+    }
+
+    /**
+     * Stop predicate.
+     * @return <code>true</code> if {@link #stop} has been called since
+     * parsing began.
+     */
+    @Override
+    public boolean shouldStop ()
+    {
+        return (mStop);
+    }
 }
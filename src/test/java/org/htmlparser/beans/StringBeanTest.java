@@ -0,0 +1,125 @@
+package org.htmlparser.beans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.htmlparser.Parser;
+import org.htmlparser.Tag;
+import org.htmlparser.Text;
+import org.htmlparser.util.ParserException;
+import org.htmlparser.visitors.NodeVisitorImpl;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class StringBeanTest {
+    
+    private static String page(int paragraphs) {
+        final StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < paragraphs; i++) {
+            html.append("<p>paragraph ").append(i).append("</p>");
+        }
+        return html.append("</body></html>").toString();
+    }
+    
+    @Test
+    public void testMaxSizeStopsTheParse() throws ParserException {
+        final String html = page(10000);
+        final StringBean bean = new StringBean(256, 100);
+        bean.setLexemes(true);
+        bean.getParser().setInputHTML(html);
+        final String text = bean.extractStrings();
+        assertTrue(text.length() < 100);
+        assertTrue(bean.getParser().getLexer().getPosition() < 1000);
+        final StringExtractingNodeVisitor visitor = new StringExtractingNodeVisitor(256, 100);
+        new Parser(html).visitAllNodesWith(visitor);
+        assertEquals(visitor.getStrings(), text);
+        final StringBean tree = new StringBean(256, 100);
+        tree.getParser().setInputHTML(html);
+        assertEquals(text, tree.extractStrings());
+    }
+    
+    @Test
+    public void testSubclassesVisitTheNodeTree() throws ParserException {
+        final String html = "<html><body><div><p>a<p>b</div><script>var x;</script></body></html>";
+        final List<String> tree = new ArrayList<>();
+        final List<String> lexemes = new ArrayList<>();
+        final StringBean treeBean = new RecordingBean(tree);
+        final StringBean lexemeBean = new RecordingBean(lexemes);
+        lexemeBean.setLexemes(true);
+        treeBean.getParser().setInputHTML(html);
+        lexemeBean.getParser().setInputHTML(html);
+        assertEquals(treeBean.extractStrings(), lexemeBean.extractStrings());
+        assertEquals(Arrays.asList("HTML null", "BODY HTML", "DIV BODY", "P DIV", "/P", "P DIV", "/P", "/DIV",
+            "SCRIPT BODY", "/SCRIPT", "/BODY", "/HTML"), tree);
+        assertEquals(Arrays.asList("HTML null", "BODY null", "DIV null", "P null", "P null", "/DIV",
+            "SCRIPT null", "/SCRIPT", "/BODY", "/HTML"), lexemes);
+    }
+    
+    private static class RecordingBean extends StringBean {
+        
+        private final List<String> mVisits;
+        
+        RecordingBean(List<String> visits) {
+            mVisits = visits;
+        }
+        
+        @Override
+        public void visitTag(Tag tag) {
+            mVisits.add(tag.getTagName() + " " + (null == tag.getParent() ? null : ((Tag)tag.getParent()).getTagName()));
+            super.visitTag(tag);
+        }
+        
+        @Override
+        public void visitEndTag(Tag tag) {
+            mVisits.add("/" + tag.getTagName());
+            super.visitEndTag(tag);
+        }
+    }
+    
+    @Test
+    public void testStopSignal() throws ParserException {
+        final int[] visits = new int[1];
+        final NodeVisitorImpl visitor = new NodeVisitorImpl() {
+            @Override
+            public void visitStringNode(Text string) {
+                if (3 == ++visits[0]) {
+                    stop();
+                }
+            }
+        };
+        new Parser(page(100)).visitAllNodesWith(visitor);
+        assertEquals(3, visits[0]);
+        assertTrue(visitor.shouldStop());
+        visits[0] = 0;
+        new Parser(page(100)).visitAllNodesWith(visitor);
+        assertEquals(3, visits[0]);
+    }
+    
+    @Test
+    public void testStopSignalIsClearedWithoutSuper() throws ParserException {
+        final int[] visits = new int[1];
+        final NodeVisitorImpl visitor = new NodeVisitorImpl() {
+            @Override
+            public void beginParsing() {
+                visits[0] = 0;
+            }
+            @Override
+            public void visitStringNode(Text string) {
+                if (3 == ++visits[0]) {
+                    stop();
+                }
+            }
+        };
+        new Parser(page(100)).visitAllNodesWith(visitor);
+        assertEquals(3, visits[0]);
+        new Parser(page(100)).visitAllNodesWith(visitor);
+        assertEquals(3, visits[0]);
+        new Parser(page(100)).parse(null).visitAllNodesWith(visitor);
+        assertEquals(3, visits[0]);
+        final Parser parser = new Parser(page(100));
+        parser.setCancellation(new org.htmlparser.util.Cancellation());
+        parser.visitAllNodesWith(visitor);
+        assertEquals(3, visits[0]);
+    }
+}
@@ -0,0 +1,106 @@
+package org.htmlparser.beans;
+
+import java.io.IOException;
+import java.util.Random;
+import org.htmlparser.util.Translate;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class TextAppenderTest {
+    
+    private static final String WHITESPACE = " \t\f\u200B\r\n\u00a0";
+    
+    private static final String[] PIECES = {
+        "a", "b", " ", "\t", "\n", "\r", "\u00a0", "\u200B", "&nbsp;", "&#160;", "&amp;", "&lt", "&#x20;", "&#9;", "&", "\f",
+    };
+    
+    /**
+     * The text as the visitor made it before the single pass:
+     * decode, then replace the non-breaking spaces, then collapse.
+     */
+    private static String reference(String[] texts, boolean replace, boolean collapse) {
+        final StringBuilder ret = new StringBuilder();
+        int state = 0;
+        for (String text : texts) {
+            String decoded = Translate.decode(text);
+            if (replace)
+                decoded = decoded.replace('\u00a0', ' ');
+            if (collapse) {
+                for (int i = 0; i < decoded.length(); i++) {
+                    final char character = decoded.charAt(i);
+                    if (-1 != WHITESPACE.indexOf(character) && '\u00a0' != character) {
+                        if (0 != state)
+                            state = 1;
+                    }
+                    else {
+                        if (1 == state)
+                            ret.append(' ');
+                        state = 2;
+                        ret.append(character);
+                    }
+                }
+            }
+            else
+                ret.append(decoded);
+        }
+        return ret.toString();
+    }
+    
+    private static String append(String[] texts, boolean replace, boolean collapse) throws IOException {
+        final StringBuilder buffer = new StringBuilder();
+        final TextAppender appender = new TextAppender();
+        int state = 0;
+        for (String text : texts) {
+            appender.reset(buffer, replace, collapse, state);
+            Translate.decode(text, 0, text.length(), appender);
+            state = appender.mCollapseState;
+        }
+        return buffer.toString();
+    }
+    
+    @Test
+    public void testDecodeReplaceAndCollapse() throws IOException {
+        final String[] texts = { "  a&nbsp;&nbsp;b  ", "\n\t c&#160;", "d&amp;\u200Be " };
+        assertEquals("  a\u00a0\u00a0b  \n\t c\u00a0d&\u200Be ", append(texts, false, false));
+        assertEquals("  a  b  \n\t c d&\u200Be ", append(texts, true, false));
+        assertEquals("a\u00a0\u00a0b c\u00a0d& e", append(texts, false, true));
+        assertEquals("a b c d& e", append(texts, true, true));
+    }
+    
+    @Test
+    public void testCharactersAndSequencesAgree() {
+        for (boolean replace : new boolean[] { false, true }) {
+            for (boolean collapse : new boolean[] { false, true }) {
+                final StringBuilder sequences = new StringBuilder();
+                final StringBuilder characters = new StringBuilder();
+                final TextAppender appender = new TextAppender();
+                final String text = " x\u00a0 \u00a0y \n\u200Bz ";
+                appender.reset(sequences, replace, collapse, 0);
+                appender.append(text);
+                appender.reset(characters, replace, collapse, 0);
+                for (int i = 0; i < text.length(); i++)
+                    appender.append(text.charAt(i));
+                assertEquals(sequences.toString(), characters.toString());
+            }
+        }
+    }
+    
+    @Test
+    public void testMatchesSeparatePasses() throws IOException {
+        final Random random = new Random(35);
+        for (int n = 0; n < 2000; n++) {
+            final String[] texts = new String[1 + random.nextInt(3)];
+            for (int t = 0; t < texts.length; t++) {
+                final StringBuilder text = new StringBuilder();
+                for (int i = random.nextInt(12); i > 0; i--)
+                    text.append(PIECES[random.nextInt(PIECES.length)]);
+                texts[t] = text.toString();
+            }
+            for (boolean replace : new boolean[] { false, true }) {
+                for (boolean collapse : new boolean[] { false, true }) {
+                    assertEquals(String.join("|", texts), reference(texts, replace, collapse), append(texts, replace, collapse));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.htmlparser.beans;
+
+import java.io.StringWriter;
+import org.htmlparser.Parser;
+import org.htmlparser.util.ParserException;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class TextExtractorTest {
+    
+    private static final String HTML =
+        "<html><head><title>The  title</title><style>p { color: red }</style>"
+        + "<script>if (a < b) document.write('x');</script></head>"
+        + "<body><p>Some&nbsp;text,   with <a href='http://x.org/'>a link</a>.</p>"
+        + "<pre>  keep   this\n  as is </pre><ul><li>one<li>two</ul>&lt;done&gt;</body></html>";
+    
+    private static String visit(String html, boolean links, boolean replace, boolean collapse, int maxSize) throws ParserException {
+        final StringExtractingNodeVisitor visitor = new StringExtractingNodeVisitor(4096, maxSize);
+        visitor.setLinks(links);
+        visitor.setReplaceNonBreakingSpaces(replace);
+        visitor.setCollapse(collapse);
+        new Parser(html).visitAllNodesWith(visitor);
+        final String ret = visitor.getStrings();
+        return ret == null ? "" : ret;
+    }
+    
+    @Test
+    public void testSameAsStringBean() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            final boolean links = 0 != (i & 1);
+            final boolean replace = 0 != (i & 2);
+            final boolean collapse = 0 != (i & 4);
+            for (int maxSize : new int[] { Integer.MAX_VALUE, 40 }) {
+                final TextExtractor extractor = new TextExtractor(maxSize);
+                extractor.setLinks(links);
+                extractor.setReplaceNonBreakingSpaces(replace);
+                extractor.setCollapse(collapse);
+                final StringWriter writer = new StringWriter();
+                extractor.extract(new Parser(HTML), writer);
+                assertEquals(visit(HTML, links, replace, collapse, maxSize), writer.toString());
+            }
+        }
+    }
+    
+    @Test
+    public void testScriptAndStyleAreSkipped() throws ParserException {
+        final String text = new TextExtractor().extract(new Parser(HTML));
+        assertEquals(-1, text.indexOf("color"));
+        assertEquals(-1, text.indexOf("document"));
+        assertEquals(0, text.indexOf("The title"));
+    }
+}
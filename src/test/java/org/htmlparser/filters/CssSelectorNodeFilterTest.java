@@ -0,0 +1,133 @@
+package org.htmlparser.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.util.NodeList;
+import org.htmlparser.util.ParserException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class CssSelectorNodeFilterTest {
+    
+    private static final String HTML =
+        "<html><body><div class='a b' id=main><ul><li>1</li><li class=x>2</li> <li lang=en-US>3</li></ul>"
+        + "<p>para <a href='http://x.com/y.pdf'>l</a></p></div><br/></body></html>";
+    
+    private int count(String selector) throws ParserException {
+        final NodeList nodes = new Parser(HTML).parse(null);
+        return nodes.extractAllNodesThatMatch(new CssSelectorNodeFilter(selector), true).size();
+    }
+    
+    @Test
+    public void testSimpleSelectors() throws ParserException {
+        assertEquals(3, count("li"));
+        assertEquals(1, count("div.a"));
+        assertEquals(1, count(".a.b"));
+        assertEquals(1, count("#main"));
+        assertEquals(1, count("body > br"));
+    }
+    
+    @Test
+    public void testCombinators() throws ParserException {
+        assertEquals(3, count("div > ul > li"));
+        assertEquals(1, count("div li.x"));
+        assertEquals(2, count("li + li"));
+        assertEquals(1, count("li.x + li"));
+        assertEquals(2, count("li ~ li"));
+        assertEquals(2, count("ul, p"));
+    }
+    
+    @Test
+    public void testAttributeRelations() throws ParserException {
+        assertEquals(1, count("a[href]"));
+        assertEquals(1, count("a[href^='http:']"));
+        assertEquals(1, count("a[href$=.pdf]"));
+        assertEquals(1, count("a[href*=\"x.com\"]"));
+        assertEquals(1, count("li[lang|=en]"));
+        assertEquals(1, count("div[class~=b]"));
+        assertEquals(0, count("div[class=b]"));
+    }
+    
+    @Test
+    public void testStructuralPseudoClasses() throws ParserException {
+        assertEquals(1, count("li:first-child"));
+        assertEquals(1, count("li:last-child"));
+        assertEquals(1, count("li:nth-child(2n)"));
+        assertEquals(2, count("li:nth-child(odd)"));
+        assertEquals(2, count("li:nth-last-child(-n+2)"));
+        assertEquals(1, count("ul:only-of-type"));
+        assertEquals(0, count("li:empty"));
+    }
+    
+    @Test
+    public void testLogicalPseudoClasses() throws ParserException {
+        assertEquals(2, count("li:not(.x)"));
+        assertEquals(1, count("div:has(> ul)"));
+        assertEquals(1, count("ul:has(+ p)"));
+        assertEquals(0, count("p:has(li)"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedPseudoClass() {
+        new CssSelectorNodeFilter("li:hover");
+    }
+    
+    @Test
+    public void testCompiledSelectorsAreShared() {
+        assertSame(CssSelectorNodeFilter.compile("ul > li"), CssSelectorNodeFilter.compile("ul > li"));
+    }
+    
+    @Test(timeout = 10000)
+    public void testEmptyXmlTagIsNotItsOwnParent() throws ParserException {
+        final String html = "<p>a</p><dd class='x'/>";
+        final NodeList nodes = new Parser(html).parse(null);
+        assertNull(nodes.elementAt(1).getParent());
+        assertEquals(0, nodes.extractAllNodesThatMatch(new CssSelectorNodeFilter("div dd"), true).size());
+        assertEquals(1, nodes.extractAllNodesThatMatch(new CssSelectorNodeFilter("dd.x"), true).size());
+        final List<Node> streamed = new ArrayList<>();
+        new Parser(html).extractAllNodesThatMatch(new CssSelectorNodeFilter("div dd"), streamed::add);
+        assertEquals(0, streamed.size());
+    }
+    
+    @Test
+    public void testThreadsMatchOneDocument() throws Exception {
+        final StringBuilder html = new StringBuilder("<ul>");
+        for (int i = 0; i < 3000; i++) {
+            html.append(i % 5 == 0 ? "<p>" : "<li>").append(i);
+        }
+        html.append("</ul>");
+        final String[] selectors = {"li:nth-child(3n+1)", "li:nth-last-of-type(4n)", "p + li", "li:last-child", "p ~ p:nth-of-type(2n)"};
+        final int[] expected = new int[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            expected[i] = new Parser(html.toString()).parse(null).extractAllNodesThatMatch(new CssSelectorNodeFilter(selectors[i]), true).size();
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(selectors.length);
+        try {
+            for (int round = 0; round < 20; round++) {
+                final NodeList nodes = new Parser(html.toString()).parse(null);
+                final List<Future<Integer>> counts = new ArrayList<>();
+                for (String selector : selectors) {
+                    counts.add(executor.submit(() -> nodes.extractAllNodesThatMatch(new CssSelectorNodeFilter(selector), true).size()));
+                }
+                for (int i = 0; i < selectors.length; i++) {
+                    assertEquals(selectors[i], expected[i], (int)counts.get(i).get());
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testSyntaxError() {
+        new CssSelectorNodeFilter("a[");
+    }
+}
@@ -0,0 +1,46 @@
+package org.htmlparser.filters;
+
+import org.htmlparser.NodeFilter;
+import org.htmlparser.Parser;
+import org.htmlparser.Text;
+import org.htmlparser.util.NodeList;
+import org.htmlparser.util.ParserException;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class FilterBatchTest {
+    
+    private static final String HTML =
+        "<html><body><div class='a b' id=main><ul><li>1</li><li class=x>2</li> <li lang=en-US>3</li></ul>"
+        + "<p>para <a href='http://x.com/y.pdf'>l</a></p></div><br/></body></html>";
+    
+    private void assertSameAsSeparateWalks(NodeFilter[] filters) throws ParserException {
+        final NodeList nodes = new Parser(HTML).parse(null);
+        final NodeList[] results = new FilterBatch(filters).extractAllNodesThatMatch(nodes, true);
+        assertEquals(filters.length, results.length);
+        for (int i = 0; i < filters.length; i++) {
+            assertEquals(nodes.extractAllNodesThatMatch(filters[i], true), results[i]);
+        }
+    }
+    
+    @Test
+    public void testSelectors() throws ParserException {
+        final String[] selectors = {"li", "div.a", "#main", "ul > li", "li + li", "[lang]", "div *", "ul, p, li.x", "*"};
+        final NodeFilter[] filters = new NodeFilter[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            filters[i] = new CssSelectorNodeFilter(selectors[i]);
+        }
+        assertSameAsSeparateWalks(filters);
+    }
+    
+    @Test
+    public void testFilters() throws ParserException {
+        assertSameAsSeparateWalks(new NodeFilter[] {
+            new TagNameFilter("li"),
+            new HasAttributeFilter("href"),
+            new AndFilter(new TagNameFilter("li"), new HasAttributeFilter("class", "x")),
+            new OrFilter(new TagNameFilter("li"), new HasAttributeFilter("class")),
+            new NodeClassFilter(Text.class)
+        });
+    }
+}
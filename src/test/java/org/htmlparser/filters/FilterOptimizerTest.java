@@ -0,0 +1,44 @@
+package org.htmlparser.filters;
+
+import org.htmlparser.NodeFilter;
+import org.htmlparser.Parser;
+import org.htmlparser.util.NodeList;
+import org.htmlparser.util.ParserException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class FilterOptimizerTest {
+    
+    private static final String HTML =
+        "<html><body><div class=a><a href='/1'>link 1</a><p>text</p></div>"
+        + "<div class=b><a href='/2'>link 2</a></div><div class=a><p>link 3</p></div></body></html>";
+    
+    @Test
+    public void testSameResults() throws ParserException {
+        final NodeList nodes = new Parser(HTML).parse(null);
+        final NodeFilter[] filters = {
+            new AndFilter(new HasChildFilter(new RegexFilter("link \\d"), true),
+                new AndFilter(new TagNameFilter("div"), new NotFilter(new NotFilter(new HasAttributeFilter("class", "a"))))),
+            new OrFilter(new RegexFilter("text"), new OrFilter(new TagNameFilter("a"), new AndFilter())),
+            new NotFilter(new OrFilter()),
+            new OrFilter()
+        };
+        for (NodeFilter filter : filters) {
+            assertEquals(nodes.extractAllNodesThatMatch(filter, true),
+                nodes.extractAllNodesThatMatch(FilterOptimizer.optimize(filter), true));
+        }
+    }
+    
+    @Test
+    public void testCheapPredicatesFirst() {
+        final NodeFilter optimized = FilterOptimizer.optimize(new AndFilter(
+            new HasChildFilter(new RegexFilter("x"), true),
+            new AndFilter(new RegexFilter("y"), new TagNameFilter("div"))));
+        assertTrue(optimized instanceof FilterOptimizer.Conjunction);
+        final NodeFilter[] predicates = ((FilterOptimizer.Conjunction)optimized).getPredicates();
+        assertEquals(3, predicates.length);
+        assertTrue(predicates[0] instanceof TagNameFilter);
+        assertTrue(predicates[2] instanceof HasChildFilter);
+    }
+}
@@ -0,0 +1,105 @@
+package org.htmlparser.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.util.NodeList;
+import org.htmlparser.util.ParserException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class StreamingMatcherTest {
+    
+    private static final String HTML =
+        "<html><body><div id=list>"
+        + "<div class=product><h2>A</h2><span class=price>1</span></div><div class=ad><p>ad</p></div>"
+        + "<div class=product><h2>B</h2><span class=price>2</span></div><div class=ad><p>ad</p></div>"
+        + "</div><ul><li>1<li>2<li class=last>3</ul></body></html>";
+    
+    private List<String> stream(String selector) throws ParserException {
+        return stream(HTML, selector);
+    }
+    
+    private List<String> stream(String html, String selector) throws ParserException {
+        final List<String> ret = new ArrayList<>();
+        new Parser(html).extractAllNodesThatMatch(new CssSelectorNodeFilter(selector), (node) -> ret.add(node.toHtml()));
+        return ret;
+    }
+    
+    private List<String> extract(String selector) throws ParserException {
+        return extract(HTML, selector);
+    }
+    
+    private List<String> extract(String html, String selector) throws ParserException {
+        final List<String> ret = new ArrayList<>();
+        final NodeList nodes = new Parser(html).parse(null);
+        for (Node node : nodes.extractAllNodesThatMatch(new CssSelectorNodeFilter(selector), true)) {
+            ret.add(node.toHtml());
+        }
+        return ret;
+    }
+    
+    @Test
+    public void testMatchesAreComplete() throws ParserException {
+        for (String selector : new String[] {"div.product", "div.product > span", "li + li", "#list > div:nth-child(odd)", ".ad p"}) {
+            assertEquals(selector, extract(selector), stream(selector));
+        }
+    }
+    
+    @Test
+    public void testPseudoArgumentsLookAtOtherNodes() throws ParserException {
+        final String html = "<div><span><b>x</b></span><p>1</p></div><div><i>y</i><p>2</p></div>";
+        for (String selector : new String[] {"div:not(:has(b)) > p", "div:not(:has(span b)) > p", "div:has(b) > p", "p:not(:has(b))"}) {
+            final List<String> expected = extract(html, selector);
+            assertFalse(selector, expected.isEmpty());
+            assertEquals(selector, expected, stream(html, selector));
+        }
+        assertFalse(StreamingMatcher.isLocal(new CssSelectorNodeFilter("div:not(:has(b)) > p")));
+        assertTrue(StreamingMatcher.isLocal(new CssSelectorNodeFilter("div:not(.x) > p:not(:has(b))")));
+    }
+    
+    @Test(timeout = 20000)
+    public void testWideSiblings() throws ParserException {
+        final StringBuilder html = new StringBuilder("<html><body><ul>");
+        for (int i = 0; i < 20000; i++) {
+            html.append("\n<li class=").append(i % 3).append('>').append(i).append(i % 7 == 0 ? "<b>x</b>" : "").append("</li>");
+            if (i % 1000 == 0)
+                html.append("<p>").append(i).append("</p>");
+        }
+        html.append("</ul></body></html>");
+        for (String selector : new String[] {"li:nth-child(2n)", "ul > li + li", "p ~ li.\\31 ", "li.\\32:nth-of-type(3n+1)", "p + li", "ul > li > b"}) {
+            final List<String> expected = extract(html.toString(), selector);
+            assertEquals(selector, expected, stream(html.toString(), selector));
+        }
+        assertEquals(10000, stream(html.toString(), "li:nth-child(2n)").size());
+        assertEquals(19979, stream(html.toString(), "ul > li + li").size());
+        final int[] widest = new int[1];
+        new Parser(html.toString()).extractAllNodesThatMatch(new CssSelectorNodeFilter("ul > li.\\31"),
+            (node) -> widest[0] = Math.max(widest[0], node.getParent().getChildren().size()));
+        assertEquals(1, widest[0]);
+    }
+    
+    @Test
+    public void testUnmatchedSubtreesAreReleased() throws ParserException {
+        final List<Node> matches = new ArrayList<>();
+        new Parser(HTML).extractAllNodesThatMatch(new CssSelectorNodeFilter("li.last"), matches::add);
+        assertEquals(1, matches.size());
+        assertEquals(0, matches.get(0).getParent().getParent().getChildren().size());
+    }
+    
+    @Test
+    public void testPositionalFiltersKeepReleasedTags() throws ParserException {
+        final List<Node> matches = new ArrayList<>();
+        new Parser(HTML).extractAllNodesThatMatch(new CssSelectorNodeFilter("li + li.last"), matches::add);
+        assertEquals(1, matches.size());
+        final Node list = matches.get(0).getParent().getParent().getChildren().get(0);
+        assertEquals("list", ((org.htmlparser.Tag)list).getAttributeValue("ID"));
+        assertNull(list.getChildren());
+        assertTrue(StreamingMatcher.isPositional(new CssSelectorNodeFilter("ul:not(:first-child) li")));
+        assertFalse(StreamingMatcher.isPositional(new CssSelectorNodeFilter("ul > li.last:not([lang]), p:empty")));
+    }
+}
@@ -0,0 +1,174 @@
+package org.htmlparser.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.htmlparser.Parser;
+import org.htmlparser.filters.TagNameFilter;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.lexer.Page;
+import org.htmlparser.lexer.ParseLimits;
+import org.htmlparser.util.NodeList;
+import org.htmlparser.util.ParserException;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionManagerTest {
+    
+    private HttpServer server;
+    private String base;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/page", exchange -> respond(exchange, 200,
+                "<html><head><title>Local</title></head><body><p>one</p><p>two</p></body></html>"));
+        server.createContext("/login", exchange -> {
+            exchange.getResponseHeaders().add("Set-Cookie", "session=abc123; path=/");
+            exchange.getResponseHeaders().add("Location", "/whoami");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.createContext("/whoami", exchange -> respond(exchange, 200,
+                "<p>" + exchange.getRequestHeaders().getFirst("Cookie") + "</p>"));
+        server.createContext("/slow", exchange -> {
+            int now = active.incrementAndGet();
+            maxActive.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            respond(exchange, 200, "<p>slow</p>");
+        });
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            big.append("<p>").append(i).append("</p>\n");
+        }
+        server.createContext("/big", exchange -> respond(exchange, 200, big.toString()));
+        server.createContext("/", exchange -> respond(exchange, 404, "<p>not here</p>"));
+        server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+    
+    @Test
+    public void testFetch() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        Page page = manager.fetch(base + "/page").get();
+        assertEquals("UTF-8", page.getEncoding());
+        NodeList paragraphs = new Parser(new Lexer(page)).extractAllNodesThatMatch(new TagNameFilter("P"));
+        assertEquals(2, paragraphs.size());
+        assertEquals("two", paragraphs.elementAt(1).toPlainTextString());
+    }
+    
+    @Test
+    public void testRedirectKeepsCookiesAndMonitor() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        manager.setCookieProcessingEnabled(true);
+        List<String> events = new ArrayList<>();
+        manager.setMonitor(new ConnectionMonitor() {
+            public void preConnect(HttpURLConnection connection) {
+                events.add("pre " + connection.getURL().getPath());
+            }
+            public void postConnect(HttpURLConnection connection) throws ParserException {
+                try {
+                    events.add("post " + connection.getResponseCode());
+                } catch (IOException ioe) {
+                    throw new ParserException(ioe.getMessage(), ioe);
+                }
+            }
+        });
+        Page page = manager.fetch(base + "/login").get();
+        assertTrue(page.getUrl().endsWith("/whoami"));
+        String text = new Parser(new Lexer(page)).parse(null).asString();
+        assertEquals("session=abc123", text);
+        assertEquals("[pre /login, post 302, pre /whoami, post 200]", events.toString());
+    }
+    
+    @Test
+    public void testNotFound() throws InterruptedException {
+        try {
+            new ConnectionManager().fetch(base + "/missing").get();
+            throw new AssertionError("expected a failure");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof ParserException);
+        }
+    }
+    
+    @Test
+    public void testConnectionsPerHost() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        manager.setMaxConnectionsPerHost(1);
+        List<CompletableFuture<Page>> pages = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            pages.add(manager.fetch(base + "/slow"));
+        }
+        for (CompletableFuture<Page> page : pages) {
+            assertEquals("slow", new Parser(new Lexer(page.get())).parse(null).asString());
+        }
+        assertEquals(1, maxActive.get());
+    }
+    
+    private static Page truncate(Page page) throws ParserException {
+        Parser parser = new Parser(new Lexer(page));
+        parser.setLimits(new ParseLimits().setMaxNodes(10).setTruncating(true));
+        parser.parse(null);
+        return page;
+    }
+    
+    @Test
+    public void testClosingAPageReleasesItsHost() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        manager.setMaxConnectionsPerHost(1);
+        for (int i = 0; i < 3; i++) {
+            truncate(manager.fetch(base + "/big").get(5, TimeUnit.SECONDS)).close();
+        }
+        assertEquals("slow", new Parser(new Lexer(manager.fetch(base + "/slow").get(5, TimeUnit.SECONDS))).parse(null).asString());
+    }
+    
+    @Test
+    public void testUnreadPageTimesOut() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        manager.setMaxConnectionsPerHost(1);
+        manager.setPermitTimeout(200);
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pages.add(truncate(manager.fetch(base + "/big").get(5, TimeUnit.SECONDS)));
+        }
+        assertEquals("slow", new Parser(new Lexer(manager.fetch(base + "/slow").get(5, TimeUnit.SECONDS))).parse(null).asString());
+        for (Page page : pages) {
+            page.close();
+        }
+    }
+}
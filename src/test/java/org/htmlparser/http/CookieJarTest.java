@@ -0,0 +1,146 @@
+package org.htmlparser.http;
+
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CookieJarTest {
+
+    private static Cookie cookie(String name, String value, String path) {
+        Cookie ret = new Cookie(name, value);
+        ret.setPath(path);
+        return ret;
+    }
+
+    private static String names(List<Cookie> cookies) {
+        StringBuilder ret = new StringBuilder();
+        if (null != cookies) {
+            for (Cookie cookie : cookies) {
+                ret.append(cookie.getName()).append(cookie.getPath()).append(' ');
+            }
+        }
+        return ret.toString().trim();
+    }
+
+    private static String header(ConnectionManager manager, String url) throws Exception {
+        URLConnection connection = new URL(url).openConnection();
+        manager.addCookies(connection);
+        return connection.getRequestProperty("Cookie");
+    }
+
+    @Test
+    public void testReverse() {
+        assertEquals("com.example.www", CookieJar.reverse("www.Example.com"));
+        assertEquals("com.example.", CookieJar.reverse(".example.com"));
+        assertEquals("localhost", CookieJar.reverse("localhost"));
+    }
+
+    @Test
+    public void testDomainsIgnoreTheDefaultLocale() {
+        final Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals("com.example.mail", CookieJar.reverse("MAIL.EXAMPLE.COM"));
+            CookieJar jar = new CookieJar();
+            Cookie cookie = cookie("a", "1", "/");
+            cookie.setDomain(".EXAMPLE.COM");
+            jar.add(cookie, "MAIL.EXAMPLE.COM");
+            assertEquals("a/", names(jar.addCookies("mail.example.com", "/", null)));
+        }
+        finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void testMostSpecificPathFirst() {
+        CookieJar jar = new CookieJar();
+        jar.add(cookie("a", "1", "/"), "example.com");
+        jar.add(cookie("a", "2", "/docs"), "example.com");
+        jar.add(cookie("b", "3", "/"), "example.com");
+        jar.add(cookie("a", "4", "/docs"), "example.com");
+        assertEquals("a/docs a/ b/", names(jar.getCookies("example.com")));
+        assertEquals("4", jar.getCookies("example.com").get(0).getValue());
+        assertEquals("a/ b/", names(jar.addCookies("EXAMPLE.com", "/index.html", null)));
+        assertEquals(3, jar.size());
+    }
+
+    @Test
+    public void testExpiredCookiesAreDropped() {
+        CookieJar jar = new CookieJar();
+        Cookie stale = cookie("old", "x", "/");
+        stale.setExpiryDate(new Date(System.currentTimeMillis() - 1000));
+        jar.add(stale, "example.com");
+        jar.add(cookie("new", "y", "/"), "example.com");
+        assertEquals(2, jar.size());
+        assertEquals("new/", names(jar.addCookies("example.com", "/", null)));
+        assertEquals(1, jar.size());
+    }
+
+    @Test
+    public void testBoundedSize() {
+        CookieJar jar = new CookieJar(3);
+        for (int i = 0; i < 5; i++) {
+            jar.add(cookie("c" + i, "v", "/"), "host" + i + ".example.com");
+        }
+        assertEquals(3, jar.size());
+        assertEquals(0, jar.getCookies("host1.example.com").size());
+        assertEquals(1, jar.getCookies("host4.example.com").size());
+    }
+
+    @Test
+    public void testRemoveAllSubdomains() {
+        CookieJar jar = new CookieJar();
+        jar.add(cookie("a", "1", "/"), "example.com");
+        jar.add(cookie("b", "2", "/"), ".example.com");
+        jar.add(cookie("c", "3", "/"), "www.example.com");
+        jar.add(cookie("d", "4", "/"), "example-shop.com");
+        jar.removeAll("example.com");
+        assertEquals(1, jar.size());
+        assertEquals("d/", names(jar.getCookies("example-shop.com")));
+    }
+
+    @Test
+    public void testRequestHeaderIsCachedUntilChanged() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        manager.setCookie(cookie("session", "abc", "/"), "www.example.com");
+        manager.setCookie(cookie("pref", "wide", "/app"), ".example.com");
+        assertEquals("session=abc; pref=wide", header(manager, "http://www.example.com/app/index.html"));
+        assertEquals("session=abc", header(manager, "http://www.example.com/"));
+        long version = manager.getCookieJar().getVersion();
+        assertEquals("session=abc; pref=wide", header(manager, "http://www.example.com/app/index.html"));
+        manager.setCookie(cookie("session", "def", "/"), "www.example.com");
+        assertTrue(version != manager.getCookieJar().getVersion());
+        assertEquals("session=def; pref=wide", header(manager, "http://www.example.com/app/index.html"));
+        assertNull(header(manager, "http://other.org/"));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        CookieJar jar = new CookieJar(500);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int id = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    jar.add(cookie("c" + (i % 50), "v" + i, "/"), "h" + id + "-" + (i % 200) + ".example.com");
+                    jar.addCookies("h" + id + "-" + ((i * 7) % 200) + ".example.com", "/", null);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(500, jar.size());
+    }
+}
@@ -0,0 +1,154 @@
+package org.htmlparser.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.htmlparser.Parser;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.lexer.Page;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpCacheTest {
+
+    private HttpServer server;
+    private String base;
+    private File directory;
+    private final AtomicInteger bodies = new AtomicInteger();
+
+    private void respond(HttpExchange exchange, String tag, String body) throws IOException {
+        exchange.getResponseHeaders().add("ETag", tag);
+        if (tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        bodies.incrementAndGet();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String text(Page page) throws Exception {
+        return new Parser(new Lexer(page)).parse(null).asString();
+    }
+
+    private static String repeat(String s, int n) {
+        StringBuilder ret = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            ret.append(s);
+        }
+        return ret.toString();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/a", exchange -> respond(exchange, "\"a1\"", "<p>" + repeat("a", 1000) + "</p>"));
+        server.createContext("/b", exchange -> respond(exchange, "\"b1\"", "<p>" + repeat("b", 1000) + "</p>"));
+        server.createContext("/plain", exchange -> {
+            bodies.incrementAndGet();
+            byte[] bytes = "<p>plain</p>".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        File[] files = directory.listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRevalidation() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        HttpCache cache = new HttpCache(directory);
+        manager.setCache(cache);
+        String first = text(new Page(manager.openConnection(new URL(base + "/a"))));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getCount());
+        assertTrue(cache.getSize() < 1000); // stored compressed
+        Page page = new Page(manager.openConnection(new URL(base + "/a")));
+        assertEquals("UTF-8", page.getEncoding());
+        assertEquals(first, text(page));
+        assertEquals(first, text(manager.fetch(base + "/a").get()));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, bodies.get());
+    }
+
+    @Test
+    public void testEvictedWhileRevalidating() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        HttpCache cache = new HttpCache(directory);
+        manager.setCache(cache);
+        String first = text(new Page(manager.openConnection(new URL(base + "/a"))));
+        manager.setMonitor(new ConnectionMonitor() {
+            public void preConnect(HttpURLConnection connection) {
+                cache.clear();
+            }
+            public void postConnect(HttpURLConnection connection) {
+            }
+        });
+        assertEquals(first, text(new Page(manager.openConnection(new URL(base + "/a")))));
+        assertEquals(first, text(new Page(manager.openConnection(new URL(base + "/a")))));
+        assertEquals(first, text(manager.fetch(base + "/a").get()));
+        assertEquals(2, cache.getHits()); // the third was stored again
+        assertEquals(2, bodies.get());
+    }
+
+    @Test
+    public void testUncacheable() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        HttpCache cache = new HttpCache(directory);
+        manager.setCache(cache);
+        assertEquals("plain", text(new Page(manager.openConnection(new URL(base + "/plain")))));
+        assertEquals("plain", text(manager.fetch(base + "/plain").get()));
+        assertEquals(0, cache.getCount());
+        assertEquals(2, bodies.get());
+    }
+
+    @Test
+    public void testEvictionAndReload() throws Exception {
+        ConnectionManager manager = new ConnectionManager();
+        HttpCache cache = new HttpCache(directory);
+        manager.setCache(cache);
+        text(new Page(manager.openConnection(new URL(base + "/a"))));
+        text(new Page(manager.openConnection(new URL(base + "/b"))));
+        text(new Page(manager.openConnection(new URL(base + "/a"))));
+        assertEquals(2, cache.getCount());
+        cache.setMaxSize(cache.getSize() - 1);
+        assertEquals(1, cache.getCount()); // b was least recently used
+        HttpCache reloaded = new HttpCache(directory);
+        assertEquals(1, reloaded.getCount());
+        manager.setCache(reloaded);
+        text(new Page(manager.openConnection(new URL(base + "/a"))));
+        text(new Page(manager.openConnection(new URL(base + "/b"))));
+        assertEquals(1, reloaded.getHits());
+        assertEquals(3, bodies.get());
+    }
+}
@@ -0,0 +1,166 @@
+package org.htmlparser.lexer;
+
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.Tag;
+import org.htmlparser.filters.TagNameFilter;
+import org.htmlparser.util.Cancellation;
+import org.htmlparser.util.NodeList;
+import org.htmlparser.util.ParseCancelledException;
+import org.htmlparser.visitors.CancellableVisitor;
+import org.htmlparser.visitors.NodeVisitorImpl;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class CancellationTest {
+
+    private static String repeat(String s, int n) {
+        StringBuilder ret = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            ret.append(s);
+        }
+        return ret.toString();
+    }
+
+    private static class Counter extends NodeVisitorImpl {
+        int tags;
+        boolean finished;
+        Cancellation cancellation;
+        int cancelAt;
+
+        @Override
+        public void visitTag(Tag tag) {
+            if (++tags == cancelAt) {
+                cancellation.cancel();
+            }
+        }
+
+        @Override
+        public void finishedParsing() {
+            finished = true;
+        }
+    }
+
+    @Test
+    public void testDeadline() {
+        assertTrue(new Cancellation(0).isCancelled());
+        Cancellation cancellation = new Cancellation(1000000);
+        assertFalse(cancellation.isCancelled());
+        cancellation.cancel();
+        assertTrue(cancellation.isCancelled());
+        assertFalse(new Cancellation().isCancelled());
+    }
+
+    @Test
+    public void testCancelledBeforeParse() throws Exception {
+        Parser parser = Parser.createParser(repeat("<br>", 1000), null);
+        Cancellation cancellation = new Cancellation();
+        cancellation.cancel();
+        parser.setCancellation(cancellation);
+        try {
+            parser.parse(null);
+            fail("no exception");
+        } catch (ParseCancelledException e) {
+            assertEquals(0, e.getPartialResult().size());
+        }
+        assertTrue(parser.getLexer().isCancelled());
+    }
+
+    @Test
+    public void testPartialResult() throws Exception {
+        Parser parser = Parser.createParser("<div>" + repeat("<p>text</p>", 1000) + "</div><br>", null);
+        final Cancellation cancellation = new Cancellation();
+        final int[] count = new int[1];
+        parser.setNodeConsumer(node -> {
+            if (++count[0] == 100) {
+                cancellation.cancel();
+            }
+        });
+        parser.setCancellation(cancellation);
+        try {
+            parser.parse(null);
+            fail("no exception");
+        } catch (ParseCancelledException e) {
+            NodeList partial = e.getPartialResult();
+            assertEquals(1, partial.size());
+            Tag div = (Tag) partial.elementAt(0);
+            assertEquals("DIV", div.getTagName());
+            assertNotNull(div.getEndTag());
+            int paragraphs = div.getChildren().size();
+            assertTrue(paragraphs > 0 && paragraphs < 100);
+        }
+        assertTrue(count[0] < 100 + Lexer.CANCEL_CHECK_INTERVAL);
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        Parser parser = Parser.createParser(repeat("<br>", 1000), null);
+        Cancellation cancellation = new Cancellation();
+        parser.setCancellation(cancellation);
+        assertEquals(1000, parser.extractAllNodesThatMatch(new TagNameFilter("BR")).size());
+        assertFalse(parser.getLexer().isCancelled());
+        parser.reset();
+        cancellation.cancel();
+        try {
+            parser.extractAllNodesThatMatch(new TagNameFilter("BR"));
+            fail("no exception");
+        } catch (ParseCancelledException e) {
+            assertEquals(0, e.getPartialResult().size());
+        }
+    }
+
+    @Test
+    public void testVisitor() throws Exception {
+        Parser parser = Parser.createParser(repeat("<br>", 1000), null);
+        Counter counter = new Counter();
+        counter.cancellation = new Cancellation();
+        counter.cancelAt = 100;
+        parser.setCancellation(counter.cancellation);
+        try {
+            parser.visitAllNodesWith(counter);
+            fail("no exception");
+        } catch (ParseCancelledException e) {
+            assertNull(e.getPartialResult());
+        }
+        assertTrue(counter.finished);
+        assertTrue(counter.tags >= 100 && counter.tags < 100 + CancellableVisitor.CHECK_INTERVAL);
+    }
+
+    @Test
+    public void testTraversal() throws Exception {
+        Parser parser = Parser.createParser("<div>" + repeat("<br>", 1000) + "</div>", null);
+        Node div = parser.parse(null).elementAt(0);
+        Counter counter = new Counter();
+        counter.cancellation = new Cancellation();
+        counter.cancelAt = 10;
+        CancellableVisitor visitor = new CancellableVisitor(counter, counter.cancellation);
+        div.accept(visitor);
+        assertTrue(visitor.isCancelled());
+        assertTrue(counter.tags < 10 + CancellableVisitor.CHECK_INTERVAL);
+    }
+
+    @Test
+    public void testCancelFromAnotherThread() throws Exception {
+        final Cancellation cancellation = new Cancellation();
+        Thread thread = new Thread(cancellation::cancel);
+        thread.start();
+        thread.join();
+        Parser parser = Parser.createParser(repeat("<br>", 1000), null);
+        parser.setCancellation(cancellation);
+        try {
+            parser.parse(null);
+            fail("no exception");
+        } catch (ParseCancelledException e) {
+            assertTrue(parser.getLexer().isCancelled());
+        }
+        parser.setCancellation(null);
+        parser.reset();
+        assertEquals(1000, parser.parse(null).size());
+        assertFalse(parser.getLexer().isCancelled());
+    }
+}
@@ -0,0 +1,59 @@
+package org.htmlparser.lexer;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.tags.ScriptTag;
+import org.htmlparser.util.NodeList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CdataTest {
+
+    private static String cdata(String text) throws Exception {
+        Lexer lexer = new Lexer(text);
+        Node node = lexer.parseCDATA();
+        return null == node ? null : node.toHtml();
+    }
+
+    @Test
+    public void testEndsAtEtago() throws Exception {
+        assertEquals("if (a < b) x = \"</\";", cdata("if (a < b) x = \"</\";</script>"));
+        assertEquals("a <!-- </b> --> c", cdata("a <!-- </b> --> c</style>"));
+        assertEquals("a <!-- x --- </b", cdata("a <!-- x --- </b"));
+        assertEquals("x <</y", cdata("x <</y"));
+        assertEquals("x ", cdata("x </y"));
+        assertNull(cdata("</script>"));
+    }
+
+    @Test
+    public void testLineNumbers() throws Exception {
+        Page page = new Page("one\r\ntwo\rthree\nfour</script>");
+        Lexer lexer = new Lexer(page);
+        lexer.parseCDATA();
+        assertEquals(19, lexer.getPosition());
+        assertEquals(3, page.row(lexer.getPosition()));
+        assertEquals(1, page.row(5));
+        assertEquals(2, page.row(9));
+    }
+
+    @Test
+    public void testLargeStreamedScript() throws Exception {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            script.append("data.push({\"id\": ").append(i).append(", \"less\": \"a < b\"});\n");
+        }
+        String html = "<html><body><script>" + script + "</script><p>after</p></body></html>";
+        Page page = new Page(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), "UTF-8");
+        NodeList scripts = new Parser(new Lexer(page)).parse(null).extractAllNodesThatMatch(
+                node -> node instanceof ScriptTag, true);
+        assertEquals(1, scripts.size());
+        ScriptTag tag = (ScriptTag) scripts.elementAt(0);
+        assertEquals(script.toString(), tag.getScriptCode());
+        assertTrue(tag.getEndTag().getStartPosition() > tag.getStartPosition());
+        assertEquals(20000, page.row(tag.getEndTag().getStartPosition()));
+    }
+}
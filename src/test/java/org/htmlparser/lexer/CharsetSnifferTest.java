@@ -0,0 +1,41 @@
+package org.htmlparser.lexer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.htmlparser.Parser;
+import org.htmlparser.util.ParserException;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class CharsetSnifferTest {
+    
+    private static String sniff(byte[] bytes) throws IOException {
+        return new CharsetSniffer().sniff(new Stream(new ByteArrayInputStream(bytes)), "ISO-8859-1");
+    }
+    
+    @Test
+    public void testMetaTags() throws IOException {
+        assertEquals("UTF-8", sniff("<html><head><meta charset=\"utf-8\"></head></html>".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("Shift_JIS", sniff("<HTML><HEAD><META HTTP-EQUIV='Content-Type' CONTENT='text/html; charset=shift_jis'>".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("ISO-8859-1", sniff("<!-- <meta charset=koi8-r> --><meta name='charset' content='utf-8'>".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("ISO-8859-1", sniff("<meta charset=no-such-charset>".getBytes(StandardCharsets.US_ASCII)));
+    }
+    
+    @Test
+    public void testByteOrderMarks() throws IOException {
+        assertEquals("UTF-8", sniff(new byte[] { (byte)0xef, (byte)0xbb, (byte)0xbf, '<', 'p', '>' }));
+        assertEquals("UTF-16", sniff(new byte[] { (byte)0xff, (byte)0xfe, '<', 0, 'p', 0 }));
+    }
+    
+    @Test
+    public void testNoEncodingChange() throws ParserException, IOException {
+        final String html = "<html><head><title>Caf\u00e9</title>"
+            + "<meta http-equiv='Content-Type' content='text/html; charset=UTF-8'></head>"
+            + "<body>\u65e5\u672c\u8a9e</body></html>";
+        final Page page = new Page(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), null);
+        final Parser parser = new Parser(new Lexer(page));
+        assertEquals("Caf\u00e9\u65e5\u672c\u8a9e", parser.parse(null).asString());
+        assertEquals("UTF-8", page.getEncoding());
+    }
+}
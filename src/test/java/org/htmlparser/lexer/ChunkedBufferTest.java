@@ -0,0 +1,129 @@
+package org.htmlparser.lexer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.htmlparser.Parser;
+import org.htmlparser.util.ParserException;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class ChunkedBufferTest {
+    
+    /** Returns a few bytes at a time and doesn't know how many are left. */
+    private static InputStream trickle(byte[] bytes) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+        };
+    }
+    
+    private static byte[] bytes(int length) {
+        byte[] ret = new byte[length];
+        for (int i = 0; i < length; i++) {
+            ret[i] = (byte)(i * 31);
+        }
+        return ret;
+    }
+    
+    @Test
+    public void testStreamGrowsInChunks() throws IOException {
+        byte[] expected = bytes(100000);
+        Stream stream = new Stream(trickle(expected));
+        byte[] actual = new byte[expected.length];
+        int count = 0;
+        int read;
+        while (count < actual.length && -1 != (read = stream.read(actual, count, Math.min(5000, actual.length - count)))) {
+            count += read;
+        }
+        assertEquals(-1, stream.read());
+        assertArrayEquals(expected, actual);
+        stream.reset();
+        assertEquals(expected[0] & 0xff, stream.read());
+    }
+    
+    @Test
+    public void testStreamWithContentLengthHasOneChunk() throws IOException {
+        byte[] expected = bytes(50000);
+        Stream stream = new Stream(trickle(expected), expected.length);
+        byte[] actual = new byte[expected.length];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = (byte)stream.read();
+        }
+        assertEquals(-1, stream.read());
+        assertArrayEquals(expected, actual);
+        assertEquals(1, stream.mChunks.length);
+        assertEquals(expected.length, stream.mChunks[0].length);
+    }
+    
+    @Test
+    public void testWrongContentLengthIsNotAllocated() throws IOException, ParserException {
+        final byte[] expected = "<html><body>tiny</body></html>".getBytes(StandardCharsets.ISO_8859_1);
+        final Stream stream = new Stream(trickle(expected), 2000000000);
+        final byte[] actual = new byte[expected.length];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = (byte)stream.read();
+        }
+        assertEquals(-1, stream.read());
+        assertArrayEquals(expected, actual);
+        assertEquals(Stream.MAX_CHUNK_SIZE, stream.mChunks[0].length);
+        final InputStreamSource source = new InputStreamSource(new ByteArrayInputStream(expected), "ISO-8859-1", 2000000000);
+        assertEquals(InputStreamSource.MAX_CHUNK_SIZE, source.mChunkSize);
+        final URLConnection connection = new URLConnection(new URL("http://localhost/")) {
+            @Override
+            public void connect() {
+            }
+            @Override
+            public String getContentType() {
+                return "text/html; charset=ISO-8859-1";
+            }
+            @Override
+            public int getContentLength() {
+                return 2000000000;
+            }
+            @Override
+            public InputStream getInputStream() {
+                return trickle(expected);
+            }
+        };
+        assertEquals("tiny", new Parser(new Lexer(new Page(connection))).parse(null).asString());
+    }
+    
+    @Test
+    public void testSourceSpansChunks() throws IOException {
+        char[] text = new char[1000];
+        Arrays.fill(text, 'x');
+        for (int i = 0; i < text.length; i += 3) {
+            text[i] = (char)('a' + i % 26);
+        }
+        String expected = new String(text);
+        InputStreamSource source = new InputStreamSource(
+                new Stream(trickle(expected.getBytes(StandardCharsets.UTF_8))), "UTF-8", 64);
+        char[] actual = new char[text.length];
+        int count = 0;
+        int read;
+        while (count < actual.length && -1 != (read = source.read(actual, count, actual.length - count))) {
+            count += read;
+        }
+        assertEquals(expected, new String(actual));
+        assertEquals(expected.substring(50, 250), source.getString(50, 200));
+        assertEquals(expected.charAt(640), source.getCharacter(640));
+        StringBuilder buffer = new StringBuilder();
+        source.getCharacters(buffer, 60, 70);
+        assertEquals(expected.substring(60, 130), buffer.toString());
+        char[] array = new char[70];
+        source.getCharacters(array, 0, 120, 190);
+        assertEquals(expected.substring(120, 190), new String(array));
+    }
+}
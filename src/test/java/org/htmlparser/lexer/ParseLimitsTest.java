@@ -0,0 +1,121 @@
+package org.htmlparser.lexer;
+
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.Tag;
+import org.htmlparser.util.NodeList;
+import org.htmlparser.util.ParseLimitException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class ParseLimitsTest {
+
+    private static String repeat(String s, int n) {
+        StringBuilder ret = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            ret.append(s);
+        }
+        return ret.toString();
+    }
+
+    private static int depth(Node node) {
+        int ret = 0;
+        NodeList children = node.getChildren();
+        if (null != children) {
+            for (int i = 0; i < children.size(); i++) {
+                ret = Math.max(ret, depth(children.elementAt(i)));
+            }
+        }
+        return (node instanceof Tag ? 1 : 0) + ret;
+    }
+
+    @Test
+    public void testNodesTruncated() throws Exception {
+        Parser parser = Parser.createParser(repeat("<br>", 1000), null);
+        parser.setLimits(new ParseLimits().setMaxNodes(100).setTruncating(true));
+        assertEquals(100, parser.parse(null).size());
+        Lexer lexer = parser.getLexer();
+        assertTrue(lexer.isTruncated());
+        assertEquals(100, lexer.getNodeCount());
+        assertEquals(1, lexer.getLimitHits(ParseLimits.Limit.NODES));
+        assertEquals(0, lexer.getLimitHits(ParseLimits.Limit.TIME));
+        lexer.reset();
+        assertFalse(lexer.isTruncated());
+        assertEquals(0, lexer.getLimitHits(ParseLimits.Limit.NODES));
+    }
+
+    @Test
+    public void testNodesThrow() throws Exception {
+        Parser parser = Parser.createParser(repeat("<br>", 1000), null);
+        parser.setLimits(new ParseLimits().setMaxNodes(100));
+        try {
+            parser.parse(null);
+            fail("no exception");
+        } catch (ParseLimitException e) {
+            assertEquals(ParseLimits.Limit.NODES, e.getLimit());
+        }
+    }
+
+    @Test
+    public void testDepth() throws Exception {
+        String html = repeat("<div>x", 50) + repeat("</div>", 50);
+        Parser parser = Parser.createParser(html, null);
+        parser.setLimits(new ParseLimits().setMaxDepth(10).setTruncating(true));
+        NodeList list = parser.parse(null);
+        // the eleventh div is kept, but not its contents
+        assertEquals(11, depth(list.elementAt(0)));
+        assertEquals(repeat("x", 50), list.asString());
+        assertEquals(40, parser.getLexer().getLimitHits(ParseLimits.Limit.DEPTH));
+        parser = Parser.createParser(html, null);
+        parser.setLimits(new ParseLimits().setMaxDepth(10));
+        try {
+            parser.parse(null);
+            fail("no exception");
+        } catch (ParseLimitException e) {
+            assertEquals(ParseLimits.Limit.DEPTH, e.getLimit());
+        }
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        Lexer lexer = new Lexer("<p " + repeat("a=1 ", 1000) + "b/><td x='1' y=\"2\" z>");
+        lexer.setLimits(new ParseLimits().setMaxAttributes(3).setTruncating(true));
+        Tag tag = (Tag) lexer.next();
+        assertEquals("<p a=1 a=1 a=1 />", tag.toHtml());
+        assertTrue(tag.isEmptyXmlTag());
+        tag = (Tag) lexer.next();
+        assertEquals("<td x='1' y=\"2\" z>", tag.toHtml());
+        assertEquals(1, lexer.getLimitHits(ParseLimits.Limit.ATTRIBUTES));
+    }
+
+    @Test
+    public void testText() throws Exception {
+        String html = "<p>" + repeat("0123456789", 100) + "</p><script>" + repeat("x", 100) + "</script>";
+        Parser parser = Parser.createParser(html, null);
+        parser.setLimits(new ParseLimits().setMaxTextLength(15).setTruncating(true));
+        assertEquals("012345678901234xxxxxxxxxxxxxxx", parser.parse(null).asString());
+        assertEquals(2, parser.getLexer().getLimitHits(ParseLimits.Limit.TEXT));
+    }
+
+    @Test
+    public void testTime() throws Exception {
+        Parser parser = Parser.createParser(repeat("<br>", 10 * Lexer.TIME_CHECK_INTERVAL), null);
+        parser.setLimits(new ParseLimits().setMaxTime(0).setTruncating(true));
+        assertEquals(Lexer.TIME_CHECK_INTERVAL, parser.parse(null).size());
+        assertEquals(1, parser.getLexer().getLimitHits(ParseLimits.Limit.TIME));
+    }
+
+    @Test
+    public void testSharedLimits() throws Exception {
+        ParseLimits limits = new ParseLimits().setMaxNodes(5).setTruncating(true);
+        Parser parser = Parser.createParser(repeat("<br>", 10), null);
+        parser.setLimits(limits);
+        parser.setLexer(new Lexer(repeat("<hr>", 10)));
+        assertEquals(limits, parser.getLimits());
+        assertEquals(5, parser.parse(null).size());
+        assertEquals(Long.MAX_VALUE, new ParseLimits().getMaxDepth());
+    }
+}
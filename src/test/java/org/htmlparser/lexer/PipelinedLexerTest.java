@@ -0,0 +1,214 @@
+package org.htmlparser.lexer;
+
+import java.util.Random;
+import java.util.concurrent.FutureTask;
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.Remark;
+import org.htmlparser.Tag;
+import org.htmlparser.Text;
+import org.htmlparser.util.ParseLimitException;
+import org.htmlparser.visitors.NodeVisitorImpl;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class PipelinedLexerTest {
+
+    private static class Trace extends NodeVisitorImpl {
+        final StringBuilder trace = new StringBuilder();
+        final Thread thread = Thread.currentThread();
+        int stopAfter = Integer.MAX_VALUE;
+        int visits;
+        boolean elsewhere;
+
+        private void visit(String kind, int position, String text) {
+            visits++;
+            elsewhere |= Thread.currentThread() != thread;
+            trace.append(kind).append(position).append(':').append(text).append('\n');
+        }
+
+        @Override
+        public void visitTag(Tag tag) {
+            visit("T", tag.getStartPosition(), tag.toHtml(false));
+        }
+
+        @Override
+        public void visitEndTag(Tag tag) {
+            visit("E", tag.getStartPosition(), tag.toHtml());
+        }
+
+        @Override
+        public void visitStringNode(Text string) {
+            visit("S", string.getStartPosition(), string.getText());
+        }
+
+        @Override
+        public void visitRemarkNode(Remark remark) {
+            visit("R", remark.getStartPosition(), remark.getText());
+        }
+
+        @Override
+        public boolean shouldStop() {
+            return visits >= stopAfter;
+        }
+    }
+
+    private static String repeat(String s, int n) {
+        StringBuilder ret = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            ret.append(s);
+        }
+        return ret.toString();
+    }
+
+    private static Parser parser(String html, boolean pipelined, ParseLimits limits) throws Exception {
+        Parser ret = Parser.createParser(html, null);
+        ret.setPipelined(pipelined);
+        ret.setLimits(limits);
+        return ret;
+    }
+
+    private static void check(String html, ParseLimits limits) throws Exception {
+        Trace expected = new Trace();
+        Parser sequential = parser(html, false, limits);
+        sequential.visitAllNodesWith(expected);
+        Trace actual = new Trace();
+        Parser pipelined = parser(html, true, limits);
+        pipelined.visitAllNodesWith(actual);
+        assertEquals(expected.trace.toString(), actual.trace.toString());
+        assertTrue(!actual.elsewhere);
+        assertEquals(sequential.getLexer().getPosition(), pipelined.getLexer().getPosition());
+        for (ParseLimits.Limit limit : ParseLimits.Limit.values()) {
+            assertEquals(limit.toString(), sequential.getLexer().getLimitHits(limit),
+                    pipelined.getLexer().getLimitHits(limit));
+        }
+    }
+
+    private static void check(String html) throws Exception {
+        check(html, null);
+    }
+
+    private static String lex(Lexer lexer) throws Exception {
+        StringBuilder ret = new StringBuilder();
+        Node node;
+        while (null != (node = lexer.next())) {
+            ret.append(node.getStartPosition()).append(',').append(node.getEndPosition()).append('\n');
+            if ((node instanceof Tag) && !((Tag)node).isEndTag()
+                    && ("SCRIPT".equals(((Tag)node).getTagName()) || "STYLE".equals(((Tag)node).getTagName()))) {
+                node = lexer.parseCDATA();
+                if (null != node) {
+                    ret.append(node.toHtml()).append('\n');
+                }
+            }
+        }
+        return ret.toString();
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        check("");
+        check("text only");
+        check("<html><head><title>t</title><style>p { color: red }</style></head>"
+                + "<body><p>one<p>two<table><tr><td>a<td>b</table><!-- remark --></body></html>");
+        check(repeat("<div class=\"x\"><p>para <b>bold</b> <a href='#'>link</a></p></div>\r\n", 5000));
+    }
+
+    @Test
+    public void testScripts() throws Exception {
+        check("<script>var a = '</b>'; if (a < b) {}</script><p>after");
+        check("<script></script><script/><p><script>unclosed</p>");
+        check("<script>document.write(\"</scr\" + \"ipt>\")</script>text");
+        check("<style>a { }</style><style></style><style>unclosed");
+        check(repeat("<p><script>x = \"<b>\";</script>t</p>", 2000));
+    }
+
+    @Test
+    public void testScriptsRepeatedly() throws Exception {
+        String html = repeat("<div><script>var s = '<b>' + x + '</b>'; " + repeat("y = a < b;\n", 1000)
+                + "</script><style>p:before { content: '</div>' } " + repeat("q { }\n", 1500)
+                + "</style><p>after</p></div>\r\n", 20);
+        for (int i = 0; i < 50; i++) {
+            check(html);
+        }
+    }
+
+    @Test
+    public void testLexersSkipTheSamePageConcurrently() throws Exception {
+        Page page = new Page(repeat("<script>var s = '</b>';\n" + repeat("y = a < b;\n", 1000)
+                + "</script><style>" + repeat("q { }\n", 1500) + "</style><p>t</p>\r\n", 20));
+        Cursor cursor = new Cursor(page, 0);
+        while (Page.EOF != page.getCharacter(cursor)) {
+        }
+        String expected = lex(new Lexer(page));
+        for (int i = 0; i < 20; i++) {
+            FutureTask<String> other = new FutureTask<>(() -> lex(new Lexer(page)));
+            new Thread(other).start();
+            assertEquals(expected, lex(new Lexer(page)));
+            assertEquals(expected, other.get());
+        }
+    }
+
+    @Test
+    public void testSkippedTags() throws Exception {
+        String html = repeat("<p>a<svg><g><circle/></g></svg><script>var x;</script>b</p>", 1000);
+        Trace expected = new Trace();
+        Parser sequential = parser(html, false, null);
+        sequential.getLexer().setSkippedTags(java.util.Collections.singleton("svg"));
+        sequential.visitAllNodesWith(expected);
+        Trace actual = new Trace();
+        Parser pipelined = parser(html, true, null);
+        pipelined.getLexer().setSkippedTags(java.util.Collections.singleton("svg"));
+        pipelined.visitAllNodesWith(actual);
+        assertEquals(expected.trace.toString(), actual.trace.toString());
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        String html = repeat("<div a=1 b=2 c=3 d=4><script>var x = 1;</script>" + repeat("t", 100) + "</div>", 500)
+                + repeat("<div>", 100) + "<script>deep</script>" + repeat("</div>", 100);
+        check(html, new ParseLimits().setMaxAttributes(2).setMaxTextLength(50).setMaxDepth(20).setTruncating(true));
+        check(html, new ParseLimits().setMaxNodes(777).setTruncating(true));
+        try {
+            parser(html, true, new ParseLimits().setMaxAttributes(2)).visitAllNodesWith(new Trace());
+            fail("no exception");
+        } catch (ParseLimitException e) {
+            assertEquals(ParseLimits.Limit.ATTRIBUTES, e.getLimit());
+        }
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        Trace trace = new Trace();
+        trace.stopAfter = 100;
+        parser(repeat("<br>", 100000), true, null).visitAllNodesWith(trace);
+        assertEquals(100, trace.visits);
+    }
+
+    @Test
+    public void testFuzz() throws Exception {
+        String alphabet = "<<<>>>//==\"\"''  \n\r!-abpscriptyledivtr";
+        Random random = new Random(4711);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder html = new StringBuilder();
+            int length = random.nextInt(400);
+            for (int j = 0; j < length; j++) {
+                switch (random.nextInt(12)) {
+                    case 0:
+                        html.append("<script>");
+                        break;
+                    case 1:
+                        html.append("</script>");
+                        break;
+                    case 2:
+                        html.append("<style>");
+                        break;
+                    default:
+                        html.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            check(html.toString());
+        }
+    }
+}
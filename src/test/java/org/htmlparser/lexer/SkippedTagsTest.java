@@ -0,0 +1,94 @@
+package org.htmlparser.lexer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.Tag;
+import org.htmlparser.tags.Div;
+import org.htmlparser.tags.ScriptTag;
+import org.htmlparser.tags.StyleTag;
+import org.htmlparser.util.NodeList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SkippedTagsTest {
+
+    private static Parser parser(String html, String... skipped) {
+        Parser parser = Parser.createParser(html, null);
+        parser.setSkippedTags(new HashSet<>(Arrays.asList(skipped)));
+        return parser;
+    }
+
+    private static Node find(NodeList list, Class<?> type) {
+        NodeList found = list.extractAllNodesThatMatch(node -> type.isInstance(node), true);
+        return 0 == found.size() ? null : found.elementAt(0);
+    }
+
+    @Test
+    public void testLexer() throws Exception {
+        String html = "<p>a<svg width=\"1\" title='<b>'><g><text>x</text></g></svg>b</p>";
+        Lexer lexer = new Lexer(html);
+        lexer.setSkippedTags(new HashSet<>(Arrays.asList("svg")));
+        assertEquals("[SVG]", lexer.getSkippedTags().toString());
+        lexer.next(); // <p>
+        lexer.next(); // a
+        Tag start = (Tag) lexer.next();
+        assertEquals("SVG", start.getTagName());
+        assertNull(start.getAttribute("width"));
+        assertEquals(4, start.getStartPosition());
+        assertEquals(html.indexOf("<g>"), start.getEndPosition());
+        Tag end = (Tag) lexer.next();
+        assertTrue(end.isEndTag());
+        assertEquals(html.indexOf("</svg>"), end.getStartPosition());
+        assertEquals("b", lexer.next().toHtml());
+    }
+
+    @Test
+    public void testCompositeTags() throws Exception {
+        NodeList list = parser("<div id=x><p>one<!-- </div> --><p>two</DIV><p>three</p>", "div").parse(null);
+        Div div = (Div) find(list, Div.class);
+        assertEquals(0, div.getChildCount());
+        assertNull(div.getAttribute("id"));
+        assertEquals("three", list.asString());
+    }
+
+    @Test
+    public void testScriptAndStyle() throws Exception {
+        String html = "<script language=\"JScript.Encode\">#@~^x</b></script>"
+                + "<style>p { }</style><p>text</p>";
+        NodeList list = parser(html, "script", "STYLE").parse(null);
+        ScriptTag script = (ScriptTag) find(list, ScriptTag.class);
+        assertEquals(0, script.getChildCount());
+        assertEquals(html.indexOf("</script>"), script.getEndTag().getStartPosition());
+        StyleTag style = (StyleTag) find(list, StyleTag.class);
+        assertEquals(0, style.getChildCount());
+        assertEquals(html.indexOf("</style>"), style.getEndTag().getStartPosition());
+        assertEquals("text", list.asString());
+    }
+
+    @Test
+    public void testEmptyAndUnclosed() throws Exception {
+        Lexer lexer = new Lexer("<svg a=1 b/><p>x<svg><p>y");
+        lexer.setSkippedTags(new HashSet<>(Arrays.asList("svg")));
+        Tag empty = (Tag) lexer.next();
+        assertTrue(empty.isEmptyXmlTag());
+        assertFalse(lexer.isSkipped(empty));
+        assertEquals("p", ((Tag) lexer.next()).getRawTagName());
+        lexer.next(); // x
+        assertTrue(lexer.isSkipped((Tag) lexer.next()));
+        assertNull(lexer.next());
+    }
+
+    @Test
+    public void testNoneSkipped() throws Exception {
+        Parser parser = parser("<div id=\"x\"><p>one</p></div>");
+        assertTrue(parser.getSkippedTags().isEmpty());
+        Div div = (Div) find(parser.parse(null), Div.class);
+        assertEquals("x", div.getAttributeValue("id"));
+        assertEquals(1, div.getChildCount());
+    }
+}
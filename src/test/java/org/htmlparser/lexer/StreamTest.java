@@ -0,0 +1,98 @@
+package org.htmlparser.lexer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class StreamTest {
+    
+    /** Returns a few hundred bytes at a time, pausing now and then. */
+    private static InputStream slow(byte[] bytes) {
+        return new ByteArrayInputStream(bytes) {
+            private int calls;
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (0 == ++calls % 10) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.read(b, off, Math.min(len, 300));
+            }
+        };
+    }
+    
+    private static byte[] drain(Stream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int read;
+        while (-1 != (read = stream.read(buffer, 0, buffer.length))) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+    
+    private static byte[] bytes(int length) {
+        byte[] ret = new byte[length];
+        for (int i = 0; i < length; i++) {
+            ret[i] = (byte)(i * 17);
+        }
+        return ret;
+    }
+    
+    @Test
+    public void testBackgroundFill() throws Exception {
+        byte[] expected = bytes(200000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Stream stream = new Stream(slow(expected));
+            stream.start(executor);
+            assertArrayEquals(expected, drain(stream));
+            stream.reset();
+            assertArrayEquals(expected, drain(stream));
+            assertTrue(stream.getFills() >= expected.length / 300);
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testProducerStartedAfterReading() throws Exception {
+        byte[] expected = bytes(100000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Stream stream = new Stream(slow(expected));
+            byte[] head = new byte[5000];
+            int count = 0;
+            while (count < head.length) {
+                count += stream.read(head, count, head.length - count);
+            }
+            stream.start(executor);
+            byte[] tail = drain(stream);
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            actual.write(head);
+            actual.write(tail);
+            assertArrayEquals(expected, actual.toByteArray());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testSynchronousFills() throws IOException {
+        Stream stream = new Stream(slow(bytes(3000)));
+        assertEquals(3000, drain(stream).length);
+        assertEquals(10, stream.getFills());
+        assertEquals(11, stream.getSynchronousFills());
+        assertEquals(0, stream.getReallocations());
+    }
+}
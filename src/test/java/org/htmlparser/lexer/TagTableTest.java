@@ -0,0 +1,79 @@
+package org.htmlparser.lexer;
+
+import java.util.List;
+import java.util.Random;
+import org.htmlparser.Attribute;
+import org.htmlparser.Node;
+import org.htmlparser.Tag;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TagTableTest {
+
+    private static final String ALPHABET = "<<>>==''\"\"  \t\r\n\n//abcXYZ-!\u00e9\u3000";
+
+    private static String describe(Lexer lexer) throws Exception {
+        StringBuilder ret = new StringBuilder();
+        Node node;
+        while (null != (node = lexer.next())) {
+            ret.append(node.getClass().getSimpleName()).append(' ')
+                    .append(node.getStartPosition()).append('-').append(node.getEndPosition());
+            if (node instanceof Tag) {
+                List<Attribute> attributes = ((Tag) node).getAttributes();
+                for (Attribute attribute : attributes) {
+                    PageAttribute a = (PageAttribute) attribute;
+                    ret.append(" [").append(a.getNameStartPosition()).append(',')
+                            .append(a.getNameEndPosition()).append(',')
+                            .append(a.getValueStartPosition()).append(',')
+                            .append(a.getValueEndPosition()).append(',')
+                            .append((int) a.getQuote()).append(']');
+                }
+            }
+            ret.append('\n');
+        }
+        ret.append(lexer.getPage().row(lexer.getPosition()));
+        return ret.toString();
+    }
+
+    private static void compare(String html) throws Exception {
+        Lexer legacy = new Lexer(html);
+        Lexer table = new Lexer(html);
+        table.setTableDriven(true);
+        assertEquals(html, describe(legacy), describe(table));
+    }
+
+    @Test
+    public void testSelection() {
+        Lexer lexer = new Lexer("<p>");
+        assertFalse(lexer.isTableDriven());
+        lexer.setTableDriven(true);
+        assertTrue(lexer.isTableDriven());
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        compare("<a href=\"x.html\" target='_top' nowrap size=1 color= >");
+        compare("<td  width = \"50%\"  align=center\r\n valign =top>text</td>");
+        compare("<img src=a.gif alt=\"a > b\" title='it\"s'/><br/><p class=\"unclosed");
+        compare("<a b <c d= <e f='x'<g h = >");
+        compare("<a b  ");
+        compare("<a b\r\n");
+        compare("<a b=");
+        compare("<!DOCTYPE html><p\u3000id=x\u3000>");
+    }
+
+    @Test
+    public void testRandomMarkup() throws Exception {
+        Random random = new Random(46);
+        for (int i = 0; i < 20000; i++) {
+            int length = 1 + random.nextInt(40);
+            StringBuilder html = new StringBuilder("<");
+            for (int j = 0; j < length; j++) {
+                html.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            compare(html.toString());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.htmlparser.scanners;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.Tag;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.tags.Div;
+import org.htmlparser.tags.TableColumn;
+import org.htmlparser.util.NodeList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ParseStackTest {
+
+    private static Tag tag(String html) throws Exception {
+        return (Tag) new Lexer(html).next();
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        ParseStack stack = new ParseStack();
+        assertFalse(stack.mayEnd(tag("</div>")));
+        stack.add(new Div());
+        stack.add(new TableColumn());
+        assertTrue(stack.mayEnd(tag("</DIV>")));
+        assertTrue(stack.mayEnd(tag("</tr>"))); // ends the cell
+        assertFalse(stack.mayEnd(tag("</span>")));
+        stack.remove(stack.size() - 1);
+        assertFalse(stack.mayEnd(tag("</tr>")));
+        stack.set(0, new TableColumn());
+        assertFalse(stack.mayEnd(tag("</div>")));
+        stack.clear();
+        assertFalse(stack.mayEnd(tag("</td>")));
+    }
+
+    @Test
+    public void testStrayEndTags() throws Exception {
+        NodeList list = new Parser("<div>a</span><div>b</b></label></div>c</div>").parse(null);
+        assertEquals(1, list.size());
+        assertEquals("<div>a</span><div>b</b></label></div>c</div>", list.toHtml());
+        Node inner = list.elementAt(0).getChildren().elementAt(2);
+        assertEquals("b", inner.getChildren().elementAt(0).getText());
+    }
+
+    @Test
+    public void testPathologicalMarkup() throws Exception {
+        StringBuilder html = new StringBuilder("<html><body>");
+        StringBuilder ends = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            html.append("<div>").append(i);
+            for (int j = 0; j < 40; j++) {
+                html.append("</span></font></b></td>");
+            }
+            ends.append("</div>");
+        }
+        html.append("</body></html>");
+        long start = System.nanoTime();
+        NodeList list = new Parser(html.toString()).parse(null);
+        long elapsed = System.nanoTime() - start;
+        // the divs are closed by virtual end tags at the end of the body
+        assertEquals(html.toString().replace("</body>", ends + "</body>"), list.toHtml());
+        assertTrue("took " + elapsed / 1000000 + "ms", elapsed < 5000000000L);
+    }
+
+    @Test
+    public void testEndedTagIsNotLexedTwice() throws Exception {
+        List<Node> seen = new ArrayList<>();
+        Lexer lexer = new Lexer("<ul><li>one<li>two</ul>");
+        lexer.setNodeConsumer(seen::add);
+        NodeList list = new Parser(lexer).parse(null);
+        assertEquals("<ul><li>one</li><li>two</li></ul>", list.toHtml());
+        assertEquals(6, seen.size());
+    }
+}
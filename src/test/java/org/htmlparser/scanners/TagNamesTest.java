@@ -0,0 +1,59 @@
+package org.htmlparser.scanners;
+
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import org.htmlparser.Tag;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.tags.LinkTag;
+import org.htmlparser.tags.TableColumn;
+import org.htmlparser.util.NodeList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TagNamesTest {
+
+    private static Tag tag(String html) throws Exception {
+        return (Tag) new Lexer(html).next();
+    }
+
+    @Test
+    public void testLookupIgnoresCaseAndSlashes() throws Exception {
+        int id = TagNames.id("td");
+        assertEquals(id, TagNames.id("TD"));
+        assertEquals(id, TagNames.lookup(tag("<Td class=x>")));
+        assertEquals(id, TagNames.lookup(tag("</td>")));
+        assertEquals(id, TagNames.lookup(tag("<td/>")));
+        assertEquals(-1, TagNames.lookup(tag("<never-registered-name>")));
+    }
+
+    @Test
+    public void testSameName() throws Exception {
+        assertTrue(TagNames.sameName(tag("</FONT>"), tag("<font size=2>")));
+        assertFalse(TagNames.sameName(tag("</font>"), tag("<form>")));
+        assertFalse(TagNames.sameName(tag("</b>"), tag("<br>")));
+    }
+
+    @Test
+    public void testCompiledEnders() throws Exception {
+        long[] set = TagNames.compile(new LinkTag().getEnders());
+        assertTrue(set == TagNames.compile(new LinkTag().getEnders()));
+        assertTrue(TagNames.contains(set, TagNames.lookup(tag("<li>"))));
+        assertFalse(TagNames.contains(set, TagNames.lookup(tag("<img>"))));
+        assertFalse(TagNames.contains(set, -1));
+        CompositeTagScanner scanner = new CompositeTagScanner();
+        assertTrue(scanner.isTagToBeEndedFor(new TableColumn(), tag("<tr>")));
+        assertTrue(scanner.isTagToBeEndedFor(new TableColumn(), tag("</TABLE>")));
+        assertFalse(scanner.isTagToBeEndedFor(new TableColumn(), tag("<b>")));
+    }
+
+    @Test
+    public void testTableStructure() throws Exception {
+        NodeList list = new Parser("<table><tr><td>a<td><a href=x>b<td>c</table>").parse(null);
+        Node row = list.elementAt(0).getChildren().elementAt(0);
+        assertEquals(3, row.getChildren().size());
+        assertEquals("b", row.getChildren().elementAt(1).toPlainTextString());
+        assertEquals("<table><tr><td>a</td><td><a href=x>b</a></td><td>c</td></tr></table>", list.toHtml());
+    }
+}
@@ -0,0 +1,219 @@
+package org.htmlparser.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.htmlparser.Node;
+import org.htmlparser.Parser;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class NodePublisherTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    private static final String PAGE = "<html><head><title>t</title></head><body>"
+            + "<div><p>one</p><p>two</p></div><br><span>three</span>"
+            + "</body></html><!-- after -->text";
+
+    private static class Collector implements Flow.Subscriber<Node> {
+        final List<Node> nodes = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final long batch;
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        Collector(long batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (0 != batch) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onNext(Node node) {
+            nodes.add(node);
+            if (1 == batch) {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+
+    private static String html(List<Node> nodes) {
+        StringBuilder ret = new StringBuilder();
+        for (Node node : nodes) {
+            ret.append(node.toHtml());
+        }
+        return ret.toString();
+    }
+
+    @Test
+    public void testTopLevelNodes() throws Exception {
+        NodeList expected = Parser.createParser(PAGE, null).parse(null);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Collector collector = new Collector(1);
+            Parser.createParser(PAGE, null).publish(executor, 2, true).subscribe(collector);
+            assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+            assertTrue(collector.completed);
+            assertNull(collector.error);
+            assertEquals(expected.size(), collector.nodes.size());
+            assertEquals(expected.toHtml(), html(collector.nodes));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLexedNodes() throws Exception {
+        int count = 0;
+        for (NodeIterator e = Parser.createParser(PAGE, null).elements(false); e.hasNext(); count++) {
+            e.next();
+        }
+        Collector collector = new Collector(Long.MAX_VALUE);
+        Parser.createParser(PAGE, null).publish(DIRECT, 1, false).subscribe(collector);
+        assertTrue(collector.completed);
+        assertEquals(count, collector.nodes.size());
+        assertEquals(PAGE, html(collector.nodes));
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            page.append("<br>");
+        }
+        Parser parser = Parser.createParser(page.toString(), null);
+        final int[] lexed = new int[1];
+        parser.setNodeConsumer(node -> lexed[0]++);
+        Collector collector = new Collector(0);
+        parser.publish(DIRECT, 4, false).subscribe(collector);
+        assertEquals(0, lexed[0]);
+        collector.subscription.request(3);
+        assertEquals(3, collector.nodes.size());
+        assertEquals(7, lexed[0]);
+        collector.subscription.request(10);
+        assertEquals(13, collector.nodes.size());
+        assertEquals(17, lexed[0]);
+        collector.subscription.cancel();
+        collector.subscription.request(10);
+        assertEquals(13, collector.nodes.size());
+        assertEquals(17, lexed[0]);
+        assertTrue(!collector.completed && null == collector.error);
+    }
+
+    @Test
+    public void testBadRequest() throws Exception {
+        Collector collector = new Collector(0);
+        Parser.createParser(PAGE, null).publish(DIRECT, 4, true).subscribe(collector);
+        collector.subscription.request(0);
+        assertTrue(collector.error instanceof IllegalArgumentException);
+        assertEquals(0, collector.nodes.size());
+    }
+
+    @Test
+    public void testCancelledParse() throws Exception {
+        Parser parser = Parser.createParser(PAGE, null);
+        Cancellation cancellation = new Cancellation();
+        cancellation.cancel();
+        parser.setCancellation(cancellation);
+        Collector collector = new Collector(Long.MAX_VALUE);
+        parser.publish(DIRECT, 4, true).subscribe(collector);
+        assertTrue(collector.error instanceof ParseCancelledException);
+        assertEquals(0, collector.nodes.size());
+    }
+
+    @Test
+    public void testRejectedTaskIsSignalledSerially() throws Exception {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            page.append("<br>");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            for (int limit = 1; limit < 40; limit++) {
+                final AtomicInteger executed = new AtomicInteger();
+                final int tasks = limit;
+                Executor executor = task -> {
+                    if (executed.incrementAndGet() > tasks) {
+                        throw new RejectedExecutionException("limit " + tasks);
+                    }
+                    pool.execute(task);
+                };
+                final AtomicInteger inside = new AtomicInteger();
+                final AtomicInteger overlaps = new AtomicInteger();
+                final AtomicInteger terminals = new AtomicInteger();
+                Collector collector = new Collector(1) {
+                    @Override
+                    public void onNext(Node node) {
+                        if (1 != inside.incrementAndGet()) {
+                            overlaps.incrementAndGet();
+                        }
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                        super.onNext(node);
+                        inside.decrementAndGet();
+                    }
+                    @Override
+                    public void onError(Throwable error) {
+                        if (1 != inside.incrementAndGet()) {
+                            overlaps.incrementAndGet();
+                        }
+                        terminals.incrementAndGet();
+                        inside.decrementAndGet();
+                        super.onError(error);
+                    }
+                };
+                Parser.createParser(page.toString(), null).publish(executor, 2, false).subscribe(collector);
+                assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+                Thread.sleep(5);
+                assertEquals(0, overlaps.get());
+                assertEquals(1, terminals.get());
+                assertTrue(collector.error instanceof RejectedExecutionException);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testOneSubscriber() throws Exception {
+        Flow.Publisher<Node> publisher = Parser.createParser(PAGE, null).publish(DIRECT, 4, true);
+        Collector first = new Collector(Long.MAX_VALUE);
+        publisher.subscribe(first);
+        assertTrue(first.completed);
+        Collector second = new Collector(Long.MAX_VALUE);
+        publisher.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+}
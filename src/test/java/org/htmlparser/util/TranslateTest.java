@@ -0,0 +1,176 @@
+package org.htmlparser.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class TranslateTest {
+    
+    private static final String[] DECODE = {
+        "plain", "a &lt; b &amp;&amp; c &gt; d", "&nbsp&nbsp;x", "&notin; &notit; &not &no",
+        "&amp&ampx&ampere;&Amp;", "&#65;&#x41;&#X41&#12a", "&#0;&#;&#x;&#xg&", "&&amp;&", "&unknown; &#128512; &#xD800;",
+    };
+    
+    private static final String[] ENCODE = {
+        "plain", "a<b>&\"'", "\u00a0\u00e9\u00ff\u00ad", "\u0100\u03b1\u2014\u20ac\u2019", "x\ud83d\ude00y\ud800", "\u007f\u0080\t\n\u0000",
+    };
+    
+    private static String encode(CharSequence source, int start, int end) throws IOException {
+        final StringWriter out = new StringWriter();
+        Translate.encode(source, start, end, out);
+        return out.toString();
+    }
+    
+    private static String decode(CharSequence source, int start, int end) throws IOException {
+        final StringWriter out = new StringWriter();
+        Translate.decode(source, start, end, out);
+        return out.toString();
+    }
+    
+    @Test
+    public void testEntityReferences() {
+        assertEquals("<>\"", Translate.decode("&lt&gt&quot"));
+        assertEquals("\u00c6\u00e6", Translate.decode("&AElig;&aelig;"));
+        assertEquals("&unknown;", Translate.decode("&unknown;"));
+        assertEquals("&Amp;", Translate.decode("&Amp;"));
+    }
+    
+    @Test
+    public void testLongestKernelWins() {
+        assertEquals("\u2209", Translate.decode("&notin;"));
+        assertEquals("\u00acit;", Translate.decode("&notit;"));
+        assertEquals("&ere;", Translate.decode("&ampere;"));
+        assertEquals("&x", Translate.decode("&ampx"));
+    }
+    
+    @Test
+    public void testUnterminatedReferences() {
+        assertEquals("&", Translate.decode("&amp"));
+        assertEquals("\u00ac", Translate.decode("&not"));
+        assertEquals("&no", Translate.decode("&no"));
+        assertEquals("&", Translate.decode("&"));
+        assertEquals("a&", Translate.decode("a&"));
+        assertEquals("&&", Translate.decode("&&amp;"));
+        assertEquals("\u00a0\u00a0x", Translate.decode("&nbsp&nbsp;x"));
+        assertEquals("AAA", Translate.decode("&#65;&#x41;&#X41"));
+        assertEquals("\fa", Translate.decode("&#12a"));
+    }
+    
+    @Test
+    public void testNumericEdgeCases() {
+        assertEquals("&#0;", Translate.decode("&#0;"));
+        assertEquals("&#0", Translate.decode("&#0"));
+        assertEquals("&#;", Translate.decode("&#;"));
+        assertEquals("&#x;a", Translate.decode("&#x;a"));
+        assertEquals("&#xg", Translate.decode("&#xg"));
+        assertEquals("\ud800", Translate.decode("&#xD800;"));
+        assertEquals("\ud800x", Translate.decode("&#xd800;x"));
+        // references beyond the BMP are truncated to a char, as they always were
+        assertEquals("\uf600", Translate.decode("&#128512;"));
+        assertEquals("\uf600", Translate.decode("&#x1F600;"));
+        assertEquals("\u0000", Translate.decode("&#x110000;"));
+        // overflow wraps
+        assertEquals("A", Translate.decode("&#65601;"));
+        assertEquals("A", Translate.decode("&#4294967361;"));
+        assertEquals("\uffff", Translate.decode("&#2147483647;"));
+        assertEquals("\uffff", Translate.decode("&#x7FFFFFFF;"));
+    }
+    
+    @Test
+    public void testSupplementaryCharactersPassThrough() {
+        assertEquals("\ud83d\ude00&\ud83d\ude00", Translate.decode("\ud83d\ude00&amp;\ud83d\ude00"));
+    }
+    
+    @Test
+    public void testNoAmpersandReturnsArgument() {
+        final String string = "no references here";
+        assertSame(string, Translate.decode(string));
+    }
+    
+    @Test
+    public void testRangesMatchSubstrings() throws IOException {
+        for (String string : DECODE) {
+            final StringBuilder builder = new StringBuilder(string);
+            for (int start = 0; start <= string.length(); start++) {
+                for (int end = start; end <= string.length(); end++) {
+                    final String expected = Translate.decode(string.substring(start, end));
+                    final String range = string + " [" + start + "," + end + ")";
+                    assertEquals(range, expected, decode(string, start, end));
+                    assertEquals(range, expected, decode(builder, start, end));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testAppendsToBuffer() {
+        final StringBuilder buffer = new StringBuilder("x");
+        Translate.decode("&lt;&#65;", buffer);
+        assertEquals("x<A", buffer.toString());
+    }
+    
+    @Test
+    public void testEncodeEntityReferences() {
+        assertEquals("a&lt;b&gt;&amp;&quot;'", Translate.encode("a<b>&\"'"));
+        assertEquals("&nbsp;&eacute;&yuml;&shy;", Translate.encode("\u00a0\u00e9\u00ff\u00ad"));
+        assertEquals("&#256;&alpha;&mdash;&euro;&rsquo;", Translate.encode("\u0100\u03b1\u2014\u20ac\u2019"));
+        assertEquals("&#127;&#128;\t\n\u0000", Translate.encode("\u007f\u0080\t\n\u0000"));
+    }
+    
+    @Test
+    public void testEncodeSurrogatesSeparately() {
+        assertEquals("&#55357;&#56832;", Translate.encode("\ud83d\ude00"));
+        assertEquals("&#55296;", Translate.encode("\ud800"));
+        assertEquals("&#128512;", Translate.encode(0x1F600));
+        assertEquals("&#0;", Translate.encode(0));
+    }
+    
+    @Test
+    public void testEncodeHexadecimal() {
+        Translate.ENCODE_HEXADECIMAL = true;
+        try {
+            assertEquals("&#x1f600;", Translate.encode(0x1F600));
+            assertEquals("&#x100;&#xd83d;&#xde00;&nbsp;", Translate.encode("\u0100\ud83d\ude00\u00a0"));
+        }
+        finally {
+            Translate.ENCODE_HEXADECIMAL = false;
+        }
+    }
+    
+    @Test
+    public void testEncodeNothingReturnsArgument() {
+        final String string = "nothing to encode\t\r\n";
+        assertSame(string, Translate.encode(string));
+    }
+    
+    @Test
+    public void testEncodeRangesMatchSubstrings() throws IOException {
+        for (String string : ENCODE) {
+            final StringBuilder builder = new StringBuilder(string);
+            for (int start = 0; start <= string.length(); start++) {
+                for (int end = start; end <= string.length(); end++) {
+                    final String expected = Translate.encode(string.substring(start, end));
+                    final String range = string + " [" + start + "," + end + ")";
+                    assertEquals(range, expected, encode(string, start, end));
+                    assertEquals(range, expected, encode(builder, start, end));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testEncodeAppendsToBuffer() {
+        final StringBuilder buffer = new StringBuilder("x");
+        Translate.encode("<\u00e9>", buffer);
+        assertEquals("x&lt;&eacute;&gt;", buffer.toString());
+    }
+    
+    @Test
+    public void testEncodeDecodeRoundTrip() {
+        for (String string : ENCODE) {
+            assertEquals(string, Translate.decode(Translate.encode(string)));
+        }
+    }
+}